@@ -0,0 +1,58 @@
+package dev.Block.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+import dev.Block.Peer;
+import dev.Block.network.PeerConnection;
+import dev.Block.network.protocol.MessageCodec;
+import dev.Block.network.protocol.Message;
+
+/**
+ * Соединение без сокета для бенчмарков: сообщения считаются и, если задан кодек, кодируются
+ * в буфер (как это сделал бы транспорт), но никуда не отправляются.
+ */
+final class BenchConnection extends PeerConnection {
+
+    private final MessageCodec codec; // null - только счет
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    BenchConnection(Peer peer, String nickname, boolean binary, MessageCodec codec) {
+        super(peer);
+        this.peerNickname = nickname;
+        this.binaryProtocol = binary;
+        this.codec = codec;
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+        messages.increment();
+        if (codec == null) return;
+        synchronized (buffer) {
+            buffer.clear();
+            codec.encode(message, buffer);
+            bytes.add(buffer.position());
+        }
+    }
+
+    @Override
+    public void close() {
+        parentPeer.removeConnection(this);
+    }
+
+    @Override
+    public String getPeerInfo() {
+        return peerNickname + "@bench";
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return "127.0.0.1";
+    }
+
+    long getMessages() { return messages.sum(); }
+
+    long getBytes() { return bytes.sum(); }
+}
@@ -0,0 +1,41 @@
+package dev.Block.jmh;
+
+import dev.Block.Peer;
+import dev.Block.PeerConfig;
+import dev.Block.state.TransactionLedger;
+
+/** Узлы и состояние для бенчмарков: Peer без сервера, майнинга и сети. */
+final class BenchPeers {
+
+    static final long ACCOUNT_BALANCE = Long.MAX_VALUE / 4; // Хватает на любое число переводов по 1
+
+    private BenchPeers() {}
+
+    /**
+     * Peer, который не слушает порт и не запечатывает блоки (blockMaxTransactions больше пула),
+     * с accounts счетами "acct0".."acctN-1". Счета без ключей, поэтому неподписанные переводы с них разрешены.
+     */
+    static Peer newPeer(String nickname, int accounts, int maxConnections) {
+        PeerConfig config = new PeerConfig()
+                .setMempoolCapacity(100_000)
+                .setBlockMaxTransactions(Integer.MAX_VALUE)
+                .setMaxConnections(maxConnections)
+                .setRequireSignatures(false);
+        Peer peer = new Peer(nickname, 0, config);
+        for (int i = 0; i < accounts; i++) peer.getEngine().addAccount(account(i), ACCOUNT_BALANCE);
+        return peer;
+    }
+
+    static String account(int index) {
+        return "acct" + index;
+    }
+
+    /** Реестр из entries переводов по кругу между accounts счетами. */
+    static TransactionLedger fillLedger(TransactionLedger ledger, int entries, int accounts) {
+        long epochSecond = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < entries; i++) {
+            ledger.append(i + 1, epochSecond, account(i % accounts), account((i + 1) % accounts), 1 + i % 100);
+        }
+        return ledger;
+    }
+}
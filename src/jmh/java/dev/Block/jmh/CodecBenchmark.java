@@ -0,0 +1,127 @@
+package dev.Block.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.chain.Block;
+import dev.Block.chain.Signatures;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.BlockMessage;
+import dev.Block.network.protocol.LedgerRecordMessage;
+import dev.Block.network.protocol.Message;
+import dev.Block.network.protocol.MessageCodec;
+import dev.Block.network.protocol.TextMessageCodec;
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Кодирование и разбор кадров (encode/decodeFrame на ByteBuffer, как в NIO транспорте).
+ * Подписанная транзакция - в обоих форматах; запись реестра и блок из 100 подписанных
+ * транзакций есть только в бинарном формате.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+public class CodecBenchmark {
+
+    /** Транзакция в выбранном формате. Кодеки не потокобезопасны - состояние на поток. */
+    @State(Scope.Thread)
+    public static class Transactions {
+        @Param({"binary", "text"})
+        public String codecName;
+
+        MessageCodec codec;
+        TransactionMessage txn;
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        ByteBuffer frame;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            codec = "text".equals(codecName) ? new TextMessageCodec() : new BinaryMessageCodec();
+            txn = Signatures.sign(new TransactionMessage(42, "alice", "bob", 10), Signatures.generateKeyPair());
+            frame = encoded(codec, txn);
+        }
+    }
+
+    /** Сообщения, которые есть только в бинарном формате. */
+    @State(Scope.Thread)
+    public static class BinaryOnly {
+        BinaryMessageCodec codec = new BinaryMessageCodec();
+        LedgerRecordMessage record = new LedgerRecordMessage(42, System.currentTimeMillis() / 1000, "alice", "bob", 10);
+        BlockMessage block;
+        ByteBuffer out = ByteBuffer.allocate(1 << 20);
+        ByteBuffer recordFrame;
+        ByteBuffer blockFrame;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            List<TransactionMessage> transactions = new ArrayList<>();
+            KeyPair keyPair = Signatures.generateKeyPair();
+            for (int i = 0; i < 100; i++) transactions.add(Signatures.sign(new TransactionMessage(i + 1, "alice", "bob", i + 1), keyPair));
+            block = new BlockMessage(Block.create(Block.genesis(), transactions, System.currentTimeMillis(), 0));
+            recordFrame = encoded(codec, record);
+            blockFrame = encoded(codec, block);
+        }
+    }
+
+    static ByteBuffer encoded(MessageCodec codec, Message message) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        codec.encode(message, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public int encodeTransaction(Transactions state) {
+        state.out.clear();
+        state.codec.encode(state.txn, state.out);
+        return state.out.position();
+    }
+
+    @Benchmark
+    public Message decodeTransaction(Transactions state) throws IOException {
+        return state.codec.decodeFrame(state.frame.duplicate());
+    }
+
+    @Benchmark
+    public int encodeLedgerRecord(BinaryOnly state) {
+        state.out.clear();
+        state.codec.encode(state.record, state.out);
+        return state.out.position();
+    }
+
+    @Benchmark
+    public Message decodeLedgerRecord(BinaryOnly state) throws IOException {
+        return state.codec.decodeFrame(state.recordFrame.duplicate());
+    }
+
+    @Benchmark
+    public int encodeBlock(BinaryOnly state) {
+        state.out.clear();
+        state.codec.encode(state.block, state.out);
+        return state.out.position();
+    }
+
+    @Benchmark
+    public Message decodeBlock(BinaryOnly state) throws IOException {
+        return state.codec.decodeFrame(state.blockFrame.duplicate());
+    }
+}
@@ -0,0 +1,90 @@
+package dev.Block.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.Peer;
+import dev.Block.chain.Block;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.BlockMessage;
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Рассылка соседям внутри процесса: Peer с N подключенными BenchConnection (бинарный протокол).
+ * <ul>
+ *   <li>broadcastBlock - Peer.broadcastMessage блока всем соседям (только постановка в очередь);</li>
+ *   <li>relayTransaction - Gossip.relay новой транзакции: known-set каждого соседя, тело fanout
+ *       соседям, id остальным в пачку INV;</li>
+ *   <li>relayTransactionEncoded - то же, но соседи кодируют каждое сообщение, как транспорт.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog.level=WARN"})
+@State(Scope.Benchmark)
+public class FanoutBenchmark {
+
+    @Param({"8", "64", "256"})
+    public int handlers;
+
+    private Peer plain;
+    private Peer encoding;
+    private BlockMessage block;
+    private long nextTxId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        plain = connectedPeer(false);
+        encoding = connectedPeer(true);
+        List<TransactionMessage> transactions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) transactions.add(new TransactionMessage(i + 1, BenchPeers.account(i % 8), BenchPeers.account((i + 1) % 8), 1));
+        block = new BlockMessage(Block.create(Block.genesis(), transactions, System.currentTimeMillis(), 0));
+    }
+
+    private Peer connectedPeer(boolean encode) {
+        Peer peer = BenchPeers.newPeer("hub", 8, handlers + 1);
+        for (int i = 0; i < handlers; i++) {
+            peer.addConnection(new BenchConnection(peer, "peer" + i, true, encode ? new BinaryMessageCodec() : null));
+        }
+        if (peer.getConnectionCount() != handlers) throw new IllegalStateException("Connected " + peer.getConnectionCount() + " of " + handlers + " handlers");
+        return peer;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        plain.shutdown();
+        encoding.shutdown();
+    }
+
+    @Benchmark
+    public void broadcastBlock() {
+        plain.broadcastMessage(block, null);
+    }
+
+    @Benchmark
+    public int relayTransaction() {
+        return plain.getGossip().relay(new TransactionMessage(++nextTxId, "acct0", "acct1", 1), null);
+    }
+
+    @Benchmark
+    public int relayTransactionEncoded() {
+        return encoding.getGossip().relay(new TransactionMessage(++nextTxId, "acct0", "acct1", 1), null);
+    }
+}
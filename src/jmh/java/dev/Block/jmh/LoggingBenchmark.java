@@ -0,0 +1,73 @@
+package dev.Block.jmh;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Стоимость ConsoleLogger для вызывающих потоков (4 потока): синхронная запись против асинхронной,
+ * а также вызов выключенного уровня с ленивой строкой. Лог уходит в пустой поток, чтобы замерялся
+ * сам логгер, а не терминал; в асинхронном режиме часть INFO может быть отброшена при заполненном буфере.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=INFO"})
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private PrintStream console;
+
+    /** Номер сообщения потока (строка каждый раз новая, как в реальном логе). */
+    @State(Scope.Thread)
+    public static class Counter {
+        long next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ConsoleLogger.setAsync(async);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ConsoleLogger.flush();
+        System.setOut(console);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void print(Counter counter) {
+        ConsoleLogger.print("Transaction applied: alice -> " + (counter.next++) + " -> bob (Validated TXN from bob@127.0.0.1:9102)");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void debugDisabled(Counter counter) {
+        long i = counter.next++;
+        ConsoleLogger.debug(() -> "Transaction applied: alice -> " + i + " -> bob");
+    }
+}
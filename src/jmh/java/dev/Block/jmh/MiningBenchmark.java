@@ -0,0 +1,67 @@
+package dev.Block.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.chain.Block;
+import dev.Block.chain.Miner;
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Майнинг без сети и Peer: время добычи блока из 100 транзакций сложности difficultyBits
+ * на minerThreads потоках. Каждый вызов строит блок на предыдущем, чтобы nonce не повторялись.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN"})
+@State(Scope.Benchmark)
+public class MiningBenchmark {
+
+    @Param({"1", "4"})
+    public int minerThreads;
+
+    @Param({"16"})
+    public int difficultyBits;
+
+    private Miner miner;
+    private List<TransactionMessage> transactions;
+    private Block parent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        miner = new Miner("bench", minerThreads);
+        transactions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) transactions.add(new TransactionMessage(i + 1, BenchPeers.account(i), BenchPeers.account(i + 1), i + 1));
+        parent = Block.genesis();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        miner.shutdown();
+    }
+
+    @Benchmark
+    public Block mineBlock() throws InterruptedException {
+        Block mined = miner.mine(Block.create(parent, transactions, System.currentTimeMillis(), difficultyBits));
+        if (mined == null || !mined.meetsDifficulty()) throw new IllegalStateException("Mining failed at height " + (parent.getHeight() + 1));
+        parent = mined;
+        return mined;
+    }
+}
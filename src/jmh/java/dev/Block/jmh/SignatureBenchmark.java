@@ -0,0 +1,103 @@
+package dev.Block.jmh;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.chain.Signatures;
+import dev.Block.network.VerificationPipeline;
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Подписи транзакций: подпись и проверка в одном потоке, затем VerificationPipeline с verifyThreads
+ * потоками проверки (пачка из BATCH транзакций до выхода из потока применения, порядок сохраняется).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog.level=WARN"})
+@State(Scope.Benchmark)
+public class SignatureBenchmark {
+
+    private static final int KEYS = 64;
+    private static final int SIGNED = 4096; // Степень двойки
+    private static final int BATCH = 1024;
+
+    private KeyPair[] keys;
+    private TransactionMessage[] signed;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new KeyPair[KEYS];
+        for (int i = 0; i < KEYS; i++) keys[i] = Signatures.generateKeyPair();
+        signed = new TransactionMessage[SIGNED];
+        for (int i = 0; i < SIGNED; i++) signed[i] = Signatures.sign(transaction(i), keys[i % KEYS]);
+    }
+
+    /** Конвейер с verifyThreads потоками проверки; sink считает вышедшие транзакции. */
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+        @Param({"1", "2", "4"})
+        public int verifyThreads;
+
+        VerificationPipeline pipeline;
+        final AtomicLong completed = new AtomicLong();
+        long submitted;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pipeline = new VerificationPipeline("bench", verifyThreads, 4096, batch -> {
+                for (VerificationPipeline.Verified verified : batch) {
+                    if (!verified.signatureValid) throw new IllegalStateException("Invalid signature on " + verified.txn);
+                }
+                completed.addAndGet(batch.size());
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pipeline.close();
+        }
+    }
+
+    private static TransactionMessage transaction(int i) {
+        int sender = i % KEYS;
+        return new TransactionMessage(i + 1, BenchPeers.account(sender), BenchPeers.account((sender + 1) % KEYS), 1 + i % 100);
+    }
+
+    @Benchmark
+    public TransactionMessage sign() {
+        int i = next++ & (SIGNED - 1);
+        return Signatures.sign(transaction(i), keys[i % KEYS]);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return Signatures.verify(signed[next++ & (SIGNED - 1)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void pipeline(Pipeline state) throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) state.pipeline.submit(signed[next++ & (SIGNED - 1)], null);
+        state.submitted += BATCH;
+        while (state.completed.get() < state.submitted) Thread.onSpinWait();
+    }
+}
@@ -0,0 +1,101 @@
+package dev.Block.jmh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.Peer;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.SyncRequestMessage;
+import dev.Block.network.protocol.TextMessageCodec;
+import dev.Block.state.TransactionLedger;
+
+/**
+ * Синхронизация состояния с реестром из entries записей.
+ * <ul>
+ *   <li>sendFullState - ответ старому текстовому узлу: балансы и реестр построчно, каждое сообщение
+ *       кодируется TextMessageCodec;</li>
+ *   <li>sendSnapshot - ответ бинарному узлу без общего префикса реестра: снимок сжатыми частями;</li>
+ *   <li>applyFullState - замена состояния полученным (StateCommitment строится заново).</li>
+ * </ul>
+ * Одиночные замеры: один вызов на итерацию, данные для applyFullState готовятся вне замера.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dlog.level=WARN"})
+@State(Scope.Benchmark)
+public class SyncBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    private Peer source;
+    private Peer target;
+    private BenchConnection textRequester;
+    private BenchConnection binaryRequester;
+    private Map<String, Long> receivedBalances;
+    private TransactionLedger receivedLedger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = BenchPeers.newPeer("source", 0, 2);
+        source.getEngine().replaceState(balances(), Map.of(), BenchPeers.fillLedger(source.getEngine().createLedger(), entries, ACCOUNTS), "source", BenchPeers.ACCOUNT_BALANCE);
+        textRequester = new BenchConnection(source, "legacy", false, new TextMessageCodec());
+        binaryRequester = new BenchConnection(source, "modern", true, new BinaryMessageCodec());
+        target = BenchPeers.newPeer("target", 0, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareReceivedState() {
+        receivedBalances = balances();
+        receivedLedger = BenchPeers.fillLedger(target.getEngine().createLedger(), entries, ACCOUNTS);
+    }
+
+    private static Map<String, Long> balances() {
+        Map<String, Long> balances = new HashMap<>();
+        for (int i = 0; i < ACCOUNTS; i++) balances.put(BenchPeers.account(i), BenchPeers.ACCOUNT_BALANCE);
+        return balances;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        source.shutdown();
+        target.shutdown();
+    }
+
+    @Benchmark
+    public long sendFullState() {
+        source.sendState(textRequester, new SyncRequestMessage("legacy"));
+        return textRequester.getBytes();
+    }
+
+    @Benchmark
+    public long sendSnapshot() {
+        source.sendState(binaryRequester, new SyncRequestMessage("modern"));
+        return binaryRequester.getBytes();
+    }
+
+    @Benchmark
+    public int applyFullState() {
+        target.applyFullState(receivedBalances, Map.of(), receivedLedger, 0, "source");
+        return target.getEngine().getLedgerSize();
+    }
+}
@@ -0,0 +1,94 @@
+package dev.Block.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.Peer;
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Peer.processTransaction для своей транзакции: SeenSet, проверка ключа счета, TransactionEngine.apply
+ * (полосы блокировок), пул и Gossip.relay без соседей. Подпись не проверяется - это стадия
+ * VerificationPipeline (см. SignatureBenchmark).
+ * <ul>
+ *   <li>single - один поток;</li>
+ *   <li>disjointAccounts - 4 потока, у каждого своя пара счетов (разные полосы);</li>
+ *   <li>sameAccounts - 4 потока переводят между одними и теми же счетами (одна полоса).</li>
+ * </ul>
+ * Peer создается заново на каждую итерацию, чтобы реестр не рос без ограничения.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog.level=WARN"})
+@State(Scope.Benchmark)
+public class TransactionBenchmark {
+
+    private static final int ACCOUNTS = 64;
+
+    private Peer peer;
+    private final AtomicLong nextTxId = new AtomicLong();
+
+    /** Пара счетов потока. */
+    @State(Scope.Thread)
+    public static class Sender {
+        private static final AtomicInteger threads = new AtomicInteger();
+        String from;
+        String to;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int index = threads.getAndIncrement() % (ACCOUNTS / 2);
+            from = BenchPeers.account(index * 2);
+            to = BenchPeers.account(index * 2 + 1);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        peer = BenchPeers.newPeer("bench", ACCOUNTS, 1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        peer.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void single(Sender sender) {
+        transfer(sender.from, sender.to);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void disjointAccounts(Sender sender) {
+        transfer(sender.from, sender.to);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sameAccounts() {
+        transfer(BenchPeers.account(0), BenchPeers.account(1));
+    }
+
+    private void transfer(String from, String to) {
+        peer.processTransaction(new TransactionMessage(nextTxId.incrementAndGet(), from, to, 1), null);
+    }
+}
@@ -0,0 +1,134 @@
+package dev.Block.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.Block.state.TransactionEngine;
+import dev.Block.storage.StatePersistence;
+
+/**
+ * Сохранение состояния на диск без сети.
+ * <ul>
+ *   <li>durableTransfer - 16 потоков применяют переводы, каждый ждет fsync своей записи
+ *       (режим syncMode; в GROUP fsync общий для пачки);</li>
+ *   <li>replayLog - восстановление после сбоя: журнал из records переводов без снимка
+ *       повторяется с начала (одиночный замер).</li>
+ * </ul>
+ * Каталоги - во временной папке, удаляются после итерации.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog.level=WARN"})
+public class WalBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+
+    /** Состояние с журналом в режиме syncMode, новое на каждую итерацию. */
+    @State(Scope.Benchmark)
+    public static class Store {
+        @Param({"GROUP", "ASYNC"})
+        public StatePersistence.SyncMode syncMode;
+
+        Path directory;
+        TransactionEngine engine;
+        StatePersistence persistence;
+        final AtomicLong nextTxId = new AtomicLong();
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("wal-bench");
+            engine = new TransactionEngine();
+            persistence = StatePersistence.open(directory, engine, syncMode, 3600, Long.MAX_VALUE, "bench");
+            for (int i = 0; i < ACCOUNTS; i++) engine.addAccount(BenchPeers.account(i), BenchPeers.ACCOUNT_BALANCE);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            persistence.close();
+            deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public TransactionEngine.Result durableTransfer(Store store) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        TransactionEngine.Result result = store.engine.apply(store.nextTxId.incrementAndGet(), BenchPeers.account(from), BenchPeers.account(to), 1);
+        if (result == TransactionEngine.Result.APPLIED) store.persistence.awaitDurable();
+        return result;
+    }
+
+    /** Журнал без снимка, как после сбоя. */
+    @State(Scope.Benchmark)
+    public static class CrashedLog {
+        @Param({"100000"})
+        public int records;
+
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("wal-replay");
+            TransactionEngine engine = new TransactionEngine();
+            StatePersistence persistence = StatePersistence.open(directory, engine, StatePersistence.SyncMode.ASYNC, 3600, Long.MAX_VALUE, "bench");
+            for (int i = 0; i < ACCOUNTS; i++) engine.addAccount(BenchPeers.account(i), BenchPeers.ACCOUNT_BALANCE);
+            for (int i = 0; i < records; i++) engine.apply(i + 1, BenchPeers.account(i % ACCOUNTS), BenchPeers.account((i + 1) % ACCOUNTS), 1);
+            crash(persistence, engine);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public long replayLog(CrashedLog log) throws IOException {
+        TransactionEngine engine = new TransactionEngine();
+        StatePersistence recovered = StatePersistence.open(log.directory, engine, StatePersistence.SyncMode.ASYNC, 3600, Long.MAX_VALUE, "bench");
+        if (recovered.getReplayedRecords() < log.records) throw new IllegalStateException("Replayed " + recovered.getReplayedRecords() + " of " + log.records + " records");
+        crash(recovered, engine); // Без снимка: следующий вызов снова повторяет весь журнал
+        return engine.getLedgerSize();
+    }
+
+    /** Закрывает журнал без финального снимка. */
+    private static void crash(StatePersistence persistence, TransactionEngine engine) throws IOException {
+        persistence.getWal().close();
+        engine.getLedger().close();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
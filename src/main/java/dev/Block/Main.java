@@ -2,26 +2,37 @@ package dev.Block;
 
 
 
+import java.io.IOException;
 import java.util.Scanner;
 
 import dev.Block.util.ConsoleLogger;
 
 /**
  * Точка входа в приложение P2P Blockchain Peer.
- * Запрашивает у пользователя никнейм и порт, создает и запускает Peer.
+ * Без аргументов запрашивает у пользователя никнейм и порт, создает и запускает Peer с консолью команд.
+ * С аргументами запускает узел без консоли (для скриптов, контейнеров и нескольких процессов на одной машине):
+ * <pre>
+ * java dev.Block.Main &lt;nickname&gt; &lt;port&gt; [host:port ...]
+ * </pre>
+ * Перечисленные адреса подключаются при старте; остальные настройки - как обычно, через -Dpeer.*.
+ * Узел работает до завершения процесса (SIGTERM, Ctrl+C).
  */
 public class Main {
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            runHeadless(args);
+            return;
+        }
         try (Scanner scanner = new Scanner(System.in)) {
             Thread.currentThread().setName("PeerMain-Setup"); // Имя потока для настройки
 
             String nickname = "";
             // Валидация никнейма
-            while (nickname.isEmpty() || nickname.contains(":") || nickname.contains(" ") || nickname.equalsIgnoreCase("UNKNOWN")) {
+            while (!isValidNickname(nickname)) {
                  System.out.print("Enter your nickname (no spaces or ':'): ");
                  nickname = scanner.nextLine().trim();
-                 if (nickname.isEmpty() || nickname.contains(":") || nickname.contains(" ") || nickname.equalsIgnoreCase("UNKNOWN")) {
+                 if (!isValidNickname(nickname)) {
                      System.out.println("Invalid nickname.");
                      nickname = "";
                  }
@@ -29,11 +40,11 @@ public class Main {
 
             int port = 0;
             // Валидация порта
-            while (port <= 1024 || port > 65535) { // Используем порты выше 1024
+            while (!isValidPort(port)) { // Используем порты выше 1024
                 System.out.print("Enter the port number to listen on (1025-65535, e.g., 8080): ");
                 try {
                     port = Integer.parseInt(scanner.nextLine().trim());
-                    if (port <= 1024 || port > 65535) System.out.println("Port must be between 1025 and 65535.");
+                    if (!isValidPort(port)) System.out.println("Port must be between 1025 and 65535.");
                 } catch (NumberFormatException e) {
                     System.out.println("Invalid port number.");
                     port = 0; // Сброс для повторного ввода
@@ -42,19 +53,81 @@ public class Main {
 
             // Создаем и запускаем пир
             Peer peer = new Peer(nickname, port);
-
-            // Добавляем Shutdown Hook для корректного завершения по Ctrl+C
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                 ConsoleLogger.print("\nCtrl+C detected or JVM shutting down, initiating peer shutdown...");
-                 peer.shutdown();
-                 ConsoleLogger.print("Shutdown hook finished.");
-             }, "ShutdownHook"));
+            addShutdownHook(peer);
 
             // Запускаем серверную часть и обработку ввода пользователя
-            peer.startServer();
+            startServerOrExit(peer);
             peer.startUserInput(); // Этот метод будет работать до вызова /exit или shutdown
         }
         ConsoleLogger.print("Main setup thread finished. Peer is running.");
         // scanner здесь закрывается внутри startUserInput
     }
-}
\ No newline at end of file
+
+    /** Узел без консоли: ник, порт и начальные адреса - из аргументов. */
+    private static void runHeadless(String[] args) {
+        Thread.currentThread().setName("PeerMain");
+        if (args.length < 2 || !isValidNickname(args[0])) usage("Invalid nickname.");
+        int port = parsePort(args[1]);
+        if (!isValidPort(port)) usage("Port must be between 1025 and 65535.");
+        for (int i = 2; i < args.length; i++) {
+            int colon = args[i].lastIndexOf(':');
+            if (colon <= 0 || !isValidPort(parsePort(args[i].substring(colon + 1)))) usage("Invalid peer address '" + args[i] + "', expected host:port.");
+        }
+
+        Peer peer = new Peer(args[0], port);
+        addShutdownHook(peer);
+        startServerOrExit(peer);
+        for (int i = 2; i < args.length; i++) {
+            int colon = args[i].lastIndexOf(':');
+            peer.connectToPeer(args[i].substring(0, colon), parsePort(args[i].substring(colon + 1)));
+        }
+        ConsoleLogger.print("Running without console. Stop the process (SIGTERM or Ctrl+C) to shut down.");
+        try {
+            peer.awaitShutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            peer.shutdown();
+        }
+    }
+
+    /** Узел процесса один: без своего порта ему незачем работать. */
+    private static void startServerOrExit(Peer peer) {
+        try {
+            peer.startServer();
+        } catch (IOException e) {
+            ConsoleLogger.print("FATAL: Could not start server on port " + peer.getPort() + ": " + e.getMessage());
+            System.exit(1); // Shutdown hook останавливает уже запущенные службы узла
+        }
+    }
+
+    // Добавляем Shutdown Hook для корректного завершения по Ctrl+C
+    private static void addShutdownHook(Peer peer) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+             ConsoleLogger.print("\nCtrl+C detected or JVM shutting down, initiating peer shutdown...");
+             peer.shutdown();
+             ConsoleLogger.print("Shutdown hook finished.");
+         }, "ShutdownHook"));
+    }
+
+    private static boolean isValidNickname(String nickname) {
+        return !nickname.isEmpty() && !nickname.contains(":") && !nickname.contains(" ") && !nickname.equalsIgnoreCase("UNKNOWN");
+    }
+
+    private static boolean isValidPort(int port) {
+        return port > 1024 && port <= 65535;
+    }
+
+    private static int parsePort(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: java dev.Block.Main [<nickname> <port> [host:port ...]]");
+        System.exit(2);
+    }
+}
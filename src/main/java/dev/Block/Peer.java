@@ -2,23 +2,71 @@ package dev.Block;
 
 
 import java.io.*;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
+import dev.Block.api.QueryApi;
+import dev.Block.api.SubmissionApi;
+import dev.Block.chain.Block;
+import dev.Block.chain.BlockBuilder;
+import dev.Block.chain.Blockchain;
+import dev.Block.chain.Mempool;
+import dev.Block.chain.Miner;
+import dev.Block.chain.Sha256;
+import dev.Block.chain.Signatures;
+import dev.Block.metrics.NodeMetrics;
+import dev.Block.network.ConnectionManager;
+import dev.Block.network.FlowControl;
+import dev.Block.network.CompactBlocks;
+import dev.Block.network.Gossip;
+import dev.Block.network.PeerConnection;
 import dev.Block.network.PeerConnectionHandler;
+import dev.Block.network.SeenSet;
+import dev.Block.network.SnapshotTransfer;
+import dev.Block.network.StateVerifier;
+import dev.Block.network.VerificationPipeline;
+import dev.Block.network.nio.NioTransport;
+import dev.Block.network.protocol.BalanceEntryMessage;
+import dev.Block.network.protocol.BlockAnnounceMessage;
+import dev.Block.network.protocol.DeltaStartMessage;
+import dev.Block.network.protocol.LedgerEntryMessage;
+import dev.Block.network.protocol.LedgerRecordMessage;
+import dev.Block.network.protocol.Message;
+import dev.Block.network.protocol.MessageType;
+import dev.Block.network.protocol.PeerJoinedMessage;
+import dev.Block.network.protocol.SnapshotChunkMessage;
+import dev.Block.network.protocol.SnapshotStartMessage;
+import dev.Block.network.protocol.StateRootMessage;
+import dev.Block.network.protocol.SyncMarkerMessage;
+import dev.Block.network.protocol.SyncRequestMessage;
+import dev.Block.network.protocol.TransactionIds;
+import dev.Block.network.protocol.TransactionMessage;
+import dev.Block.state.StateCommitment;
+import dev.Block.state.StateSnapshot;
+import dev.Block.state.TransactionEngine;
+import dev.Block.state.TransactionLedger;
+import dev.Block.storage.StatePersistence;
 import dev.Block.util.ConsoleLogger;
+import dev.Block.util.ThreadSupport;
+import dev.HttpServer.HttpServ;
 
 /**
  * Основной класс P2P узла (пира) в сети.
@@ -29,206 +77,731 @@ public class Peer {
 
     private final String nickname;
     private final int port;
+    private final PeerConfig config;
     private ServerSocket serverSocket;
-    private final List<PeerConnectionHandler> connections = new CopyOnWriteArrayList<>();
-    private final ExecutorService connectionExecutor = Executors.newCachedThreadPool();
+    private NioTransport nioTransport; // Используется вместо serverSocket/connectionExecutor в режиме NIO
+    private final List<PeerConnection> connections = new CopyOnWriteArrayList<>();
+    private final ExecutorService connectionExecutor; // Обработчики соединений и их писатели
     private volatile boolean running = true;
+    private final CountDownLatch terminated = new CountDownLatch(1); // Отпускается в конце shutdown()
 
     // Blockchain state
-    private final Map<String, Integer> balances = new ConcurrentHashMap<>();
-    private final List<String> transactionLedger = new CopyOnWriteArrayList<>();
+    private final TransactionEngine engine = new TransactionEngine(); // Балансы и реестр
     private static final int INITIAL_BALANCE = 100;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int LEDGER_PAGE_SIZE = 50; // Записей на страницу в /ledger
+    private static final int RECENT_BLOCKS = 16; // Блоков, в которых ищутся тела по GETDATA (findTransactions)
+    private final TransactionIds transactionIds; // Идентификаторы собственных транзакций
+    private final SeenSet seenTransactions; // Уже полученные id: повторы не проверяются и не ретранслируются
+    private final AtomicLong duplicatesDropped = new AtomicLong(); // Отброшены по seenTransactions
+    private final AtomicLong duplicatesInLedger = new AtomicLong(); // Прошли seenTransactions (истек срок), но уже в реестре
 
-    // Message Protocol Prefixes (сделаем их public static, чтобы Handler их видел)
-    public static final String MSG_PREFIX_CHAT = "CHAT:";
-    public static final String MSG_PREFIX_TXN = "TXN:";
-    public static final String MSG_PREFIX_REQ_SYNC = "REQ_SYNC:";
-    public static final String MSG_PREFIX_SYNC_BAL_START = "SYNC_BAL_START:";
-    public static final String MSG_PREFIX_SYNC_BAL_ENTRY = "SYNC_BAL:";
-    public static final String MSG_PREFIX_SYNC_BAL_END = "SYNC_BAL_END:";
-    public static final String MSG_PREFIX_SYNC_LED_START = "SYNC_LED_START:";
-    public static final String MSG_PREFIX_SYNC_LED_ENTRY = "SYNC_LED:";
-    public static final String MSG_PREFIX_SYNC_LED_END = "SYNC_LED_END:";
-    public static final String MSG_PREFIX_PEER_JOINED = "PEER_JOINED:";
+    // Блоки
+    private final Blockchain chain = new Blockchain();
+    private final Mempool mempool;
+    private final BlockBuilder blockBuilder;
+    private final Object blockLock = new Object(); // Согласованное изменение цепочки и пула
+    private final Object snapshotLock = new Object();
+    private volatile SnapshotTransfer.Receiver pendingSnapshot; // Принимаемый снимок; переживает обрыв соединения
+    private PeerConnection pendingSnapshotSource; // Соединение, от которого идет снимок (под snapshotLock)
+
+    private final StatePersistence persistence; // null - состояние только в памяти
+    private final KeyPair keyPair; // Подпись своих транзакций
+    private final VerificationPipeline verificationPipeline; // Проверка подписей входящих транзакций
+    private final Gossip gossip; // Рассылка транзакций: тела fanout соседям, остальным INV
+    private final CompactBlocks compactBlocks; // Сборка объявленных блоков из известных тел
+    private final ConnectionManager connectionManager; // Адресная книга, переподключение, отключение медленных
+    private final NodeMetrics metrics; // Счетчики и гистограммы для /metrics
+    private HttpServ httpServer; // /metrics и API; null - peer.http.port не задан
+    private SubmissionApi submissionApi; // Прием транзакций по HTTP; null - сервер не запущен
+    private long snapshotStartedNanos; // Начало приема текущего снимка (под snapshotLock)
+    private final List<LongConsumer> applyListeners = new CopyOnWriteArrayList<>(); // См. addApplyListener
 
     public Peer(String nickname, int port) {
+        this(nickname, port, PeerConfig.fromSystemProperties());
+    }
+
+    public Peer(String nickname, int port, PeerConfig config) {
         this.nickname = nickname;
         this.port = port;
-        this.balances.put(nickname, INITIAL_BALANCE);
-        ConsoleLogger.print("Welcome, " + nickname + "! Your initial balance is " + INITIAL_BALANCE);
+        this.config = config;
+        this.connectionExecutor = ThreadSupport.newPerTaskExecutor(config.getThreads() == PeerConfig.Threads.VIRTUAL);
+        this.transactionIds = new TransactionIds(nickname);
+        this.seenTransactions = new SeenSet(config.getSeenCapacity(), config.getSeenTtlMillis());
+        this.mempool = new Mempool(config.getMempoolCapacity());
+        Miner miner = new Miner(nickname, config.getMinerThreads());
+        this.blockBuilder = new BlockBuilder(nickname, chain, mempool, miner, config.getPowDifficultyBits(), config.getBlockMaxTransactions(), config.getBlockIntervalMillis(), this::onBlockSealed);
+        this.persistence = openPersistence();
+        this.keyPair = loadKeyPair();
+        this.verificationPipeline = new VerificationPipeline(nickname, config.getVerifyThreads(), config.getVerifyQueueCapacity(), this::applyTransactions);
+        this.gossip = new Gossip(this, config.getGossipFanout(), config.getGossipFlushMillis());
+        this.compactBlocks = new CompactBlocks(this);
+        this.connectionManager = new ConnectionManager(this);
+        this.metrics = new NodeMetrics(this);
+        this.engine.setLockWaitListeners(metrics::recordStateLockWait, metrics::recordStripeLockWait);
+        byte[] ownKey = getPublicKey();
+        if (this.engine.addAccount(nickname, INITIAL_BALANCE, ownKey)) {
+            ConsoleLogger.print("Welcome, " + nickname + "! Your initial balance is " + INITIAL_BALANCE);
+        } else {
+            this.engine.bindKey(nickname, ownKey); // Счет из состояния без ключа (до закрепления ключей)
+            ConsoleLogger.print("Welcome back, " + nickname + "! Your balance is " + getOwnBalance());
+            if (!canSign(nickname)) ConsoleLogger.print("WARN: Account '" + nickname + "' is bound to a different key than " + (config.getDataDir() != null ? "node.key" : "this temporary key") + ". Peers will reject your transactions.");
+        }
     }
 
-    // --- Server Lifecycle ---
+    /** Восстанавливает состояние с диска и подключает журнал, если задан каталог данных. */
+    private StatePersistence openPersistence() {
+        if (config.getDataDir() == null) return null;
+        Path directory = Paths.get(config.getDataDir(), nickname);
+        try {
+            return StatePersistence.open(directory, engine, config.getWalSyncMode(), config.getSnapshotIntervalSeconds(), config.getSnapshotRecords(), nickname);
+        } catch (IOException e) {
+            ConsoleLogger.print("ERROR: Cannot open data directory " + directory + ": " + e.getMessage() + ". State will not be persisted.");
+            return null;
+        }
+    }
 
-    public void startServer() {
+    /** Ключ узла: из каталога данных (постоянный) или новый на время работы. */
+    private KeyPair loadKeyPair() {
+        if (config.getDataDir() == null) return Signatures.generateKeyPair();
+        Path file = Paths.get(config.getDataDir(), nickname, "node.key");
         try {
-            serverSocket = new ServerSocket(port);
-            ConsoleLogger.print("Server listening on port " + port);
-
-            Thread serverThread = new Thread(() -> {
-                while (running && !serverSocket.isClosed()) {
-                    try {
-                        Socket clientSocket = serverSocket.accept();
-                        ConsoleLogger.print("Incoming connection from " + clientSocket.getRemoteSocketAddress());
-                        // Создаем обработчик для нового соединения
-                        PeerConnectionHandler handler = new PeerConnectionHandler(clientSocket, this, true);
-                        connectionExecutor.submit(handler); // Запускаем обработчик в отдельном потоке
-                    } catch (SocketException e) {
-                        if (running) ConsoleLogger.print("Server socket closed or error accepting connection: " + e.getMessage());
-                    } catch (IOException e) {
-                        if (running) ConsoleLogger.print("Error accepting connection: " + e.getMessage());
-                    } catch (Exception e){
-                        if(running) ConsoleLogger.print("Unexpected error in server accept loop: " + e.getMessage());
-                    }
-                }
-                ConsoleLogger.print("Server listener stopped.");
-            }, "ServerAccept-" + port); // Имя потока
-            serverThread.start();
+            return Signatures.loadOrCreate(file);
+        } catch (IOException e) {
+            ConsoleLogger.print("ERROR: Cannot load node key " + file + ": " + e.getMessage() + ". Using a temporary key.");
+            return Signatures.generateKeyPair();
+        }
+    }
+
+    // --- Server Lifecycle ---
 
+    /**
+     * HTTP сервер узла, если задан peer.http.port: /metrics в формате Prometheus и JSON API чтения
+     * состояния (QueryApi). Ошибка запуска не останавливает узел.
+     */
+    private void startHttpServer() {
+        if (config.getHttpPort() == 0) return;
+        try {
+            InetAddress bind = InetAddress.getByName(config.getHttpBind());
+            httpServer = new HttpServ(bind, config.getHttpPort(), config.getHttpThreads(), config.getThreads() == PeerConfig.Threads.VIRTUAL);
+            httpServer.addText("/metrics", "text/plain; version=0.0.4; charset=utf-8", metrics::scrape);
+            new QueryApi(this).register(httpServer);
+            // Отправка тратит счета узла: без токена - только с этой машины
+            boolean submissions = config.getHttpToken() != null || bind.isLoopbackAddress();
+            if (submissions) {
+                submissionApi = new SubmissionApi(this, config.getHttpToken());
+                submissionApi.register(httpServer);
+            } else {
+                ConsoleLogger.print("WARN: HTTP server listens on " + bind.getHostAddress() + " without peer.http.token; POST /transactions is disabled.");
+            }
+            httpServer.start();
+            ConsoleLogger.print("HTTP API listening on " + bind.getHostAddress() + ":" + httpServer.getPort() + " (/metrics, /balance/{nick}, /ledger, /peers" + (submissions ? ", /transactions" : "") + ")");
         } catch (IOException e) {
-            ConsoleLogger.print("FATAL: Could not start server on port " + port + ": " + e.getMessage());
-            // В реальном приложении здесь может быть более сложная обработка ошибки
-             System.exit(1); // Завершаем работу, если не удалось запустить сервер
+            ConsoleLogger.print("ERROR: Could not start HTTP server on port " + config.getHttpPort() + ": " + e.getMessage() + ". Metrics and HTTP API are unavailable.");
+            httpServer = null;
         }
     }
 
+    /**
+     * Запускает службы узла и начинает слушать порт.
+     * @throws IOException если порт не открылся; процесс не завершается (в одном процессе может работать
+     *         несколько узлов, см. ClusterSimulator), узел останавливает вызывающий (shutdown).
+     */
+    public void startServer() throws IOException {
+        blockBuilder.start();
+        connectionManager.start();
+        startHttpServer();
+        if (config.getTransport() == PeerConfig.Transport.NIO) {
+            nioTransport = new NioTransport(this, config.getNioEventLoops());
+            nioTransport.start(port);
+            return;
+        }
+        serverSocket = new ServerSocket(port);
+        ConsoleLogger.print("Server listening on port " + port);
+
+        Thread serverThread = new Thread(() -> {
+            while (running && !serverSocket.isClosed()) {
+                try {
+                    Socket clientSocket = serverSocket.accept();
+                    ConsoleLogger.print("Incoming connection from " + clientSocket.getRemoteSocketAddress());
+                    // Создаем обработчик для нового соединения
+                    PeerConnectionHandler handler = new PeerConnectionHandler(clientSocket, this);
+                    connectionExecutor.submit(handler); // Запускаем обработчик в отдельном потоке
+                } catch (SocketException e) {
+                    if (running) ConsoleLogger.print("Server socket closed or error accepting connection: " + e.getMessage());
+                } catch (IOException e) {
+                    if (running) ConsoleLogger.print("Error accepting connection: " + e.getMessage());
+                } catch (Exception e){
+                    if(running) ConsoleLogger.print("Unexpected error in server accept loop: " + e.getMessage());
+                }
+            }
+            ConsoleLogger.print("Server listener stopped.");
+        }, "ServerAccept-" + port); // Имя потока
+        serverThread.start();
+    }
+
     // --- Client Actions ---
 
+    /** Подключение по команде /connect; дальше адрес поддерживает ConnectionManager. */
     public void connectToPeer(String host, int peerPort) {
-        // Проверка на самоподключение
-        InetSocketAddress localAddress = serverSocket == null ? null : (InetSocketAddress) serverSocket.getLocalSocketAddress();
-        if ((host.equals("localhost") || host.equals("127.0.0.1")) && localAddress != null && localAddress.getPort() == peerPort) {
-             ConsoleLogger.print("Cannot connect to self.");
-             return;
-        }
-        // Проверка на уже существующее соединение
-        for (PeerConnectionHandler handler : connections) {
-             if (handler.getPeerInfo().contains(host + ":" + peerPort) || handler.getPeerInfo().contains("/"+host + ":" + peerPort)) {
-                 ConsoleLogger.print("Already connected or connecting to " + host + ":" + peerPort);
-                 return;
-             }
-        }
+        connectionManager.connect(host, peerPort);
+    }
 
-        ConsoleLogger.print("Attempting to connect to " + host + ":" + peerPort + "...");
-        try {
-            // Устанавливаем соединение
-            Socket socket = new Socket(host, peerPort);
-            ConsoleLogger.print("Successfully connected to " + host + ":" + peerPort);
-            // Создаем обработчик для нового соединения
-            PeerConnectionHandler handler = new PeerConnectionHandler(socket, this, false);
-            connectionExecutor.submit(handler); // Запускаем обработчик
-        } catch (IOException e) {
-            ConsoleLogger.print("Could not connect to " + host + ":" + peerPort + ": " + e.getMessage());
-        } catch (Exception e) {
-            ConsoleLogger.print("Unexpected error connecting to " + host + ":" + peerPort + ": " + e.getMessage());
+    /**
+     * Устанавливает исходящее соединение выбранным транспортом. Вызывается ConnectionManager;
+     * addressKey - ключ адреса в AddressBook, о неудаче сообщается в onDialFailed.
+     */
+    public void dial(String host, int peerPort, String addressKey) {
+        if (nioTransport != null) {
+            try { nioTransport.connect(host, peerPort, addressKey); }
+            catch (IOException e) { ConsoleLogger.print("Could not connect to " + host + ":" + peerPort + ": " + e.getMessage()); connectionManager.onDialFailed(addressKey); }
+            return;
         }
+
+        connectionExecutor.execute(() -> { // Блокирующее подключение не задерживает вызывающий поток
+            Thread.currentThread().setName("Connect-" + host + ":" + peerPort);
+            ConsoleLogger.print("Attempting to connect to " + host + ":" + peerPort + "...");
+            PeerConnectionHandler handler;
+            try {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(host, peerPort), CONNECT_TIMEOUT_MS);
+                ConsoleLogger.print("Successfully connected to " + host + ":" + peerPort);
+                handler = new PeerConnectionHandler(socket, this, addressKey);
+            } catch (IOException e) {
+                ConsoleLogger.print("Could not connect to " + host + ":" + peerPort + ": " + e.getMessage());
+                connectionManager.onDialFailed(addressKey);
+                return;
+            } catch (Exception e) {
+                ConsoleLogger.print("Unexpected error connecting to " + host + ":" + peerPort + ": " + e.getMessage());
+                connectionManager.onDialFailed(addressKey);
+                return;
+            }
+            handler.run(); // Обработчик работает в этой же задаче
+        });
     }
 
     // --- Network Message Handling & State Management ---
 
     /**
      * Обрабатывает входящее сообщение о транзакции.
-     * Валидирует, применяет локально и ретранслирует другим пирам.
+     * Транзакции соседей проходят проверку подписи в VerificationPipeline (параллельно, с сохранением порядка)
+     * и затем применяются пачками в applyTransactions; свои (sourceHandler == null) уже подписаны нами.
      */
-    public synchronized void processTransaction(String txnMessage, PeerConnectionHandler sourceHandler) {
-        String sourceInfo = (sourceHandler != null) ? sourceHandler.getPeerInfo() : "LOCAL";
-
-        String[] parts = txnMessage.split(":");
-        if (parts.length != 4 || !parts[0].equals("TXN")) {
-            ConsoleLogger.print("WARN: Received invalid transaction message format from " + sourceInfo + ": " + txnMessage);
+    public void processTransaction(TransactionMessage txn, PeerConnection sourceHandler) {
+        // Повтор (пришел по другому пути или вернулся по кольцу) отбрасывается до проверки и ретрансляции
+        if (!seenTransactions.markSeen(txn.getTxId())) {
+            duplicatesDropped.incrementAndGet();
             return;
         }
+        if (sourceHandler == null) {
+            applyTransactions(List.of(new VerificationPipeline.Verified(txn, null, true)));
+            return;
+        }
+        try {
+            verificationPipeline.submit(txn, sourceHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        String sender = parts[1];
-        String recipient = parts[2];
-        int amount;
-        try { amount = Integer.parseInt(parts[3]); }
-        catch (NumberFormatException e) { ConsoleLogger.print("WARN: Invalid amount in transaction from " + sourceInfo + ": " + parts[3]); return; }
+    /**
+     * Стадия применения: проверяет, что транзакцию подписал владелец счета (AccountKeys), и применяет ее
+     * (TransactionEngine). Затем вне блокировок логирует результат и ретранслирует другим пирам - и те, что
+     * уже оказались в реестре через синхронизацию; ожидание записи журнала - одно на пачку.
+     */
+    private void applyTransactions(List<VerificationPipeline.Verified> batch) {
+        List<VerificationPipeline.Verified> applied = new ArrayList<>(batch.size());
+        List<VerificationPipeline.Verified> known = null;
+        for (VerificationPipeline.Verified verified : batch) {
+            TransactionMessage txn = verified.txn;
+            if (!isAuthorized(txn, verified.signatureValid, verified.source)) continue;
+            long start = System.nanoTime();
+            TransactionEngine.Result result = engine.apply(txn.getTxId(), txn.getSender(), txn.getRecipient(), txn.getAmount());
+            metrics.recordApply(System.nanoTime() - start);
+            if (result == TransactionEngine.Result.DUPLICATE) {
+                duplicatesInLedger.incrementAndGet();
+                // Запись успела прийти синхронизацией, а ее соседи не рассылают (нет подписи): тело рассылаем мы
+                if (known == null) known = new ArrayList<>();
+                known.add(verified);
+                continue;
+            }
+            if (result != TransactionEngine.Result.APPLIED) {
+                logRejectedTransaction(result, txn, verified.source);
+                continue;
+            }
+            PeerConnection source = verified.source;
+            boolean own = txn.getSender().equals(this.nickname) || txn.getRecipient().equals(this.nickname);
+            // Чужие переводы (основная часть потока при высокой нагрузке) - только на уровне DEBUG, строка не строится
+            ConsoleLogger.log(own ? ConsoleLogger.Level.INFO : ConsoleLogger.Level.DEBUG, () -> "Transaction applied: " + txn.getSender() + " -> " + txn.getAmount() + " -> " + txn.getRecipient()
+                    + " (Validated TXN from " + (source != null ? source.getPeerInfo() : "LOCAL") + ")");
+            if (own) {
+                 ConsoleLogger.print("Your new balance: " + getOwnBalance());
+            }
+            applied.add(verified);
+        }
+        if (known != null) {
+            for (VerificationPipeline.Verified verified : known) gossip.relay(verified.txn, verified.source); // Знающим соседям не уйдет (KnownInventory)
+        }
+        if (applied.isEmpty()) return;
 
-        // Валидация
-        if (amount <= 0) { ConsoleLogger.print("WARN: Transaction amount must be positive from " + sourceInfo + ": " + amount); return; }
-        if (sender.equals(recipient)) { ConsoleLogger.print("WARN: Cannot send coins to yourself (from " + sourceInfo + ")"); return; }
-        int senderBalance = balances.getOrDefault(sender, -1);
-        if (senderBalance == -1) { ConsoleLogger.print("WARN: Transaction sender '" + sender + "' not found. Rejecting TXN from " + sourceInfo); return; }
-        if (senderBalance < amount) { ConsoleLogger.print("WARN: Transaction failed from " + sourceInfo + ". Sender '" + sender + "' insufficient funds (Needs " + amount + ", has " + senderBalance + ")"); return; }
-        if (!balances.containsKey(recipient)) { ConsoleLogger.print("WARN: Transaction failed from " + sourceInfo + ". Recipient '" + recipient + "' not found."); return; }
+        if (persistence != null) awaitDurable(); // Ретранслируем только сохраненное (group commit)
+        for (VerificationPipeline.Verified verified : applied) {
+            if (mempool.add(verified.txn)) blockBuilder.onTransactionAdded(mempool.size());
+            metrics.recordRelayFanout(gossip.relay(verified.txn, verified.source)); // Ретрансляция (и рассылка своих)
+            notifyApplied(verified.txn.getTxId());
+        }
+    }
 
-        // Применение
-        balances.compute(sender, (k, v) -> v - amount);
-        balances.compute(recipient, (k, v) -> v + amount);
+    private void notifyApplied(long txId) {
+        for (LongConsumer listener : applyListeners) listener.accept(txId);
+    }
 
-        // Добавление в реестр
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        String formattedNow = now.format(formatter);
-        String ledgerEntry = formattedNow + " | " + sender + " sent " + amount + " coins to " + recipient;
-        if (!transactionLedger.contains(ledgerEntry)) {
-             transactionLedger.add(ledgerEntry);
+    /**
+     * Свои транзакции пачкой (SubmissionApi): применяются в вызывающем потоке как processTransaction(txn, null),
+     * но с одним ожиданием журнала на всю пачку.
+     */
+    public void processOwnTransactions(List<TransactionMessage> txns) {
+        List<VerificationPipeline.Verified> batch = new ArrayList<>(txns.size());
+        for (TransactionMessage txn : txns) {
+            if (!seenTransactions.markSeen(txn.getTxId())) { duplicatesDropped.incrementAndGet(); continue; }
+            batch.add(new VerificationPipeline.Verified(txn, null, true));
         }
+        if (!batch.isEmpty()) applyTransactions(batch);
+    }
 
-        ConsoleLogger.print("Transaction applied: " + sender + " -> " + amount + " -> " + recipient + " (Validated TXN from " + sourceInfo + ")");
-        if (sender.equals(this.nickname) || recipient.equals(this.nickname)) {
-             ConsoleLogger.print("Your new balance: " + balances.getOrDefault(this.nickname, 0));
+    private void awaitDurable() {
+        long start = System.nanoTime();
+        persistence.awaitDurable();
+        metrics.recordDurableWait(System.nanoTime() - start);
+    }
+
+    /** Верна ли подпись и принадлежит ли ключ отправителю (неподписанные - см. AccountKeys). */
+    private boolean isAuthorized(TransactionMessage txn, boolean signatureValid, PeerConnection sourceHandler) {
+        String sourceInfo = (sourceHandler != null) ? sourceHandler.getPeerInfo() : "LOCAL";
+        if (!signatureValid) {
+            ConsoleLogger.print("WARN: Invalid signature on transaction " + txn + " from " + sourceInfo + ". Rejecting.");
+            return false;
+        }
+        switch (engine.getKeys().check(txn.getSender(), txn.isSigned() ? txn.getPublicKey() : null, config.isRequireSignatures())) {
+            case UNSIGNED:
+                ConsoleLogger.print("WARN: Unsigned transaction " + txn + " from " + sourceInfo + " for account '" + txn.getSender() + "', which requires signatures. Rejecting.");
+                return false;
+            case KEY_MISMATCH:
+                ConsoleLogger.print("WARN: Transaction " + txn + " from " + sourceInfo + " is not signed by the key of '" + txn.getSender() + "'. Rejecting.");
+                return false;
+            case NO_KEY:
+                ConsoleLogger.print("WARN: Transaction " + txn + " from " + sourceInfo + " spends account '" + txn.getSender() + "', which has no bound key. Rejecting.");
+                return false;
+            default:
+                return true;
         }
+    }
 
-        // Ретрансляция
-        if (sourceHandler != null) {
-            // ConsoleLogger.print("Relaying transaction '" + txnMessage + "' received from " + sourceHandler.getPeerNickname() + " to other peers...");
-            broadcastMessage(txnMessage, sourceHandler);
+    private void logRejectedTransaction(TransactionEngine.Result result, TransactionMessage txn, PeerConnection sourceHandler) {
+        String sourceInfo = (sourceHandler != null) ? sourceHandler.getPeerInfo() : "LOCAL";
+        switch (result) {
+            case INVALID_AMOUNT: ConsoleLogger.print("WARN: Transaction amount must be positive from " + sourceInfo + ": " + txn.getAmount()); break;
+            case SELF_TRANSFER: ConsoleLogger.print("WARN: Cannot send coins to yourself (from " + sourceInfo + ")"); break;
+            case UNKNOWN_SENDER: ConsoleLogger.print("WARN: Transaction sender '" + txn.getSender() + "' not found. Rejecting TXN from " + sourceInfo); break;
+            case INSUFFICIENT_FUNDS: ConsoleLogger.print("WARN: Transaction failed from " + sourceInfo + ". Sender '" + txn.getSender() + "' insufficient funds (Needs " + txn.getAmount() + ", has " + engine.getBalance(txn.getSender()) + ")"); break;
+            case UNKNOWN_RECIPIENT: ConsoleLogger.print("WARN: Transaction failed from " + sourceInfo + ". Recipient '" + txn.getRecipient() + "' not found."); break;
+            case BALANCE_OVERFLOW: ConsoleLogger.print("WARN: Transaction failed from " + sourceInfo + ". Recipient '" + txn.getRecipient() + "' balance would overflow."); break;
+            default: break;
         }
     }
 
     /**
-     * Рассылает сообщение всем активным соединениям, кроме источника.
+     * Рассылает сообщение всем активным соединениям, кроме источника (PEER_JOINED; транзакции
+     * рассылает Gossip, блоки - announceBlock).
+     * sendMessage() только ставит сообщение в очередь соединения, поэтому медленный пир
+     * не задерживает рассылку остальным.
      */
-    public void broadcastMessage(String message, PeerConnectionHandler source) {
+    public void broadcastMessage(Message message, PeerConnection source) {
+        boolean binaryOnly = message.getType() == MessageType.BLOCK;
         int relayedTo = 0;
-        for (PeerConnectionHandler handler : connections) {
-            if (handler != source) {
+        for (PeerConnection handler : connections) {
+            if (handler != source && (!binaryOnly || handler.isBinaryProtocol())) {
                 handler.sendMessage(message);
                 relayedTo++;
             }
         }
         // if (relayedTo > 0 && source != null) {
-        //     ConsoleLogger.print("DEBUG: Relayed message '" + message.substring(0, Math.min(30, message.length())) + "...' to " + relayedTo + " peer(s).");
+        //     ConsoleLogger.print("DEBUG: Relayed " + message.getType() + " message to " + relayedTo + " peer(s).");
         // }
     }
 
+    /**
+     * Блок, добытый своим BlockBuilder: добавляется в цепочку и объявляется соседям (заголовок и id транзакций).
+     * Если вершина успела смениться, блок отбрасывается, а транзакции остаются в пуле.
+     */
+    private void onBlockSealed(Block block) {
+        long waitStart = System.nanoTime();
+        synchronized (blockLock) {
+            metrics.recordBlockLockWait(System.nanoTime() - waitStart);
+            if (!acceptIntoChain(block)) return;
+        }
+        ConsoleLogger.print("Sealed block " + block + ". Chain height: " + block.getHeight() + ", mempool: " + mempool.size());
+        announceBlock(block, null);
+    }
+
+    /**
+     * Объявляет блок бинарным соседям, кроме источника: заголовок и id транзакций (BLOCK_ANNOUNCE).
+     * Тела, о которых сосед по его KnownInventory еще не знает, уходят перед объявлением обычными TXN -
+     * он соберет блок без запроса GETDATA (см. CompactBlocks).
+     */
+    private void announceBlock(Block block, PeerConnection source) {
+        BlockAnnounceMessage announce = BlockAnnounceMessage.of(block);
+        for (PeerConnection handler : connections) {
+            if (handler == source || !handler.isBinaryProtocol()) continue;
+            for (TransactionMessage txn : block.getTransactions()) { if (handler.getKnownInventory().add(txn.getTxId())) handler.sendMessage(txn); }
+            handler.sendMessage(announce);
+        }
+    }
+
+    /**
+     * Обрабатывает блок, полученный от соседа (собранный из объявления, см. CompactBlocks).
+     * Блок, в котором хоть одна транзакция с неверной подписью или не от владельца счета, отвергается целиком.
+     * Затем решается место блока в цепочке: транзакции блока вне основной цепочки не применяются -
+     * верные из них придут обычной рассылкой. Транзакции принятого блока применяются одной пачкой:
+     * уже известные отсекаются по id (реестр), новые проверяются и применяются без отдельного лога
+     * и без рассылки каждой TXN по сети. Затем блок объявляется остальным бинарным соседям,
+     * а старым текстовым отправляются только новые для нас транзакции.
+     */
+    public void processBlock(Block block, PeerConnection sourceHandler) {
+        if (chain.contains(block.getHashHex())) return; // Вернулся по другому пути
+        if (block.getDifficultyBits() < config.getPowDifficultyBits() || !block.meetsDifficulty()) {
+            ConsoleLogger.print("WARN: Block " + block + " from " + sourceHandler.getPeerInfo() + " has insufficient proof of work (" + block.getDifficultyBits() + " bits claimed, " + config.getPowDifficultyBits() + " required). Ignoring.");
+            return;
+        }
+        if (!block.hasValidMerkleRoot()) {
+            ConsoleLogger.print("WARN: Block " + block + " from " + sourceHandler.getPeerInfo() + " has invalid Merkle root. Ignoring.");
+            return;
+        }
+
+        // Подписи и владельцы проверяются до цепочки: блок с поддельной или чужой тратой не принимается и не объявляется.
+        // Ошибки, зависящие от балансов (нехватка средств и т.п.), ниже остаются предупреждениями
+        List<TransactionMessage> transactions = block.getTransactions();
+        boolean[] signatureValid = verificationPipeline.verifyAll(transactions); // Подписи всего блока - параллельно на пуле проверки
+        for (int i = 0; i < transactions.size(); i++) {
+            if (!isAuthorized(transactions.get(i), signatureValid[i], sourceHandler)) {
+                ConsoleLogger.print("WARN: Block " + block + " from " + sourceHandler.getPeerInfo() + " contains unauthorized transaction " + transactions.get(i) + ". Rejecting block.");
+                return;
+            }
+        }
+        for (TransactionMessage txn : transactions) sourceHandler.getKnownInventory().add(txn.getTxId()); // Не объявлять их источнику блока
+        boolean accepted;
+        long waitStart = System.nanoTime();
+        synchronized (blockLock) {
+            metrics.recordBlockLockWait(System.nanoTime() - waitStart);
+            accepted = acceptIntoChain(block);
+        }
+        if (!accepted) {
+            ConsoleLogger.print("Block " + block + " from " + sourceHandler.getPeerNickname() + ": not on main chain, transactions not applied. Chain height: " + chain.getHeight());
+            return;
+        }
+        blockBuilder.onTipChanged(); // Майнинг поверх старой вершины бесполезен
+
+        int applied = 0, known = 0, rejected = 0;
+        List<TransactionMessage> fresh = new ArrayList<>();
+        for (TransactionMessage txn : transactions) {
+            seenTransactions.markSeen(txn.getTxId());
+            long start = System.nanoTime();
+            TransactionEngine.Result result = engine.apply(txn.getTxId(), txn.getSender(), txn.getRecipient(), txn.getAmount());
+            metrics.recordApply(System.nanoTime() - start);
+            if (result == TransactionEngine.Result.APPLIED) { applied++; fresh.add(txn); }
+            else if (result == TransactionEngine.Result.DUPLICATE) known++;
+            else rejected++;
+        }
+
+        if (applied > 0 && persistence != null) awaitDurable(); // Один fsync на весь блок
+        for (TransactionMessage txn : fresh) notifyApplied(txn.getTxId());
+
+        ConsoleLogger.print("Block " + block + " from " + sourceHandler.getPeerNickname() + ": accepted, " + applied + " new, " + known + " known, " + rejected + " rejected txns. Chain height: " + chain.getHeight());
+        if (rejected > 0) {
+            ConsoleLogger.print("WARN: " + rejected + " transaction(s) of block " + block + " failed validation locally.");
+        }
+        if (applied > 0 && engine.hasAccount(nickname)) {
+            ConsoleLogger.print("Your balance after block: " + getOwnBalance());
+        }
+
+        announceBlock(block, sourceHandler);
+        for (PeerConnection handler : connections) {
+            if (handler != sourceHandler && !handler.isBinaryProtocol()) {
+                for (TransactionMessage txn : fresh) { if (handler.getKnownInventory().add(txn.getTxId())) handler.sendMessage(txn); }
+            }
+        }
+    }
+
+    /**
+     * Добавляет блок в цепочку и обновляет пул: транзакции блока удаляются,
+     * транзакции вытесненной вершины возвращаются. Вызывается под blockLock.
+     * @return true, если блок стал вершиной.
+     */
+    private boolean acceptIntoChain(Block block) {
+        Block previousTip = chain.getTip();
+        Blockchain.AppendResult result = chain.append(block);
+        if (result == Blockchain.AppendResult.REPLACED_TIP) {
+            for (TransactionMessage txn : previousTip.getTransactions()) mempool.add(txn);
+        }
+        if (result != Blockchain.AppendResult.APPENDED && result != Blockchain.AppendResult.REPLACED_TIP) return false;
+        mempool.removeAll(block.getTransactions());
+        return true;
+    }
+
+    /**
+     * Запрос синхронизации с положением своего реестра (для инкрементальной синхронизации)
+     * и, если прошлая передача снимка оборвалась, с позицией для ее продолжения.
+     */
+    public SyncRequestMessage createSyncRequest() {
+        // Корень строится по тем же height записям: корень текущего дерева мог бы уже включать перевод,
+        // примененный после чтения размера, и отвечающий не признал бы префикс (снимок вместо дельты)
+        TransactionLedger ledger = engine.getLedger();
+        int height = ledger.size();
+        byte[] root = StateCommitment.ledgerRoot(ledger, height);
+        SnapshotTransfer.Receiver pending = pendingSnapshot;
+        if (pending == null) return new SyncRequestMessage(nickname, height, root, SyncRequestMessage.UNKNOWN_HEIGHT, SyncRequestMessage.NO_ROOT, 0);
+        return new SyncRequestMessage(nickname, height, root, pending.getHeight(), pending.getLedgerRoot(), pending.getReceived());
+    }
+
+    /**
+     * Отвечает на запрос синхронизации. Для бинарных узлов по порядку:
+     * <ol>
+     * <li>продолжение оборванной передачи снимка, если наш реестр все еще начинается с тех же записей;</li>
+     * <li>только недостающие записи (вместе с балансами на момент последней записи запросившего, по ним он
+     *     добавит неизвестные счета), если его реестр - префикс нашего и отстает не более чем на peer.sync.delta.max;</li>
+     * <li>иначе - снимок сжатыми частями (SnapshotTransfer).</li>
+     * </ol>
+     * Старым текстовым узлам отправляется полное состояние построчно.
+     */
+    public void sendState(PeerConnection requesterHandler, SyncRequestMessage request) {
+        if (!requesterHandler.isBinaryProtocol()) {
+            sendFullState(requesterHandler);
+            return;
+        }
+        StateSnapshot snapshot = engine.captureSnapshot(); // Балансы и размер реестра на один момент
+        int size = snapshot.getLedgerSize();
+        int resumeHeight = request.getResumeHeight();
+        if (resumeHeight != SyncRequestMessage.UNKNOWN_HEIGHT && isPrefix(snapshot, resumeHeight, request.getResumeLedgerRoot())
+                && request.getResumeFrom() >= 0 && request.getResumeFrom() <= resumeHeight) {
+            sendSnapshot(requesterHandler, snapshot, resumeHeight, request.getResumeFrom());
+            return;
+        }
+        int height = request.getLedgerHeight();
+        if (height != SyncRequestMessage.UNKNOWN_HEIGHT) {
+            boolean prefix = isPrefix(snapshot, height, request.getLedgerRoot());
+            if (prefix && size - height <= config.getSyncDeltaMaxRecords()) {
+                sendDelta(requesterHandler, snapshot, height);
+                return;
+            }
+            ConsoleLogger.print("Ledger of " + requesterHandler.getPeerInfo() + " (" + height + " entries) "
+                    + (prefix ? "is too far behind (" + (size - height) + " missing)" : "diverges from ours") + ". Sending state snapshot.");
+        }
+        sendSnapshot(requesterHandler, snapshot, size, 0);
+    }
+
+    /**
+     * Совпадают ли первые height записей нашего реестра (как множество) с реестром, корень дерева которого ledgerRoot.
+     * Порядок записей у узлов разный (рассылка), поэтому сравнивается корень, а не позиция последней записи. O(height).
+     */
+    private static boolean isPrefix(StateSnapshot snapshot, int height, byte[] ledgerRoot) {
+        return height >= 0 && height <= snapshot.getLedgerSize() && Arrays.equals(StateCommitment.ledgerRoot(snapshot.getLedger(), height), ledgerRoot);
+    }
+
+    private void sendSnapshot(PeerConnection requesterHandler, StateSnapshot snapshot, int height, int resumeFrom) {
+        String requesterInfo = requesterHandler.getPeerInfo();
+        TransactionLedger ledger = snapshot.getLedger();
+        Map<String, Long> balances = TransactionEngine.balancesAt(snapshot, height);
+        ConsoleLogger.print("Sending state snapshot to " + requesterInfo + " (" + balances.size() + " balances, " + height + " ledger entries"
+                + (resumeFrom > 0 ? ", resuming at entry " + resumeFrom : "") + ")...");
+        try {
+            long start = System.nanoTime();
+            SnapshotTransfer.Stats stats = SnapshotTransfer.send(requesterHandler, balances, snapshot.getKeys(), ledger, height, StateCommitment.ledgerRoot(ledger, height), resumeFrom);
+            metrics.recordSyncSent(NodeMetrics.SyncKind.SNAPSHOT, System.nanoTime() - start);
+            ConsoleLogger.print(String.format("State snapshot sent to %s: %,d bytes compressed to %,d (%.1fx) in %d ms.", requesterInfo,
+                    stats.rawBytes, stats.compressedBytes, stats.rawBytes / (double) Math.max(1, stats.compressedBytes), (System.nanoTime() - start) / 1_000_000));
+        } catch (Exception e) {
+            ConsoleLogger.print("ERROR: Failed to send state snapshot to " + requesterInfo + ": " + e.getMessage());
+        }
+    }
+
+    private void sendDelta(PeerConnection requesterHandler, StateSnapshot snapshot, int baseHeight) {
+        String requesterInfo = requesterHandler.getPeerInfo();
+        TransactionLedger ledger = snapshot.getLedger();
+        int size = snapshot.getLedgerSize();
+        ConsoleLogger.print("Sending " + (size - baseHeight) + " missing ledger entries to " + requesterInfo + " (from position " + baseHeight + ")...");
+        try {
+            long start = System.nanoTime();
+            requesterHandler.sendMessageBlocking(new DeltaStartMessage(baseHeight, size - baseHeight));
+            for (Map.Entry<String, Long> entry : TransactionEngine.balancesAt(snapshot, baseHeight).entrySet()) {
+                requesterHandler.sendMessageBlocking(new BalanceEntryMessage(entry.getKey(), entry.getValue(), snapshot.getKeys().get(entry.getKey())));
+            }
+            for (int i = baseHeight; i < size; i++) {
+                requesterHandler.sendMessageBlocking(new LedgerRecordMessage(ledger.getTxId(i), ledger.getTimestamp(i), ledger.getSender(i), ledger.getRecipient(i), ledger.getAmount(i)));
+            }
+            requesterHandler.sendMessageBlocking(SyncMarkerMessage.DELTA_END);
+            metrics.recordSyncSent(NodeMetrics.SyncKind.DELTA, System.nanoTime() - start);
+        } catch (Exception e) {
+            ConsoleLogger.print("ERROR: Failed to send ledger delta to " + requesterInfo + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Отправляет текущее полное состояние (балансы и реестр) запросившему пиру.
      */
-    public void sendFullState(PeerConnectionHandler requesterHandler) {
+    private void sendFullState(PeerConnection requesterHandler) {
         String requesterInfo = requesterHandler.getPeerInfo();
         ConsoleLogger.print("Sending full state to " + requesterInfo + "...");
 
         try {
+            long start = System.nanoTime();
             // Балансы
-            requesterHandler.sendMessage(MSG_PREFIX_SYNC_BAL_START);
-            Map<String, Integer> balancesCopy = new ConcurrentHashMap<>(this.balances);
-            for (Map.Entry<String, Integer> entry : balancesCopy.entrySet()) {
-                requesterHandler.sendMessage(MSG_PREFIX_SYNC_BAL_ENTRY + entry.getKey() + ":" + entry.getValue());
+            requesterHandler.sendMessageBlocking(SyncMarkerMessage.BAL_START);
+            for (Map.Entry<String, Long> entry : engine.getBalances().entrySet()) {
+                requesterHandler.sendMessageBlocking(new BalanceEntryMessage(entry.getKey(), entry.getValue()));
             }
-            requesterHandler.sendMessage(MSG_PREFIX_SYNC_BAL_END);
+            requesterHandler.sendMessageBlocking(SyncMarkerMessage.BAL_END);
 
             // Реестр
-            requesterHandler.sendMessage(MSG_PREFIX_SYNC_LED_START);
-            List<String> ledgerCopy = new CopyOnWriteArrayList<>(this.transactionLedger);
-            for (String entry : ledgerCopy) {
-                 String safeEntry = entry.replace(":", ";"); // Защита от разделителя
-                requesterHandler.sendMessage(MSG_PREFIX_SYNC_LED_ENTRY + safeEntry);
+            requesterHandler.sendMessageBlocking(SyncMarkerMessage.LED_START);
+            TransactionLedger ledger = engine.getLedger();
+            int ledgerSize = ledger.size(); // Записи до этой позиции не изменяются
+            boolean binary = requesterHandler.isBinaryProtocol(); // Бинарным узлам - записи с txId прямо из реестра, без форматирования
+            for (int i = 0; i < ledgerSize; i++) {
+                requesterHandler.sendMessageBlocking(binary
+                        ? new LedgerRecordMessage(ledger.getTxId(i), ledger.getTimestamp(i), ledger.getSender(i), ledger.getRecipient(i), ledger.getAmount(i))
+                        : new LedgerEntryMessage(ledger.format(i)));
             }
-            requesterHandler.sendMessage(MSG_PREFIX_SYNC_LED_END);
+            requesterHandler.sendMessageBlocking(SyncMarkerMessage.LED_END);
+            metrics.recordSyncSent(NodeMetrics.SyncKind.FULL, System.nanoTime() - start);
             // ConsoleLogger.print("Full state sent successfully to " + requesterInfo); // Handler сообщит об этом
         } catch (Exception e){
             ConsoleLogger.print("ERROR: Failed to send full state to " + requesterInfo + ": "+ e.getMessage());
         }
     }
 
+    // --- Снимок состояния (получатель) ---
+
+    /** Пустой реестр для сборки полученного состояния (на диске, если состояние сохраняется). */
+    public TransactionLedger createSyncLedger() {
+        return engine.createLedger();
+    }
+
+    /** Начало или продолжение приема снимка. Новая передача заменяет незавершенную. */
+    public void onSnapshotStart(PeerConnection sourceHandler, SnapshotStartMessage start) {
+        synchronized (snapshotLock) {
+            SnapshotTransfer.Receiver pending = pendingSnapshot;
+            if (pending != null && pending.matches(start)) {
+                pending.restart();
+                ConsoleLogger.print("Resuming state snapshot from " + sourceHandler.getPeerNickname() + " at entry " + start.getResumeFrom() + " of " + start.getHeight() + "...");
+            } else {
+                if (pending != null) pending.release();
+                pendingSnapshot = null;
+                pendingSnapshotSource = null;
+                if (start.getResumeFrom() != 0) {
+                    ConsoleLogger.print("WARN [" + nickname + "]: Cannot resume state snapshot from " + sourceHandler.getPeerNickname() + " at entry " + start.getResumeFrom() + ". Requesting a new one.");
+                    sourceHandler.sendMessage(new SyncRequestMessage(nickname));
+                    return;
+                }
+                pending = new SnapshotTransfer.Receiver(start.getHeight(), start.getLedgerRoot(), engine.createLedger());
+                snapshotStartedNanos = System.nanoTime(); // Продолжение оборванной передачи считается вместе с ее началом
+                ConsoleLogger.print("Receiving state snapshot from " + sourceHandler.getPeerNickname() + " (" + start.getHeight() + " ledger entries)...");
+            }
+            pendingSnapshot = pending;
+            pendingSnapshotSource = sourceHandler;
+        }
+    }
+
+    /** Часть снимка применяется сразу: записи пишутся в реестр, который заменит текущий. */
+    public void onSnapshotChunk(PeerConnection sourceHandler, SnapshotChunkMessage chunk) {
+        synchronized (snapshotLock) {
+            if (pendingSnapshotSource != sourceHandler) return; // Передача заменена другой
+            try {
+                pendingSnapshot.accept(chunk);
+            } catch (IOException e) {
+                ConsoleLogger.print("WARN [" + nickname + "]: Dropping state snapshot from " + sourceHandler.getPeerNickname() + ": " + e.getMessage() + ". Requesting a new one.");
+                pendingSnapshot.release();
+                pendingSnapshot = null;
+                pendingSnapshotSource = null;
+                sourceHandler.sendMessage(new SyncRequestMessage(nickname));
+            }
+        }
+    }
+
+    /**
+     * Снимок получен целиком: заменяет состояние. Переводы, пришедшие за время передачи, затем
+     * догоняются инкрементальной синхронизацией.
+     */
+    public void onSnapshotEnd(PeerConnection sourceHandler) {
+        SnapshotTransfer.Receiver completed;
+        synchronized (snapshotLock) {
+            if (pendingSnapshotSource != sourceHandler) return;
+            metrics.recordSyncReceived(NodeMetrics.SyncKind.SNAPSHOT, System.nanoTime() - snapshotStartedNanos);
+            completed = pendingSnapshot;
+            pendingSnapshot = null;
+            pendingSnapshotSource = null;
+            completed.release();
+        }
+        if (!completed.isComplete()) {
+            ConsoleLogger.print("WARN [" + nickname + "]: State snapshot from " + sourceHandler.getPeerNickname() + " ended after " + completed.getReceived() + " of " + completed.getHeight() + " entries. Ignoring it.");
+            return;
+        }
+        applyFullState(completed.getBalances(), completed.getKeys(), completed.getLedger(), completed.getRejected(), sourceHandler.getPeerNickname());
+        sourceHandler.sendMessage(createSyncRequest());
+    }
+
+    // --- Инкрементальная синхронизация (получатель) ---
+
+    /** Счет из балансов дельты: добавляется с ключом (null - без ключа), только если он неизвестен. @return true, если добавлен. */
+    public boolean applySyncedAccount(String accountNick, long balance, byte[] publicKey) {
+        return engine.addAccount(accountNick, balance, publicKey);
+    }
+
+    /**
+     * Применяет запись реестра из дельты с обычными проверками. Запись отмечается как полученная,
+     * чтобы ее повторная рассылка соседями отбрасывалась. В пул блоков не попадает: это уже история.
+     */
+    public TransactionEngine.Result applySyncedRecord(LedgerRecordMessage record) {
+        seenTransactions.markSeen(record.getTxId());
+        TransactionEngine.Result result = engine.applyRecord(record.getTxId(), record.getEpochSecond(), record.getSender(), record.getRecipient(), record.getAmount());
+        if (result == TransactionEngine.Result.APPLIED) notifyApplied(record.getTxId());
+        return result;
+    }
+
+    /**
+     * Завершение дельты. Если часть записей не прошла проверку, состояния разошлись -
+     * запрашивается полное состояние; иначе отправляются корни StateCommitment: сосед сверит
+     * с ними свое состояние и при расхождении запросит только различающиеся корзины.
+     */
+    public void completeDeltaSync(PeerConnection sourceHandler, int accountsAdded, int applied, int known, int rejected) {
+        if (persistence != null) awaitDurable();
+        ConsoleLogger.print("Incremental sync from " + sourceHandler.getPeerNickname() + ": " + applied + " entries applied, " + known + " already known, "
+                + rejected + " rejected, " + accountsAdded + " accounts added. Ledger size: " + engine.getLedgerSize() + ", your balance: " + getOwnBalance());
+        if (rejected > 0) {
+            ConsoleLogger.print("WARN: Ledger delta from " + sourceHandler.getPeerNickname() + " does not match local state. Requesting full state.");
+            sourceHandler.sendMessage(new SyncRequestMessage(nickname));
+            return;
+        }
+        sourceHandler.sendMessage(StateVerifier.rootMessage(engine, 0));
+    }
+
+    /** Отправляет корни состояния всем бинарным соседям (/verify). @return число соседей. */
+    public int verifyState() {
+        StateRootMessage root = StateVerifier.rootMessage(engine, 0);
+        int sent = 0;
+        for (PeerConnection handler : connections) {
+            if (!handler.isBinaryProtocol()) continue;
+            handler.sendMessage(root);
+            sent++;
+        }
+        return sent;
+    }
+
     /**
      * Применяет полное состояние, полученное от другого пира во время синхронизации.
-     * Полностью перезаписывает локальные балансы и реестр.
+     * Полностью перезаписывает локальные балансы и реестр; полученные ключи счетов добавляются к известным.
+     * rejectedEntries - записи, отброшенные при сборке receivedLedger как дубликаты или из-за неверного формата.
      */
-     public synchronized void applyFullState(Map<String, Integer> receivedBalances, List<String> receivedLedger, String sourcePeerInfo) {
+     public void applyFullState(Map<String, Long> receivedBalances, Map<String, byte[]> receivedKeys, TransactionLedger receivedLedger, int rejectedEntries, String sourcePeerInfo) {
         ConsoleLogger.print("Applying received state from " + sourcePeerInfo + " (" + receivedBalances.size() + " balances, " + receivedLedger.size() + " ledger entries)...");
 
         if (receivedBalances.isEmpty() && receivedLedger.isEmpty()){
@@ -238,70 +811,99 @@ public class Peer {
         // ConsoleLogger.print("DEBUG: Balances received:");
         // receivedBalances.forEach((nick, bal) -> System.out.println("  -> " + nick + ": " + bal));
 
-        this.balances.clear();
-        this.balances.putAll(receivedBalances);
-        // Гарантируем свой баланс
-        this.balances.put(this.nickname, receivedBalances.getOrDefault(this.nickname, INITIAL_BALANCE));
-
-        this.transactionLedger.clear();
-        this.transactionLedger.addAll(receivedLedger);
+        try {
+            engine.replaceState(receivedBalances, receivedKeys, receivedLedger, this.nickname, INITIAL_BALANCE); // Гарантирует и свой баланс
+        } catch (UncheckedIOException e) {
+            ConsoleLogger.print("ERROR: Failed to apply state from " + sourcePeerInfo + ": " + e.getMessage());
+            return;
+        }
+        if (persistence != null) persistence.snapshotNow(); // Замена состояния не пишется в журнал
 
         ConsoleLogger.print("State synchronized successfully from " + sourcePeerInfo + ".");
-        ConsoleLogger.print("Your current balance after sync: " + balances.getOrDefault(this.nickname, 0));
-        ConsoleLogger.print("Ledger size after sync: " + transactionLedger.size());
-        // ConsoleLogger.print("DEBUG: Current known peers after sync: " + this.balances.keySet().stream().collect(Collectors.joining(", ")));
+        ConsoleLogger.print("Your current balance after sync: " + getOwnBalance());
+        ConsoleLogger.print("Ledger size after sync: " + engine.getLedgerSize());
+        if (rejectedEntries > 0) {
+            ConsoleLogger.print("WARN: Skipped " + rejectedEntries + " duplicate or malformed ledger entries from " + sourcePeerInfo + ".");
+        }
     }
 
     /**
      * Обрабатывает уведомление о новом пире, полученное от соседа.
-     * Добавляет пира в локальную карту и ретранслирует уведомление.
+     * Добавляет пира в локальную карту сразу с объявленным ключом и ретранслирует уведомление.
+     * Бинарный сосед объявляет себя сам первым сообщением (см. addConnection): только такое уведомление
+     * может закрепить ключ за уже известным счетом без ключа, пересланное - лишь создать новый счет.
+     * Закрепленный ключ уведомления не меняют.
      */
-    public synchronized void learnAboutPeer(String newPeerNick, int initialBalance, PeerConnectionHandler sourceHandler) {
+    public void learnAboutPeer(String newPeerNick, int initialBalance, byte[] publicKey, PeerConnection sourceHandler) {
         if (newPeerNick.equals(this.nickname)) { return; } // Игнорируем себя
 
-        if (balances.putIfAbsent(newPeerNick, initialBalance) == null) {
-            ConsoleLogger.print("Learned about new peer '" + newPeerNick + "' from " + sourceHandler.getPeerNickname() + ". Added with initial balance.");
-            // Ретранслируем сообщение дальше
-            String joinMsg = MSG_PREFIX_PEER_JOINED + newPeerNick + ":" + initialBalance;
-            // ConsoleLogger.print("Relaying PEER_JOINED message for '" + newPeerNick + "' to other peers...");
-            broadcastMessage(joinMsg, sourceHandler); // Отправляем всем, кроме источника
+        boolean self = newPeerNick.equals(sourceHandler.getPeerNickname());
+        int balance = self ? INITIAL_BALANCE : initialBalance; // Начальный баланс соседа, как и прежде, задаем сами
+        if (engine.addAccount(newPeerNick, balance, publicKey)) {
+            ConsoleLogger.print("Learned about new peer '" + newPeerNick + "' from " + sourceHandler.getPeerNickname() + ". Added with initial balance" + (publicKey != null ? " and key." : "."));
+        } else if (self && publicKey != null && engine.bindKey(newPeerNick, publicKey)) {
+            ConsoleLogger.print("Peer '" + newPeerNick + "' announced its key. Bound it to the existing account.");
+        } else { // Пир уже известен, не ретранслируем
+            byte[] known = engine.getKeys().get(newPeerNick);
+            if (publicKey != null && known != null && !Arrays.equals(known, publicKey)) {
+                ConsoleLogger.print("WARN: " + sourceHandler.getPeerInfo() + " announced a different key for '" + newPeerNick + "' than the bound one. Ignoring it.");
+            }
+            return;
         }
-        // else { // Пир уже известен, не ретранслируем
-             // ConsoleLogger.print("DEBUG: Already knew about peer '" + newPeerNick + "'. Ignoring PEER_JOINED gossip from " + sourceHandler.getPeerNickname());
-        // }
+        // Ретранслируем сообщение дальше
+        broadcastMessage(new PeerJoinedMessage(newPeerNick, balance, publicKey), sourceHandler); // Отправляем всем, кроме источника
     }
 
     // --- Connection Management ---
 
     /**
-     * Добавляет новое активное соединение и рассылает уведомление PEER_JOINED.
-     * Вызывается из PeerConnectionHandler после успешного обмена никами.
+     * Добавляет новое активное соединение. Бинарному соседу первым сообщением отправляется PEER_JOINED
+     * о себе с ключом; его счет создается по такому же сообщению от него (learnAboutPeer). Для старого
+     * текстового соседа счет создается сразу, без ключа, и остальным рассылается уведомление PEER_JOINED.
+     * Вызывается соединением (PeerConnection) после успешного обмена никами.
      */
-    public void addConnection(PeerConnectionHandler handler) {
+    public void addConnection(PeerConnection handler) {
         if (handler == null || handler.getPeerNickname().equals("UNKNOWN")) {
             ConsoleLogger.print("WARN: Attempted to add connection before nickname exchange completed.");
             return;
         }
+        if (!connectionManager.register(handler)) { // С самим собой, дубликат или превышен лимит
+            handler.close();
+            return;
+        }
         String peerNickname = handler.getPeerNickname();
-        balances.putIfAbsent(peerNickname, INITIAL_BALANCE); // Добавляем, если не было
+        boolean binary = handler.isBinaryProtocol();
+        if (binary) { // До добавления в список: наши рассылки не должны обогнать объявление
+            handler.sendMessageBlocking(new PeerJoinedMessage(nickname, INITIAL_BALANCE, getPublicKey()));
+        } else {
+            engine.addAccount(peerNickname, INITIAL_BALANCE); // Добавляем, если не было
+        }
         connections.add(handler);
-        ConsoleLogger.print("Peer connected: " + handler.getPeerInfo() + ". Known balances: " + balances.size() + ". Active connections: " + connections.size());
+        ConsoleLogger.print("Peer connected: " + handler.getPeerInfo() + ". Known balances: " + engine.getAccountCount() + ". Active connections: " + connections.size());
 
-        // Рассылаем уведомление о новом пире другим соседям
-        String joinMsg = MSG_PREFIX_PEER_JOINED + peerNickname + ":" + INITIAL_BALANCE;
-        // ConsoleLogger.print("Gossiping about peer join: " + joinMsg);
-        broadcastMessage(joinMsg, handler);
+        if (!binary) {
+            // Рассылаем уведомление о новом пире другим соседям
+            PeerJoinedMessage joinMsg = new PeerJoinedMessage(peerNickname, INITIAL_BALANCE);
+            broadcastMessage(joinMsg, handler);
+        }
+        connectionManager.onConnected(handler); // Обмен адресами
     }
 
     /**
      * Удаляет соединение из списка активных.
-     * Вызывается из PeerConnectionHandler при закрытии соединения.
+     * Вызывается соединением (PeerConnection) при закрытии.
      */
-    public void removeConnection(PeerConnectionHandler handler) {
+    public void removeConnection(PeerConnection handler) {
         if (handler == null) return;
         String handlerInfo = handler.getPeerInfo(); // Получаем инфо до удаления
+        gossip.forget(handler);
+        connectionManager.unregister(handler);
         if (connections.remove(handler)) {
             ConsoleLogger.print("Peer disconnected: " + handlerInfo + ". Active connections: " + connections.size());
+            FlowControl flow = handler.getFlowControl();
+            if (flow.getThrottled() > 0 || flow.getDropped() > 0 || handler.getInboundQueue().getPauses() > 0) {
+                ConsoleLogger.print("Flow control for " + handlerInfo + ": " + flow.getThrottled() + " message(s) throttled (" + flow.getThrottledMillis() + " ms), " + flow.getDropped() + " dropped, reading paused " + handler.getInboundQueue().getPauses() + " time(s).");
+            }
         }
     }
 
@@ -310,9 +912,10 @@ public class Peer {
     public void startUserInput() {
         Scanner scanner = new Scanner(System.in);
         Thread.currentThread().setName("UserInput-" + nickname);
-        ConsoleLogger.print("Enter commands: /connect <host> <port>, /send <nick> <amount>, /balance, /ledger, /peers, /exit");
+        ConsoleLogger.print("Enter commands: /connect <host> <port>, /send <nick> <amount>, /balance, /ledger [page], /chain, /mine, /verify, /peers, /exit");
 
         while (running) {
+            ConsoleLogger.flush(); // Приглашение и вывод команд идут в System.out напрямую - после накопленного лога
             System.out.print(nickname + "> ");
             if (!scanner.hasNextLine()) { ConsoleLogger.print("Input stream closed. Shutting down..."); shutdown(); break; }
             String input = scanner.nextLine().trim();
@@ -337,27 +940,61 @@ public class Peer {
                                 int amount = Integer.parseInt(parts[2]);
                                 if (amount <= 0) { ConsoleLogger.print("Amount must be positive."); continue; }
                                 if (recipientNick.equals(this.nickname)) { ConsoleLogger.print("Cannot send to yourself."); continue; }
-                                if (!balances.containsKey(recipientNick)) { ConsoleLogger.print("Transaction failed: Recipient '" + recipientNick + "' is not known."); continue; }
-                                int myBalance = balances.getOrDefault(this.nickname, 0);
+                                if (!engine.hasAccount(recipientNick)) { ConsoleLogger.print("Transaction failed: Recipient '" + recipientNick + "' is not known."); continue; }
+                                long myBalance = getOwnBalance();
                                 if (myBalance < amount) { ConsoleLogger.print("Transaction failed: Insufficient funds. You have " + myBalance + ", need " + amount); }
                                 else {
-                                    String txnMessage = MSG_PREFIX_TXN + this.nickname + ":" + recipientNick + ":" + amount;
+                                    TransactionMessage txnMessage = newTransaction(this.nickname, recipientNick, amount);
                                     ConsoleLogger.print("Initiating transaction: " + this.nickname + " -> " + amount + " -> " + recipientNick);
-                                    processTransaction(txnMessage, null); // Локальная обработка
-                                    broadcastMessage(txnMessage, null); // Рассылка всем соседям
+                                    processTransaction(txnMessage, null); // Локальная обработка и рассылка соседям
                                 }
                             } catch (NumberFormatException e) { ConsoleLogger.print("Invalid amount."); }
                         } else { ConsoleLogger.print("Usage: /send <recipient_nickname> <amount>"); }
                         break;
-                    case "/balance": ConsoleLogger.print("Your current balance: " + balances.getOrDefault(this.nickname, 0)); break;
-                    case "/ledger":
-                        ConsoleLogger.print("--- Transaction Ledger (" + transactionLedger.size() + " entries) ---");
-                        if (transactionLedger.isEmpty()) { System.out.println("  (Ledger is empty)"); } // Используем System.out для чистого вывода
-                        else { int i = 1; for (String entry : transactionLedger) System.out.println("  " + (i++) + ". " + entry); }
+                    case "/balance": ConsoleLogger.print("Your current balance: " + getOwnBalance()); break;
+                    case "/ledger": {
+                        TransactionLedger ledger = engine.getLedger();
+                        int ledgerSize = ledger.size();
+                        int pages = Math.max(1, (ledgerSize + LEDGER_PAGE_SIZE - 1) / LEDGER_PAGE_SIZE);
+                        int page = pages; // По умолчанию - последние записи
+                        if (parts.length == 2) {
+                            try { page = Integer.parseInt(parts[1]); }
+                            catch (NumberFormatException e) { ConsoleLogger.print("Usage: /ledger [page]"); break; }
+                            if (page < 1 || page > pages) { ConsoleLogger.print("Page must be between 1 and " + pages + "."); break; }
+                        }
+                        ConsoleLogger.print("--- Transaction Ledger (" + ledgerSize + " entries, page " + page + "/" + pages + ") ---");
+                        ConsoleLogger.flush(); // Строки ниже - напрямую в System.out
+                        if (ledgerSize == 0) { System.out.println("  (Ledger is empty)"); } // Используем System.out для чистого вывода
+                        else {
+                            // Формируются строки только показываемой страницы
+                            int last = Math.min(ledgerSize, page * LEDGER_PAGE_SIZE);
+                            for (int i = (page - 1) * LEDGER_PAGE_SIZE; i < last; i++) System.out.println("  " + (i + 1) + ". " + ledger.format(i));
+                        }
+                        ConsoleLogger.print("------------------------------------------");
+                        break;
+                    }
+                    case "/mine":
+                        ConsoleLogger.print("Mining a block from " + mempool.size() + " pending transaction(s) at " + config.getPowDifficultyBits() + " bits...");
+                        blockBuilder.mineNow();
+                        break;
+                    case "/verify": {
+                        StateCommitment commitment = engine.getCommitment();
+                        ConsoleLogger.print("State roots: accounts " + Sha256.shortHex(commitment.root(StateCommitment.Tree.ACCOUNTS))
+                                + ", ledger " + Sha256.shortHex(commitment.root(StateCommitment.Tree.LEDGER)) + ". Verifying with " + verifyState() + " peer(s)...");
+                        break;
+                    }
+                    case "/chain":
+                        ConsoleLogger.print("--- Chain (height " + chain.getHeight() + ", mempool " + mempool.size() + " txns) ---");
+                        ConsoleLogger.flush(); // Строки ниже - напрямую в System.out
+                        for (Block block : chain.getRecentBlocks(10)) {
+                            System.out.println("  " + block + " prev " + Sha256.shortHex(block.getPrevHash()));
+                        }
                         ConsoleLogger.print("------------------------------------------");
                         break;
                      case "/peers":
+                         Map<String, Long> balances = engine.getBalances();
                          ConsoleLogger.print("--- Known Peers and Balances (" + balances.size() + ") ---");
+                         ConsoleLogger.flush(); // Строки ниже - напрямую в System.out
                          if (balances.isEmpty()){ System.out.println(" (None known yet)"); }
                          else {
                              balances.entrySet().stream()
@@ -365,11 +1002,14 @@ public class Peer {
                                 .forEach(entry -> System.out.printf("  - %-15s: %d coins %s%n", entry.getKey(), entry.getValue(), (entry.getKey().equals(this.nickname) ? " (You)" : "")));
                          }
                          ConsoleLogger.print("--- Active Connections ("+ connections.size() +") ---");
+                         ConsoleLogger.flush(); // Строки ниже - напрямую в System.out
                          if (connections.isEmpty()) { System.out.println("  (No active connections)"); }
-                         else { connections.forEach(handler -> System.out.println("  - Connected to: " + handler.getPeerInfo())); }
+                         else { connections.forEach(handler -> System.out.println("  - Connected to: " + handler.getPeerInfo() + (handler.getDialAddress() != null ? " (outbound)" : " (inbound)")
+                                 + ", inbound queue " + handler.getInboundQueue().size() + ", throttled " + handler.getFlowControl().getThrottled() + ", dropped " + handler.getFlowControl().getDropped())); }
+                         System.out.println("  Known addresses: " + connectionManager.getKnownAddresses() + ", outbound target: " + config.getTargetOutbound() + ", slow peers evicted: " + connectionManager.getEvictions());
                           ConsoleLogger.print("------------------------------------");
                          break;
-                    default: ConsoleLogger.print("Unknown command: '" + command + "'. Available: /connect, /send, /balance, /ledger, /peers, /exit"); break;
+                    default: ConsoleLogger.print("Unknown command: '" + command + "'. Available: /connect, /send, /balance, /ledger, /chain, /mine, /verify, /peers, /exit"); break;
                 }
             } catch (Exception e) { ConsoleLogger.print("ERROR processing command '" + input + "': " + e.getMessage()); }
         }
@@ -383,13 +1023,18 @@ public class Peer {
         if (!running) return;
         ConsoleLogger.print("Shutdown initiated...");
         running = false;
+        blockBuilder.shutdown();
+        connectionManager.close(); // Не переподключаться к закрываемым соединениям
+        if (httpServer != null) httpServer.stop();
+        if (submissionApi != null) submissionApi.close(); // Принятые транзакции применяются до закрытия журнала
 
         if (serverSocket != null && !serverSocket.isClosed()) { try { serverSocket.close(); } catch (IOException e) { /* ignore */ } }
 
-        List<PeerConnectionHandler> connectionsToClose = new CopyOnWriteArrayList<>(connections);
+        List<PeerConnection> connectionsToClose = new CopyOnWriteArrayList<>(connections);
         ConsoleLogger.print("Closing " + connectionsToClose.size() + " active connection(s)...");
-        connectionsToClose.forEach(PeerConnectionHandler::close); // Используем method reference
+        connectionsToClose.forEach(PeerConnection::close); // Используем method reference
         connections.clear();
+        if (nioTransport != null) nioTransport.shutdown();
 
         connectionExecutor.shutdown();
         try {
@@ -401,10 +1046,117 @@ public class Peer {
         } catch (InterruptedException e) {
             connectionExecutor.shutdownNow(); Thread.currentThread().interrupt();
         }
+        gossip.close();
+        verificationPipeline.close(); // Применяет уже проверяемые транзакции до закрытия журнала
+        if (persistence != null) persistence.close();
+        ConsoleLogger.print("Duplicate transactions dropped: " + duplicatesDropped.get() + " (seen-set), " + duplicatesInLedger.get() + " (ledger).");
+        ConsoleLogger.print("Gossip (fanout " + gossip.getFanout() + "): " + gossip.getBodiesPushed() + " bodies pushed, " + gossip.getIdsAnnounced() + " ids announced, " + gossip.getBodiesRequested() + " bodies requested, " + gossip.getBodiesServed() + " served.");
+        ConsoleLogger.print("Compact blocks: " + compactBlocks.getAnnouncements() + " announced, " + compactBlocks.getRebuiltLocally() + " rebuilt from local bodies, " + compactBlocks.getBodiesRequested() + " bodies requested.");
+        ConsoleLogger.print("Signatures verified: " + verificationPipeline.getVerifiedCount() + " valid, " + verificationPipeline.getInvalidCount() + " invalid.");
         ConsoleLogger.print("Shutdown complete.");
+        terminated.countDown();
+    }
+
+    /** Ждет завершения shutdown() (узел без консоли, см. Main). */
+    public void awaitShutdown() throws InterruptedException {
+        terminated.await();
     }
 
     // --- Getters ---
     public String getNickname() { return nickname; }
 
+    public PeerConfig getConfig() { return config; }
+
+    public ExecutorService getConnectionExecutor() { return connectionExecutor; }
+
+    public int getConnectionCount() { return connections.size(); }
+
+    public TransactionEngine getEngine() { return engine; }
+
+    public Blockchain getChain() { return chain; }
+
+    public Mempool getMempool() { return mempool; }
+
+    public VerificationPipeline getVerificationPipeline() { return verificationPipeline; }
+
+    public Gossip getGossip() { return gossip; }
+
+    public CompactBlocks getCompactBlocks() { return compactBlocks; }
+
+    public ConnectionManager getConnectionManager() { return connectionManager; }
+
+    public NodeMetrics getMetrics() { return metrics; }
+
+    /** Порт приема соединений. */
+    public int getPort() { return port; }
+
+    /**
+     * Тела транзакций по id (null - тело неизвестно): из пула, кэша Gossip, затем из RECENT_BLOCKS
+     * последних блоков цепочки - туда попадают и транзакции, примененные в составе блока.
+     */
+    public TransactionMessage[] findTransactions(long[] ids) {
+        TransactionMessage[] found = new TransactionMessage[ids.length];
+        Map<Long, Integer> missing = null;
+        for (int i = 0; i < ids.length; i++) {
+            found[i] = mempool.get(ids[i]);
+            if (found[i] == null) found[i] = gossip.getBody(ids[i]);
+            if (found[i] == null) {
+                if (missing == null) missing = new HashMap<>();
+                missing.put(ids[i], i);
+            }
+        }
+        if (missing == null) return found;
+        for (Block block : chain.getRecentBlocks(RECENT_BLOCKS)) {
+            for (TransactionMessage txn : block.getTransactions()) {
+                Integer index = missing.remove(txn.getTxId());
+                if (index != null) found[index] = txn;
+            }
+            if (missing.isEmpty()) break;
+        }
+        return found;
+    }
+
+    /** Транзакция уже получена (недавно, по SeenSet) или есть в реестре. */
+    public boolean hasTransaction(long txId) {
+        return seenTransactions.contains(txId) || engine.getLedger().contains(txId);
+    }
+
+    /** Подписывает транзакцию ключом узла. */
+    public TransactionMessage sign(TransactionMessage txn) { return Signatures.sign(txn, keyPair); }
+
+    /** Открытый ключ узла (закрепляется за его счетом, см. AccountKeys). */
+    public byte[] getPublicKey() { return Signatures.rawPublicKey(keyPair.getPublic()); }
+
+    /**
+     * Новая транзакция этого узла: следующий id и подпись ключом узла. Отправляется вызовом
+     * processTransaction(txn, null). Тратить можно только счета, за которыми закреплен ключ узла
+     * (свой счет, см. AccountKeys).
+     */
+    public TransactionMessage newTransaction(String sender, String recipient, int amount) {
+        return sign(new TransactionMessage(transactionIds.next(), sender, recipient, amount));
+    }
+
+    /** Может ли узел подписывать переводы со счета (см. newTransaction). */
+    public boolean canSign(String account) {
+        return engine.getKeys().canSign(account, getPublicKey());
+    }
+
+    /**
+     * Получает id каждой транзакции, примененной к состоянию по отдельности: своей, от соседа, из блока
+     * или записью дельты синхронизации. Вызывается в потоке применения (для переданных соседям - после
+     * записи в журнал) и должен быть быстрым. Замена всего состояния снимком сюда не попадает.
+     */
+    public void addApplyListener(LongConsumer listener) { applyListeners.add(listener); }
+
+    public long getDuplicatesDropped() { return duplicatesDropped.get(); }
+
+    public long getDuplicatesInLedger() { return duplicatesInLedger.get(); }
+
+    private long getOwnBalance() {
+        Long balance = engine.getBalance(nickname);
+        return balance != null ? balance : 0;
+    }
+
+    public List<PeerConnection> getConnections() { return Collections.unmodifiableList(connections); }
+
 } // Конец класса Peer
\ No newline at end of file
@@ -0,0 +1,436 @@
+package dev.Block;
+
+import dev.Block.storage.StatePersistence;
+
+/**
+ * Параметры запуска пира, не запрашиваемые интерактивно.
+ * Значения по умолчанию можно переопределить системными свойствами JVM
+ * (например, -Dpeer.transport=nio), см. fromSystemProperties().
+ */
+public class PeerConfig {
+
+    /** Наименьшая очередь входящих: в нее должны помещаться сообщения, прочитанные во время рукопожатия. */
+    public static final int MIN_INBOUND_QUEUE = 16;
+
+    /** Сетевой транспорт для P2P соединений. */
+    public enum Transport {
+        /** Блокирующие сокеты, по одному потоку на соединение (PeerConnectionHandler). */
+        BLOCKING,
+        /** Неблокирующие каналы на Selector с небольшим фиксированным пулом потоков. */
+        NIO
+    }
+
+    /** Тип потоков для обработчиков соединений и их писателей (только для BLOCKING транспорта). */
+    public enum Threads {
+        PLATFORM,
+        /** Виртуальные потоки (Java 21+); на более старой JVM - откат на PLATFORM. */
+        VIRTUAL
+    }
+
+    private Transport transport = Transport.BLOCKING;
+    private int nioEventLoops = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private Threads threads = Threads.PLATFORM;
+    private int outboundQueueCapacity = 4096;
+    private long flushMaxDelayMicros = 0;
+    private int flushMaxBytes = 64 * 1024;
+    private int seenCapacity = 65536;
+    private long seenTtlMillis = 10 * 60 * 1000;
+    private int blockMaxTransactions = 1000;
+    private long blockIntervalMillis = 5000;
+    private int mempoolCapacity = 100_000;
+    private int powDifficultyBits = 16;
+    private int minerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private String dataDir; // null - состояние только в памяти
+    private StatePersistence.SyncMode walSyncMode = StatePersistence.SyncMode.GROUP;
+    private long snapshotIntervalSeconds = 60;
+    private long snapshotRecords = 100_000;
+    private int syncDeltaMaxRecords = 100_000;
+    private int verifyThreads = Runtime.getRuntime().availableProcessors();
+    private int verifyQueueCapacity = 4096;
+    private boolean requireSignatures = true;
+    private int gossipFanout = 1;
+    private long gossipFlushMillis = 20;
+    private int gossipKnownCapacity = 16_384;
+    private int targetOutbound = 8;
+    private int maxConnections = 64;
+    private long connectBackoffMillis = 1000;
+    private long connectBackoffMaxMillis = 60_000;
+    private int inboundQueueCapacity = 1024;
+    private int rateTransactions = 5000;
+    private int rateSyncPerMinute = 6;
+    private int rateControl = 500;
+    private int httpPort = 0; // 0 - HTTP сервер не запускается
+    private int httpThreads = 4;
+    private String httpBind = "127.0.0.1";
+    private String httpToken; // null - отправка транзакций без токена (только на loopback)
+
+    public static PeerConfig fromSystemProperties() {
+        PeerConfig config = new PeerConfig();
+        config.setTransport(Transport.valueOf(System.getProperty("peer.transport", config.transport.name()).trim().toUpperCase()));
+        config.setNioEventLoops(Integer.getInteger("peer.nio.threads", config.nioEventLoops));
+        config.setThreads(Threads.valueOf(System.getProperty("peer.threads", config.threads.name()).trim().toUpperCase()));
+        config.setOutboundQueueCapacity(Integer.getInteger("peer.outbound.queue", config.outboundQueueCapacity));
+        config.setFlushMaxDelayMicros(Long.getLong("peer.flush.delay.us", config.flushMaxDelayMicros));
+        config.setFlushMaxBytes(Integer.getInteger("peer.flush.bytes", config.flushMaxBytes));
+        config.setSeenCapacity(Integer.getInteger("peer.seen.capacity", config.seenCapacity));
+        config.setSeenTtlMillis(Long.getLong("peer.seen.ttl.ms", config.seenTtlMillis));
+        config.setBlockMaxTransactions(Integer.getInteger("peer.block.max.txns", config.blockMaxTransactions));
+        config.setBlockIntervalMillis(Long.getLong("peer.block.interval.ms", config.blockIntervalMillis));
+        config.setMempoolCapacity(Integer.getInteger("peer.mempool.capacity", config.mempoolCapacity));
+        config.setPowDifficultyBits(Integer.getInteger("peer.pow.bits", config.powDifficultyBits));
+        config.setMinerThreads(Integer.getInteger("peer.miner.threads", config.minerThreads));
+        config.setDataDir(System.getProperty("peer.data.dir", config.dataDir));
+        config.setWalSyncMode(StatePersistence.SyncMode.valueOf(System.getProperty("peer.wal.sync", config.walSyncMode.name()).trim().toUpperCase()));
+        config.setSnapshotIntervalSeconds(Long.getLong("peer.snapshot.interval.s", config.snapshotIntervalSeconds));
+        config.setSnapshotRecords(Long.getLong("peer.snapshot.records", config.snapshotRecords));
+        config.setSyncDeltaMaxRecords(Integer.getInteger("peer.sync.delta.max", config.syncDeltaMaxRecords));
+        config.setVerifyThreads(Integer.getInteger("peer.verify.threads", config.verifyThreads));
+        config.setVerifyQueueCapacity(Integer.getInteger("peer.verify.queue", config.verifyQueueCapacity));
+        config.setRequireSignatures(Boolean.parseBoolean(System.getProperty("peer.tx.require.signatures", String.valueOf(config.requireSignatures))));
+        config.setGossipFanout(Integer.getInteger("peer.gossip.fanout", config.gossipFanout));
+        config.setGossipFlushMillis(Long.getLong("peer.gossip.flush.ms", config.gossipFlushMillis));
+        config.setGossipKnownCapacity(Integer.getInteger("peer.gossip.known", config.gossipKnownCapacity));
+        config.setTargetOutbound(Integer.getInteger("peer.connections.target", config.targetOutbound));
+        config.setMaxConnections(Integer.getInteger("peer.connections.max", config.maxConnections));
+        config.setConnectBackoffMillis(Long.getLong("peer.connect.backoff.ms", config.connectBackoffMillis));
+        config.setConnectBackoffMaxMillis(Long.getLong("peer.connect.backoff.max.ms", config.connectBackoffMaxMillis));
+        config.setInboundQueueCapacity(Integer.getInteger("peer.inbound.queue", config.inboundQueueCapacity));
+        config.setRateTransactions(Integer.getInteger("peer.rate.txn", config.rateTransactions));
+        config.setRateSyncPerMinute(Integer.getInteger("peer.rate.sync.per.min", config.rateSyncPerMinute));
+        config.setRateControl(Integer.getInteger("peer.rate.control", config.rateControl));
+        config.setHttpPort(Integer.getInteger("peer.http.port", config.httpPort));
+        config.setHttpThreads(Integer.getInteger("peer.http.threads", config.httpThreads));
+        config.setHttpBind(System.getProperty("peer.http.bind", config.httpBind));
+        config.setHttpToken(System.getProperty("peer.http.token", config.httpToken));
+        return config;
+    }
+
+    public Transport getTransport() { return transport; }
+
+    public PeerConfig setTransport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    public int getNioEventLoops() { return nioEventLoops; }
+
+    public PeerConfig setNioEventLoops(int nioEventLoops) {
+        if (nioEventLoops < 1) throw new IllegalArgumentException("nioEventLoops must be positive: " + nioEventLoops);
+        this.nioEventLoops = nioEventLoops;
+        return this;
+    }
+
+    public Threads getThreads() { return threads; }
+
+    public PeerConfig setThreads(Threads threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /** Максимум сообщений в очереди на отправку одному пиру; при переполнении рассылки отбрасываются. */
+    public int getOutboundQueueCapacity() { return outboundQueueCapacity; }
+
+    public PeerConfig setOutboundQueueCapacity(int outboundQueueCapacity) {
+        if (outboundQueueCapacity < 1) throw new IllegalArgumentException("outboundQueueCapacity must be positive: " + outboundQueueCapacity);
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Сколько писатель соединения может ждать новых сообщений, прежде чем отправить накопленную пачку.
+     * 0 - отправлять, как только очередь опустела (пачки образуются только из уже накопившихся сообщений).
+     */
+    public long getFlushMaxDelayMicros() { return flushMaxDelayMicros; }
+
+    public PeerConfig setFlushMaxDelayMicros(long flushMaxDelayMicros) {
+        if (flushMaxDelayMicros < 0) throw new IllegalArgumentException("flushMaxDelayMicros must not be negative: " + flushMaxDelayMicros);
+        this.flushMaxDelayMicros = flushMaxDelayMicros;
+        return this;
+    }
+
+    /** Размер пачки в байтах, при котором писатель отправляет ее, не дожидаясь опустошения очереди. */
+    public int getFlushMaxBytes() { return flushMaxBytes; }
+
+    public PeerConfig setFlushMaxBytes(int flushMaxBytes) {
+        if (flushMaxBytes < 1) throw new IllegalArgumentException("flushMaxBytes must be positive: " + flushMaxBytes);
+        this.flushMaxBytes = flushMaxBytes;
+        return this;
+    }
+
+    /** Сколько последних идентификаторов транзакций помнить для отбрасывания повторов при рассылке. */
+    public int getSeenCapacity() { return seenCapacity; }
+
+    public PeerConfig setSeenCapacity(int seenCapacity) {
+        if (seenCapacity < 1) throw new IllegalArgumentException("seenCapacity must be positive: " + seenCapacity);
+        this.seenCapacity = seenCapacity;
+        return this;
+    }
+
+    /** Сколько помнить идентификатор транзакции после первого получения. */
+    public long getSeenTtlMillis() { return seenTtlMillis; }
+
+    public PeerConfig setSeenTtlMillis(long seenTtlMillis) {
+        if (seenTtlMillis < 1) throw new IllegalArgumentException("seenTtlMillis must be positive: " + seenTtlMillis);
+        this.seenTtlMillis = seenTtlMillis;
+        return this;
+    }
+
+    /** Максимум транзакций в блоке; набрав столько, пул запечатывается в блок сразу. */
+    public int getBlockMaxTransactions() { return blockMaxTransactions; }
+
+    public PeerConfig setBlockMaxTransactions(int blockMaxTransactions) {
+        if (blockMaxTransactions < 1) throw new IllegalArgumentException("blockMaxTransactions must be positive: " + blockMaxTransactions);
+        this.blockMaxTransactions = blockMaxTransactions;
+        return this;
+    }
+
+    /** Сколько транзакция может ждать в пуле, прежде чем неполный блок будет запечатан. */
+    public long getBlockIntervalMillis() { return blockIntervalMillis; }
+
+    public PeerConfig setBlockIntervalMillis(long blockIntervalMillis) {
+        if (blockIntervalMillis < 1) throw new IllegalArgumentException("blockIntervalMillis must be positive: " + blockIntervalMillis);
+        this.blockIntervalMillis = blockIntervalMillis;
+        return this;
+    }
+
+    public int getMempoolCapacity() { return mempoolCapacity; }
+
+    public PeerConfig setMempoolCapacity(int mempoolCapacity) {
+        if (mempoolCapacity < 1) throw new IllegalArgumentException("mempoolCapacity must be positive: " + mempoolCapacity);
+        this.mempoolCapacity = mempoolCapacity;
+        return this;
+    }
+
+    /**
+     * Сложность доказательства работы: число нулевых старших бит хеша блока.
+     * Должна совпадать у всех узлов сети: блоки с меньшей сложностью отвергаются.
+     */
+    public int getPowDifficultyBits() { return powDifficultyBits; }
+
+    public PeerConfig setPowDifficultyBits(int powDifficultyBits) {
+        if (powDifficultyBits < 0 || powDifficultyBits > 64) throw new IllegalArgumentException("powDifficultyBits must be in [0, 64]: " + powDifficultyBits);
+        this.powDifficultyBits = powDifficultyBits;
+        return this;
+    }
+
+    public int getMinerThreads() { return minerThreads; }
+
+    public PeerConfig setMinerThreads(int minerThreads) {
+        if (minerThreads < 1) throw new IllegalArgumentException("minerThreads must be positive: " + minerThreads);
+        this.minerThreads = minerThreads;
+        return this;
+    }
+
+    /**
+     * Каталог для журнала и снимков состояния (внутри создается подкаталог с никнеймом узла).
+     * null или пустая строка - сохранение на диск отключено.
+     */
+    public String getDataDir() { return dataDir; }
+
+    public PeerConfig setDataDir(String dataDir) {
+        this.dataDir = dataDir == null || dataDir.trim().isEmpty() ? null : dataDir.trim();
+        return this;
+    }
+
+    public StatePersistence.SyncMode getWalSyncMode() { return walSyncMode; }
+
+    public PeerConfig setWalSyncMode(StatePersistence.SyncMode walSyncMode) {
+        this.walSyncMode = walSyncMode;
+        return this;
+    }
+
+    public long getSnapshotIntervalSeconds() { return snapshotIntervalSeconds; }
+
+    public PeerConfig setSnapshotIntervalSeconds(long snapshotIntervalSeconds) {
+        if (snapshotIntervalSeconds < 1) throw new IllegalArgumentException("snapshotIntervalSeconds must be positive: " + snapshotIntervalSeconds);
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+        return this;
+    }
+
+    /** Число записей журнала, после которого снимок делается, не дожидаясь интервала. */
+    public long getSnapshotRecords() { return snapshotRecords; }
+
+    public PeerConfig setSnapshotRecords(long snapshotRecords) {
+        if (snapshotRecords < 1) throw new IllegalArgumentException("snapshotRecords must be positive: " + snapshotRecords);
+        this.snapshotRecords = snapshotRecords;
+        return this;
+    }
+
+    /** Наибольшее отставание (в записях реестра), при котором отправляются только недостающие записи, а не полное состояние. */
+    public int getSyncDeltaMaxRecords() { return syncDeltaMaxRecords; }
+
+    public PeerConfig setSyncDeltaMaxRecords(int syncDeltaMaxRecords) {
+        if (syncDeltaMaxRecords < 0) throw new IllegalArgumentException("syncDeltaMaxRecords must not be negative: " + syncDeltaMaxRecords);
+        this.syncDeltaMaxRecords = syncDeltaMaxRecords;
+        return this;
+    }
+
+    /** Потоки проверки подписей входящих транзакций; 0 - проверка в потоке соединения. */
+    public int getVerifyThreads() { return verifyThreads; }
+
+    public PeerConfig setVerifyThreads(int verifyThreads) {
+        if (verifyThreads < 0) throw new IllegalArgumentException("verifyThreads must not be negative: " + verifyThreads);
+        this.verifyThreads = verifyThreads;
+        return this;
+    }
+
+    /** Транзакций в очереди проверки; при заполнении прием от соседей приостанавливается. */
+    public int getVerifyQueueCapacity() { return verifyQueueCapacity; }
+
+    public PeerConfig setVerifyQueueCapacity(int verifyQueueCapacity) {
+        if (verifyQueueCapacity < 1) throw new IllegalArgumentException("verifyQueueCapacity must be positive: " + verifyQueueCapacity);
+        this.verifyQueueCapacity = verifyQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Принимать только транзакции, подписанные ключом счета (по умолчанию). false - счета без ключа
+     * (старых текстовых узлов) можно тратить без подписи; счет с ключом подпись требует всегда.
+     */
+    public boolean isRequireSignatures() { return requireSignatures; }
+
+    public PeerConfig setRequireSignatures(boolean requireSignatures) {
+        this.requireSignatures = requireSignatures;
+        return this;
+    }
+
+    /**
+     * Скольким случайным бинарным соседям транзакция отправляется целиком; остальным - только id (INV).
+     * 0 - только INV; значение не меньше числа соседей - прежняя рассылка тела всем.
+     */
+    public int getGossipFanout() { return gossipFanout; }
+
+    public PeerConfig setGossipFanout(int gossipFanout) {
+        if (gossipFanout < 0) throw new IllegalArgumentException("gossipFanout must not be negative: " + gossipFanout);
+        this.gossipFanout = gossipFanout;
+        return this;
+    }
+
+    /** Период отправки накопленных INV (мс): больше - меньше кадров, но дольше распространение. */
+    public long getGossipFlushMillis() { return gossipFlushMillis; }
+
+    public PeerConfig setGossipFlushMillis(long gossipFlushMillis) {
+        if (gossipFlushMillis < 1) throw new IllegalArgumentException("gossipFlushMillis must be positive: " + gossipFlushMillis);
+        this.gossipFlushMillis = gossipFlushMillis;
+        return this;
+    }
+
+    /** Сколько последних id транзакций помнить на соединение как уже известные пиру. */
+    public int getGossipKnownCapacity() { return gossipKnownCapacity; }
+
+    public PeerConfig setGossipKnownCapacity(int gossipKnownCapacity) {
+        if (gossipKnownCapacity < 1) throw new IllegalArgumentException("gossipKnownCapacity must be positive: " + gossipKnownCapacity);
+        this.gossipKnownCapacity = gossipKnownCapacity;
+        return this;
+    }
+
+    /** Сколько исходящих соединений ConnectionManager поддерживает по адресной книге; 0 - только /connect. */
+    public int getTargetOutbound() { return targetOutbound; }
+
+    public PeerConfig setTargetOutbound(int targetOutbound) {
+        if (targetOutbound < 0) throw new IllegalArgumentException("targetOutbound must not be negative: " + targetOutbound);
+        this.targetOutbound = targetOutbound;
+        return this;
+    }
+
+    /** Предел всех соединений: сверх него входящие отклоняются, новые исходящие не открываются. */
+    public int getMaxConnections() { return maxConnections; }
+
+    public PeerConfig setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /** Задержка переподключения после первой неудачи (мс); удваивается с каждой следующей. */
+    public long getConnectBackoffMillis() { return connectBackoffMillis; }
+
+    public PeerConfig setConnectBackoffMillis(long connectBackoffMillis) {
+        if (connectBackoffMillis < 1) throw new IllegalArgumentException("connectBackoffMillis must be positive: " + connectBackoffMillis);
+        this.connectBackoffMillis = connectBackoffMillis;
+        return this;
+    }
+
+    /** Наибольшая задержка переподключения (мс). */
+    public long getConnectBackoffMaxMillis() { return connectBackoffMaxMillis; }
+
+    public PeerConfig setConnectBackoffMaxMillis(long connectBackoffMaxMillis) {
+        if (connectBackoffMaxMillis < 1) throw new IllegalArgumentException("connectBackoffMaxMillis must be positive: " + connectBackoffMaxMillis);
+        this.connectBackoffMaxMillis = connectBackoffMaxMillis;
+        return this;
+    }
+
+    /** Прочитанных, но не обработанных сообщений на соединение; при заполнении чтение сокета останавливается. */
+    public int getInboundQueueCapacity() { return inboundQueueCapacity; }
+
+    public PeerConfig setInboundQueueCapacity(int inboundQueueCapacity) {
+        if (inboundQueueCapacity < MIN_INBOUND_QUEUE) throw new IllegalArgumentException("inboundQueueCapacity must be at least " + MIN_INBOUND_QUEUE + ": " + inboundQueueCapacity);
+        this.inboundQueueCapacity = inboundQueueCapacity;
+        return this;
+    }
+
+    /** Транзакций в секунду от одного пира (блок считается по числу транзакций); 0 - без ограничения. */
+    public int getRateTransactions() { return rateTransactions; }
+
+    public PeerConfig setRateTransactions(int rateTransactions) {
+        if (rateTransactions < 0) throw new IllegalArgumentException("rateTransactions must not be negative: " + rateTransactions);
+        this.rateTransactions = rateTransactions;
+        return this;
+    }
+
+    /** Запросов синхронизации (REQ_SYNC) в минуту от одного пира, сверх - отбрасываются; 0 - без ограничения. */
+    public int getRateSyncPerMinute() { return rateSyncPerMinute; }
+
+    public PeerConfig setRateSyncPerMinute(int rateSyncPerMinute) {
+        if (rateSyncPerMinute < 0) throw new IllegalArgumentException("rateSyncPerMinute must not be negative: " + rateSyncPerMinute);
+        this.rateSyncPerMinute = rateSyncPerMinute;
+        return this;
+    }
+
+    /** Служебных сообщений (INV, ADDR, PEER_JOINED, CHAT, STATE_*) в секунду от одного пира; 0 - без ограничения. */
+    public int getRateControl() { return rateControl; }
+
+    public PeerConfig setRateControl(int rateControl) {
+        if (rateControl < 0) throw new IllegalArgumentException("rateControl must not be negative: " + rateControl);
+        this.rateControl = rateControl;
+        return this;
+    }
+
+    /** Порт HTTP сервера узла (/metrics и API чтения состояния); 0 - сервер не запускается. */
+    public int getHttpPort() { return httpPort; }
+
+    public PeerConfig setHttpPort(int httpPort) {
+        if (httpPort < 0 || httpPort > 65535) throw new IllegalArgumentException("httpPort must be between 0 and 65535: " + httpPort);
+        this.httpPort = httpPort;
+        return this;
+    }
+
+    /** Потоков обработки HTTP запросов; при peer.threads=VIRTUAL (Java 21+) - поток на запрос. */
+    public int getHttpThreads() { return httpThreads; }
+
+    public PeerConfig setHttpThreads(int httpThreads) {
+        if (httpThreads <= 0) throw new IllegalArgumentException("httpThreads must be positive: " + httpThreads);
+        this.httpThreads = httpThreads;
+        return this;
+    }
+
+    /** Адрес, на котором слушает HTTP сервер. По умолчанию только loopback; "0.0.0.0" - все интерфейсы. */
+    public String getHttpBind() { return httpBind; }
+
+    public PeerConfig setHttpBind(String httpBind) {
+        if (httpBind == null || httpBind.isBlank()) throw new IllegalArgumentException("httpBind must not be empty");
+        this.httpBind = httpBind.trim();
+        return this;
+    }
+
+    /**
+     * Токен для POST /transactions (заголовок Authorization: Bearer ...). Без токена отправка доступна,
+     * только если HTTP сервер слушает loopback.
+     */
+    public String getHttpToken() { return httpToken; }
+
+    public PeerConfig setHttpToken(String httpToken) {
+        this.httpToken = httpToken == null || httpToken.isBlank() ? null : httpToken.trim();
+        return this;
+    }
+}
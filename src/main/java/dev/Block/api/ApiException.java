@@ -0,0 +1,24 @@
+package dev.Block.api;
+
+/** Ошибка запроса к HTTP API: код ответа и сообщение для поля "error". */
+final class ApiException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() { return status; }
+
+    static String toJson(ApiException e) {
+        return QueryApi.json(out -> {
+            out.writeStartObject();
+            out.writeStringField("error", e.getMessage());
+            out.writeEndObject();
+        });
+    }
+}
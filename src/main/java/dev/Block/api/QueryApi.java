@@ -0,0 +1,293 @@
+package dev.Block.api;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import dev.Block.Peer;
+import dev.Block.network.PeerConnection;
+import dev.Block.state.TransactionEngine;
+import dev.Block.state.TransactionLedger;
+import dev.HttpServer.HttpServ;
+
+/**
+ * HTTP/JSON API чтения состояния узла:
+ * <ul>
+ *   <li>GET /balance/{nick} - баланс счета;</li>
+ *   <li>GET /ledger?from=&amp;limit= - записи реестра с позиции from (с 0), не больше MAX_LEDGER_LIMIT;</li>
+ *   <li>GET /peers - балансы всех известных счетов и активные соединения.</li>
+ * </ul>
+ * Запросы не берут блокировок TransactionEngine и не задерживают применение переводов:
+ * <ul>
+ *   <li>баланс читается без блокировок (AccountStore);</li>
+ *   <li>записи реестра до size() не изменяются, поэтому сериализованная страница [from, end) кэшируется
+ *       для текущего экземпляра реестра и не устаревает; замена реестра синхронизацией сбрасывает кэш;</li>
+ *   <li>список балансов (O(числа счетов)) сериализуется один раз и отдается всем, пока не изменится
+ *       состояние: версию увеличивает каждый примененный перевод (Peer.addApplyListener), замену состояния
+ *       и новые счета выдают экземпляр реестра и число счетов. Пересобирает список один запрос, остальные
+ *       в это время получают предыдущую версию.</li>
+ * </ul>
+ */
+public final class QueryApi {
+
+    static final String JSON = "application/json; charset=utf-8";
+    private static final int DEFAULT_LEDGER_LIMIT = 50;
+    private static final int MAX_LEDGER_LIMIT = 1000;
+    private static final int PAGE_CACHE = 1024; // Сериализованных страниц реестра
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** Состояние, по которому построен кэшированный список балансов. */
+    private static final class AccountsView {
+        final long version;
+        final TransactionLedger ledger;
+        final int accountCount;
+        final String json;
+
+        AccountsView(long version, TransactionLedger ledger, int accountCount, String json) {
+            this.version = version;
+            this.ledger = ledger;
+            this.accountCount = accountCount;
+            this.json = json;
+        }
+
+        boolean isCurrent(long currentVersion, TransactionEngine engine) {
+            return version == currentVersion && ledger == engine.getLedger() && accountCount == engine.getAccountCount();
+        }
+    }
+
+    private final Peer peer;
+    private final AtomicLong stateVersion = new AtomicLong();
+    private final ReentrantLock accountsRebuild = new ReentrantLock();
+    private volatile AccountsView accountsView;
+    private volatile TransactionLedger pagesLedger; // Реестр, для которого собраны страницы в pages
+    private final Map<Long, String> pages = Collections.synchronizedMap(new LinkedHashMap<>(PAGE_CACHE * 4 / 3 + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > PAGE_CACHE;
+        }
+    });
+
+    public QueryApi(Peer peer) {
+        this.peer = peer;
+        peer.addApplyListener(txId -> stateVersion.incrementAndGet());
+    }
+
+    /** Подключает обработчики к серверу. */
+    public void register(HttpServ server) {
+        server.addHandler("/balance/", get(this::balance));
+        server.addHandler("/ledger", get(this::ledger));
+        server.addHandler("/peers", get(this::peers));
+    }
+
+    // --- Обработчики ---
+
+    private interface Endpoint {
+        /** @return тело ответа 200 или ApiException с кодом ошибки. */
+        String handle(HttpExchange exchange) throws ApiException;
+    }
+
+    /** Только GET и HEAD; ошибки - JSON {"error": ...} с кодом ApiException. */
+    private static HttpHandler get(Endpoint endpoint) {
+        return exchange -> {
+            try {
+                String method = exchange.getRequestMethod();
+                if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                    throw new ApiException(405, "Method " + method + " is not allowed");
+                }
+                HttpServ.respond(exchange, 200, JSON, endpoint.handle(exchange).getBytes(StandardCharsets.UTF_8));
+            } catch (ApiException e) {
+                HttpServ.respond(exchange, e.getStatus(), JSON, ApiException.toJson(e).getBytes(StandardCharsets.UTF_8));
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private String balance(HttpExchange exchange) throws ApiException {
+        String path = exchange.getRequestURI().getRawPath();
+        String nickname = URLDecoder.decode(path.substring("/balance/".length()), StandardCharsets.UTF_8);
+        if (nickname.isEmpty() || nickname.contains("/")) throw new ApiException(404, "Expected /balance/{nickname}");
+        TransactionEngine engine = peer.getEngine();
+        Long balance = engine.getBalance(nickname);
+        if (balance == null) throw new ApiException(404, "Unknown account '" + nickname + "'");
+        return json(out -> {
+            out.writeStartObject();
+            out.writeStringField("nickname", nickname);
+            out.writeNumberField("balance", balance);
+            out.writeNumberField("ledgerSize", engine.getLedgerSize());
+            out.writeEndObject();
+        });
+    }
+
+    private String ledger(HttpExchange exchange) throws ApiException {
+        requireExactPath(exchange, "/ledger");
+        Map<String, String> query = parseQuery(exchange.getRequestURI());
+        int from = intParameter(query, "from", 0);
+        int limit = intParameter(query, "limit", DEFAULT_LEDGER_LIMIT);
+        if (from < 0) throw new ApiException(400, "from must not be negative");
+        if (limit <= 0 || limit > MAX_LEDGER_LIMIT) throw new ApiException(400, "limit must be between 1 and " + MAX_LEDGER_LIMIT);
+
+        TransactionLedger ledger = peer.getEngine().getLedger();
+        int total = ledger.size(); // Записи до total не изменятся, даже если реестр растет
+        int end = (int) Math.min(total, (long) from + limit);
+        String entries = from >= end ? "[]" : page(ledger, from, end);
+        return json(out -> {
+            out.writeStartObject();
+            out.writeNumberField("total", total);
+            out.writeNumberField("from", from);
+            out.writeNumberField("limit", limit);
+            if (end < total) out.writeNumberField("next", end);
+            else out.writeNullField("next");
+            out.writeFieldName("entries");
+            out.writeRawValue(entries);
+            out.writeEndObject();
+        });
+    }
+
+    /** Сериализованные записи [from, end) реестра ledger: из кэша или новые. */
+    private String page(TransactionLedger ledger, int from, int end) {
+        if (pagesLedger != ledger) {
+            synchronized (pages) {
+                if (pagesLedger != ledger) { pages.clear(); pagesLedger = ledger; }
+            }
+        }
+        long key = (long) from << 32 | end;
+        String cached = pages.get(key);
+        if (cached != null) return cached;
+        String page = json(out -> {
+            out.writeStartArray();
+            for (int i = from; i < end; i++) {
+                out.writeStartObject();
+                out.writeNumberField("position", i);
+                out.writeStringField("txId", Long.toHexString(ledger.getTxId(i)));
+                out.writeNumberField("epochSecond", ledger.getTimestamp(i));
+                out.writeStringField("sender", ledger.getSender(i));
+                out.writeStringField("recipient", ledger.getRecipient(i));
+                out.writeNumberField("amount", ledger.getAmount(i));
+                out.writeEndObject();
+            }
+            out.writeEndArray();
+        });
+        if (pagesLedger == ledger) pages.put(key, page);
+        return page;
+    }
+
+    private String peers(HttpExchange exchange) throws ApiException {
+        requireExactPath(exchange, "/peers");
+        String accounts = accountsJson();
+        List<PeerConnection> connections = new ArrayList<>(peer.getConnections());
+        return json(out -> {
+            out.writeStartObject();
+            out.writeStringField("nickname", peer.getNickname());
+            out.writeFieldName("accounts");
+            out.writeRawValue(accounts);
+            out.writeArrayFieldStart("connections");
+            for (PeerConnection connection : connections) {
+                out.writeStartObject();
+                out.writeStringField("peer", connection.getPeerNickname());
+                out.writeStringField("address", connection.getPeerInfo());
+                out.writeStringField("direction", connection.getDialAddress() != null ? "outbound" : "inbound");
+                out.writeBooleanField("binary", connection.isBinaryProtocol());
+                out.writeNumberField("inboundQueue", connection.getInboundQueue().size());
+                out.writeNumberField("outboundQueue", connection.getOutboundQueueDepth());
+                out.writeEndObject();
+            }
+            out.writeEndArray();
+            out.writeEndObject();
+        });
+    }
+
+    /** Балансы, отсортированные по нику: кэшированные, если состояние не менялось. */
+    private String accountsJson() {
+        TransactionEngine engine = peer.getEngine();
+        AccountsView view = accountsView;
+        if (view != null && view.isCurrent(stateVersion.get(), engine)) return view.json;
+        if (view != null && !accountsRebuild.tryLock()) return view.json; // Пересобирает другой запрос
+        if (view == null) accountsRebuild.lock();
+        try {
+            view = accountsView;
+            long version = stateVersion.get(); // До чтения балансов: перевод во время сборки даст новую версию
+            TransactionLedger ledger = engine.getLedger();
+            int accountCount = engine.getAccountCount();
+            if (view != null && view.isCurrent(version, engine)) return view.json;
+            List<Map.Entry<String, Long>> balances = new ArrayList<>(engine.getBalances().entrySet());
+            balances.sort(Map.Entry.comparingByKey());
+            String json = json(out -> {
+                out.writeStartArray();
+                for (Map.Entry<String, Long> entry : balances) {
+                    out.writeStartObject();
+                    out.writeStringField("nickname", entry.getKey());
+                    out.writeNumberField("balance", entry.getValue());
+                    out.writeEndObject();
+                }
+                out.writeEndArray();
+            });
+            accountsView = new AccountsView(version, ledger, accountCount, json);
+            return json;
+        } finally {
+            accountsRebuild.unlock();
+        }
+    }
+
+    // --- Разбор запроса ---
+
+    private static void requireExactPath(HttpExchange exchange, String path) throws ApiException {
+        String requested = exchange.getRequestURI().getPath();
+        if (!requested.equals(path) && !requested.equals(path + "/")) throw new ApiException(404, "Unknown path " + requested);
+    }
+
+    static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null || query.isEmpty()) return parameters;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            parameters.putIfAbsent(name, value);
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) throws ApiException {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be an integer, got '" + value + "'");
+        }
+    }
+
+    // --- JSON ---
+
+    interface JsonWriter {
+        void write(JsonGenerator out) throws IOException;
+    }
+
+    static String json(JsonWriter writer) {
+        StringWriter buffer = new StringWriter(256);
+        try (JsonGenerator out = JSON_FACTORY.createGenerator(buffer)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Запись в StringWriter не бросает IOException
+        }
+        return buffer.toString();
+    }
+}
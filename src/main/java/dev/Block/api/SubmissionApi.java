@@ -0,0 +1,391 @@
+package dev.Block.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+
+import dev.Block.Peer;
+import dev.Block.network.protocol.TransactionMessage;
+import dev.Block.state.TransactionEngine;
+import dev.Block.util.ConsoleLogger;
+import dev.HttpServer.HttpServ;
+import dev.ParseJson.TransactionsConfigurat;
+
+/**
+ * HTTP API отправки транзакций:
+ * <ul>
+ *   <li>POST /transactions - один перевод {"ownerHash", "recipient", "amount"} (TransactionsConfigurat)
+ *       или массив до MAX_BATCH переводов. Пачка проверяется целиком: счета, право подписи, сумма списаний
+ *       каждого отправителя в пачке против его баланса. Принятые переводы подписываются ключом узла и ставятся
+ *       в очередь; ответ 202 с их id приходит сразу, не дожидаясь применения.</li>
+ *   <li>GET /transactions/{txId}?wait=ms - состояние перевода: QUEUED, APPLIED или REJECTED. С wait ответ
+ *       задерживается до изменения состояния или истечения wait (long poll, не больше MAX_WAIT_MILLIS);
+ *       ожидающий запрос не занимает поток HTTP сервера.</li>
+ * </ul>
+ * Очередь разбирает поток "Submit-ник": переводы применяются пачками (Peer.processOwnTransactions) - одно
+ * ожидание журнала на пачку. Если очередь полна, перевод отклоняется с кодом 503 - клиент повторяет позже.
+ * Перевод, который прошел проверку при приеме, но не применился (баланс успел измениться), получает REJECTED.
+ * <p>
+ * Тратить можно только счета, которые узел вправе подписывать (Peer.canSign). Если задан токен
+ * (peer.http.token), каждый запрос к /transactions должен нести заголовок "Authorization: Bearer токен",
+ * иначе - 401. Без токена Peer подключает этот API, только когда HTTP сервер слушает loopback.
+ */
+public final class SubmissionApi {
+
+    /** Состояние отправленного перевода. */
+    public enum Status { QUEUED, APPLIED, REJECTED }
+
+    private static final int MAX_BATCH = 1000; // Переводов в одном запросе
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int QUEUE_CAPACITY = 65_536;
+    private static final int APPLY_BATCH = 512; // Переводов на одно применение
+    private static final int MAX_TRACKED = 100_000; // Состояний, которые помнятся для GET /transactions/{id}
+    private static final long MAX_WAIT_MILLIS = 30_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Принятый перевод и его состояние. done завершается при APPLIED или REJECTED. */
+    private static final class Submission {
+        final TransactionMessage txn;
+        volatile Status status = Status.QUEUED;
+        volatile String error;
+        final CompletableFuture<Submission> done = new CompletableFuture<>();
+
+        Submission(TransactionMessage txn) {
+            this.txn = txn;
+        }
+
+        void complete(Status result, String reason) {
+            if (status != Status.QUEUED) return;
+            error = reason;
+            status = result;
+            done.complete(this);
+        }
+    }
+
+    private final Peer peer;
+    private final byte[] token; // null - без проверки
+    private final BlockingQueue<Submission> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<Long, Submission> tracked = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> trackedOrder = new ConcurrentLinkedQueue<>(); // Для вытеснения старых
+    private final AtomicInteger trackedCount = new AtomicInteger();
+    private final ScheduledExecutorService responder; // Ответы на long poll и их таймауты
+    private final Thread submitter;
+    private volatile boolean running = true;
+
+    /** @param token ожидаемый Bearer токен или null, если проверка не нужна */
+    public SubmissionApi(Peer peer, String token) {
+        this.peer = peer;
+        this.token = token != null ? token.getBytes(StandardCharsets.UTF_8) : null;
+        peer.addApplyListener(this::onApplied);
+        this.responder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SubmitWait-" + peer.getNickname());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.submitter = new Thread(this::submitLoop, "Submit-" + peer.getNickname());
+        this.submitter.setDaemon(true);
+        this.submitter.start();
+    }
+
+    /** Подключает обработчики к серверу. */
+    public void register(HttpServ server) {
+        server.addHandler("/transactions", this::handle);
+    }
+
+    /** Останавливает прием; уже принятые переводы применяются. */
+    public void close() {
+        running = false;
+        submitter.interrupt();
+        try {
+            submitter.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Submission> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(submission -> submission.complete(Status.REJECTED, "Node is shutting down"));
+        responder.shutdownNow();
+    }
+
+    // --- HTTP ---
+
+    private void handle(HttpExchange exchange) throws IOException {
+        boolean async = false;
+        try {
+            authorize(exchange);
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/transactions") || path.equals("/transactions/")) {
+                if (!"POST".equals(method)) throw notAllowed(exchange, "POST");
+                submit(exchange);
+            } else if (path.startsWith("/transactions/")) {
+                if (!"GET".equals(method)) throw notAllowed(exchange, "GET");
+                async = status(exchange, path.substring("/transactions/".length()));
+            } else {
+                throw new ApiException(404, "Unknown path " + path);
+            }
+        } catch (ApiException e) {
+            if (e.getStatus() == 503) exchange.getResponseHeaders().set("Retry-After", "1");
+            HttpServ.respond(exchange, e.getStatus(), QueryApi.JSON, ApiException.toJson(e).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            if (!async) exchange.close();
+        }
+    }
+
+    private void authorize(HttpExchange exchange) throws ApiException {
+        if (token == null) return;
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] presented = header != null && header.regionMatches(true, 0, "Bearer ", 0, 7) ? header.substring(7).trim().getBytes(StandardCharsets.UTF_8) : null;
+        if (presented != null && MessageDigest.isEqual(presented, token)) return; // Сравнение за постоянное время
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        throw new ApiException(401, "Missing or invalid bearer token");
+    }
+
+    private static ApiException notAllowed(HttpExchange exchange, String allowed) {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        return new ApiException(405, "Method " + exchange.getRequestMethod() + " is not allowed");
+    }
+
+    /** POST /transactions: проверка, постановка в очередь и ответ 202 с id. */
+    private void submit(HttpExchange exchange) throws IOException, ApiException {
+        JsonNode body = readBody(exchange);
+        boolean single = body.isObject();
+        if (!single && !body.isArray()) throw new ApiException(400, "Expected a transaction object or an array of them");
+        if (body.size() > MAX_BATCH && !single) throw new ApiException(413, "At most " + MAX_BATCH + " transactions per request");
+        List<TransactionsConfigurat> requests = new ArrayList<>();
+        try {
+            if (single) requests.add(MAPPER.treeToValue(body, TransactionsConfigurat.class));
+            else for (JsonNode item : body) requests.add(MAPPER.treeToValue(item, TransactionsConfigurat.class));
+        } catch (JsonProcessingException e) {
+            throw new ApiException(400, "Invalid transaction: " + e.getOriginalMessage());
+        }
+        if (requests.isEmpty()) throw new ApiException(400, "No transactions in request");
+
+        String[] errors = validate(requests);
+        Submission[] accepted = new Submission[requests.size()];
+        int queued = 0, queueFull = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            if (errors[i] != null) continue;
+            TransactionsConfigurat request = requests.get(i);
+            Submission submission = new Submission(peer.newTransaction(request.getOwnerHash(), request.getRecipient(), request.getAmount()));
+            track(submission);
+            if (!queue.offer(submission)) {
+                submission.complete(Status.REJECTED, "Submission queue is full, retry later");
+                errors[i] = submission.error;
+                queueFull++;
+                continue;
+            }
+            accepted[i] = submission;
+            queued++;
+        }
+
+        if (single) {
+            if (queueFull > 0) throw new ApiException(503, errors[0]);
+            if (errors[0] != null) throw new ApiException(422, errors[0]);
+            respondJson(exchange, 202, QueryApi.json(out -> {
+                out.writeStartObject();
+                out.writeStringField("txId", Long.toHexString(accepted[0].txn.getTxId()));
+                out.writeStringField("status", Status.QUEUED.name());
+                out.writeEndObject();
+            }));
+            return;
+        }
+        if (queued == 0 && queueFull > 0) throw new ApiException(503, "Submission queue is full, retry later");
+        int acceptedCount = queued;
+        respondJson(exchange, 202, QueryApi.json(out -> {
+            out.writeStartObject();
+            out.writeNumberField("accepted", acceptedCount);
+            out.writeNumberField("rejected", requests.size() - acceptedCount);
+            out.writeArrayFieldStart("results");
+            for (int i = 0; i < requests.size(); i++) {
+                out.writeStartObject();
+                out.writeNumberField("index", i);
+                if (accepted[i] != null) {
+                    out.writeStringField("txId", Long.toHexString(accepted[i].txn.getTxId()));
+                    out.writeStringField("status", Status.QUEUED.name());
+                } else {
+                    out.writeStringField("status", Status.REJECTED.name());
+                    out.writeStringField("error", errors[i]);
+                }
+                out.writeEndObject();
+            }
+            out.writeEndArray();
+            out.writeEndObject();
+        }));
+    }
+
+    /**
+     * Проверяет пачку целиком. Списания отправителя суммируются по пачке: перевод, которому не хватает
+     * баланса после предыдущих переводов того же отправителя, отклоняется.
+     * @return ошибка для каждого перевода или null, если он принят.
+     */
+    private String[] validate(List<TransactionsConfigurat> requests) {
+        TransactionEngine engine = peer.getEngine();
+        String[] errors = new String[requests.size()];
+        Map<String, Long> spent = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            TransactionsConfigurat request = requests.get(i);
+            String sender = request.getOwnerHash();
+            String recipient = request.getRecipient();
+            if (sender == null || sender.isEmpty() || recipient == null || recipient.isEmpty()) { errors[i] = "ownerHash and recipient are required"; continue; }
+            if (request.getAmount() <= 0) { errors[i] = "amount must be positive"; continue; }
+            if (sender.equals(recipient)) { errors[i] = "Cannot send coins to the same account"; continue; }
+            Long balance = engine.getBalance(sender);
+            if (balance == null) { errors[i] = "Unknown sender '" + sender + "'"; continue; }
+            if (!engine.hasAccount(recipient)) { errors[i] = "Unknown recipient '" + recipient + "'"; continue; }
+            if (!peer.canSign(sender)) { errors[i] = "Account '" + sender + "' is not owned by this node's key"; continue; }
+            long total = spent.getOrDefault(sender, 0L) + request.getAmount();
+            if (total > balance) { errors[i] = "Insufficient funds: '" + sender + "' has " + balance + ", this request spends " + total; continue; }
+            spent.put(sender, total);
+        }
+        return errors;
+    }
+
+    /** GET /transactions/{txId}[?wait=ms]. @return true, если ответ будет отправлен позже (long poll). */
+    private boolean status(HttpExchange exchange, String idText) throws IOException, ApiException {
+        long txId;
+        try {
+            txId = Long.parseUnsignedLong(idText, 16);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Transaction id must be hexadecimal, got '" + idText + "'");
+        }
+        long wait = waitParameter(exchange);
+        Submission submission = tracked.get(txId);
+        if (submission == null) {
+            // Не через этот API или уже забыт: в реестре - значит применен
+            if (!peer.getEngine().getLedger().contains(txId)) throw new ApiException(404, "Unknown transaction " + idText);
+            respondJson(exchange, 200, QueryApi.json(out -> {
+                out.writeStartObject();
+                out.writeStringField("txId", idText);
+                out.writeStringField("status", Status.APPLIED.name());
+                out.writeEndObject();
+            }));
+            return false;
+        }
+        if (submission.status != Status.QUEUED || wait == 0) {
+            respondJson(exchange, 200, statusJson(submission));
+            return false;
+        }
+        submission.done.copy().completeOnTimeout(null, wait, TimeUnit.MILLISECONDS) // Таймаут - только этого запроса; ответ с текущим состоянием
+                .whenCompleteAsync((result, error) -> {
+                    try {
+                        respondJson(exchange, 200, statusJson(submission));
+                    } catch (IOException e) {
+                        // Клиент закрыл соединение
+                    } finally {
+                        exchange.close();
+                    }
+                }, responder);
+        return true;
+    }
+
+    private static long waitParameter(HttpExchange exchange) throws ApiException {
+        String value = QueryApi.parseQuery(exchange.getRequestURI()).get("wait");
+        if (value == null || value.isEmpty()) return 0;
+        try {
+            long wait = Long.parseLong(value.trim());
+            if (wait < 0) throw new ApiException(400, "wait must not be negative");
+            return Math.min(wait, MAX_WAIT_MILLIS);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "wait must be a number of milliseconds, got '" + value + "'");
+        }
+    }
+
+    private static String statusJson(Submission submission) {
+        TransactionMessage txn = submission.txn;
+        return QueryApi.json(out -> {
+            out.writeStartObject();
+            out.writeStringField("txId", Long.toHexString(txn.getTxId()));
+            out.writeStringField("status", submission.status.name());
+            if (submission.error != null) out.writeStringField("error", submission.error);
+            out.writeStringField("ownerHash", txn.getSender());
+            out.writeStringField("recipient", txn.getRecipient());
+            out.writeNumberField("amount", txn.getAmount());
+            out.writeEndObject();
+        });
+    }
+
+    private static void respondJson(HttpExchange exchange, int status, String json) throws IOException {
+        HttpServ.respond(exchange, status, QueryApi.JSON, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonNode readBody(HttpExchange exchange) throws IOException, ApiException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+                if (buffer.size() > MAX_BODY_BYTES) throw new ApiException(413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
+            }
+        }
+        try {
+            return MAPPER.readTree(buffer.toByteArray());
+        } catch (JsonProcessingException e) {
+            throw new ApiException(400, "Malformed JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    // --- Состояния ---
+
+    private void track(Submission submission) {
+        long txId = submission.txn.getTxId();
+        tracked.put(txId, submission);
+        trackedOrder.add(txId);
+        if (trackedCount.incrementAndGet() <= MAX_TRACKED) return;
+        Long oldest = trackedOrder.poll();
+        if (oldest != null) { tracked.remove(oldest); trackedCount.decrementAndGet(); }
+    }
+
+    /** Транзакция применена (поток применения; для своих - поток Submit). */
+    private void onApplied(long txId) {
+        Submission submission = tracked.get(txId);
+        if (submission != null) submission.complete(Status.APPLIED, null);
+    }
+
+    // --- Применение ---
+
+    private void submitLoop() {
+        List<Submission> batch = new ArrayList<>(APPLY_BATCH);
+        List<TransactionMessage> txns = new ArrayList<>(APPLY_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = running ? queue.take() : queue.poll();
+                if (first == null) break;
+                batch.add(first);
+                queue.drainTo(batch, APPLY_BATCH - 1);
+                for (Submission submission : batch) txns.add(submission.txn);
+                peer.processOwnTransactions(txns); // Свои применяются в этом потоке: после возврата результат известен
+                for (Submission submission : batch) submission.complete(Status.REJECTED, "Rejected when applied (balance or account changed since submission, see node log)");
+            } catch (InterruptedException e) {
+                if (running) { Thread.currentThread().interrupt(); break; } // Иначе close(): дописать очередь
+            } catch (Exception e) {
+                ConsoleLogger.print("ERROR [" + peer.getNickname() + "]: Failed to apply submitted transactions: " + e.getMessage());
+                for (Submission submission : batch) submission.complete(Status.REJECTED, "Internal error: " + e.getMessage());
+            } finally {
+                batch.clear();
+                txns.clear();
+            }
+        }
+    }
+}
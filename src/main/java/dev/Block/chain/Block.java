@@ -0,0 +1,114 @@
+package dev.Block.chain;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Блок: заголовок и упорядоченный список транзакций. Неизменяем.
+ * <pre>
+ * заголовок: [height:8][prevHash:32][merkleRoot:32][timestamp:8][difficultyBits:4][nonce:8] = 92 байта
+ * </pre>
+ * Хеш блока - SHA-256 заголовка, поэтому ссылка prevHash фиксирует всю цепочку,
+ * а merkleRoot - состав и порядок транзакций. Доказательство работы: хеш начинается
+ * не менее чем с difficultyBits нулевых бит. nonce стоит в конце заголовка, чтобы майнер
+ * менял только последние 8 байт своей копии (NONCE_OFFSET).
+ */
+public final class Block {
+
+    public static final int HEADER_LENGTH = 8 + Sha256.LENGTH + Sha256.LENGTH + 8 + 4 + 8;
+    public static final int NONCE_OFFSET = HEADER_LENGTH - 8;
+
+    private final long height;
+    private final byte[] prevHash;
+    private final byte[] merkleRoot;
+    private final long timestamp; // Миллисекунды эпохи
+    private final int difficultyBits;
+    private final long nonce;
+    private final List<TransactionMessage> transactions;
+    private final byte[] hash;
+
+    public Block(long height, byte[] prevHash, byte[] merkleRoot, long timestamp, int difficultyBits, long nonce, List<TransactionMessage> transactions) {
+        if (prevHash.length != Sha256.LENGTH || merkleRoot.length != Sha256.LENGTH) throw new IllegalArgumentException("Hash fields must be " + Sha256.LENGTH + " bytes");
+        if (difficultyBits < 0 || difficultyBits > Sha256.LENGTH * 8) throw new IllegalArgumentException("Invalid difficulty: " + difficultyBits);
+        this.height = height;
+        this.prevHash = prevHash.clone();
+        this.merkleRoot = merkleRoot.clone();
+        this.timestamp = timestamp;
+        this.difficultyBits = difficultyBits;
+        this.nonce = nonce;
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.hash = Sha256.hash(headerBytes());
+    }
+
+    /** Шаблон блока поверх parent (nonce = 0) с корнем Меркла, вычисленным по transactions. */
+    public static Block create(Block parent, List<TransactionMessage> transactions, long timestamp, int difficultyBits) {
+        return new Block(parent.height + 1, parent.hash, MerkleTree.root(transactions), timestamp, difficultyBits, 0, transactions);
+    }
+
+    /** Общий для всех узлов первый блок. */
+    public static Block genesis() {
+        return new Block(0, new byte[Sha256.LENGTH], new byte[Sha256.LENGTH], 0, 0, 0, Collections.emptyList());
+    }
+
+    /** Тот же блок с другим nonce (найденным майнером). */
+    public Block withNonce(long newNonce) {
+        return new Block(height, prevHash, merkleRoot, timestamp, difficultyBits, newNonce, transactions);
+    }
+
+    public byte[] headerBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH);
+        buf.putLong(height).put(prevHash).put(merkleRoot).putLong(timestamp).putInt(difficultyBits).putLong(nonce);
+        return buf.array();
+    }
+
+    /** Выполнено ли доказательство работы для заявленной сложности. */
+    public boolean meetsDifficulty() {
+        return hasLeadingZeroBits(hash, difficultyBits);
+    }
+
+    /** Начинается ли hash не менее чем с bits нулевых бит. */
+    public static boolean hasLeadingZeroBits(byte[] hash, int bits) {
+        int fullBytes = bits >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (hash[i] != 0) return false;
+        }
+        int remainingBits = bits & 7;
+        return remainingBits == 0 || (hash[fullBytes] & 0xFF) >>> (8 - remainingBits) == 0;
+    }
+
+    /** Совпадает ли merkleRoot с транзакциями (проверка полученного блока). */
+    public boolean hasValidMerkleRoot() {
+        return Arrays.equals(merkleRoot, MerkleTree.root(transactions));
+    }
+
+    public boolean isChildOf(Block parent) {
+        return height == parent.height + 1 && Arrays.equals(prevHash, parent.hash);
+    }
+
+    public long getHeight() { return height; }
+
+    public byte[] getPrevHash() { return prevHash.clone(); }
+
+    public byte[] getMerkleRoot() { return merkleRoot.clone(); }
+
+    public long getTimestamp() { return timestamp; }
+
+    public int getDifficultyBits() { return difficultyBits; }
+
+    public long getNonce() { return nonce; }
+
+    public List<TransactionMessage> getTransactions() { return transactions; }
+
+    public byte[] getHash() { return hash.clone(); }
+
+    public String getHashHex() { return Sha256.toHex(hash); }
+
+    @Override
+    public String toString() {
+        return "#" + height + " " + Sha256.shortHex(hash) + " (" + transactions.size() + " txns)";
+    }
+}
@@ -0,0 +1,117 @@
+package dev.Block.chain;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import dev.Block.network.protocol.TransactionMessage;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Собирает транзакции из Mempool в блоки поверх вершины цепочки.
+ * Блок запечатывается, когда в пуле набралось maxTransactions (размер) или самая старая
+ * транзакция ждет дольше maxDelayMillis (время). Запечатывание - поиск доказательства работы
+ * в Miner для шаблона блока. Работает в одном фоновом потоке; найденный блок передается в onSealed,
+ * которое добавляет его в цепочку и рассылает. Если вершина сменилась (пришел чужой блок),
+ * onTipChanged() прерывает майнинг, и шаблон собирается заново поверх новой вершины.
+ */
+public final class BlockBuilder {
+
+    private final Blockchain chain;
+    private final Mempool mempool;
+    private final Miner miner;
+    private final int difficultyBits;
+    private final int maxTransactions;
+    private final long maxDelayNanos;
+    private final Consumer<Block> onSealed;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean sealScheduled = new AtomicBoolean();
+
+    public BlockBuilder(String ownerNickname, Blockchain chain, Mempool mempool, Miner miner, int difficultyBits, int maxTransactions, long maxDelayMillis, Consumer<Block> onSealed) {
+        this.chain = chain;
+        this.mempool = mempool;
+        this.miner = miner;
+        this.difficultyBits = difficultyBits;
+        this.maxTransactions = maxTransactions;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.onSealed = onSealed;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "BlockBuilder-" + ownerNickname);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        long tickMillis = Math.max(10, TimeUnit.NANOSECONDS.toMillis(maxDelayNanos) / 10);
+        scheduler.scheduleWithFixedDelay(this::sealIfDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Вызывается после добавления транзакции в пул: при достижении размера блок собирается сразу. */
+    public void onTransactionAdded(int mempoolSize) {
+        if (mempoolSize >= maxTransactions && sealScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                sealScheduled.set(false);
+                sealIfDue();
+            });
+        }
+    }
+
+    /** Вершина цепочки сменилась не нашим блоком: текущий шаблон устарел. */
+    public void onTipChanged() {
+        miner.cancel();
+    }
+
+    /** Запечатать блок из текущего пула немедленно, даже неполный или пустой (команда /mine). */
+    public void mineNow() {
+        scheduler.execute(() -> {
+            try {
+                Block block;
+                do {
+                    block = mineTemplate(mempool.peek(maxTransactions));
+                } while (block == null && !scheduler.isShutdown()); // Отменен сменой вершины - заново поверх новой
+                if (block != null) onSealed.accept(block);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                ConsoleLogger.print("ERROR: Mining failed: " + e.getMessage());
+            }
+        });
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        miner.shutdown();
+    }
+
+    private void sealIfDue() {
+        try {
+            // Пул может держать несколько полных блоков - собираем, пока условие выполняется
+            while (mempool.size() >= maxTransactions || (mempool.size() > 0 && mempool.oldestAgeNanos() >= maxDelayNanos)) {
+                List<TransactionMessage> batch = mempool.peek(maxTransactions);
+                if (batch.isEmpty()) return;
+                Block block = mineTemplate(batch);
+                if (block == null) continue; // Отменен: транзакции чужого блока ушли из пула, собираем заново
+                int before = mempool.size();
+                onSealed.accept(block);
+                if (mempool.size() >= before) return; // Блок не принят (вершина сменилась) - повторим на следующем тике
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            ConsoleLogger.print("ERROR: Block builder failed: " + e.getMessage());
+        }
+    }
+
+    private Block mineTemplate(List<TransactionMessage> batch) throws InterruptedException {
+        Block template = Block.create(chain.getTip(), batch, System.currentTimeMillis(), difficultyBits);
+        Block mined = miner.mine(template);
+        if (mined != null) {
+            ConsoleLogger.print(String.format("Mined block %s: %,d hashes at %,.0f H/s on %d thread(s).", mined, miner.getLastRoundHashes(), miner.getLastHashRate(), miner.getThreadCount()));
+        }
+        return mined;
+    }
+}
@@ -0,0 +1,85 @@
+package dev.Block.chain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Основная цепочка блоков узла (индекс в списке = высота) и индекс по хешу.
+ * <p>
+ * Принимается блок, продолжающий вершину. Конкурирующий блок той же высоты с тем же родителем
+ * заменяет вершину, если его хеш меньше: правило детерминировано, поэтому узлы, получившие оба блока,
+ * приходят к одной вершине независимо от порядка получения. Более глубокие ветвления не разрешаются.
+ * Потокобезопасен.
+ */
+public final class Blockchain {
+
+    /** Итог попытки добавить блок. */
+    public enum AppendResult {
+        /** Блок продолжил вершину. */
+        APPENDED,
+        /** Блок заменил вершину той же высоты. */
+        REPLACED_TIP,
+        /** Блок уже известен. */
+        KNOWN,
+        /** Блок ниже вершины или проиграл сравнение хешей. */
+        STALE,
+        /** Родитель блока неизвестен (узел отстал). */
+        ORPHAN
+    }
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<String, Block> byHash = new HashMap<>(); // Включая вытесненные блоки
+
+    public Blockchain() {
+        Block genesis = Block.genesis();
+        blocks.add(genesis);
+        byHash.put(genesis.getHashHex(), genesis);
+    }
+
+    public synchronized AppendResult append(Block block) {
+        String hashHex = block.getHashHex();
+        if (byHash.containsKey(hashHex)) return AppendResult.KNOWN;
+        Block tip = getTip();
+        if (block.isChildOf(tip)) {
+            blocks.add(block);
+            byHash.put(hashHex, block);
+            return AppendResult.APPENDED;
+        }
+        if (block.getHeight() == tip.getHeight() && tip.getHeight() > 0 && block.isChildOf(blocks.get(blocks.size() - 2))) {
+            byHash.put(hashHex, block);
+            if (Arrays.compareUnsigned(block.getHash(), tip.getHash()) < 0) {
+                blocks.set(blocks.size() - 1, block);
+                return AppendResult.REPLACED_TIP;
+            }
+            return AppendResult.STALE;
+        }
+        return block.getHeight() <= tip.getHeight() ? AppendResult.STALE : AppendResult.ORPHAN;
+    }
+
+    public synchronized Block getTip() {
+        return blocks.get(blocks.size() - 1);
+    }
+
+    public synchronized long getHeight() {
+        return blocks.size() - 1;
+    }
+
+    /** Блок основной цепочки на высоте height или null. */
+    public synchronized Block getBlock(long height) {
+        return height >= 0 && height < blocks.size() ? blocks.get((int) height) : null;
+    }
+
+    public synchronized boolean contains(String hashHex) {
+        return byHash.containsKey(hashHex);
+    }
+
+    /** Последние count блоков основной цепочки, от вершины вниз. */
+    public synchronized List<Block> getRecentBlocks(int count) {
+        List<Block> recent = new ArrayList<>(Math.min(count, blocks.size()));
+        for (int i = blocks.size() - 1; i >= 0 && recent.size() < count; i--) recent.add(blocks.get(i));
+        return recent;
+    }
+}
@@ -0,0 +1,76 @@
+package dev.Block.chain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Проверенные и примененные транзакции, еще не вошедшие в блок основной цепочки.
+ * Порядок - порядок поступления, он же порядок транзакций в собираемом блоке. Потокобезопасен.
+ */
+public final class Mempool {
+
+    private static final class Pending {
+        final TransactionMessage txn;
+        final long addedAtNanos;
+
+        Pending(TransactionMessage txn, long addedAtNanos) {
+            this.txn = txn;
+            this.addedAtNanos = addedAtNanos;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Long, Pending> pending = new LinkedHashMap<>();
+    private long rejectedFull;
+
+    public Mempool(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+    }
+
+    /** @return false, если транзакция уже есть или пул заполнен. */
+    public synchronized boolean add(TransactionMessage txn) {
+        if (pending.containsKey(txn.getTxId())) return false;
+        if (pending.size() >= capacity) { rejectedFull++; return false; }
+        pending.put(txn.getTxId(), new Pending(txn, System.nanoTime()));
+        return true;
+    }
+
+    /** Первые max транзакций без удаления: они удаляются, когда блок с ними принят в цепочку. */
+    public synchronized List<TransactionMessage> peek(int max) {
+        List<TransactionMessage> batch = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<Pending> it = pending.values().iterator();
+        while (it.hasNext() && batch.size() < max) batch.add(it.next().txn);
+        return batch;
+    }
+
+    /** Транзакция из пула или null. */
+    public synchronized TransactionMessage get(long txId) {
+        Pending entry = pending.get(txId);
+        return entry != null ? entry.txn : null;
+    }
+
+    public synchronized void removeAll(Collection<TransactionMessage> transactions) {
+        for (TransactionMessage txn : transactions) pending.remove(txn.getTxId());
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /** Сколько наносекунд ждет самая старая транзакция (0 - пул пуст). */
+    public synchronized long oldestAgeNanos() {
+        if (pending.isEmpty()) return 0;
+        return System.nanoTime() - pending.values().iterator().next().addedAtNanos;
+    }
+
+    /** Сколько транзакций не попало в пул из-за его переполнения. */
+    public synchronized long getRejectedFull() {
+        return rejectedFull;
+    }
+}
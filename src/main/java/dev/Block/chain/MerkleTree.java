@@ -0,0 +1,44 @@
+package dev.Block.chain;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Корень дерева Меркла по транзакциям блока.
+ * Лист - SHA-256 от [txId:8][amount:4][sender][recipient] (строки как [len:2][UTF-8]);
+ * на уровне с нечетным числом узлов последний узел хешируется сам с собой. Пустой блок - нулевой корень.
+ */
+public final class MerkleTree {
+
+    private MerkleTree() {}
+
+    public static byte[] root(List<TransactionMessage> transactions) {
+        int count = transactions.size();
+        if (count == 0) return new byte[Sha256.LENGTH];
+        byte[][] level = new byte[count][];
+        for (int i = 0; i < count; i++) level[i] = leaf(transactions.get(i));
+        while (count > 1) {
+            int next = (count + 1) / 2;
+            for (int i = 0; i < next; i++) {
+                byte[] left = level[2 * i];
+                byte[] right = 2 * i + 1 < count ? level[2 * i + 1] : left;
+                level[i] = Sha256.hash(left, right);
+            }
+            count = next;
+        }
+        return level[0];
+    }
+
+    static byte[] leaf(TransactionMessage txn) {
+        byte[] sender = txn.getSender().getBytes(StandardCharsets.UTF_8);
+        byte[] recipient = txn.getRecipient().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(12 + 2 + sender.length + 2 + recipient.length);
+        buf.putLong(txn.getTxId()).putInt(txn.getAmount());
+        buf.putShort((short) sender.length).put(sender);
+        buf.putShort((short) recipient.length).put(recipient);
+        return Sha256.hash(buf.array());
+    }
+}
@@ -0,0 +1,158 @@
+package dev.Block.chain;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Многопоточный поиск nonce для доказательства работы.
+ * <p>
+ * Пространство nonce (2^64 значений) делится на равные непересекающиеся диапазоны по числу потоков.
+ * У каждого потока свой MessageDigest, своя копия заголовка и буфер результата, выделенные один раз:
+ * перебор меняет только 8 байт nonce в заголовке и не выделяет память на хеш.
+ * Флаг отмены проверяется каждые CHECK_INTERVAL хешей, поэтому cancel() (например, пришел
+ * конкурирующий блок) останавливает раунд за микросекунды.
+ * Одновременно выполняется один раунд.
+ */
+public final class Miner {
+
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** Раунд майнинга одного шаблона; его флаги видят все рабочие потоки. */
+    private static final class Round {
+        volatile boolean stopped;
+        volatile long foundNonce;
+        volatile boolean found;
+        final CountDownLatch finished;
+
+        Round(int workers) {
+            this.finished = new CountDownLatch(workers);
+        }
+    }
+
+    /** Состояние одного рабочего потока, переиспользуемое между раундами. */
+    private static final class Worker {
+        final MessageDigest digest = Sha256.newDigest();
+        final byte[] header = new byte[Block.HEADER_LENGTH];
+        final byte[] hash = new byte[Sha256.LENGTH];
+    }
+
+    private final int threadCount;
+    private final Worker[] workers;
+    private final ExecutorService pool;
+    private final LongAdder totalHashes = new LongAdder();
+    private volatile Round currentRound;
+    private volatile long lastRoundHashes;
+    private volatile double lastHashRate; // Хешей в секунду за последний раунд
+
+    public Miner(String ownerNickname, int threadCount) {
+        if (threadCount < 1) throw new IllegalArgumentException("threadCount must be positive: " + threadCount);
+        this.threadCount = threadCount;
+        this.workers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) workers[i] = new Worker();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threadCount, r -> {
+            Thread thread = new Thread(r, "Miner-" + ownerNickname + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); // Не мешать сетевым потокам
+            return thread;
+        });
+    }
+
+    /**
+     * Ищет nonce, при котором хеш заголовка template удовлетворяет его сложности.
+     * Блокирует вызывающий поток до результата.
+     * @return блок с найденным nonce или null, если раунд отменен.
+     */
+    public synchronized Block mine(Block template) throws InterruptedException {
+        byte[] templateHeader = template.headerBytes();
+        int difficultyBits = template.getDifficultyBits();
+        Round round = new Round(threadCount);
+        currentRound = round;
+        long hashesBefore = totalHashes.sum();
+        long start = System.nanoTime();
+
+        long span = Long.divideUnsigned(-1L, threadCount); // Размер диапазона nonce одного потока
+        for (int i = 0; i < threadCount; i++) {
+            Worker worker = workers[i];
+            long first = span * i;
+            long last = i == threadCount - 1 ? -1L : first + span - 1; // -1L - максимальный беззнаковый
+            System.arraycopy(templateHeader, 0, worker.header, 0, Block.HEADER_LENGTH);
+            pool.execute(() -> search(worker, round, first, last, difficultyBits));
+        }
+        try {
+            round.finished.await();
+        } catch (InterruptedException e) {
+            round.stopped = true;
+            throw e;
+        } finally {
+            currentRound = null;
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            lastRoundHashes = totalHashes.sum() - hashesBefore;
+            lastHashRate = lastRoundHashes * 1e9 / elapsed;
+        }
+        return round.found ? template.withNonce(round.foundNonce) : null;
+    }
+
+    /** Прерывает текущий раунд (если он идет); mine() вернет null. */
+    public void cancel() {
+        Round round = currentRound;
+        if (round != null) round.stopped = true;
+    }
+
+    public void shutdown() {
+        cancel();
+        pool.shutdownNow();
+    }
+
+    public int getThreadCount() { return threadCount; }
+
+    public long getTotalHashes() { return totalHashes.sum(); }
+
+    public long getLastRoundHashes() { return lastRoundHashes; }
+
+    public double getLastHashRate() { return lastHashRate; }
+
+    private void search(Worker worker, Round round, long first, long last, int difficultyBits) {
+        byte[] header = worker.header;
+        byte[] hash = worker.hash;
+        MessageDigest digest = worker.digest;
+        long hashes = 0;
+        try {
+            long nonce = first;
+            while (!round.stopped) {
+                for (int i = 0; i < CHECK_INTERVAL; i++, nonce++) {
+                    putNonce(header, nonce);
+                    digest.update(header, 0, header.length);
+                    digest.digest(hash, 0, hash.length);
+                    hashes++;
+                    if (Block.hasLeadingZeroBits(hash, difficultyBits)) {
+                        synchronized (round) {
+                            if (!round.found) { round.foundNonce = nonce; round.found = true; }
+                        }
+                        round.stopped = true;
+                        return;
+                    }
+                    if (nonce == last) return; // Диапазон исчерпан
+                }
+            }
+        } catch (DigestException e) {
+            round.stopped = true; // Буфер результата всегда 32 байта - недостижимо
+        } finally {
+            totalHashes.add(hashes);
+            round.finished.countDown();
+        }
+    }
+
+    private static void putNonce(byte[] header, long nonce) {
+        int offset = Block.NONCE_OFFSET;
+        for (int i = 7; i >= 0; i--) {
+            header[offset + i] = (byte) nonce;
+            nonce >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dev.Block.chain;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 с MessageDigest на поток (создание дайджеста дороже самого хеширования короткого заголовка).
+ */
+public final class Sha256 {
+
+    public static final int LENGTH = 32;
+    private static final HexFormat HEX = HexFormat.of();
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(Sha256::newDigest);
+
+    private Sha256() {}
+
+    public static byte[] hash(byte[] data) {
+        return DIGEST.get().digest(data);
+    }
+
+    /** Хеш конкатенации двух значений (узел дерева Меркла). */
+    public static byte[] hash(byte[] left, byte[] right) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Обязателен для любой JVM
+        }
+    }
+
+    public static String toHex(byte[] hash) {
+        return HEX.formatHex(hash);
+    }
+
+    /** Первые 8 байт в hex - для логов. */
+    public static String shortHex(byte[] hash) {
+        return HEX.formatHex(hash, 0, 8);
+    }
+}
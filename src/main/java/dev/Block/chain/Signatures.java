@@ -0,0 +1,139 @@
+package dev.Block.chain;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Подписи транзакций Ed25519 (встроены в JDK 15+).
+ * Подписываются байты "BLKTX1" [txId:8][amount:4][sender][recipient] (строки как [len:2][UTF-8]) -
+ * те же поля, что в листе MerkleTree. Открытый ключ передается в сети в сыром виде (32 байта).
+ * Signature и KeyFactory создаются по одному на поток: создание дороже проверки короткого сообщения.
+ */
+public final class Signatures {
+
+    public static final int PUBLIC_KEY_LENGTH = 32;
+    public static final int SIGNATURE_LENGTH = 64;
+    private static final String ALGORITHM = "Ed25519";
+    private static final byte[] DOMAIN = "BLKTX1".getBytes(StandardCharsets.US_ASCII);
+    // Заголовок X.509 SubjectPublicKeyInfo для Ed25519, за ним идут 32 байта ключа
+    private static final byte[] X509_PREFIX = {0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00};
+    private static final ThreadLocal<Signature> SIGNATURE = ThreadLocal.withInitial(() -> newInstance(() -> Signature.getInstance(ALGORITHM)));
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> newInstance(() -> KeyFactory.getInstance(ALGORITHM)));
+
+    private Signatures() {}
+
+    public static KeyPair generateKeyPair() {
+        try {
+            return KeyPairGenerator.getInstance(ALGORITHM).generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Ed25519 is not available", e);
+        }
+    }
+
+    /**
+     * Ключ узла из файла [len:2][PKCS#8 закрытого ключа][открытый ключ:32]; если файла нет - создает его.
+     * Без постоянного ключа соседи не примут подписи узла после перезапуска (см. AccountKeys).
+     */
+    public static KeyPair loadOrCreate(Path file) throws IOException {
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                byte[] privateKey = new byte[in.readUnsignedShort()];
+                in.readFully(privateKey);
+                byte[] publicKey = new byte[PUBLIC_KEY_LENGTH];
+                in.readFully(publicKey);
+                return new KeyPair(publicKey(publicKey), KEY_FACTORY.get().generatePrivate(new PKCS8EncodedKeySpec(privateKey)));
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Corrupt key file " + file + ": " + e.getMessage(), e);
+            }
+        }
+        KeyPair keyPair = generateKeyPair();
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            byte[] privateKey = keyPair.getPrivate().getEncoded();
+            out.writeShort(privateKey.length);
+            out.write(privateKey);
+            out.write(rawPublicKey(keyPair.getPublic()));
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return keyPair;
+    }
+
+    /** Открытый ключ без заголовка X.509 (32 байта). */
+    public static byte[] rawPublicKey(PublicKey key) {
+        byte[] encoded = key.getEncoded();
+        return Arrays.copyOfRange(encoded, encoded.length - PUBLIC_KEY_LENGTH, encoded.length);
+    }
+
+    public static PublicKey publicKey(byte[] raw) throws GeneralSecurityException {
+        if (raw.length != PUBLIC_KEY_LENGTH) throw new GeneralSecurityException("Invalid public key length: " + raw.length);
+        byte[] encoded = Arrays.copyOf(X509_PREFIX, X509_PREFIX.length + PUBLIC_KEY_LENGTH);
+        System.arraycopy(raw, 0, encoded, X509_PREFIX.length, PUBLIC_KEY_LENGTH);
+        return KEY_FACTORY.get().generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    /** Подписанная копия транзакции. */
+    public static TransactionMessage sign(TransactionMessage txn, KeyPair keyPair) {
+        try {
+            Signature signature = SIGNATURE.get();
+            signature.initSign(keyPair.getPrivate());
+            signature.update(signedBytes(txn));
+            return new TransactionMessage(txn.getTxId(), txn.getSender(), txn.getRecipient(), txn.getAmount(), rawPublicKey(keyPair.getPublic()), signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign transaction: " + e.getMessage(), e);
+        }
+    }
+
+    /** Верна ли подпись транзакции ее ключом. Неподписанная транзакция неверна; кто владеет ключом, проверяет AccountKeys. */
+    public static boolean verify(TransactionMessage txn) {
+        if (!txn.isSigned()) return false;
+        try {
+            Signature signature = SIGNATURE.get();
+            signature.initVerify(publicKey(txn.getPublicKey()));
+            signature.update(signedBytes(txn));
+            return signature.verify(txn.getSignature());
+        } catch (GeneralSecurityException e) {
+            return false; // Некорректный ключ или подпись
+        }
+    }
+
+    static byte[] signedBytes(TransactionMessage txn) {
+        byte[] sender = txn.getSender().getBytes(StandardCharsets.UTF_8);
+        byte[] recipient = txn.getRecipient().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(DOMAIN.length + 12 + 2 + sender.length + 2 + recipient.length);
+        buf.put(DOMAIN).putLong(txn.getTxId()).putInt(txn.getAmount());
+        buf.putShort((short) sender.length).put(sender);
+        buf.putShort((short) recipient.length).put(recipient);
+        return buf.array();
+    }
+
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> T newInstance(Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Ed25519 is not available", e); // Обязателен начиная с JDK 15
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dev.Block.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Монотонный счетчик. LongAdder: потоки, увеличивающие его одновременно, не конкурируют за одну ячейку.
+ */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
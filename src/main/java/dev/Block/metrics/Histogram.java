@@ -0,0 +1,79 @@
+package dev.Block.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма с фиксированными границами корзин. record() - двоичный поиск по границам и
+ * увеличение LongAdder без блокировок и выделения памяти, поэтому ее можно вызывать на горячем пути.
+ * Значения хранятся в исходных единицах (например, наносекундах), при выводе умножаются на scale.
+ */
+public final class Histogram {
+
+    /** Границы задержек 10 мкс .. 10 с (ряд 1-2.5-5) в наносекундах. */
+    private static final long[] LATENCY_BOUNDS_NANOS = {
+            10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000,
+            100_000_000, 250_000_000, 500_000_000, 1_000_000_000, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private final long[] bounds; // Верхние границы (включительно), по возрастанию
+    private final double scale;
+    private final LongAdder[] buckets; // Последняя - все, что больше наибольшей границы (+Inf)
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram(long[] bounds, double scale) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) throw new IllegalArgumentException("bounds must be strictly increasing: " + Arrays.toString(bounds));
+        }
+        this.bounds = bounds.clone();
+        this.scale = scale;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /** Задержки: record() принимает наносекунды, вывод - в секундах. */
+    public static Histogram latency() {
+        return new Histogram(LATENCY_BOUNDS_NANOS, 1e-9);
+    }
+
+    /** Небольшие количества (например, число соседей): границы 0, 1, 2, 4 .. max. */
+    public static Histogram powersOfTwo(int max) {
+        int count = 2;
+        while ((1L << (count - 1)) < max) count++;
+        long[] bounds = new long[count];
+        for (int i = 1; i < count; i++) bounds[i] = 1L << (i - 1);
+        return new Histogram(bounds, 1);
+    }
+
+    public void record(long value) {
+        int index = Arrays.binarySearch(bounds, value);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) count += bucket.sum();
+        return count;
+    }
+
+    // --- Вывод ---
+
+    int getBucketCount() { return bounds.length; }
+
+    double getUpperBound(int bucket) { return bounds[bucket] * scale; }
+
+    /** Накопленные значения корзин (cumulative, как в Prometheus); последнее - общее число (+Inf). */
+    long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    double getScaledSum() { return sum.sum() * scale; }
+}
@@ -0,0 +1,165 @@
+package dev.Block.metrics;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Реестр метрик узла и их вывод в текстовом формате Prometheus (version 0.0.4).
+ * <ul>
+ *   <li>Счетчики (Counter) и гистограммы (Histogram) записываются на горячем пути без блокировок.</li>
+ *   <li>Датчики и счетчики-функции читают уже существующие значения (размер пула, AtomicLong компонентов)
+ *       только при запросе /metrics - их ведение ничего не стоит.</li>
+ *   <li>Collector выдает набор рядов, который меняется со временем (например, по одному на соединение).</li>
+ * </ul>
+ * Метки передаются парами имя, значение: registry.counter("x_total", "...", "peer", "bob").
+ */
+public final class MetricsRegistry {
+
+    public enum Type {
+        COUNTER, GAUGE, HISTOGRAM;
+
+        String exposition() { return name().toLowerCase(); }
+    }
+
+    /** Получатель значений от Collector. */
+    public interface Samples {
+        void add(double value, String... labels);
+    }
+
+    /** Ряды, вычисляемые при каждом запросе. */
+    public interface Collector {
+        void collect(Samples samples);
+    }
+
+    private static final class Series {
+        final String labels; // Готовая строка {a="b",...} или ""
+        final Object source; // Counter, DoubleSupplier или Histogram
+
+        Series(String labels, Object source) {
+            this.labels = labels;
+            this.source = source;
+        }
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final List<Series> series = new CopyOnWriteArrayList<>();
+        final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new LinkedHashMap<>(); // В порядке регистрации
+
+    // --- Регистрация ---
+
+    public Counter counter(String name, String help, String... labels) {
+        Counter counter = new Counter();
+        family(name, help, Type.COUNTER).series.add(new Series(formatLabels(labels), counter));
+        return counter;
+    }
+
+    /** Счетчик, значение которого ведет другой компонент (например, AtomicLong). */
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).series.add(new Series(formatLabels(labels), value));
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).series.add(new Series(formatLabels(labels), value));
+    }
+
+    public Histogram histogram(String name, String help, Histogram histogram, String... labels) {
+        family(name, help, Type.HISTOGRAM).series.add(new Series(formatLabels(labels), histogram));
+        return histogram;
+    }
+
+    /** Счетчики или датчики, набор рядов которых определяется при запросе. */
+    public void collector(String name, String help, Type type, Collector collector) {
+        if (type == Type.HISTOGRAM) throw new IllegalArgumentException("Collectors cannot produce histograms: " + name);
+        family(name, help, type).collectors.add(collector);
+    }
+
+    private synchronized Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (family.type != type) throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        return family;
+    }
+
+    // --- Вывод ---
+
+    /** Все метрики в текстовом формате Prometheus. */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        List<Family> snapshot;
+        synchronized (this) { snapshot = List.copyOf(families.values()); }
+        for (Family family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.exposition()).append('\n');
+            for (Series series : family.series) {
+                if (series.source instanceof Histogram) writeHistogram(out, family.name, series.labels, (Histogram) series.source);
+                else if (series.source instanceof Counter) writeSample(out, family.name, series.labels, ((Counter) series.source).get());
+                else writeSample(out, family.name, series.labels, ((DoubleSupplier) series.source).getAsDouble());
+            }
+            for (Collector collector : family.collectors) {
+                collector.collect((value, labels) -> writeSample(out, family.name, formatLabels(labels), value));
+            }
+        }
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] counts = histogram.cumulativeCounts();
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        for (int i = 0; i < counts.length; i++) {
+            String bound = i < histogram.getBucketCount() ? formatValue(histogram.getUpperBound(i)) : "+Inf";
+            out.append(name).append("_bucket").append(prefix).append("le=\"").append(bound).append("\"} ").append(counts[i]).append('\n');
+        }
+        writeSample(out, name + "_sum", labels, histogram.getScaledSum());
+        writeSample(out, name + "_count", labels, counts[counts.length - 1]);
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatLabels(String... labels) {
+        if (labels.length == 0) return "";
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name/value pairs, got " + labels.length + " strings");
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) out.append(',');
+            out.append(labels[i]).append("=\"");
+            String value = labels[i + 1] != null ? labels[i + 1] : "";
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') out.append('\\').append(c);
+                else if (c == '\n') out.append("\\n");
+                else out.append(c);
+            }
+            out.append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    static String formatValue(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        if (Math.abs(value) >= 1e-6 && Math.abs(value) < 1e15) return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString(); // 0.00001 вместо 1.0E-5
+        return Double.toString(value);
+    }
+}
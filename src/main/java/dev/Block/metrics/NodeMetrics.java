@@ -0,0 +1,129 @@
+package dev.Block.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import dev.Block.Peer;
+import dev.Block.network.CompactBlocks;
+import dev.Block.network.ConnectionManager;
+import dev.Block.network.Gossip;
+import dev.Block.network.PeerConnection;
+import dev.Block.network.VerificationPipeline;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Метрики узла: гистограммы, которые компоненты пишут по ходу работы (применение транзакций,
+ * ожидание журнала, охват рассылки, синхронизация, ожидание блокировок), и датчики, читающие
+ * состояние Peer при запросе /metrics (очереди, счетчики Gossip и ConnectionManager, байты по соединениям).
+ */
+public final class NodeMetrics {
+
+    /** Вид передачи состояния (метка kind). */
+    public enum SyncKind {
+        DELTA, SNAPSHOT, FULL;
+
+        String label() { return name().toLowerCase(); }
+    }
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final Histogram txApply;
+    private final Histogram durableWait;
+    private final Histogram relayFanout;
+    private final Histogram stateLockWait;
+    private final Histogram stripeLockWait;
+    private final Histogram blockLockWait;
+    private final Map<SyncKind, Histogram> syncSent;
+    private final Map<SyncKind, Histogram> syncReceived;
+
+    public NodeMetrics(Peer peer) {
+        txApply = registry.histogram("block_tx_apply_seconds", "Time to validate and apply one transaction to the state", Histogram.latency());
+        durableWait = registry.histogram("block_wal_durable_wait_seconds", "Time waiting for the write-ahead log to become durable before relaying", Histogram.latency());
+        relayFanout = registry.histogram("block_gossip_relay_peers", "Peers a transaction was relayed to (body or INV)", Histogram.powersOfTwo(64));
+        syncSent = syncHistograms("block_sync_send_seconds", "Time to send state to a peer");
+        syncReceived = syncHistograms("block_sync_receive_seconds", "Time from the first to the last message of state received from a peer");
+        String lockHelp = "Time spent waiting for a contended lock";
+        stateLockWait = registry.histogram("block_lock_wait_seconds", lockHelp, Histogram.latency(), "lock", "state");
+        stripeLockWait = registry.histogram("block_lock_wait_seconds", lockHelp, Histogram.latency(), "lock", "account_stripe");
+        blockLockWait = registry.histogram("block_lock_wait_seconds", lockHelp, Histogram.latency(), "lock", "chain");
+        registerState(peer);
+        registerConnections(peer);
+    }
+
+    private Map<SyncKind, Histogram> syncHistograms(String name, String help) {
+        Map<SyncKind, Histogram> histograms = new EnumMap<>(SyncKind.class);
+        for (SyncKind kind : SyncKind.values()) histograms.put(kind, registry.histogram(name, help, Histogram.latency(), "kind", kind.label()));
+        return histograms;
+    }
+
+    private void registerState(Peer peer) {
+        VerificationPipeline pipeline = peer.getVerificationPipeline();
+        Gossip gossip = peer.getGossip();
+        CompactBlocks compactBlocks = peer.getCompactBlocks();
+        ConnectionManager manager = peer.getConnectionManager();
+        registry.gauge("block_chain_height", "Height of the local chain tip", () -> peer.getChain().getHeight());
+        registry.gauge("block_ledger_entries", "Entries in the transaction ledger", () -> peer.getEngine().getLedgerSize());
+        registry.gauge("block_mempool_transactions", "Transactions waiting in the mempool", () -> peer.getMempool().size());
+        registry.gauge("block_verify_queue_depth", "Transactions waiting for signature verification or apply", pipeline::getQueueDepth);
+        registry.counter("block_signatures_total", "Transaction signatures checked", pipeline::getVerifiedCount, "result", "valid");
+        registry.counter("block_signatures_total", "Transaction signatures checked", pipeline::getInvalidCount, "result", "invalid");
+        registry.counter("block_duplicates_total", "Duplicate transactions dropped", peer::getDuplicatesDropped, "stage", "seen_set");
+        registry.counter("block_duplicates_total", "Duplicate transactions dropped", peer::getDuplicatesInLedger, "stage", "ledger");
+        registry.counter("block_gossip_bodies_pushed_total", "Transaction bodies sent without a request", gossip::getBodiesPushed);
+        registry.counter("block_gossip_ids_announced_total", "Transaction ids announced in INV", gossip::getIdsAnnounced);
+        registry.counter("block_gossip_bodies_requested_total", "Transaction bodies requested with GETDATA", gossip::getBodiesRequested);
+        registry.counter("block_gossip_bodies_served_total", "Transaction bodies sent in reply to GETDATA", gossip::getBodiesServed);
+        registry.counter("block_compact_announcements_total", "Block announcements (header and transaction ids) received", compactBlocks::getAnnouncements);
+        registry.counter("block_compact_rebuilt_total", "Announced blocks rebuilt from local transaction bodies", compactBlocks::getRebuiltLocally);
+        registry.counter("block_compact_bodies_requested_total", "Transaction bodies requested with GETDATA to complete announced blocks", compactBlocks::getBodiesRequested);
+        registry.gauge("block_connections", "Open peer connections", peer::getConnectionCount);
+        registry.gauge("block_known_addresses", "Peer addresses in the address book", manager::getKnownAddresses);
+        registry.counter("block_dials_total", "Outbound connection attempts", manager::getDials);
+        registry.counter("block_evictions_total", "Slow peers disconnected", manager::getEvictions);
+        registry.counter("block_log_dropped_total", "Log messages dropped because the console logger buffer was full", ConsoleLogger::getDropped);
+    }
+
+    private void registerConnections(Peer peer) {
+        perConnection(peer, "block_peer_received_bytes_total", "Bytes read from the peer", MetricsRegistry.Type.COUNTER, PeerConnection::getBytesReceived);
+        perConnection(peer, "block_peer_sent_bytes_total", "Bytes written to the peer", MetricsRegistry.Type.COUNTER, PeerConnection::getBytesSent);
+        perConnection(peer, "block_peer_inbound_queue_depth", "Messages read from the peer and not yet processed", MetricsRegistry.Type.GAUGE, connection -> connection.getInboundQueue().size());
+        perConnection(peer, "block_peer_outbound_queue_depth", "Messages queued for sending to the peer", MetricsRegistry.Type.GAUGE, PeerConnection::getOutboundQueueDepth);
+        perConnection(peer, "block_peer_dropped_messages_total", "Outbound messages dropped because the queue was full", MetricsRegistry.Type.COUNTER, PeerConnection::getDroppedMessages);
+        perConnection(peer, "block_peer_throttled_total", "Inbound messages delayed by rate limits", MetricsRegistry.Type.COUNTER, connection -> connection.getFlowControl().getThrottled());
+        perConnection(peer, "block_peer_rejected_total", "Inbound messages dropped by rate limits", MetricsRegistry.Type.COUNTER, connection -> connection.getFlowControl().getDropped());
+    }
+
+    private interface ConnectionValue {
+        double get(PeerConnection connection);
+    }
+
+    private void perConnection(Peer peer, String name, String help, MetricsRegistry.Type type, ConnectionValue value) {
+        registry.collector(name, help, type, samples -> {
+            for (PeerConnection connection : peer.getConnections()) {
+                samples.add(value.get(connection), "peer", connection.getPeerNickname(), "direction", connection.getDialAddress() != null ? "outbound" : "inbound");
+            }
+        });
+    }
+
+    // --- Запись ---
+
+    public void recordApply(long nanos) { txApply.record(nanos); }
+
+    public void recordDurableWait(long nanos) { durableWait.record(nanos); }
+
+    public void recordRelayFanout(int peers) { relayFanout.record(peers); }
+
+    public void recordSyncSent(SyncKind kind, long nanos) { syncSent.get(kind).record(nanos); }
+
+    public void recordSyncReceived(SyncKind kind, long nanos) { syncReceived.get(kind).record(nanos); }
+
+    public void recordStateLockWait(long nanos) { stateLockWait.record(nanos); }
+
+    public void recordStripeLockWait(long nanos) { stripeLockWait.record(nanos); }
+
+    public void recordBlockLockWait(long nanos) { blockLockWait.record(nanos); }
+
+    public MetricsRegistry getRegistry() { return registry; }
+
+    /** Текст для GET /metrics. */
+    public String scrape() { return registry.scrape(); }
+}
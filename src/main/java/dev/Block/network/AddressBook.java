@@ -0,0 +1,147 @@
+package dev.Block.network;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import dev.Block.network.protocol.AddressMessage;
+
+/**
+ * Известные адреса пиров (хост:порт, на котором пир принимает соединения) и история подключений к ним.
+ * Адреса приходят от /connect и от соседей (ADDR). После каждой неудачи или разрыва следующая попытка
+ * откладывается экспоненциально: base * 2^(failures-1), не больше max, плюс случайная добавка до 1/4,
+ * чтобы узлы не переподключались одновременно. Адрес, к которому ни разу не удалось подключиться,
+ * забывается после MAX_FAILURES попыток.
+ */
+public final class AddressBook {
+
+    private static final int MAX_FAILURES = 8;
+
+    /** Адрес пира. Изменяемые поля защищены блокировкой AddressBook. */
+    public static final class Entry {
+        private final String key;
+        private final String host;
+        private final int port;
+        private String nickname; // null - еще не подключались
+        private int failures;
+        private long nextAttemptMillis;
+        private long lastConnectedMillis; // 0 - ни разу
+
+        Entry(String key, String host, int port, String nickname) {
+            this.key = key;
+            this.host = host;
+            this.port = port;
+            this.nickname = nickname;
+        }
+
+        public String getKey() { return key; }
+
+        public String getHost() { return host; }
+
+        public int getPort() { return port; }
+
+        public synchronized String getNickname() { return nickname; }
+    }
+
+    private final int capacity;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public AddressBook(int capacity, long baseBackoffMillis, long maxBackoffMillis) {
+        this.capacity = capacity;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /** Ключ адреса: IP и порт, чтобы "localhost" и "127.0.0.1" не считались разными пирами. */
+    public static String key(String host, int port) {
+        try {
+            return InetAddress.getByName(host).getHostAddress() + ":" + port;
+        } catch (UnknownHostException e) {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * Добавляет адрес, если его еще нет (известному адресу обновляет неизвестный ник).
+     * @return true, если адрес новый.
+     */
+    public synchronized boolean add(String key, String host, int port, String nickname) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            synchronized (entry) { if (entry.nickname == null && nickname != null && !nickname.isEmpty()) entry.nickname = nickname; }
+            return false;
+        }
+        if (entries.size() >= capacity && !evictOne()) return false;
+        entries.put(key, new Entry(key, host, port, nickname == null || nickname.isEmpty() ? null : nickname));
+        return true;
+    }
+
+    // Освобождает место: сначала адрес с наибольшим числом неудач, затем самый старый без подключений
+    private boolean evictOne() {
+        Entry worst = null;
+        for (Entry entry : entries.values()) {
+            if (entry.lastConnectedMillis == 0 && (worst == null || entry.failures > worst.failures)) worst = entry;
+        }
+        if (worst == null) return false; // Все адреса проверены подключением - новый не нужен
+        entries.remove(worst.key);
+        return true;
+    }
+
+    /** Подключение удалось: сбрасывает счетчик неудач. */
+    public synchronized void onConnected(String key, String nickname) {
+        Entry entry = entries.get(key);
+        if (entry == null) return;
+        synchronized (entry) { entry.nickname = nickname; }
+        entry.failures = 0;
+        entry.lastConnectedMillis = System.currentTimeMillis();
+    }
+
+    /** Неудачное подключение или разрыв: откладывает следующую попытку. */
+    public synchronized void onFailure(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return;
+        entry.failures++;
+        if (entry.lastConnectedMillis == 0 && entry.failures >= MAX_FAILURES) { entries.remove(key); return; }
+        long backoff = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(entry.failures - 1, 20));
+        entry.nextAttemptMillis = System.currentTimeMillis() + backoff + ThreadLocalRandom.current().nextLong(backoff / 4 + 1);
+    }
+
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    /** До limit адресов, к которым пора подключаться: сначала с меньшим числом неудач, среди равных - случайно. */
+    public synchronized List<Entry> candidates(int limit, Predicate<Entry> skip) {
+        long now = System.currentTimeMillis();
+        List<Entry> ready = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.nextAttemptMillis <= now && !skip.test(entry)) ready.add(entry);
+        }
+        Collections.shuffle(ready, ThreadLocalRandom.current());
+        ready.sort(Comparator.comparingInt(entry -> entry.failures));
+        return ready.size() > limit ? new ArrayList<>(ready.subList(0, limit)) : ready;
+    }
+
+    /** До limit случайных адресов, к которым удавалось подключиться, для отправки соседу (ADDR). */
+    public synchronized List<AddressMessage.Entry> sample(int limit) {
+        List<AddressMessage.Entry> sample = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.lastConnectedMillis > 0) sample.add(new AddressMessage.Entry(entry.getNickname() != null ? entry.getNickname() : "", entry.host, entry.port));
+        }
+        Collections.shuffle(sample, ThreadLocalRandom.current());
+        return sample.size() > limit ? new ArrayList<>(sample.subList(0, limit)) : sample;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,167 @@
+package dev.Block.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.Block.Peer;
+import dev.Block.network.protocol.BlockAnnounceMessage;
+import dev.Block.network.protocol.InventoryMessage;
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Сборка блоков из объявлений BLOCK_ANNOUNCE (заголовок и id транзакций вместо тел).
+ * <ul>
+ *   <li>Тела берутся у себя (Peer.findTransactions: пул, кэш Gossip, недавние блоки цепочки) и из недавно
+ *       полученных TXN, которые еще проверяются: объявивший отправляет перед объявлением тела, о которых
+ *       мы по его KnownInventory не знаем (Peer.announceBlock), поэтому блок обычно собирается сразу.</li>
+ *   <li>Недостающие запрашиваются одним GETDATA у объявившего и приходят обычными TXN; onTransaction
+ *       забирает их до проверки SeenSet, поэтому подходит и тело, которое мы раньше отклонили.</li>
+ *   <li>Собранный блок обрабатывается как полученный целиком (Peer.processBlock).</li>
+ * </ul>
+ * Недособранный за PENDING_TIMEOUT блок забывается: следующее объявление этого блока (или его потомка
+ * и синхронизация) запросит тела заново.
+ */
+public final class CompactBlocks {
+
+    private static final int MAX_PENDING = 64; // Одновременно собираемых блоков
+    private static final long PENDING_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int RECENT_BODIES = 4096; // Недавно полученные TXN (еще в очереди проверки)
+
+    /** Блок, ждущий тела транзакций. */
+    private static final class PendingBlock {
+        final BlockAnnounceMessage announce;
+        final PeerConnection source;
+        final TransactionMessage[] transactions; // null - тело еще не получено
+        final long deadline;
+        int missing;
+
+        PendingBlock(BlockAnnounceMessage announce, PeerConnection source, TransactionMessage[] transactions, int missing, long deadline) {
+            this.announce = announce;
+            this.source = source;
+            this.transactions = transactions;
+            this.missing = missing;
+            this.deadline = deadline;
+        }
+    }
+
+    private final Peer peer;
+    private final Map<String, PendingBlock> pending = new LinkedHashMap<>(); // По хешу блока, в порядке объявления (под this)
+    private final Map<Long, List<PendingBlock>> waiting = new ConcurrentHashMap<>(); // id тела -> ждущие его блоки (изменяется под this)
+    private final Map<Long, TransactionMessage> recent = Collections.synchronizedMap(new LinkedHashMap<>(RECENT_BODIES * 4 / 3 + 1) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TransactionMessage> eldest) {
+            return size() > RECENT_BODIES;
+        }
+    });
+    private final AtomicLong announcements = new AtomicLong();
+    private final AtomicLong rebuiltLocally = new AtomicLong();
+    private final AtomicLong bodiesRequested = new AtomicLong();
+
+    public CompactBlocks(Peer peer) {
+        this.peer = peer;
+    }
+
+    /** BLOCK_ANNOUNCE: собирает блок из известных тел или запрашивает недостающие у объявившего. */
+    public void onAnnounce(PeerConnection source, BlockAnnounceMessage announce) {
+        String hash = announce.getHeader().getHashHex();
+        if (peer.getChain().contains(hash)) return; // Вернулся по другому пути
+        announcements.incrementAndGet();
+        long[] ids = announce.getTxIds();
+        for (long id : ids) source.getKnownInventory().add(id); // Не объявлять их источнику блока
+        TransactionMessage[] transactions = peer.findTransactions(ids);
+        long[] missing = new long[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (transactions[i] == null) transactions[i] = recent.get(ids[i]);
+            if (transactions[i] == null) missing[count++] = ids[i];
+        }
+        if (count == 0) {
+            rebuiltLocally.incrementAndGet();
+            peer.processBlock(announce.toBlock(Arrays.asList(transactions)), source);
+            return;
+        }
+        synchronized (this) {
+            expire(System.nanoTime());
+            if (pending.containsKey(hash)) return; // Уже запрошен у другого объявившего
+            if (pending.size() >= MAX_PENDING) remove(pending.values().iterator().next());
+            PendingBlock block = new PendingBlock(announce, source, transactions, count, System.nanoTime() + PENDING_TIMEOUT_NANOS);
+            pending.put(hash, block);
+            for (int i = 0; i < count; i++) waiting.computeIfAbsent(missing[i], id -> new ArrayList<>(1)).add(block);
+        }
+        source.sendMessage(InventoryMessage.getData(Arrays.copyOf(missing, count)));
+        bodiesRequested.addAndGet(count);
+    }
+
+    /**
+     * Пришло тело транзакции (TXN): запоминается для следующих объявлений и подставляется в ждущие его блоки,
+     * собранные блоки обрабатываются. Вызывается для каждой входящей TXN до Peer.processTransaction.
+     */
+    public void onTransaction(TransactionMessage txn) {
+        recent.put(txn.getTxId(), txn);
+        if (waiting.isEmpty()) return; // Обычный случай: блоков в сборке нет
+        List<PendingBlock> completed = null;
+        synchronized (this) {
+            List<PendingBlock> blocks = waiting.remove(txn.getTxId());
+            if (blocks == null) return;
+            for (PendingBlock block : blocks) {
+                long[] ids = block.announce.getTxIds();
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] == txn.getTxId() && block.transactions[i] == null) { block.transactions[i] = txn; block.missing--; }
+                }
+                if (block.missing == 0 && pending.remove(block.announce.getHeader().getHashHex()) != null) {
+                    if (completed == null) completed = new ArrayList<>(1);
+                    completed.add(block);
+                }
+            }
+        }
+        if (completed == null) return;
+        for (PendingBlock block : completed) peer.processBlock(block.announce.toBlock(Arrays.asList(block.transactions)), block.source);
+    }
+
+    /** Забывает блоки, тела которых не пришли вовремя. Вызывается под this. */
+    private void expire(long now) {
+        Iterator<PendingBlock> it = pending.values().iterator();
+        while (it.hasNext()) {
+            PendingBlock block = it.next();
+            if (now - block.deadline < 0) break; // Дальше - объявленные позже
+            it.remove();
+            unwait(block);
+        }
+    }
+
+    private void remove(PendingBlock block) {
+        pending.remove(block.announce.getHeader().getHashHex());
+        unwait(block);
+    }
+
+    private void unwait(PendingBlock block) {
+        long[] ids = block.announce.getTxIds();
+        for (int i = 0; i < ids.length; i++) {
+            if (block.transactions[i] != null) continue;
+            List<PendingBlock> blocks = waiting.get(ids[i]);
+            if (blocks == null) continue;
+            blocks.remove(block);
+            if (blocks.isEmpty()) waiting.remove(ids[i]);
+        }
+    }
+
+    /** Блоки в сборке (ждут тела). */
+    public synchronized int getPending() { return pending.size(); }
+
+    /** Принятые объявления блоков, которых нет в цепочке. */
+    public long getAnnouncements() { return announcements.get(); }
+
+    /** Блоки, собранные только из своих тел. */
+    public long getRebuiltLocally() { return rebuiltLocally.get(); }
+
+    /** Тела, запрошенные GETDATA для сборки блоков. */
+    public long getBodiesRequested() { return bodiesRequested.get(); }
+}
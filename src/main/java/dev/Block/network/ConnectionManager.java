@@ -0,0 +1,258 @@
+package dev.Block.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.Block.Peer;
+import dev.Block.PeerConfig;
+import dev.Block.network.protocol.AddressMessage;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Поддерживает сетку соединений без участия пользователя.
+ * <ul>
+ *   <li>Индексы соединений по нику и по адресу (хост:порт приема соединений) - проверка дубликатов за O(1).
+ *       Два соединения с одним пиром (оба узла подключились друг к другу одновременно) разрешаются одинаково
+ *       на обеих сторонах: остается соединение, инициированное узлом с меньшим ником.</li>
+ *   <li>Раз в TICK_MILLIS добирает исходящие соединения до targetOutbound из AddressBook; после неудачи или
+ *       разрыва адрес получает экспоненциальную задержку (см. AddressBook).</li>
+ *   <li>Адреса узнаются от соседей: после рукопожатия бинарные пиры обмениваются ADDR со своим портом
+ *       и частью адресной книги; новые адреса пересылаются остальным соседям.</li>
+ *   <li>Пир, который SLOW_TICKS проверок подряд не успевает читать (очередь исходящих почти полна или
+ *       растет число отброшенных сообщений), отключается.</li>
+ * </ul>
+ */
+public final class ConnectionManager {
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int SLOW_TICKS = 3;
+    private static final int MAX_SHARED_ADDRESSES = 32;
+    private static final int ADDRESS_BOOK_CAPACITY = 1024;
+
+    /** Состояние проверки медленного пира (только поток менеджера). */
+    private static final class Health {
+        long droppedMessages;
+        int slowTicks;
+    }
+
+    private final Peer peer;
+    private final PeerConfig config;
+    private final AddressBook addressBook;
+    private final Map<String, PeerConnection> byNickname = new ConcurrentHashMap<>();
+    private final Map<String, PeerConnection> byAddress = new ConcurrentHashMap<>();
+    private final Map<String, Long> dialing = new ConcurrentHashMap<>(); // Адрес -> время начала подключения
+    private final Map<PeerConnection, Health> health = new ConcurrentHashMap<>();
+    private final AtomicLong dials = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+    private volatile String ownAddress; // Свой адрес приема соединений, как его видят соседи
+
+    public ConnectionManager(Peer peer) {
+        this.peer = peer;
+        this.config = peer.getConfig();
+        this.addressBook = new AddressBook(ADDRESS_BOOK_CAPACITY, config.getConnectBackoffMillis(), config.getConnectBackoffMaxMillis());
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Connections-" + peer.getNickname());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    // --- Подключение ---
+
+    /** Подключение по команде пользователя: адрес запоминается и поддерживается дальше автоматически. */
+    public void connect(String host, int port) {
+        String key = AddressBook.key(host, port);
+        if (isOwnAddress(key)) {
+            ConsoleLogger.print("Cannot connect to self.");
+            return;
+        }
+        if (byAddress.containsKey(key) || dialing.containsKey(key)) {
+            ConsoleLogger.print("Already connected or connecting to " + host + ":" + port);
+            return;
+        }
+        addressBook.add(key, host, port, null);
+        dial(key, host, port);
+    }
+
+    private void dial(String key, String host, int port) {
+        if (dialing.putIfAbsent(key, System.currentTimeMillis()) != null) return;
+        dials.incrementAndGet();
+        peer.dial(host, port, key);
+    }
+
+    /** Подключение не установлено (до создания соединения). */
+    public void onDialFailed(String key) {
+        dialing.remove(key);
+        addressBook.onFailure(key);
+    }
+
+    private boolean isOwnAddress(String key) {
+        return key.equals(ownAddress) || key.equals(AddressBook.key("127.0.0.1", peer.getPort()));
+    }
+
+    // --- Регистрация соединений ---
+
+    /**
+     * Вызывается Peer после рукопожатия, до добавления в список активных.
+     * @return false, если соединение нужно закрыть (с самим собой, дубликат, превышен лимит).
+     */
+    public boolean register(PeerConnection connection) {
+        String nickname = connection.getPeerNickname();
+        String dialAddress = connection.getDialAddress();
+        if (nickname.equals(peer.getNickname())) {
+            ConsoleLogger.print("WARN: Connected to self via " + connection.getPeerInfo() + ". Closing.");
+            if (dialAddress != null) { ownAddress = dialAddress; addressBook.remove(dialAddress); }
+            return false;
+        }
+        if (dialAddress == null && peer.getConnectionCount() >= config.getMaxConnections()) {
+            ConsoleLogger.print("WARN: Connection limit (" + config.getMaxConnections() + ") reached. Rejecting " + connection.getPeerInfo() + ".");
+            return false;
+        }
+        PeerConnection existing = byNickname.putIfAbsent(nickname, connection);
+        if (existing != null && existing != connection) {
+            if (!preferred(connection, existing)) {
+                ConsoleLogger.print("Already connected to " + nickname + " via " + existing.getPeerInfo() + ". Closing duplicate " + connection.getPeerInfo() + ".");
+                return false;
+            }
+            ConsoleLogger.print("Replacing duplicate connection to " + nickname + ": keeping " + connection.getPeerInfo() + ".");
+            byNickname.put(nickname, connection);
+            existing.close();
+        }
+        if (dialAddress != null) {
+            byAddress.put(dialAddress, connection);
+            dialing.remove(dialAddress);
+            addressBook.onConnected(dialAddress, nickname);
+        }
+        health.put(connection, new Health());
+        return true;
+    }
+
+    // Из двух соединений с одним пиром обе стороны оставляют инициированное узлом с меньшим ником
+    private boolean preferred(PeerConnection candidate, PeerConnection existing) {
+        String lowest = peer.getNickname().compareTo(candidate.getPeerNickname()) < 0 ? peer.getNickname() : candidate.getPeerNickname();
+        return initiator(candidate).equals(lowest) && !initiator(existing).equals(lowest);
+    }
+
+    private String initiator(PeerConnection connection) {
+        return connection.getDialAddress() != null ? peer.getNickname() : connection.getPeerNickname();
+    }
+
+    /** Соединение закрыто (в том числе не завершив рукопожатие или отклоненное register). */
+    public void unregister(PeerConnection connection) {
+        byNickname.remove(connection.getPeerNickname(), connection);
+        health.remove(connection);
+        String listenAddress = connection.getListenAddress();
+        if (listenAddress != null) byAddress.remove(listenAddress, connection);
+        String dialAddress = connection.getDialAddress();
+        if (dialAddress == null) return;
+        byAddress.remove(dialAddress, connection);
+        dialing.remove(dialAddress);
+        PeerConnection replacement = byNickname.get(connection.getPeerNickname());
+        if (replacement == null && !dialAddress.equals(ownAddress)) addressBook.onFailure(dialAddress); // Задержка перед переподключением
+    }
+
+    public PeerConnection getConnection(String nickname) {
+        return byNickname.get(nickname);
+    }
+
+    // --- Обмен адресами ---
+
+    /** После рукопожатия: сообщает бинарному соседу свой порт и известные адреса. */
+    public void onConnected(PeerConnection connection) {
+        if (!connection.isBinaryProtocol()) return;
+        List<AddressMessage.Entry> entries = new ArrayList<>();
+        entries.add(new AddressMessage.Entry(peer.getNickname(), "", peer.getPort()));
+        for (AddressMessage.Entry entry : addressBook.sample(MAX_SHARED_ADDRESSES)) {
+            if (!entry.getNickname().equals(connection.getPeerNickname())) entries.add(entry);
+        }
+        connection.sendMessage(new AddressMessage(entries));
+    }
+
+    /** ADDR от соседа: запоминает адреса и пересылает новые остальным бинарным соседям. */
+    public void onAddresses(PeerConnection source, AddressMessage message) {
+        List<AddressMessage.Entry> learned = new ArrayList<>();
+        for (AddressMessage.Entry entry : message.getEntries()) {
+            if (entry.getPort() <= 0 || entry.getNickname().equals(peer.getNickname())) continue;
+            boolean own = entry.getHost().isEmpty(); // Сосед сообщает свой порт
+            String host = own ? source.getRemoteHost() : entry.getHost();
+            if (host == null) continue;
+            String key = AddressBook.key(host, entry.getPort());
+            if (isOwnAddress(key)) continue;
+            if (own) {
+                source.setListenAddress(key);
+                byAddress.putIfAbsent(key, source);
+            }
+            if (addressBook.add(key, host, entry.getPort(), entry.getNickname())) learned.add(new AddressMessage.Entry(entry.getNickname(), host, entry.getPort()));
+            if (own) addressBook.onConnected(key, entry.getNickname()); // Адрес живого соседа можно советовать другим
+        }
+        if (learned.isEmpty()) return;
+        AddressMessage relay = new AddressMessage(learned);
+        for (PeerConnection connection : peer.getConnections()) {
+            if (connection != source && connection.isBinaryProtocol()) connection.sendMessage(relay);
+        }
+    }
+
+    // --- Периодическое обслуживание ---
+
+    private void tick() {
+        try {
+            evictSlowPeers();
+            fillOutbound();
+        } catch (Exception e) {
+            ConsoleLogger.print("ERROR [" + peer.getNickname() + "]: Connection manager tick failed: " + e.getMessage());
+        }
+    }
+
+    private void fillOutbound() {
+        int outbound = dialing.size();
+        for (PeerConnection connection : peer.getConnections()) if (connection.getDialAddress() != null) outbound++;
+        int missing = config.getTargetOutbound() - outbound;
+        if (missing <= 0 || peer.getConnectionCount() >= config.getMaxConnections()) return;
+        List<AddressBook.Entry> candidates = addressBook.candidates(missing, entry -> {
+            String nickname = entry.getNickname();
+            return byAddress.containsKey(entry.getKey()) || dialing.containsKey(entry.getKey()) || isOwnAddress(entry.getKey())
+                    || (nickname != null && (nickname.equals(peer.getNickname()) || byNickname.containsKey(nickname)));
+        });
+        for (AddressBook.Entry entry : candidates) dial(entry.getKey(), entry.getHost(), entry.getPort());
+    }
+
+    private void evictSlowPeers() {
+        int limit = config.getOutboundQueueCapacity() * 9 / 10;
+        for (PeerConnection connection : peer.getConnections()) {
+            Health state = health.get(connection);
+            if (state == null) continue;
+            long dropped = connection.getDroppedMessages();
+            int depth = connection.getOutboundQueueDepth();
+            boolean slow = dropped > state.droppedMessages || depth >= limit;
+            state.droppedMessages = dropped;
+            state.slowTicks = slow ? state.slowTicks + 1 : 0;
+            if (state.slowTicks < SLOW_TICKS) continue;
+            ConsoleLogger.print("WARN: Evicting slow peer " + connection.getPeerInfo() + " (outbound queue " + depth + ", dropped " + dropped + " message(s)).");
+            evictions.incrementAndGet();
+            connection.close();
+        }
+    }
+
+    // --- Статистика ---
+
+    public int getKnownAddresses() { return addressBook.size(); }
+
+    public long getDials() { return dials.get(); }
+
+    public long getEvictions() { return evictions.get(); }
+}
@@ -0,0 +1,92 @@
+package dev.Block.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.Block.PeerConfig;
+import dev.Block.network.protocol.BlockAnnounceMessage;
+import dev.Block.network.protocol.BlockMessage;
+import dev.Block.network.protocol.InventoryMessage;
+import dev.Block.network.protocol.Message;
+
+/**
+ * Ограничения скорости входящих сообщений одного пира (по ведру токенов на категорию).
+ * <ul>
+ *   <li>Транзакции: TXN - 1 токен, BLOCK и BLOCK_ANNOUNCE - по числу транзакций (подписи каждой проверяются),
+ *       GETDATA - по числу запрошенных тел.
+ *       При нехватке обработка задерживается: очередь входящих заполняется, и чтение сокета
+ *       приостанавливается (см. InboundQueue) - быстрый отправитель упирается в TCP.</li>
+ *   <li>REQ_SYNC: каждый запрос - отправка состояния целиком; сверх лимита запросы отбрасываются.</li>
+ *   <li>Служебные (INV, ADDR, PEER_JOINED, CHAT, запросы сравнения состояний): задерживаются,
+ *       запросы STATE_* сверх лимита отбрасываются.</li>
+ * </ul>
+ * Ответы на наши запросы (SYNC_*, STATE_NODES, STATE_BUCKETS) не ограничиваются.
+ * Вызывается только потоком, обрабатывающим очередь входящих соединения.
+ */
+public final class FlowControl {
+
+    private final TokenBucket transactions; // null - без ограничения
+    private final TokenBucket syncRequests;
+    private final TokenBucket control;
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public FlowControl(PeerConfig config) {
+        this.transactions = bucket(config.getRateTransactions(), config.getRateTransactions());
+        this.syncRequests = bucket(config.getRateSyncPerMinute() / 60.0, Math.max(1, config.getRateSyncPerMinute() / 3));
+        this.control = bucket(config.getRateControl(), config.getRateControl());
+    }
+
+    private static TokenBucket bucket(double ratePerSecond, double burst) {
+        return ratePerSecond > 0 ? new TokenBucket(ratePerSecond, Math.max(1, burst)) : null;
+    }
+
+    /**
+     * Ждет, пока сообщение укладывается в лимит пира.
+     * @return false, если сообщение нужно отбросить.
+     */
+    public boolean admit(Message message) throws InterruptedException {
+        switch (message.getType()) {
+            case TXN: return throttle(transactions, 1);
+            case BLOCK: return throttle(transactions, Math.max(1, ((BlockMessage) message).getBlock().getTransactions().size()));
+            case BLOCK_ANNOUNCE: return throttle(transactions, Math.max(1, ((BlockAnnounceMessage) message).getTxIds().length));
+            case GETDATA: return throttle(transactions, Math.max(1, ((InventoryMessage) message).getIds().length));
+            case REQ_SYNC: return dropIfExhausted(syncRequests);
+            case STATE_ROOT:
+            case STATE_NODES_REQ:
+            case STATE_BUCKETS_REQ: return dropIfExhausted(control);
+            case INV:
+            case ADDR:
+            case PEER_JOINED:
+            case CHAT: return throttle(control, 1);
+            default: return true;
+        }
+    }
+
+    private boolean throttle(TokenBucket bucket, int cost) throws InterruptedException {
+        if (bucket == null) return true;
+        long waitNanos = bucket.reserve(cost);
+        if (waitNanos > 0) {
+            throttled.incrementAndGet();
+            throttledNanos.addAndGet(waitNanos);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    private boolean dropIfExhausted(TokenBucket bucket) {
+        if (bucket == null || bucket.tryAcquire(1)) return true;
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /** Сообщений, обработка которых была задержана. */
+    public long getThrottled() { return throttled.get(); }
+
+    /** Суммарная задержка обработки, мс. */
+    public long getThrottledMillis() { return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()); }
+
+    /** Сообщений, отброшенных сверх лимита. */
+    public long getDropped() { return dropped.get(); }
+}
@@ -0,0 +1,238 @@
+package dev.Block.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.Block.Peer;
+import dev.Block.network.protocol.InventoryMessage;
+import dev.Block.network.protocol.TransactionMessage;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Рассылка транзакций вместо отправки тела всем соседям.
+ * <ul>
+ *   <li>Соседям, которые уже знают транзакцию (KnownInventory соединения), ничего не отправляется.</li>
+ *   <li>Тело сразу получают fanout случайных бинарных соседей и все старые текстовые узлы (у них нет INV).</li>
+ *   <li>Остальным бинарным соседям отправляется только id: INV копятся по соединению и уходят пачкой
+ *       раз в flushMillis (или сразу при MAX_IDS). Получатель запрашивает GETDATA только неизвестные
+ *       ему id и только у одного объявившего; если тело не пришло за REQUEST_TIMEOUT - у следующего.</li>
+ * </ul>
+ * Так каждый узел получает тело транзакции, как правило, один раз, а id (8 байт) - по числу соседей.
+ * На GETDATA отвечаем из кэша недавно разосланных тел, а вытесненные из него и тела транзакций
+ * объявленных блоков (см. CompactBlocks) берем из пула и недавних блоков (Peer.findTransactions).
+ */
+public final class Gossip {
+
+    private static final int MAX_IDS = 1024; // id в одном INV/GETDATA
+    private static final int BODY_CACHE = 16_384; // Недавно разосланные тела для ответа на GETDATA
+    private static final long REQUEST_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** Запрошенное тело: у кого запрошено и кто еще объявлял этот id. */
+    private static final class Request {
+        PeerConnection from;
+        long deadline;
+        final ArrayDeque<PeerConnection> announcers = new ArrayDeque<>(2);
+
+        Request(PeerConnection from, long deadline) {
+            this.from = from;
+            this.deadline = deadline;
+        }
+    }
+
+    /** Накопленные для соединения id, еще не отправленные в INV. */
+    private static final class PendingIds {
+        long[] ids = new long[16];
+        int count;
+
+        synchronized long[] add(long id) {
+            if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+            ids[count++] = id;
+            return count >= MAX_IDS ? drain() : null;
+        }
+
+        synchronized long[] drain() {
+            if (count == 0) return null;
+            long[] drained = Arrays.copyOf(ids, count);
+            count = 0;
+            return drained;
+        }
+    }
+
+    private final Peer peer;
+    private final int fanout;
+    private final ScheduledExecutorService scheduler;
+    private final Map<PeerConnection, PendingIds> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Request> requests = new ConcurrentHashMap<>();
+    private final Map<Long, TransactionMessage> bodies = Collections.synchronizedMap(new LinkedHashMap<>(BODY_CACHE * 4 / 3 + 1) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TransactionMessage> eldest) {
+            return size() > BODY_CACHE;
+        }
+    });
+    private final AtomicLong bodiesPushed = new AtomicLong();
+    private final AtomicLong idsAnnounced = new AtomicLong();
+    private final AtomicLong bodiesRequested = new AtomicLong();
+    private final AtomicLong bodiesServed = new AtomicLong();
+
+    public Gossip(Peer peer, int fanout, long flushMillis) {
+        this.peer = peer;
+        this.fanout = fanout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Gossip-" + peer.getNickname());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Рассылает примененную транзакцию соседям, кроме источника (null - своя транзакция).
+     * sendMessage() только ставит сообщение в очередь соединения.
+     * @return число соседей, которым отправлено тело или id.
+     */
+    public int relay(TransactionMessage txn, PeerConnection source) {
+        long id = txn.getTxId();
+        bodies.put(id, txn);
+        List<PeerConnection> candidates = new ArrayList<>();
+        int reached = 0; // Текстовые узлы
+        for (PeerConnection handler : peer.getConnections()) {
+            if (handler == source || !handler.getKnownInventory().add(id)) continue; // Уже знает или сейчас узнает
+            if (handler.isBinaryProtocol()) {
+                candidates.add(handler);
+            } else {
+                handler.sendMessage(txn);
+                bodiesPushed.incrementAndGet();
+                reached++;
+            }
+        }
+        Collections.shuffle(candidates, ThreadLocalRandom.current());
+        for (int i = 0; i < candidates.size(); i++) {
+            PeerConnection handler = candidates.get(i);
+            if (i < fanout) {
+                handler.sendMessage(txn);
+                bodiesPushed.incrementAndGet();
+            } else {
+                long[] full = pending.computeIfAbsent(handler, h -> new PendingIds()).add(id);
+                if (full != null) sendInventory(handler, full);
+            }
+        }
+        return reached + candidates.size();
+    }
+
+    /** Получено тело транзакции от соседа: он ее знает, запрос (если был) выполнен. */
+    public void onTransaction(PeerConnection source, long txId) {
+        source.getKnownInventory().add(txId);
+        requests.remove(txId);
+    }
+
+    /** INV: запрашиваем у объявившего тела, которых у нас нет и которые еще не запрошены у другого соседа. */
+    public void onInventory(PeerConnection source, long[] ids) {
+        long deadline = System.nanoTime() + REQUEST_TIMEOUT_NANOS;
+        long[] wanted = new long[ids.length];
+        int count = 0;
+        for (long id : ids) {
+            source.getKnownInventory().add(id);
+            if (peer.hasTransaction(id)) continue;
+            Request request = requests.putIfAbsent(id, new Request(source, deadline));
+            if (request == null) {
+                wanted[count++] = id;
+            } else {
+                synchronized (request) { if (request.from != source) request.announcers.add(source); }
+            }
+        }
+        if (count == 0) return;
+        source.sendMessage(InventoryMessage.getData(Arrays.copyOf(wanted, count)));
+        bodiesRequested.addAndGet(count);
+    }
+
+    /** GETDATA: отправляем известные тела; забытые id пропускаются - сосед получит тело у другого объявившего. */
+    public void onGetData(PeerConnection source, long[] ids) {
+        TransactionMessage[] found = peer.findTransactions(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (found[i] == null) continue;
+            source.getKnownInventory().add(ids[i]);
+            source.sendMessage(found[i]);
+            bodiesServed.incrementAndGet();
+        }
+    }
+
+    /** Тело из кэша недавно разосланных или null. */
+    public TransactionMessage getBody(long txId) {
+        return bodies.get(txId);
+    }
+
+    /** Соединение закрыто: накопленные для него INV больше не нужны. */
+    public void forget(PeerConnection handler) {
+        pending.remove(handler);
+    }
+
+    private void flush() {
+        try {
+            for (Map.Entry<PeerConnection, PendingIds> entry : pending.entrySet()) {
+                long[] ids = entry.getValue().drain();
+                if (ids != null) sendInventory(entry.getKey(), ids);
+            }
+            retryExpiredRequests();
+        } catch (Exception e) {
+            ConsoleLogger.print("ERROR [" + peer.getNickname() + "]: Gossip flush failed: " + e.getMessage());
+        }
+    }
+
+    private void sendInventory(PeerConnection handler, long[] ids) {
+        handler.sendMessage(InventoryMessage.inv(ids));
+        idsAnnounced.addAndGet(ids.length);
+    }
+
+    /** Тело не пришло вовремя: запрашиваем у следующего объявившего соседа, если он еще подключен. */
+    private void retryExpiredRequests() {
+        long now = System.nanoTime();
+        List<PeerConnection> connected = peer.getConnections();
+        Map<PeerConnection, List<Long>> retries = new HashMap<>();
+        Iterator<Map.Entry<Long, Request>> it = requests.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Request> entry = it.next();
+            Request request = entry.getValue();
+            synchronized (request) {
+                if (now - request.deadline < 0) continue;
+                PeerConnection next = request.announcers.poll();
+                while (next != null && !connected.contains(next)) next = request.announcers.poll();
+                if (next == null || peer.hasTransaction(entry.getKey())) { it.remove(); continue; }
+                request.from = next;
+                request.deadline = now + REQUEST_TIMEOUT_NANOS;
+            }
+            retries.computeIfAbsent(request.from, h -> new ArrayList<>()).add(entry.getKey());
+        }
+        retries.forEach((handler, ids) -> {
+            handler.sendMessage(InventoryMessage.getData(ids.stream().mapToLong(Long::longValue).toArray()));
+            bodiesRequested.addAndGet(ids.size());
+        });
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public int getFanout() { return fanout; }
+
+    /** Тела, отправленные без запроса (fanout и текстовые узлы). */
+    public long getBodiesPushed() { return bodiesPushed.get(); }
+
+    public long getIdsAnnounced() { return idsAnnounced.get(); }
+
+    public long getBodiesRequested() { return bodiesRequested.get(); }
+
+    public long getBodiesServed() { return bodiesServed.get(); }
+}
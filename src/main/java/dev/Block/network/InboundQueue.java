@@ -0,0 +1,92 @@
+package dev.Block.network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import dev.Block.network.protocol.Message;
+
+/**
+ * Ограниченная очередь входящих сообщений соединения между чтением сокета и обработкой.
+ * Сообщения обрабатываются по одному в порядке получения задачей на executor, которая запускается,
+ * когда в очереди появляются сообщения, и завершается, когда очередь пуста.
+ * <p>
+ * Заполненная очередь останавливает чтение: блокирующий транспорт ждет в put(), неблокирующий
+ * снимает интерес к чтению (pauseIfFull) и возобновляет его в onResume, когда очередь освободится наполовину.
+ */
+public final class InboundQueue {
+
+    private final ArrayBlockingQueue<Message> queue;
+    private final int resumeBelow;
+    private final Executor executor;
+    private final Consumer<Message> handler;
+    private final Runnable onResume;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final AtomicLong pauses = new AtomicLong();
+    private volatile boolean closed;
+
+    public InboundQueue(int capacity, Executor executor, Consumer<Message> handler, Runnable onResume) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.resumeBelow = Math.max(1, capacity / 2);
+        this.executor = executor;
+        this.handler = handler;
+        this.onResume = onResume;
+    }
+
+    /** Блокирующий транспорт: ждет места в очереди (чтение сокета останавливается). */
+    public void put(Message message) throws InterruptedException {
+        if (closed) return;
+        if (queue.remainingCapacity() == 0 && paused.compareAndSet(false, true)) pauses.incrementAndGet(); // Снимается при освобождении половины
+        queue.put(message);
+        scheduleDrain();
+    }
+
+    /** Неблокирующий транспорт: место должно быть проверено pauseIfFull(). */
+    public boolean offer(Message message) {
+        if (closed) return false;
+        boolean added = queue.offer(message);
+        scheduleDrain();
+        return added;
+    }
+
+    /**
+     * Если очередь заполнена, отмечает чтение приостановленным: когда место освободится, будет вызван onResume.
+     * @return true, если читать дальше нельзя.
+     */
+    public boolean pauseIfFull() {
+        if (queue.remainingCapacity() > 0) return false;
+        paused.set(true);
+        if (queue.remainingCapacity() > 0 && paused.compareAndSet(true, false)) return false; // Освободилось в промежутке
+        pauses.incrementAndGet();
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) executor.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            Message message;
+            while (!closed && (message = queue.poll()) != null) {
+                if (queue.size() < resumeBelow && paused.compareAndSet(true, false)) onResume.run();
+                handler.accept(message);
+            }
+            draining.set(false);
+            if (closed || queue.isEmpty() || !draining.compareAndSet(false, true)) return; // Иначе сообщение пришло после последнего poll
+        }
+    }
+
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    public int size() { return queue.size(); }
+
+    /** Сколько раз чтение сокета останавливалось из-за заполненной очереди. */
+    public long getPauses() { return pauses.get(); }
+}
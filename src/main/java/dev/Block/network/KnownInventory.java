@@ -0,0 +1,38 @@
+package dev.Block.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Транзакции, о которых пир на другом конце соединения уже знает: он прислал нам тело или INV,
+ * либо мы уже отправили ему тело или INV. Таким пирам транзакция повторно не отправляется.
+ * Ограничено по размеру: при переполнении забываются самые старые id (в худшем случае пир
+ * получит лишнюю копию и отбросит ее по своему SeenSet).
+ */
+public final class KnownInventory {
+
+    private final LinkedHashMap<Long, Boolean> ids;
+
+    public KnownInventory(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.ids = new LinkedHashMap<>(Math.min(capacity, 1 << 16) * 4 / 3 + 1) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** @return true, если id не был известен (и теперь отмечен). */
+    public synchronized boolean add(long id) {
+        return ids.put(id, Boolean.TRUE) == null;
+    }
+
+    public synchronized boolean contains(long id) {
+        return ids.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,96 @@
+package dev.Block.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.Block.network.protocol.Message;
+
+/**
+ * Ограниченный кольцевой буфер исходящих сообщений: много производителей (потоки рассылки),
+ * один потребитель (писатель соединения). Без блокировок: слот захватывается CAS по хвосту,
+ * готовность слота публикуется его номером последовательности.
+ * Потребитель может "заснуть" в awaitMessages() и будится первым же offer().
+ */
+final class OutboundRingBuffer {
+
+    private final Message[] items;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // Пишет только потребитель
+
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+
+    OutboundRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1; // Степень двойки >= requested
+        this.items = new Message[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) sequences.set(i, i);
+    }
+
+    /** Добавляет сообщение; false, если буфер заполнен. Потокобезопасен. */
+    boolean offer(Message message) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[index] = message;
+                    // Публикуем слот потребителю. Volatile-запись (не lazySet): она должна быть упорядочена
+                    // перед чтением consumerParked, иначе потребитель, только что проверивший буфер, не будет разбужен
+                    sequences.set(index, position + 1);
+                    if (consumerParked) LockSupport.unpark(consumer);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false; // Слот еще не освобожден потребителем - буфер полон
+            } else {
+                position = tail.get(); // Другой производитель занял слот
+            }
+        }
+    }
+
+    /** Забирает следующее сообщение или null. Только поток-потребитель. */
+    Message poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) return null;
+        Message message = items[index];
+        items[index] = null;
+        sequences.lazySet(index, position + items.length); // Слот снова доступен производителям
+        head = position + 1;
+        return message;
+    }
+
+    /** Ждет появления сообщений не дольше timeoutNanos. Только поток-потребитель. */
+    void awaitMessages(long timeoutNanos) {
+        consumer = Thread.currentThread();
+        consumerParked = true;
+        try {
+            if (isEmpty()) LockSupport.parkNanos(this, timeoutNanos); // Повторная проверка после флага: offer() разбудит
+        } finally {
+            consumerParked = false;
+        }
+    }
+
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+    void clear() {
+        while (poll() != null) { /* drain */ }
+    }
+}
@@ -0,0 +1,322 @@
+package dev.Block.network;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.Block.Peer;
+import dev.Block.metrics.NodeMetrics;
+import dev.Block.network.protocol.AddressMessage;
+import dev.Block.network.protocol.BalanceEntryMessage;
+import dev.Block.network.protocol.BlockAnnounceMessage;
+import dev.Block.network.protocol.BlockMessage;
+import dev.Block.network.protocol.ChatMessage;
+import dev.Block.network.protocol.DeltaStartMessage;
+import dev.Block.network.protocol.InventoryMessage;
+import dev.Block.network.protocol.LedgerEntryMessage;
+import dev.Block.network.protocol.LedgerRecordMessage;
+import dev.Block.network.protocol.Message;
+import dev.Block.network.protocol.PeerJoinedMessage;
+import dev.Block.network.protocol.SnapshotChunkMessage;
+import dev.Block.network.protocol.SnapshotStartMessage;
+import dev.Block.network.protocol.StateBucketsMessage;
+import dev.Block.network.protocol.StateNodesMessage;
+import dev.Block.network.protocol.StateQueryMessage;
+import dev.Block.network.protocol.StateRootMessage;
+import dev.Block.network.protocol.SyncRequestMessage;
+import dev.Block.network.protocol.TransactionMessage;
+import dev.Block.state.TransactionLedger;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Общая часть P2P соединения, не зависящая от транспорта:
+ * диспетчеризация входящих сообщений в Peer и сборка состояния при синхронизации.
+ * Транспорт (блокирующий PeerConnectionHandler или неблокирующий NIO) отвечает
+ * за рукопожатие, чтение кадров и отправку сообщений.
+ * <p>
+ * Транспорт кладет прочитанные сообщения в ограниченную очередь inbound; они проходят ограничения
+ * скорости (FlowControl) и обрабатываются handleMessage() по одному, в порядке получения.
+ */
+public abstract class PeerConnection {
+
+    protected final Peer parentPeer; // Ссылка на основной объект Peer
+    protected volatile String peerNickname = "UNKNOWN";
+    protected volatile boolean binaryProtocol; // Устанавливается транспортом после согласования протокола
+    private final String dialAddress; // Ключ AddressBook для исходящего соединения, null - входящее
+    private volatile String listenAddress; // Адрес приема соединений пира (из его ADDR)
+
+    // Флаги и буферы для сборки состояния при синхронизации
+    private boolean isSyncingBalances = false;
+    private boolean isSyncingLedger = false;
+    private Map<String, Long> syncBalancesBuffer = new ConcurrentHashMap<>();
+    private TransactionLedger syncLedgerBuffer; // Пустой реестр из Peer.createSyncLedger(), после применения становится текущим
+    private int syncLedgerRejected; // Дубликаты и строки неверного формата в текущей синхронизации
+    // Инкрементальная синхронизация: записи применяются по мере получения
+    private boolean isSyncingDelta = false;
+    private int deltaAccountsAdded, deltaApplied, deltaKnown, deltaRejected;
+    private long syncStartedNanos; // Начало приема дельты или полного состояния (метрики)
+    private final StateVerifier stateVerifier; // Сравнение состояний по деревьям Меркла
+    private final KnownInventory knownInventory; // Транзакции, которые пир уже знает (см. Gossip)
+    private final FlowControl flowControl; // Лимиты скорости входящих сообщений
+    protected final InboundQueue inbound; // Прочитанные, но еще не обработанные сообщения
+    private final AtomicLong bytesReceived = new AtomicLong(); // Считает транспорт
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    protected PeerConnection(Peer parentPeer) {
+        this(parentPeer, null);
+    }
+
+    protected PeerConnection(Peer parentPeer, String dialAddress) {
+        this.parentPeer = parentPeer;
+        this.dialAddress = dialAddress;
+        this.stateVerifier = new StateVerifier(parentPeer, this);
+        this.knownInventory = new KnownInventory(parentPeer.getConfig().getGossipKnownCapacity());
+        this.flowControl = new FlowControl(parentPeer.getConfig());
+        this.inbound = new InboundQueue(parentPeer.getConfig().getInboundQueueCapacity(), parentPeer.getConnectionExecutor(), this::dispatch, this::resumeReading);
+    }
+
+    /**
+     * Отправляет сообщение этому пиру. Может вызываться из любого потока и не блокирует его.
+     * При переполненной очереди отправки восстановимое сообщение (MessageType.isDroppable) отбрасывается,
+     * а ради остальных соединение закрывается.
+     */
+    public abstract void sendMessage(Message message);
+
+    /**
+     * Отправка, которая ждет места в очереди вместо отбрасывания сообщения
+     * (поток синхронизации состояния). По умолчанию совпадает с sendMessage().
+     */
+    public void sendMessageBlocking(Message message) {
+        sendMessage(message);
+    }
+
+    /** Закрывает соединение и удаляет его из списка активных у Peer. */
+    public abstract void close();
+
+    public abstract String getPeerInfo();
+
+    public String getPeerNickname() {
+        return peerNickname;
+    }
+
+    /** Согласован ли бинарный протокол (false - старый текстовый узел, которому не отправляются блоки). */
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    public KnownInventory getKnownInventory() {
+        return knownInventory;
+    }
+
+    /** Адрес, по которому мы подключились (см. AddressBook.key); null для входящего соединения. */
+    public String getDialAddress() {
+        return dialAddress;
+    }
+
+    /** IP пира на другом конце соединения. */
+    public abstract String getRemoteHost();
+
+    public String getListenAddress() {
+        return listenAddress;
+    }
+
+    public void setListenAddress(String listenAddress) {
+        this.listenAddress = listenAddress;
+    }
+
+    /** Сообщений в очереди отправки (ConnectionManager отключает пиров, которые не успевают читать). */
+    public int getOutboundQueueDepth() {
+        return 0;
+    }
+
+    /** Сообщений, отброшенных из-за переполнения очереди отправки. */
+    public long getDroppedMessages() {
+        return 0;
+    }
+
+    /** Неблокирующий транспорт: возобновить чтение, приостановленное заполненной очередью inbound. */
+    protected void resumeReading() {
+    }
+
+    public FlowControl getFlowControl() {
+        return flowControl;
+    }
+
+    public InboundQueue getInboundQueue() {
+        return inbound;
+    }
+
+    /** Байт прочитано из сокета (включая рукопожатие). */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /** Байт записано в сокет. */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    protected void countReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    protected void countSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    // Задача очереди inbound: лимит скорости, затем обработка
+    private void dispatch(Message message) {
+        try {
+            if (!flowControl.admit(message)) {
+                long dropped = flowControl.getDropped();
+                if (dropped == 1 || dropped % 100 == 0) ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Rate limit exceeded by " + peerNickname + ", dropped " + dropped + " message(s) so far (last: " + message.getType() + ").");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        handleMessage(message);
+    }
+
+    // Обработка одного входящего сообщения по его типу
+    protected void handleMessage(Message message) {
+        try { // Обертка для обработки ошибок отдельного сообщения
+            switch (message.getType()) {
+                case TXN: {
+                    TransactionMessage txn = (TransactionMessage) message;
+                    parentPeer.getGossip().onTransaction(this, txn.getTxId());
+                    parentPeer.getCompactBlocks().onTransaction(txn); // Тело для собираемого блока - до проверки SeenSet
+                    parentPeer.processTransaction(txn, this);
+                    break;
+                }
+                case ADDR:
+                    parentPeer.getConnectionManager().onAddresses(this, (AddressMessage) message);
+                    break;
+                case INV:
+                    parentPeer.getGossip().onInventory(this, ((InventoryMessage) message).getIds());
+                    break;
+                case GETDATA:
+                    parentPeer.getGossip().onGetData(this, ((InventoryMessage) message).getIds());
+                    break;
+                case REQ_SYNC:
+                    parentPeer.sendState(this, (SyncRequestMessage) message);
+                    break;
+                case PEER_JOINED: {
+                    PeerJoinedMessage joined = (PeerJoinedMessage) message;
+                    parentPeer.learnAboutPeer(joined.getNickname(), joined.getInitialBalance(), joined.getPublicKey(), this); // Обработка и ретрансляция
+                    break;
+                }
+                // --- Обработка сообщений синхронизации ---
+                case SYNC_BAL_START:
+                    isSyncingBalances = true; syncBalancesBuffer.clear(); syncStartedNanos = System.nanoTime();
+                    ConsoleLogger.print("Receiving balance state from " + peerNickname + "...");
+                    break;
+                case SYNC_BAL_ENTRY:
+                    if (isSyncingDelta) { BalanceEntryMessage entry = (BalanceEntryMessage) message; if (parentPeer.applySyncedAccount(entry.getNickname(), entry.getBalance(), entry.getPublicKey())) deltaAccountsAdded++; }
+                    else if (isSyncingBalances) { BalanceEntryMessage entry = (BalanceEntryMessage) message; syncBalancesBuffer.put(entry.getNickname(), entry.getBalance()); }
+                    else { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received SYNC_BAL_ENTRY from " + peerNickname + " while not syncing balances."); }
+                    break;
+                case SYNC_BAL_END:
+                    isSyncingBalances = false;
+                    ConsoleLogger.print("Balance state received from " + peerNickname + " (" + syncBalancesBuffer.size() + " entries).");
+                    break; // Состояние применяется после реестра, который всегда идет следом
+                case SYNC_LED_START:
+                    isSyncingLedger = true; syncLedgerBuffer = parentPeer.createSyncLedger(); syncLedgerRejected = 0;
+                    ConsoleLogger.print("Receiving ledger state from " + peerNickname + "...");
+                    break;
+                case SYNC_LED_ENTRY:
+                    if (isSyncingLedger) { if (!syncLedgerBuffer.appendFormatted(((LedgerEntryMessage) message).getEntry())) syncLedgerRejected++; }
+                    else { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received SYNC_LED_ENTRY from " + peerNickname + " while not syncing ledger."); }
+                    break;
+                case SYNC_LED_RECORD:
+                    if (isSyncingDelta) {
+                        switch (parentPeer.applySyncedRecord((LedgerRecordMessage) message)) {
+                            case APPLIED: deltaApplied++; break;
+                            case DUPLICATE: deltaKnown++; break;
+                            default: deltaRejected++;
+                        }
+                    }
+                    else if (isSyncingLedger) {
+                        LedgerRecordMessage record = (LedgerRecordMessage) message;
+                        if (!syncLedgerBuffer.append(record.getTxId(), record.getEpochSecond(), record.getSender(), record.getRecipient(), record.getAmount())) syncLedgerRejected++;
+                    }
+                    else { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received SYNC_LED_RECORD from " + peerNickname + " while not syncing ledger."); }
+                    break;
+                case SYNC_LED_END:
+                    isSyncingLedger = false;
+                    ConsoleLogger.print("Ledger state received from " + peerNickname + " (" + syncLedgerBuffer.size() + " entries).");
+                    tryApplyFullState();
+                    break;
+                // --- Снимок состояния сжатыми частями ---
+                case SYNC_SNAPSHOT_START:
+                    parentPeer.onSnapshotStart(this, (SnapshotStartMessage) message);
+                    break;
+                case SYNC_SNAPSHOT_CHUNK:
+                    parentPeer.onSnapshotChunk(this, (SnapshotChunkMessage) message);
+                    break;
+                case SYNC_SNAPSHOT_END:
+                    parentPeer.onSnapshotEnd(this);
+                    break;
+                case SYNC_DELTA_START: {
+                    DeltaStartMessage start = (DeltaStartMessage) message;
+                    isSyncingDelta = true; deltaAccountsAdded = 0; deltaApplied = 0; deltaKnown = 0; deltaRejected = 0; syncStartedNanos = System.nanoTime();
+                    ConsoleLogger.print("Receiving " + start.getRecordCount() + " missing ledger entries from " + peerNickname + " (from position " + start.getBaseHeight() + ")...");
+                    break;
+                }
+                case SYNC_DELTA_END:
+                    if (!isSyncingDelta) { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received SYNC_DELTA_END from " + peerNickname + " without SYNC_DELTA_START."); break; }
+                    isSyncingDelta = false;
+                    parentPeer.getMetrics().recordSyncReceived(NodeMetrics.SyncKind.DELTA, System.nanoTime() - syncStartedNanos);
+                    parentPeer.completeDeltaSync(this, deltaAccountsAdded, deltaApplied, deltaKnown, deltaRejected);
+                    break;
+                // --- Сравнение состояний по деревьям Меркла ---
+                case STATE_ROOT:
+                    stateVerifier.onRoot((StateRootMessage) message);
+                    break;
+                case STATE_NODES_REQ:
+                    stateVerifier.onNodesRequest((StateQueryMessage) message);
+                    break;
+                case STATE_NODES:
+                    stateVerifier.onNodes((StateNodesMessage) message);
+                    break;
+                case STATE_BUCKETS_REQ:
+                    stateVerifier.onBucketsRequest((StateQueryMessage) message);
+                    break;
+                case STATE_BUCKETS:
+                    stateVerifier.onBuckets((StateBucketsMessage) message);
+                    break;
+                case BLOCK:
+                    parentPeer.processBlock(((BlockMessage) message).getBlock(), this);
+                    break;
+                case BLOCK_ANNOUNCE:
+                    parentPeer.getCompactBlocks().onAnnounce(this, (BlockAnnounceMessage) message);
+                    break;
+                case CHAT:
+                    ConsoleLogger.print("(Chat) " + ((ChatMessage) message).getText());
+                    break;
+                default:
+                    ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Unhandled message type " + message.getType() + " from " + peerNickname);
+            }
+        } catch (Exception e) {
+            // Ошибка при обработке КОНКРЕТНОГО сообщения
+            ConsoleLogger.print("ERROR [" + parentPeer.getNickname() + "]: Failed to process " + message.getType() + " message from " + peerNickname + ": " + e.getMessage());
+            // e.printStackTrace(); // Раскомментировать для полного стека
+        }
+    }
+
+    // Метод для попытки применить полное состояние
+    private void tryApplyFullState() {
+         if (!isSyncingBalances && !isSyncingLedger && syncLedgerBuffer != null) {
+             if (!syncBalancesBuffer.isEmpty() || !syncLedgerBuffer.isEmpty()) {
+                 parentPeer.getMetrics().recordSyncReceived(NodeMetrics.SyncKind.FULL, System.nanoTime() - syncStartedNanos);
+                 // Буферы передаются без копирования: для следующей синхронизации заводятся новые.
+                 // Построчно состояние присылают только старые текстовые узлы - без ключей счетов
+                 parentPeer.applyFullState(syncBalancesBuffer, Map.of(), syncLedgerBuffer, syncLedgerRejected,
+                                            this.peerNickname); // Передаем ник источника
+                 syncBalancesBuffer = new ConcurrentHashMap<>();
+              }
+             syncLedgerBuffer = null; syncLedgerRejected = 0;
+         }
+    }
+}
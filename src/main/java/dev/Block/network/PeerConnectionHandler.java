@@ -5,45 +5,74 @@ package dev.Block.network;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.Map;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import dev.Block.Peer;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.Message;
+import dev.Block.network.protocol.MessageCodec;
+import dev.Block.network.protocol.TextMessageCodec;
 import dev.Block.util.ConsoleLogger;
 
 /**
- * Обрабатывает одно P2P соединение (входящее или исходящее).
- * Отвечает за обмен никами, чтение/запись сообщений, синхронизацию состояния
- * и взаимодействие с родительским объектом Peer.
+ * Обрабатывает одно P2P соединение (входящее или исходящее) на блокирующем сокете,
+ * по одному потоку на соединение.
+ * Отвечает за обмен никами, чтение/запись сообщений; обработка сообщений - в PeerConnection.
  */
-public class PeerConnectionHandler implements Runnable {
+public class PeerConnectionHandler extends PeerConnection implements Runnable {
 
     public final Socket socket;
-    private final Peer parentPeer; // Ссылка на основной объект Peer
     private DataInputStream in;
-    private DataOutputStream out;
-    private volatile String peerNickname = "UNKNOWN";
+    private BatchOutputStream out;
     private final boolean isIncoming;
     private volatile boolean handlerRunning = true;
     private final String connectionId;
 
-    // Флаги и буферы для сборки состояния при синхронизации
-    private boolean isSyncingBalances = false;
-    private boolean isSyncingLedger = false;
-    private Map<String, Integer> syncBalancesBuffer = new ConcurrentHashMap<>();
-    private List<String> syncLedgerBuffer = new CopyOnWriteArrayList<>();
+    // Формат сообщений: текстовый до успешного согласования бинарного протокола в exchangeNicknames()
+    private static final int NEGOTIATION_TIMEOUT_MS = 2000;
+    private volatile MessageCodec codec = new TextMessageCodec();
+    private final Queue<Message> pendingMessages = new ArrayDeque<>(); // Сообщения, прочитанные во время рукопожатия
 
-    public PeerConnectionHandler(Socket socket, Peer parentPeer, boolean isIncoming) {
+    // Исходящие сообщения пишет отдельная задача-писатель, чтобы медленный пир
+    // не блокировал поток, выполняющий рассылку (broadcastMessage).
+    // Писатель накапливает сообщения в буфере потока и делает один flush (системный вызов)
+    // на пачку: когда очередь опустела и истекла задержка flushMaxDelay, либо набрано flushMaxBytes.
+    private static final long WRITER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long BLOCKING_SEND_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private final OutboundRingBuffer outbound;
+    private final long flushMaxDelayNanos;
+    private final int flushMaxBytes;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedMessages = new AtomicLong();
+    private final AtomicLong flushedBytes = new AtomicLong();
+    private volatile int maxFlushMessages;
+
+    /** Входящее соединение. */
+    public PeerConnectionHandler(Socket socket, Peer parentPeer) {
+        this(socket, parentPeer, null);
+    }
+
+    /** dialAddress - ключ AddressBook исходящего соединения, null - входящее. */
+    public PeerConnectionHandler(Socket socket, Peer parentPeer, String dialAddress) {
+        super(parentPeer, dialAddress);
         this.socket = socket;
-        this.parentPeer = parentPeer;
-        this.isIncoming = isIncoming;
+        this.isIncoming = dialAddress == null;
         this.connectionId = (isIncoming ? "IN" : "OUT") + "@" + socket.getRemoteSocketAddress();
+        this.outbound = new OutboundRingBuffer(parentPeer.getConfig().getOutboundQueueCapacity());
+        this.flushMaxDelayNanos = TimeUnit.MICROSECONDS.toNanos(parentPeer.getConfig().getFlushMaxDelayMicros());
+        this.flushMaxBytes = parentPeer.getConfig().getFlushMaxBytes();
 
         try {
-            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
-            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            // Байты считаются под буферами: один вызов на прочитанный или записанный кусок, а не на сообщение
+            this.in = new DataInputStream(new BufferedInputStream(new CountingInputStream(socket.getInputStream())));
+            // Буфер не меньше порога flush, чтобы BufferedOutputStream не сбрасывал пачку раньше писателя
+            this.out = new BatchOutputStream(new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream()), Math.max(8192, flushMaxBytes)));
             // Установка имени потока происходит в методе run после обмена никами
         } catch (IOException e) {
             ConsoleLogger.print("ERROR [" + connectionId + "]: Failed to create streams: " + e.getMessage());
@@ -51,12 +80,14 @@ public class PeerConnectionHandler implements Runnable {
         }
     }
 
+    @Override
     public String getPeerInfo() {
         return peerNickname + "@" + (socket != null ? socket.getRemoteSocketAddress() : "disconnected");
     }
 
-    public String getPeerNickname() {
-        return peerNickname;
+    @Override
+    public String getRemoteHost() {
+        return socket != null ? socket.getInetAddress().getHostAddress() : null;
     }
 
     @Override
@@ -72,6 +103,8 @@ public class PeerConnectionHandler implements Runnable {
             }
             // Теперь у нас есть peerNickname, обновляем имя потока
             Thread.currentThread().setName("Handler-" + getPeerInfo());
+            ConsoleLogger.print("[" + connectionId + "] Using " + codec.getName() + " protocol with " + peerNickname);
+            parentPeer.getConnectionExecutor().execute(this::runWriter); // Дальше в сокет пишет только писатель
 
             // 2. Добавляем в список соединений родителя (это инициирует PEER_JOINED gossip)
             parentPeer.addConnection(this);
@@ -79,66 +112,23 @@ public class PeerConnectionHandler implements Runnable {
             // 3. Если МЫ инициировали соединение, запрашиваем синхронизацию
             if (!isIncoming) {
                 ConsoleLogger.print("Requesting state sync from " + peerNickname);
-                sendMessage(Peer.MSG_PREFIX_REQ_SYNC + parentPeer.getNickname()); // Используем константы из Peer
+                sendMessage(parentPeer.createSyncRequest());
             }
 
-            // 4. Основной цикл чтения сообщений
+            // 4. Сообщения, полученные во время рукопожатия, обрабатываем первыми
+            while (!pendingMessages.isEmpty()) inbound.put(pendingMessages.poll());
+
+            // 5. Основной цикл чтения сообщений
             while (handlerRunning && socket != null && !socket.isClosed() && in != null) {
-                String message = in.readUTF();
-                // ConsoleLogger.print("DEBUG [" + parentPeer.getNickname() + "]: Raw msg from " + peerNickname + ": " + message);
-
-                try { // Обертка для обработки ошибок внутри цикла
-                    // --- Обработка сообщений по префиксам ---
-                    if (message.startsWith(Peer.MSG_PREFIX_TXN)) {
-                        parentPeer.processTransaction(message, this);
-                    } else if (message.startsWith(Peer.MSG_PREFIX_REQ_SYNC)) {
-                        parentPeer.sendFullState(this);
-                    } else if (message.startsWith(Peer.MSG_PREFIX_PEER_JOINED)) {
-                        String data = message.substring(Peer.MSG_PREFIX_PEER_JOINED.length());
-                        String[] parts = data.split(":", 2);
-                        if (parts.length == 2) {
-                            try {
-                                int balance = Integer.parseInt(parts[1]);
-                                parentPeer.learnAboutPeer(parts[0], balance, this); // Обработка и ретрансляция
-                            } catch (NumberFormatException e) { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Invalid balance in PEER_JOINED msg from " + peerNickname + ": " + parts[1]); }
-                        } else { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Invalid PEER_JOINED format from " + peerNickname + ": " + data); }
-                    }
-                    // --- Обработка сообщений синхронизации ---
-                     else if (message.startsWith(Peer.MSG_PREFIX_SYNC_BAL_START)) {
-                         isSyncingBalances = true; syncBalancesBuffer.clear();
-                         ConsoleLogger.print("Receiving balance state from " + peerNickname + "...");
-                     } else if (message.startsWith(Peer.MSG_PREFIX_SYNC_BAL_ENTRY)) {
-                          if (isSyncingBalances) {
-                               String data = message.substring(Peer.MSG_PREFIX_SYNC_BAL_ENTRY.length()); String[] parts = data.split(":", 2);
-                               if (parts.length == 2) { try { syncBalancesBuffer.put(parts[0], Integer.parseInt(parts[1])); } catch (NumberFormatException e) { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Invalid balance amount in SYNC_BAL from " + peerNickname + ": " + parts[1]); } }
-                               else { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Invalid SYNC_BAL_ENTRY format from " + peerNickname + ": " + data); }
-                          } else { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received SYNC_BAL_ENTRY from " + peerNickname + " while not syncing balances."); }
-                     } else if (message.startsWith(Peer.MSG_PREFIX_SYNC_BAL_END)) {
-                         isSyncingBalances = false;
-                         ConsoleLogger.print("Balance state received from " + peerNickname + " (" + syncBalancesBuffer.size() + " entries).");
-                         tryApplyFullState();
-                     } else if (message.startsWith(Peer.MSG_PREFIX_SYNC_LED_START)) {
-                         isSyncingLedger = true; syncLedgerBuffer.clear();
-                         ConsoleLogger.print("Receiving ledger state from " + peerNickname + "...");
-                     } else if (message.startsWith(Peer.MSG_PREFIX_SYNC_LED_ENTRY)) {
-                          if (isSyncingLedger) { String entry = message.substring(Peer.MSG_PREFIX_SYNC_LED_ENTRY.length()).replace(";", ":"); syncLedgerBuffer.add(entry); }
-                          else { ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received SYNC_LED_ENTRY from " + peerNickname + " while not syncing ledger."); }
-                     } else if (message.startsWith(Peer.MSG_PREFIX_SYNC_LED_END)) {
-                         isSyncingLedger = false;
-                         ConsoleLogger.print("Ledger state received from " + peerNickname + " (" + syncLedgerBuffer.size() + " entries).");
-                         tryApplyFullState();
-                     } else if (message.startsWith(Peer.MSG_PREFIX_CHAT)){
-                         ConsoleLogger.print("(Chat) " + message.substring(Peer.MSG_PREFIX_CHAT.length()));
-                     }
-                     else {
-                         ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received unknown message format from " + peerNickname + ": " + message.substring(0, Math.min(message.length(), 60)) + "...");
-                     }
-                 } catch (Exception e) {
-                     // Ошибка при обработке КОНКРЕТНОГО сообщения
-                      ConsoleLogger.print("ERROR [" + parentPeer.getNickname() + "]: Failed to process message from " + peerNickname + ": " + e.getMessage());
-                      // e.printStackTrace(); // Раскомментировать для полного стека
-                 }
+                Message message = codec.read(in);
+                if (message == null) {
+                    ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received unknown or malformed message from " + peerNickname + " (" + codec.getName() + " format).");
+                    continue;
+                }
+                inbound.put(message); // Ждет места в очереди - пока ждем, сокет не читается
             } // end while loop
+        } catch (InterruptedException e) {
+             Thread.currentThread().interrupt();
         } catch (EOFException e) {
              // Нормальное завершение, если другая сторона закрыла соединение
              if (handlerRunning) ConsoleLogger.print("Connection closed by peer: " + getPeerInfo());
@@ -159,23 +149,11 @@ public class PeerConnectionHandler implements Runnable {
         ConsoleLogger.print("Handler thread finished for " + getPeerInfo());
     }
 
-    // Метод для попытки применить полное состояние
-    private void tryApplyFullState() {
-         if (!isSyncingBalances && !isSyncingLedger) {
-             if (!syncBalancesBuffer.isEmpty() || !syncLedgerBuffer.isEmpty()) {
-                 // ConsoleLogger.print("DEBUG [" + parentPeer.getNickname() + "]: Both sync flags down. Applying full state from " + peerNickname);
-                 // Передаем КОПИИ буферов для безопасности
-                 parentPeer.applyFullState(new ConcurrentHashMap<>(syncBalancesBuffer),
-                                            new CopyOnWriteArrayList<>(syncLedgerBuffer),
-                                            this.peerNickname); // Передаем ник источника
-                 syncBalancesBuffer.clear(); syncLedgerBuffer.clear();
-              } else {
-                 // ConsoleLogger.print("DEBUG [" + parentPeer.getNickname() + "]: Both sync flags down, but buffers are empty. Skipping applyFullState.");
-              }
-         }
-    }
-
-    // Обмен никнеймами
+    // Обмен никнеймами и согласование формата сообщений.
+    // Исходящая сторона сразу после ника предлагает бинарный протокол (NEGOTIATION_TOKEN).
+    // Новая входящая сторона отвечает тем же токеном, и обе переключаются на бинарный кодек.
+    // Старый пир воспринимает предложение как неизвестное сообщение и игнорирует его,
+    // поэтому по истечении NEGOTIATION_TIMEOUT_MS соединение остается текстовым.
     private boolean exchangeNicknames() {
         try {
             String remoteNickname;
@@ -185,41 +163,193 @@ public class PeerConnectionHandler implements Runnable {
                 this.peerNickname = remoteNickname;
                 ConsoleLogger.print("[" + connectionId + "] Received nickname '" + this.peerNickname + "'. Sending ours '" + parentPeer.getNickname() + "'");
                 out.writeUTF(parentPeer.getNickname()); out.flush();
+                // Новый пир присылает предложение сразу, старый - первое обычное сообщение (REQ_SYNC)
+                String first = readUtfWithTimeout();
+                if (BinaryMessageCodec.NEGOTIATION_TOKEN.equals(first)) {
+                    out.writeUTF(BinaryMessageCodec.NEGOTIATION_TOKEN); out.flush();
+                    codec = new BinaryMessageCodec(); binaryProtocol = true;
+                } else if (first != null) {
+                    stashLegacyMessage(first);
+                }
             } else {
                 ConsoleLogger.print("[" + connectionId + "] Sending our nickname '" + parentPeer.getNickname() + "'");
-                out.writeUTF(parentPeer.getNickname()); out.flush();
+                out.writeUTF(parentPeer.getNickname());
+                out.writeUTF(BinaryMessageCodec.NEGOTIATION_TOKEN); out.flush();
                 remoteNickname = in.readUTF();
                 if (remoteNickname == null || remoteNickname.isEmpty() || remoteNickname.equalsIgnoreCase("UNKNOWN")) throw new IOException("Received invalid nickname");
                 this.peerNickname = remoteNickname;
                 ConsoleLogger.print("[" + connectionId + "] Received nickname '" + this.peerNickname + "'");
+                // Ждем подтверждения; текстовые сообщения старого пира, пришедшие до таймаута, сохраняем
+                long deadline = System.currentTimeMillis() + NEGOTIATION_TIMEOUT_MS;
+                String reply;
+                while ((reply = readUtfWithTimeout()) != null) {
+                    if (BinaryMessageCodec.NEGOTIATION_TOKEN.equals(reply)) { codec = new BinaryMessageCodec(); binaryProtocol = true; break; }
+                    stashLegacyMessage(reply);
+                    if (System.currentTimeMillis() >= deadline) break;
+                }
             }
             return true;
         } catch (IOException e) { ConsoleLogger.print("ERROR [" + connectionId + "]: IOException during nickname exchange: " + e.getMessage()); return false; }
         catch (Exception e){ ConsoleLogger.print("ERROR [" + connectionId + "]: Unexpected error during nickname exchange: " + e.getMessage()); return false; }
     }
 
-    // Отправка сообщения этому пиру
-    public void sendMessage(String message) {
-        if (!handlerRunning || socket == null || socket.isClosed() || out == null) { return; }
+    // Читает строку writeUTF с таймаутом согласования; null, если ничего не пришло
+    private String readUtfWithTimeout() throws IOException {
+        socket.setSoTimeout(NEGOTIATION_TIMEOUT_MS);
+        try {
+            return in.readUTF();
+        } catch (SocketTimeoutException e) {
+            return null;
+        } finally {
+            socket.setSoTimeout(0);
+        }
+    }
+
+    private void stashLegacyMessage(String raw) {
+        Message message = TextMessageCodec.decode(raw);
+        if (message != null) pendingMessages.add(message);
+        else ConsoleLogger.print("WARN [" + connectionId + "]: Ignoring unknown message during handshake: " + raw.substring(0, Math.min(raw.length(), 60)));
+    }
+
+    // Отправка сообщения этому пиру: только постановка в очередь, никогда не блокирует.
+    // При переполнении очереди (пир не успевает читать) восстановимое сообщение отбрасывается (MessageType.isDroppable),
+    // а ради остальных соединение закрывается: молча потерянные PEER_JOINED или блок пир не получил бы никогда.
+    @Override
+    public void sendMessage(Message message) {
+        if (!handlerRunning) { return; }
+        if (!outbound.offer(message)) {
+            if (!message.getType().isDroppable()) {
+                ConsoleLogger.print("WARN: Outbound queue full for " + getPeerInfo() + ", cannot drop " + message.getType() + ". Closing connection.");
+                close();
+                return;
+            }
+            long dropped = droppedMessages.incrementAndGet();
+            if (dropped == 1 || dropped % 1000 == 0) ConsoleLogger.print("WARN: Outbound queue full for " + getPeerInfo() + ", dropped " + dropped + " message(s) so far.");
+        }
+    }
+
+    // Для потоков синхронизации, которые нельзя терять: ждет места в очереди, пока соединение живо
+    @Override
+    public void sendMessageBlocking(Message message) {
+        while (handlerRunning && !outbound.offer(message)) {
+            LockSupport.parkNanos(BLOCKING_SEND_RETRY_NANOS);
+            if (Thread.currentThread().isInterrupted()) return;
+        }
+    }
+
+    // --- Метрики исходящего потока ---
+    @Override
+    public int getOutboundQueueDepth() { return outbound.size(); }
+
+    @Override
+    public long getDroppedMessages() { return droppedMessages.get(); }
+
+    public long getFlushCount() { return flushCount.get(); }
+
+    public long getFlushedMessages() { return flushedMessages.get(); }
+
+    public long getFlushedBytes() { return flushedBytes.get(); }
+
+    /** Наибольшее число сообщений, отправленных одним flush. */
+    public int getMaxFlushMessages() { return maxFlushMessages; }
+
+    // Задача-писатель: единственный поток, пишущий в сокет после рукопожатия
+    private void runWriter() {
+        Thread.currentThread().setName("Writer-" + getPeerInfo());
+        BatchOutputStream stream = out;
+        int batchMessages = 0;
+        long batchStartNanos = 0;
         try {
-            // ConsoleLogger.print("DEBUG: Sending to " + peerNickname + ": " + message.substring(0, Math.min(50, message.length())) + "...");
-            out.writeUTF(message); out.flush();
-        } catch (SocketException e) { ConsoleLogger.print("WARN: Failed to send message to " + getPeerInfo() + " (Socket closed/error): " + e.getMessage()); close(); }
-        catch (IOException e) { ConsoleLogger.print("ERROR: IOException sending message to " + getPeerInfo() + ": " + e.getMessage()); close(); }
+            if (stream != null) stream.resetBatchSize();
+            while (handlerRunning && stream != null) {
+                Message message = outbound.poll();
+                if (message != null) {
+                    if (batchMessages == 0) batchStartNanos = System.nanoTime();
+                    codec.write(message, stream);
+                    batchMessages++;
+                    if (stream.size() < flushMaxBytes) continue;
+                } else if (batchMessages == 0) {
+                    outbound.awaitMessages(WRITER_IDLE_NANOS);
+                    continue;
+                } else {
+                    // Очередь пуста, но пачка не отправлена: ждем остаток задержки в надежде добрать сообщений
+                    long waitNanos = flushMaxDelayNanos - (System.nanoTime() - batchStartNanos);
+                    if (waitNanos > 0) { outbound.awaitMessages(waitNanos); if (!outbound.isEmpty()) continue; }
+                }
+                stream.flush();
+                recordFlush(batchMessages, stream.size());
+                stream.resetBatchSize();
+                batchMessages = 0;
+            }
+        } catch (SocketException e) { if (handlerRunning) ConsoleLogger.print("WARN: Failed to send message to " + getPeerInfo() + " (Socket closed/error): " + e.getMessage()); close(); }
+        catch (IOException e) { if (handlerRunning) ConsoleLogger.print("ERROR: IOException sending message to " + getPeerInfo() + ": " + e.getMessage()); close(); }
         catch (Exception e){ ConsoleLogger.print("ERROR: Unexpected error sending message to " + getPeerInfo() + ": " + e.getMessage()); close(); }
+        outbound.clear();
+    }
+
+    private void recordFlush(int messages, int bytes) {
+        flushCount.incrementAndGet();
+        flushedMessages.addAndGet(messages);
+        flushedBytes.addAndGet(bytes);
+        if (messages > maxFlushMessages) maxFlushMessages = messages;
     }
 
-    // Синхронизированный метод закрытия ресурсов
+    // Синхронизированный метод закрытия ресурсов.
+    // Первым закрывается сокет, а потоки не закрываются (и не сбрасываются): писатель медленного пира
+    // висит в flush() под монитором BufferedOutputStream, и out.close() ждал бы его вечно.
+    // Закрытие сокета прерывает его запись (SocketException) и чтение потока-читателя.
+    @Override
     public synchronized void close() {
         if (!handlerRunning) return;
         handlerRunning = false;
         String info = getPeerInfo();
         ConsoleLogger.print("Closing connection handler for " + info + "...");
-        parentPeer.removeConnection(this); // Уведомляем родителя
-        try { if (out != null) out.close(); } catch (IOException e) { /* ignore */ }
-        try { if (in != null) in.close(); } catch (IOException e) { /* ignore */ }
         try { if (socket != null && !socket.isClosed()) socket.close(); } catch (IOException e) { /* ignore */ }
+        parentPeer.removeConnection(this); // Уведомляем родителя
+        inbound.close();
         out = null; in = null;
         ConsoleLogger.print("Connection handler closed for " + info);
     }
-}
\ No newline at end of file
+
+    // DataOutputStream, считающий байты текущей пачки (size() сбрасывается после каждого flush)
+    private static final class BatchOutputStream extends DataOutputStream {
+        BatchOutputStream(OutputStream out) { super(out); }
+
+        void resetBatchSize() { written = 0; }
+    }
+
+    // Счетчики байт соединения (getBytesReceived/getBytesSent)
+    private final class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) countReceived(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) countReceived(read);
+            return read;
+        }
+    }
+
+    private final class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) { super(out); }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            countSent(1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            countSent(length);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package dev.Block.network;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ограниченное по размеру и времени множество уже виденных идентификаторов транзакций.
+ * <p>
+ * Точная часть - LinkedHashMap в порядке добавления (id -> время), из головы которой удаляются
+ * записи старше ttl и самые старые при превышении capacity. Перед ней стоят два чередующихся
+ * фильтра Блума (текущий и предыдущий, смена раз в ttl): отрицательный ответ фильтра означает,
+ * что id точно новый, и поиск в карте не нужен. Ложные срабатывания фильтра проверяются по карте,
+ * поэтому новая транзакция не может быть ошибочно отброшена.
+ */
+public final class SeenSet {
+
+    private static final int HASHES = 4;
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final int bloomMask;
+    private long[] currentBloom;
+    private long[] previousBloom;
+    private long bloomRotatedAt;
+    private final LinkedHashMap<Long, Long> recent;
+
+    public SeenSet(int capacity, long ttlMillis) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        if (ttlMillis < 1) throw new IllegalArgumentException("ttlMillis must be positive: " + ttlMillis);
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        int bits = Integer.highestOneBit(Math.max(1024, capacity * 16 - 1)) << 1; // ~16 бит на элемент
+        this.bloomMask = bits - 1;
+        this.currentBloom = new long[bits >>> 6];
+        this.previousBloom = new long[bits >>> 6];
+        this.bloomRotatedAt = System.nanoTime();
+        this.recent = new LinkedHashMap<>(Math.min(capacity, 1 << 16) * 4 / 3 + 1);
+    }
+
+    /**
+     * Отмечает идентификатор как виденный.
+     * @return true, если он встречен впервые (в пределах ttl и capacity); false - дубликат.
+     */
+    public synchronized boolean markSeen(long id) {
+        long now = System.nanoTime();
+        expire(now);
+        boolean maybeSeen = mightContain(currentBloom, id) || mightContain(previousBloom, id);
+        if (maybeSeen && recent.containsKey(id)) return false;
+        recent.put(id, now);
+        addToBloom(currentBloom, id);
+        if (recent.size() > capacity) {
+            Iterator<Long> eldest = recent.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return true;
+    }
+
+    /** Встречен ли идентификатор (в пределах ttl и capacity); в отличие от markSeen не отмечает его. */
+    public synchronized boolean contains(long id) {
+        expire(System.nanoTime());
+        return (mightContain(currentBloom, id) || mightContain(previousBloom, id)) && recent.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return recent.size();
+    }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<Long, Long>> it = recent.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue() <= ttlNanos) break; // Дальше только более новые
+            it.remove();
+        }
+        if (now - bloomRotatedAt >= ttlNanos) {
+            // Очищаемый фильтр заполнялся не позже now - ttl: его id уже удалены из карты
+            long[] cleared = previousBloom;
+            Arrays.fill(cleared, 0L);
+            previousBloom = currentBloom;
+            currentBloom = cleared;
+            bloomRotatedAt = now;
+        }
+    }
+
+    private boolean mightContain(long[] bloom, long id) {
+        long h = id;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) h & bloomMask;
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+            h = Long.rotateRight(h, 17) * 0x9E3779B97F4A7C15L;
+        }
+        return true;
+    }
+
+    private void addToBloom(long[] bloom, long id) {
+        long h = id;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) h & bloomMask;
+            bloom[bit >>> 6] |= 1L << bit;
+            h = Long.rotateRight(h, 17) * 0x9E3779B97F4A7C15L;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package dev.Block.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import dev.Block.network.protocol.SnapshotChunkMessage;
+import dev.Block.network.protocol.SnapshotStartMessage;
+import dev.Block.network.protocol.SyncMarkerMessage;
+import dev.Block.state.TransactionLedger;
+
+/**
+ * Передача снимка состояния сжатыми частями вместо сообщения на каждый баланс и запись реестра.
+ * <pre>
+ * SYNC_SNAPSHOT_START(height, ledgerRoot, resumeFrom)
+ * SYNC_SNAPSHOT_CHUNK(KIND_BALANCES, ...)  {nickname (writeUTF), balance:8, keyLength:1, publicKey} - балансы на момент height и ключи счетов
+ * SYNC_SNAPSHOT_CHUNK(KIND_LEDGER, first, count, ...)  {txId:8, epochSecond:8, amount:8, sender, recipient}
+ * SYNC_SNAPSHOT_END
+ * </pre>
+ * Каждая часть (до CHUNK_RECORDS записей) сжимается deflate отдельно, поэтому передачу можно
+ * продолжить с любой границы части: получатель сообщает в REQ_SYNC снимок и число полученных записей.
+ * Получатель пишет записи сразу в реестр, который заменит текущий, и не держит второй копии.
+ */
+public final class SnapshotTransfer {
+
+    static final int CHUNK_RECORDS = 4096;
+    private static final int MAX_RAW_CHUNK = 4 * 1024 * 1024; // Защита от "zip-бомбы"
+
+    /** Итог отправки: размер данных до и после сжатия. */
+    public static final class Stats {
+        public final long rawBytes;
+        public final long compressedBytes;
+
+        Stats(long rawBytes, long compressedBytes) {
+            this.rawBytes = rawBytes;
+            this.compressedBytes = compressedBytes;
+        }
+    }
+
+    private SnapshotTransfer() {}
+
+    /**
+     * Отправляет снимок: балансы на момент height с ключами счетов (keys) и записи реестра [resumeFrom, height).
+     * Блокирует вызывающий поток при заполненной очереди соединения.
+     */
+    public static Stats send(PeerConnection target, Map<String, Long> balances, Map<String, byte[]> keys, TransactionLedger ledger, int height, byte[] ledgerRoot, int resumeFrom) throws IOException, InterruptedException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(CHUNK_RECORDS * 48);
+        DataOutputStream out = new DataOutputStream(raw);
+        long rawBytes = 0;
+        long compressedBytes = 0;
+        try {
+            target.sendMessageBlocking(new SnapshotStartMessage(height, ledgerRoot, resumeFrom));
+
+            int index = 0;
+            for (Map.Entry<String, Long> entry : balances.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+                byte[] publicKey = keys.get(entry.getKey());
+                out.writeByte(publicKey != null ? publicKey.length : 0);
+                if (publicKey != null) out.write(publicKey);
+                if (++index % CHUNK_RECORDS == 0 || index == balances.size()) {
+                    int count = (index - 1) % CHUNK_RECORDS + 1;
+                    SnapshotChunkMessage chunk = compress(deflater, raw, SnapshotChunkMessage.KIND_BALANCES, index - count, count);
+                    rawBytes += chunk.getRawLength();
+                    compressedBytes += chunk.getCompressed().length;
+                    target.sendMessageBlocking(chunk);
+                }
+            }
+
+            for (int first = resumeFrom; first < height; first += CHUNK_RECORDS) {
+                int last = Math.min(height, first + CHUNK_RECORDS);
+                for (int i = first; i < last; i++) {
+                    out.writeLong(ledger.getTxId(i));
+                    out.writeLong(ledger.getTimestamp(i));
+                    out.writeLong(ledger.getAmount(i));
+                    out.writeUTF(ledger.getSender(i));
+                    out.writeUTF(ledger.getRecipient(i));
+                }
+                SnapshotChunkMessage chunk = compress(deflater, raw, SnapshotChunkMessage.KIND_LEDGER, first, last - first);
+                rawBytes += chunk.getRawLength();
+                compressedBytes += chunk.getCompressed().length;
+                target.sendMessageBlocking(chunk);
+            }
+            target.sendMessageBlocking(SyncMarkerMessage.SNAPSHOT_END);
+        } finally {
+            deflater.end();
+        }
+        return new Stats(rawBytes, compressedBytes);
+    }
+
+    /** Сжимает накопленные в raw записи в одну часть и очищает raw. */
+    private static SnapshotChunkMessage compress(Deflater deflater, ByteArrayOutputStream raw, byte kind, int first, int count) {
+        byte[] input = raw.toByteArray();
+        raw.reset();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] output = new byte[input.length / 2 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == output.length) output = Arrays.copyOf(output, output.length * 2);
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return new SnapshotChunkMessage(kind, first, count, input.length, Arrays.copyOf(output, length));
+    }
+
+    /**
+     * Принимаемый снимок. Переживает обрыв соединения: по getHeight/getLedgerRoot/getReceived
+     * следующий запрос синхронизации продолжает передачу.
+     */
+    public static final class Receiver {
+
+        private final int height;
+        private final byte[] ledgerRoot;
+        private final TransactionLedger ledger;
+        private final Map<String, Long> balances = new LinkedHashMap<>();
+        private final Map<String, byte[]> keys = new LinkedHashMap<>();
+        private final Inflater inflater = new Inflater();
+        private byte[] rawBuffer = new byte[CHUNK_RECORDS * 48];
+        private volatile int received; // Получено записей реестра (позиция следующей)
+        private int rejected;
+
+        /** ledger - пустой реестр, который после завершения заменит текущий. */
+        public Receiver(int height, byte[] ledgerRoot, TransactionLedger ledger) {
+            this.height = height;
+            this.ledgerRoot = ledgerRoot;
+            this.ledger = ledger;
+        }
+
+        /** Начало (или продолжение) передачи: балансы присылаются заново. */
+        public boolean matches(SnapshotStartMessage start) {
+            return start.getHeight() == height && Arrays.equals(start.getLedgerRoot(), ledgerRoot) && start.getResumeFrom() == received;
+        }
+
+        public void restart() {
+            balances.clear();
+            keys.clear();
+        }
+
+        /**
+         * Распаковывает часть и применяет ее записи.
+         * @throws IOException при повреждении или несоответствии позиции - снимок нужно начать заново.
+         */
+        public void accept(SnapshotChunkMessage chunk) throws IOException {
+            int rawLength = chunk.getRawLength();
+            if (rawLength < 0 || rawLength > MAX_RAW_CHUNK) throw new IOException("Invalid snapshot chunk size: " + rawLength);
+            if (chunk.getKind() == SnapshotChunkMessage.KIND_LEDGER && (chunk.getFirst() != received || received + chunk.getCount() > height)) {
+                throw new IOException("Unexpected snapshot chunk at " + chunk.getFirst() + ", expected " + received);
+            }
+            if (rawBuffer.length < rawLength) rawBuffer = new byte[rawLength];
+            inflater.reset();
+            inflater.setInput(chunk.getCompressed());
+            try {
+                if (inflater.inflate(rawBuffer, 0, rawLength) != rawLength || !inflater.finished()) throw new IOException("Snapshot chunk length mismatch");
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt snapshot chunk: " + e.getMessage(), e);
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(rawBuffer, 0, rawLength));
+            if (chunk.getKind() == SnapshotChunkMessage.KIND_BALANCES) {
+                for (int i = 0; i < chunk.getCount(); i++) {
+                    String nickname = in.readUTF();
+                    balances.put(nickname, in.readLong());
+                    int keyLength = in.readUnsignedByte();
+                    if (keyLength == 0) continue;
+                    byte[] publicKey = new byte[keyLength];
+                    in.readFully(publicKey);
+                    keys.put(nickname, publicKey);
+                }
+            } else if (chunk.getKind() == SnapshotChunkMessage.KIND_LEDGER) {
+                for (int i = 0; i < chunk.getCount(); i++) {
+                    long txId = in.readLong();
+                    long epochSecond = in.readLong();
+                    long amount = in.readLong();
+                    if (!ledger.append(txId, epochSecond, in.readUTF(), in.readUTF(), amount)) rejected++;
+                }
+                received += chunk.getCount();
+            } else {
+                throw new IOException("Unknown snapshot chunk kind: " + chunk.getKind());
+            }
+        }
+
+        public boolean isComplete() { return received == height; }
+
+        /** Освобождает распаковщик; после вызова Receiver не используется. */
+        public void release() { inflater.end(); }
+
+        public int getHeight() { return height; }
+
+        public byte[] getLedgerRoot() { return ledgerRoot; }
+
+        public int getReceived() { return received; }
+
+        /** Записи, отброшенные как дубликаты. */
+        public int getRejected() { return rejected; }
+
+        public Map<String, Long> getBalances() { return balances; }
+
+        /** Ключи счетов из снимка. */
+        public Map<String, byte[]> getKeys() { return keys; }
+
+        public TransactionLedger getLedger() { return ledger; }
+    }
+}
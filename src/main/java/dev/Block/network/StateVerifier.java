@@ -0,0 +1,236 @@
+package dev.Block.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.Block.Peer;
+import dev.Block.network.protocol.LedgerRecordMessage;
+import dev.Block.network.protocol.StateBucketsMessage;
+import dev.Block.network.protocol.StateNodesMessage;
+import dev.Block.network.protocol.StateQueryMessage;
+import dev.Block.network.protocol.StateRootMessage;
+import dev.Block.network.protocol.SyncRequestMessage;
+import dev.Block.state.StateCommitment;
+import dev.Block.state.StateCommitment.Tree;
+import dev.Block.state.TransactionEngine;
+import dev.Block.state.TransactionLedger;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Сравнение состояния с одним соседом по деревьям Меркла (StateCommitment).
+ * <pre>
+ * STATE_ROOT(round)            корни совпали - проверка закончена
+ * STATE_NODES_REQ(level, i..)  иначе запрашиваются потомки различающихся узлов, уровень за уровнем
+ * STATE_BUCKETS_REQ(b..)       на уровне листьев - содержимое различающихся корзин
+ * </pre>
+ * Полученные записи реестра применяются с обычными проверками. Неизвестный счет добавляется
+ * с балансом соседа за вычетом еще не примененных у нас записей с его участием - после них баланс совпадет.
+ * Лишнее у нас отсюда не исправить: закончив, узел отправляет свои корни с round + 1, и сосед
+ * проверяет себя сам. Если различаются больше MAX_REPAIR_BUCKETS корзин реестра, дешевле
+ * обычная синхронизация (дельта или снимок): ее запрашивает узел с меньшим реестром, так как она заменяет состояние запросившего.
+ * <p>
+ * Один экземпляр на соединение; вызывается из потока обработки его сообщений, поэтому без синхронизации.
+ */
+public final class StateVerifier {
+
+    static final int MAX_ROUNDS = 3;
+    static final int MAX_REPAIR_BUCKETS = 256;
+    private static final int BUCKETS_PER_REQUEST = 32; // Ограничивает размер ответа STATE_BUCKETS
+
+    private final Peer peer;
+    private final PeerConnection connection;
+    private final Descent[] descents = new Descent[Tree.values().length]; // null - дерево не проверяется
+    private int round;
+    private int remoteLedgerSize;
+    private int accountsAdded, balanceMismatches, recordsApplied, recordsKnown, recordsRejected;
+    private final List<LedgerRecordMessage> deferred = new ArrayList<>(); // Не прошли проверку: ждут записей и счетов из других корзин
+    private final Map<String, Long> receivedAccounts = new HashMap<>(); // Балансы соседа из корзин счетов
+
+    /** Спуск по одному дереву: различающиеся корзины запрашиваются пакетами. */
+    private static final class Descent {
+        final Tree tree;
+        int[] pendingBuckets; // null - еще спускаемся по уровням
+        int nextBucket;
+
+        Descent(Tree tree) { this.tree = tree; }
+    }
+
+    StateVerifier(Peer peer, PeerConnection connection) {
+        this.peer = peer;
+        this.connection = connection;
+    }
+
+    /** Корни нашего состояния для отправки соседу. */
+    public static StateRootMessage rootMessage(TransactionEngine engine, int round) {
+        StateCommitment commitment = engine.getCommitment();
+        return new StateRootMessage(round, commitment.root(Tree.ACCOUNTS), commitment.root(Tree.LEDGER), engine.getAccountCount(), engine.getLedgerSize());
+    }
+
+    // --- Проверяющая сторона ---
+
+    void onRoot(StateRootMessage message) {
+        StateCommitment commitment = peer.getEngine().getCommitment();
+        boolean accountsDiffer = !Arrays.equals(commitment.root(Tree.ACCOUNTS), message.getAccountsRoot());
+        boolean ledgerDiffers = !Arrays.equals(commitment.root(Tree.LEDGER), message.getLedgerRoot());
+        String source = connection.getPeerNickname();
+        if (!accountsDiffer && !ledgerDiffers) {
+            ConsoleLogger.print("State verified with " + source + ": " + message.getAccountCount() + " accounts and " + message.getLedgerSize() + " ledger entries match.");
+            if (message.getRound() == 0) connection.sendMessage(rootMessage(peer.getEngine(), 1)); // Сообщаем совпадение начавшему проверку
+            return;
+        }
+        if (message.getRound() >= MAX_ROUNDS) {
+            ConsoleLogger.print("WARN [" + peer.getNickname() + "]: State still differs from " + source + " after " + MAX_ROUNDS + " verification rounds"
+                    + (accountsDiffer ? " (balances" + (ledgerDiffers ? " and ledger)" : ")") : " (ledger)") + ".");
+            return;
+        }
+        ConsoleLogger.print("State differs from " + source + " (" + message.getAccountCount() + " accounts, " + message.getLedgerSize() + " ledger entries; ours: "
+                + peer.getEngine().getAccountCount() + ", " + peer.getEngine().getLedgerSize() + "). Comparing subtrees...");
+        round = message.getRound();
+        remoteLedgerSize = message.getLedgerSize();
+        accountsAdded = 0; balanceMismatches = 0; recordsApplied = 0; recordsKnown = 0; recordsRejected = 0;
+        deferred.clear();
+        receivedAccounts.clear();
+        Arrays.fill(descents, null);
+        if (accountsDiffer) startDescent(Tree.ACCOUNTS);
+        if (ledgerDiffers) startDescent(Tree.LEDGER);
+    }
+
+    private void startDescent(Tree tree) {
+        descents[tree.ordinal()] = new Descent(tree);
+        connection.sendMessage(StateQueryMessage.nodes(tree.getCode(), 1, new int[] {0, 1}));
+    }
+
+    void onNodes(StateNodesMessage message) {
+        Tree tree = Tree.fromCode(message.getTree());
+        Descent descent = tree == null ? null : descents[tree.ordinal()];
+        if (descent == null || descent.pendingBuckets != null) return; // Устаревший ответ
+        StateCommitment commitment = peer.getEngine().getCommitment();
+        int level = message.getLevel();
+        int[] indices = message.getIndices();
+        int[] differing = new int[indices.length];
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] < 0 || indices[i] >= 1 << level) continue;
+            if (!Arrays.equals(commitment.node(tree, level, indices[i]), message.getHashes()[i])) differing[count++] = indices[i];
+        }
+
+        if (count == 0) { // Расхождение исчезло (изменения во время проверки)
+            finishDescent(descent);
+        } else if (level < StateCommitment.LEVELS) {
+            int[] children = new int[count * 2];
+            for (int i = 0; i < count; i++) { children[2 * i] = differing[i] * 2; children[2 * i + 1] = differing[i] * 2 + 1; }
+            connection.sendMessage(StateQueryMessage.nodes(tree.getCode(), level + 1, children));
+        } else if (tree == Tree.LEDGER && count > MAX_REPAIR_BUCKETS) {
+            if (remoteLedgerSize >= peer.getEngine().getLedgerSize()) {
+                ConsoleLogger.print("Ledger differs from " + connection.getPeerNickname() + " in " + count + " of " + StateCommitment.BUCKETS + " buckets. Requesting state sync instead.");
+                descents[tree.ordinal()] = null;
+                connection.sendMessage(peer.createSyncRequest());
+            } else {
+                finishDescent(descent); // Наш реестр больше: синхронизацию запросит сосед, получив наши корни
+            }
+        } else {
+            descent.pendingBuckets = Arrays.copyOf(differing, count);
+            requestNextBuckets(descent);
+        }
+    }
+
+    private void requestNextBuckets(Descent descent) {
+        int from = descent.nextBucket;
+        int to = Math.min(descent.pendingBuckets.length, from + BUCKETS_PER_REQUEST);
+        descent.nextBucket = to;
+        connection.sendMessage(StateQueryMessage.buckets(descent.tree.getCode(), Arrays.copyOfRange(descent.pendingBuckets, from, to)));
+    }
+
+    void onBuckets(StateBucketsMessage message) {
+        Tree tree = Tree.fromCode(message.getTree());
+        Descent descent = tree == null ? null : descents[tree.ordinal()];
+        if (descent == null || descent.pendingBuckets == null) return;
+        receivedAccounts.putAll(message.getAccounts()); // Сравниваются после записей реестра
+        for (LedgerRecordMessage record : message.getRecords()) applyRecord(record);
+        if (descent.nextBucket < descent.pendingBuckets.length) requestNextBuckets(descent);
+        else finishDescent(descent);
+    }
+
+    private void finishDescent(Descent descent) {
+        descents[descent.tree.ordinal()] = null;
+        for (Descent other : descents) if (other != null) return;
+
+        TransactionEngine engine = peer.getEngine();
+        Map<String, Long> missing = new HashMap<>();
+        receivedAccounts.forEach((name, balance) -> { if (!engine.hasAccount(name)) missing.put(name, balance); });
+        for (LedgerRecordMessage record : deferred) { // Откат еще не примененных записей к балансу до них
+            missing.computeIfPresent(record.getSender(), (name, balance) -> balance + record.getAmount());
+            missing.computeIfPresent(record.getRecipient(), (name, balance) -> balance - record.getAmount());
+        }
+        missing.forEach((name, balance) -> { if (peer.applySyncedAccount(name, balance, null)) accountsAdded++; }); // Корзины без ключей: их приносят PEER_JOINED и синхронизация
+
+        // Записи корзин приходят не в порядке реестра: повторяем отложенные, пока применяется хоть одна
+        int before;
+        do {
+            before = deferred.size();
+            List<LedgerRecordMessage> retry = new ArrayList<>(deferred);
+            deferred.clear();
+            for (LedgerRecordMessage record : retry) applyRecord(record);
+        } while (!deferred.isEmpty() && deferred.size() < before);
+        recordsRejected = deferred.size();
+        deferred.clear();
+        receivedAccounts.forEach((name, balance) -> { if (!balance.equals(engine.getBalance(name))) balanceMismatches++; });
+        receivedAccounts.clear();
+
+        ConsoleLogger.print("State repair from " + connection.getPeerNickname() + ": " + recordsApplied + " ledger entries applied, " + recordsKnown + " already known, "
+                + recordsRejected + " rejected, " + accountsAdded + " accounts added, " + balanceMismatches + " balances differ.");
+        if (recordsRejected > 0) {
+            ConsoleLogger.print("WARN: Ledger entries from " + connection.getPeerNickname() + " do not apply to local state. Requesting full state.");
+            connection.sendMessage(new SyncRequestMessage(peer.getNickname()));
+            return;
+        }
+        connection.sendMessage(rootMessage(peer.getEngine(), round + 1)); // Сосед проверяет то, чего нет у нас
+    }
+
+    private void applyRecord(LedgerRecordMessage record) {
+        switch (peer.applySyncedRecord(record)) {
+            case APPLIED: recordsApplied++; break;
+            case DUPLICATE: recordsKnown++; break;
+            default: deferred.add(record);
+        }
+    }
+
+    // --- Отвечающая сторона ---
+
+    void onNodesRequest(StateQueryMessage query) {
+        Tree tree = Tree.fromCode(query.getTree());
+        if (tree == null || query.getLevel() < 0 || query.getLevel() > StateCommitment.LEVELS) return;
+        StateCommitment commitment = peer.getEngine().getCommitment();
+        int[] indices = query.getIndices();
+        List<Integer> valid = new ArrayList<>(indices.length);
+        for (int index : indices) if (index >= 0 && index < 1 << query.getLevel()) valid.add(index);
+        int[] answered = new int[valid.size()];
+        byte[][] hashes = new byte[valid.size()][];
+        for (int i = 0; i < answered.length; i++) {
+            answered[i] = valid.get(i);
+            hashes[i] = commitment.node(tree, query.getLevel(), answered[i]);
+        }
+        connection.sendMessage(new StateNodesMessage(query.getTree(), query.getLevel(), answered, hashes));
+    }
+
+    void onBucketsRequest(StateQueryMessage query) {
+        Tree tree = Tree.fromCode(query.getTree());
+        if (tree == null) return;
+        BitSet buckets = new BitSet(StateCommitment.BUCKETS);
+        for (int bucket : query.getIndices()) if (bucket >= 0 && bucket < StateCommitment.BUCKETS) buckets.set(bucket);
+        TransactionEngine engine = peer.getEngine();
+        if (tree == Tree.ACCOUNTS) {
+            connection.sendMessage(new StateBucketsMessage(query.getTree(), engine.getAccountsInBuckets(buckets), List.of()));
+            return;
+        }
+        TransactionLedger ledger = engine.getLedger();
+        int[] positions = ledger.positionsInBuckets(buckets, StateCommitment.BUCKET_BITS); // В порядке реестра: получатель применяет их по очереди
+        List<LedgerRecordMessage> records = new ArrayList<>(positions.length);
+        for (int i : positions) records.add(new LedgerRecordMessage(ledger.getTxId(i), ledger.getTimestamp(i), ledger.getSender(i), ledger.getRecipient(i), ledger.getAmount(i)));
+        connection.sendMessage(new StateBucketsMessage(query.getTree(), Map.of(), records));
+    }
+}
@@ -0,0 +1,47 @@
+package dev.Block.network;
+
+/**
+ * Ограничитель скорости "ведро токенов": пополняется на rate токенов в секунду, вмещает не больше burst.
+ * reserve() позволяет уйти в долг и возвращает, сколько нужно подождать, - так сообщение большой
+ * стоимости (блок с сотнями транзакций) не блокируется навсегда, а задерживает следующие.
+ */
+public final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long updatedAt;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("ratePerSecond must be positive: " + ratePerSecond);
+        if (burst < 1) throw new IllegalArgumentException("burst must be at least 1: " + burst);
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.updatedAt = System.nanoTime();
+    }
+
+    /** Берет cost токенов, если они есть. */
+    public synchronized boolean tryAcquire(int cost) {
+        refill();
+        if (tokens < cost) return false;
+        tokens -= cost;
+        return true;
+    }
+
+    /**
+     * Берет cost токенов, при нехватке - в долг.
+     * @return сколько наносекунд подождать, прежде чем действовать (0 - сразу).
+     */
+    public synchronized long reserve(int cost) {
+        refill();
+        tokens -= cost;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - updatedAt) * tokensPerNano);
+        updatedAt = now;
+    }
+}
@@ -0,0 +1,177 @@
+package dev.Block.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import dev.Block.chain.Signatures;
+import dev.Block.network.protocol.TransactionMessage;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Стадия проверки подписей между приемом транзакций и их применением.
+ * <pre>
+ * обработчики соединений --submit--> [пул проверки, N потоков] --по порядку--> поток применения --> sink(пачка)
+ * </pre>
+ * Транзакции проверяются параллельно, но в sink передаются в порядке submit: поток применения берет
+ * их из ограниченной очереди по порядку и ждет проверки очередной. Заполненная очередь блокирует
+ * обработчик соединения - обратное давление доходит до TCP. Поток применения передает в sink все уже
+ * проверенные подряд транзакции одной пачкой, поэтому sink может, например, ждать записи журнала
+ * один раз на пачку (group commit).
+ * <p>
+ * При threads = 0 проверка и sink выполняются в вызывающем потоке.
+ */
+public final class VerificationPipeline {
+
+    private static final int MAX_BATCH = 256;
+
+    /** Транзакция после проверки подписи. */
+    public static final class Verified {
+        public final TransactionMessage txn;
+        public final PeerConnection source;
+        /** Подпись верна; для неподписанной транзакции - true (допустимость решает получатель). */
+        public final boolean signatureValid;
+
+        public Verified(TransactionMessage txn, PeerConnection source, boolean signatureValid) {
+            this.txn = txn;
+            this.source = source;
+            this.signatureValid = signatureValid;
+        }
+    }
+
+    private static final class Pending {
+        final TransactionMessage txn;
+        final PeerConnection source;
+        final CompletableFuture<Boolean> verified;
+
+        Pending(TransactionMessage txn, PeerConnection source, CompletableFuture<Boolean> verified) {
+            this.txn = txn;
+            this.source = source;
+            this.verified = verified;
+        }
+    }
+
+    private static final Pending STOP = new Pending(null, null, CompletableFuture.completedFuture(true));
+
+    private final ExecutorService verifiers; // null - проверка в вызывающем потоке
+    private final BlockingQueue<Pending> ordered;
+    private final Consumer<List<Verified>> sink;
+    private final Thread applier;
+    private final AtomicLong verifiedCount = new AtomicLong();
+    private final AtomicLong invalidCount = new AtomicLong();
+
+    public VerificationPipeline(String name, int threads, int capacity, Consumer<List<Verified>> sink) {
+        this.sink = sink;
+        if (threads <= 0) {
+            this.verifiers = null;
+            this.ordered = null;
+            this.applier = null;
+            return;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        this.verifiers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "Verify-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ordered = new ArrayBlockingQueue<>(capacity);
+        this.applier = new Thread(this::applyLoop, "TxApply-" + name);
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    /** Ставит транзакцию в очередь проверки. Блокирует вызывающий поток, пока очередь заполнена. */
+    public void submit(TransactionMessage txn, PeerConnection source) throws InterruptedException {
+        if (verifiers == null) {
+            sink.accept(List.of(new Verified(txn, source, check(txn))));
+            return;
+        }
+        CompletableFuture<Boolean> verified = new CompletableFuture<>();
+        ordered.put(new Pending(txn, source, verified)); // Сначала место в порядке, затем проверка
+        verifiers.execute(() -> verified.complete(check(txn)));
+    }
+
+    /**
+     * Проверяет подписи пачки (например, транзакций блока) на всех потоках пула и ждет результата.
+     * @return signatureValid для каждой транзакции в том же порядке.
+     */
+    public boolean[] verifyAll(List<TransactionMessage> transactions) {
+        boolean[] valid = new boolean[transactions.size()];
+        if (verifiers == null) {
+            for (int i = 0; i < valid.length; i++) valid[i] = check(transactions.get(i));
+            return valid;
+        }
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(valid.length);
+        for (int i = 0; i < valid.length; i++) {
+            int index = i;
+            tasks.add(CompletableFuture.runAsync(() -> valid[index] = check(transactions.get(index)), verifiers));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        return valid;
+    }
+
+    private boolean check(TransactionMessage txn) {
+        if (!txn.isSigned()) return true;
+        boolean valid = Signatures.verify(txn);
+        (valid ? verifiedCount : invalidCount).incrementAndGet();
+        return valid;
+    }
+
+    private void applyLoop() {
+        List<Verified> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                Pending next = ordered.take();
+                while (true) {
+                    if (next == STOP) { if (!batch.isEmpty()) deliver(batch); return; }
+                    batch.add(new Verified(next.txn, next.source, next.verified.join()));
+                    if (batch.size() == MAX_BATCH) break;
+                    next = ordered.peek();
+                    if (next == null || (next != STOP && !next.verified.isDone())) break; // Не ждем, пока применена уже проверенная часть
+                    ordered.poll();
+                }
+                deliver(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(List<Verified> batch) {
+        try {
+            sink.accept(batch);
+        } catch (Exception e) {
+            ConsoleLogger.print("ERROR: Failed to apply verified transactions: " + e.getMessage());
+        }
+        batch.clear();
+    }
+
+    /** Транзакции, ожидающие проверки подписи или применения. */
+    public int getQueueDepth() { return ordered != null ? ordered.size() : 0; }
+
+    /** Транзакции с проверенной верной подписью. */
+    public long getVerifiedCount() { return verifiedCount.get(); }
+
+    /** Транзакции с неверной подписью. */
+    public long getInvalidCount() { return invalidCount.get(); }
+
+    /** Применяет уже поставленные в очередь транзакции и останавливает потоки. */
+    public void close() {
+        if (verifiers == null) return;
+        try {
+            ordered.put(STOP);
+            applier.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        verifiers.shutdownNow();
+    }
+}
@@ -0,0 +1,39 @@
+package dev.Block.network.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул прямых (off-heap) буферов одного размера для чтения и записи NIO соединений.
+ * Соединение берет буфер только пока в нем есть необработанные данные,
+ * поэтому число буферов определяется активностью, а не количеством соединений.
+ */
+public class DirectBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(bufferSize);
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /** Возвращает буфер в пул. Буферы чужого размера (например, для больших кадров) просто отбрасываются. */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) return;
+        if (pooled.incrementAndGet() > maxPooled) { pooled.decrementAndGet(); return; }
+        free.offer(buffer);
+    }
+
+    public int getBufferSize() { return bufferSize; }
+}
@@ -0,0 +1,111 @@
+package dev.Block.network.nio;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Поток с собственным Selector, обслуживающий часть NIO соединений.
+ * Все операции с каналами и ключами выполняются только в этом потоке;
+ * другие потоки передают работу через execute().
+ */
+class NioEventLoop implements Runnable {
+
+    /** Обработчик готовности ключа; хранится как attachment у SelectionKey. */
+    interface KeyHandler {
+        void onReady(SelectionKey key) throws IOException;
+        void onError(Exception e);
+    }
+
+    private static final long SELECT_TIMEOUT_MS = 250; // Период проверки таймаутов рукопожатия
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Set<NioPeerConnection> connections = new HashSet<>(); // Только поток цикла
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    void start() { thread.start(); }
+
+    Selector selector() { return selector; }
+
+    boolean inEventLoop() { return Thread.currentThread() == thread; }
+
+    /** Выполняет задачу в потоке цикла (сразу, если вызвано из него). */
+    void execute(Runnable task) {
+        if (inEventLoop()) { task.run(); return; }
+        tasks.add(task);
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    void register(NioPeerConnection connection) { connections.add(connection); }
+
+    void unregister(NioPeerConnection connection) { connections.remove(connection); }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+                wakeupPending.set(false);
+                runTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    KeyHandler handler = (KeyHandler) key.attachment();
+                    try {
+                        if (key.isValid()) handler.onReady(key);
+                    } catch (CancelledKeyException e) {
+                        // Соединение закрыто во время обработки
+                    } catch (Exception e) {
+                        handler.onError(e);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                for (NioPeerConnection connection : connections.toArray(new NioPeerConnection[0])) connection.checkHandshakeTimeout(now);
+            } catch (IOException e) {
+                if (running) ConsoleLogger.print("ERROR: Selector failure in " + thread.getName() + ": " + e.getMessage());
+            } catch (Exception e) {
+                if (running) ConsoleLogger.print("Unexpected error in event loop " + thread.getName() + ": " + e.getMessage());
+            }
+        }
+        runTasks();
+        for (NioPeerConnection connection : connections.toArray(new NioPeerConnection[0])) connection.close();
+        try { selector.close(); } catch (IOException e) { /* ignore */ }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try { task.run(); }
+            catch (Exception e) { ConsoleLogger.print("ERROR: Task failed in " + thread.getName() + ": " + e.getMessage()); }
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    void awaitTermination(long millis) throws InterruptedException {
+        thread.join(millis);
+    }
+}
@@ -0,0 +1,428 @@
+package dev.Block.network.nio;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.Block.Peer;
+import dev.Block.network.PeerConnection;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.Message;
+import dev.Block.network.protocol.MessageCodec;
+import dev.Block.network.protocol.TextMessageCodec;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * P2P соединение на неблокирующем канале.
+ * Рукопожатие и согласование протокола совпадают с PeerConnectionHandler, но выполнены
+ * как конечный автомат внутри NioEventLoop. Все поля, кроме очереди исходящих сообщений
+ * и флага закрытия, используются только потоком цикла.
+ * Очередь исходящих ограничена peer.outbound.queue, как у PeerConnectionHandler: при переполнении
+ * sendMessage() отбрасывает сообщение, sendMessageBlocking() ждет места.
+ */
+class NioPeerConnection extends PeerConnection implements NioEventLoop.KeyHandler {
+
+    private enum State { CONNECTING, AWAIT_NICK, AWAIT_NEGOTIATION, READY }
+
+    private static final long HANDSHAKE_TIMEOUT_MS = 10_000;
+    private static final long NEGOTIATION_TIMEOUT_MS = 2000;
+    private static final long BLOCKING_SEND_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final SocketChannel channel;
+    private final boolean isIncoming;
+    private final SocketAddress remoteAddress;
+    private final String connectionId;
+    private final NioEventLoop loop;
+    private final DirectBufferPool bufferPool;
+
+    private SelectionKey key;
+    private State state;
+    private long deadline;
+    private MessageCodec codec = new TextMessageCodec(); // До согласования бинарного протокола
+    private final Queue<Message> pendingMessages = new ArrayDeque<>(); // Сообщения, прочитанные во время рукопожатия
+
+    private ByteBuffer readBuffer;  // null, пока нет непрочитанных данных
+    private ByteBuffer writeBuffer; // null, пока нечего отправлять
+    private ByteBuffer largeWrite;  // Кадр, не поместившийся в буфер пула
+
+    private final Queue<Message> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger(); // Размер outbound (size() очереди - O(n)); место резервируется до add
+    private final int outboundCapacity;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Runnable flushTask = this::flushOutbound;
+
+    /** dialAddress - ключ AddressBook исходящего соединения, null - входящее. */
+    NioPeerConnection(Peer parentPeer, SocketChannel channel, String dialAddress, SocketAddress remoteAddress,
+                      NioEventLoop loop, DirectBufferPool bufferPool) {
+        super(parentPeer, dialAddress);
+        this.channel = channel;
+        this.isIncoming = dialAddress == null;
+        this.remoteAddress = remoteAddress;
+        this.connectionId = (isIncoming ? "IN" : "OUT") + "@" + remoteAddress;
+        this.loop = loop;
+        this.bufferPool = bufferPool;
+        this.outboundCapacity = parentPeer.getConfig().getOutboundQueueCapacity();
+    }
+
+    @Override
+    public String getPeerInfo() {
+        return peerNickname + "@" + remoteAddress;
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return remoteAddress instanceof InetSocketAddress ? ((InetSocketAddress) remoteAddress).getAddress().getHostAddress() : null;
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        return queued.get();
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    // --- Жизненный цикл (поток цикла) ---
+
+    /** Регистрирует принятое входящее соединение. */
+    void register() {
+        try {
+            key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+            loop.register(this);
+            enterState(State.AWAIT_NICK, HANDSHAKE_TIMEOUT_MS);
+        } catch (IOException e) {
+            ConsoleLogger.print("ERROR [" + connectionId + "]: Failed to register channel: " + e.getMessage());
+            close();
+        }
+    }
+
+    /** Начинает исходящее подключение. */
+    void connect(InetSocketAddress address) {
+        ConsoleLogger.print("Attempting to connect to " + address + "...");
+        try {
+            key = channel.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+            loop.register(this);
+            enterState(State.CONNECTING, HANDSHAKE_TIMEOUT_MS);
+            if (channel.connect(address)) onConnected();
+        } catch (IOException e) {
+            ConsoleLogger.print("Could not connect to " + address + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    private void onConnected() throws IOException {
+        ConsoleLogger.print("Successfully connected to " + remoteAddress);
+        key.interestOps(SelectionKey.OP_READ);
+        ConsoleLogger.print("[" + connectionId + "] Sending our nickname '" + parentPeer.getNickname() + "'");
+        enterState(State.AWAIT_NICK, HANDSHAKE_TIMEOUT_MS);
+        writeHandshake(parentPeer.getNickname());
+        writeHandshake(BinaryMessageCodec.NEGOTIATION_TOKEN);
+    }
+
+    @Override
+    public void onReady(SelectionKey key) throws IOException {
+        if (key.isConnectable()) {
+            if (channel.finishConnect()) onConnected();
+            return;
+        }
+        if (key.isReadable()) onReadable();
+        if (key.isValid() && key.isWritable()) flushOutbound();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        if (!closed.get()) ConsoleLogger.print((state == State.CONNECTING ? "Could not connect to " + remoteAddress : "IO error with " + getPeerInfo()) + ": " + e.getMessage());
+        close();
+    }
+
+    void checkHandshakeTimeout(long now) {
+        if (state == State.READY || now < deadline) return;
+        if (state == State.AWAIT_NEGOTIATION) {
+            completeHandshake(); // Пир не поддерживает бинарный протокол - остаемся на текстовом
+        } else {
+            ConsoleLogger.print("ERROR [" + connectionId + "]: Handshake timed out in state " + state + ". Closing connection.");
+            close();
+        }
+    }
+
+    private void enterState(State newState, long timeoutMs) {
+        state = newState;
+        deadline = System.currentTimeMillis() + timeoutMs;
+    }
+
+    // --- Чтение ---
+
+    private void onReadable() throws IOException {
+        if (readBuffer == null) readBuffer = bufferPool.acquire();
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            if (!closed.get()) ConsoleLogger.print("Connection closed by peer: " + getPeerInfo());
+            close();
+            return;
+        }
+        countReceived(read);
+        readBuffer.flip();
+        processBuffered();
+    }
+
+    // readBuffer в режиме чтения: разбирает целые кадры, остаток сохраняет до следующего чтения
+    private void processBuffered() throws IOException {
+        processFrames();
+        if (closed.get()) return;
+        readBuffer.compact();
+        if (readBuffer.position() == 0) { bufferPool.release(readBuffer); readBuffer = null; }
+    }
+
+    // Очередь входящих освободилась (поток обработки): снова читаем канал и разбираем то, что уже прочитано
+    @Override
+    protected void resumeReading() {
+        loop.execute(() -> {
+            if (closed.get()) return;
+            setReadInterest(true);
+            if (readBuffer == null) return;
+            try {
+                readBuffer.flip();
+                processBuffered();
+            } catch (IOException e) {
+                onError(e);
+            }
+        });
+    }
+
+    private void processFrames() throws IOException {
+        while (!closed.get()) {
+            boolean ready = state == State.READY;
+            int frameLength = ready ? codec.frameLength(readBuffer) : TextMessageCodec.utfFrameLength(readBuffer);
+            if (frameLength == MessageCodec.INCOMPLETE_HEADER || frameLength > readBuffer.remaining()) {
+                if (frameLength > readBuffer.capacity()) growReadBuffer(frameLength);
+                return;
+            }
+            if (ready) {
+                if (inbound.pauseIfFull()) { setReadInterest(false); return; } // Обработка не успевает: не читаем, пока очередь не освободится
+                Message message = codec.decodeFrame(readBuffer);
+                if (message == null) ConsoleLogger.print("WARN [" + parentPeer.getNickname() + "]: Received unknown or malformed message from " + peerNickname + " (" + codec.getName() + " format).");
+                else inbound.offer(message);
+            } else {
+                onHandshakeString(TextMessageCodec.readUtf(readBuffer));
+            }
+        }
+    }
+
+    // Кадр больше буфера пула: переносим данные в отдельный буфер нужного размера
+    private void growReadBuffer(int frameLength) {
+        ByteBuffer larger = ByteBuffer.allocate(frameLength);
+        larger.put(readBuffer).flip();
+        bufferPool.release(readBuffer);
+        readBuffer = larger;
+    }
+
+    private void onHandshakeString(String value) throws IOException {
+        if (state == State.AWAIT_NICK) {
+            if (value.isEmpty() || value.equalsIgnoreCase("UNKNOWN")) throw new IOException("Received invalid nickname");
+            this.peerNickname = value;
+            if (isIncoming) {
+                ConsoleLogger.print("[" + connectionId + "] Received nickname '" + value + "'. Sending ours '" + parentPeer.getNickname() + "'");
+                writeHandshake(parentPeer.getNickname());
+            } else {
+                ConsoleLogger.print("[" + connectionId + "] Received nickname '" + value + "'");
+            }
+            enterState(State.AWAIT_NEGOTIATION, NEGOTIATION_TIMEOUT_MS);
+        } else if (BinaryMessageCodec.NEGOTIATION_TOKEN.equals(value)) {
+            if (isIncoming) writeHandshake(BinaryMessageCodec.NEGOTIATION_TOKEN);
+            codec = new BinaryMessageCodec(); binaryProtocol = true;
+            completeHandshake();
+        } else {
+            Message message = TextMessageCodec.decode(value);
+            if (message != null) pendingMessages.add(message);
+            else ConsoleLogger.print("WARN [" + connectionId + "]: Ignoring unknown message during handshake: " + value.substring(0, Math.min(value.length(), 60)));
+            // Старый исходящий пир сразу шлет обычные сообщения; входящему старому пиру ждем таймаута
+            if (isIncoming) completeHandshake();
+        }
+    }
+
+    private void completeHandshake() {
+        state = State.READY;
+        ConsoleLogger.print("[" + connectionId + "] Using " + codec.getName() + " protocol with " + peerNickname);
+        parentPeer.addConnection(this);
+        if (!isIncoming) {
+            ConsoleLogger.print("Requesting state sync from " + peerNickname);
+            sendMessage(parentPeer.createSyncRequest());
+        }
+        while (!pendingMessages.isEmpty() && !closed.get()) inbound.offer(pendingMessages.poll()); // Их единицы, а очередь не меньше PeerConfig.MIN_INBOUND_QUEUE
+    }
+
+    // --- Запись ---
+
+    // Только постановка в очередь, никогда не блокирует. При переполнении (пир не успевает читать) восстановимое сообщение
+    // отбрасывается, ради остальных соединение закрывается.
+    @Override
+    public void sendMessage(Message message) {
+        if (closed.get()) return;
+        if (!offer(message)) {
+            if (!message.getType().isDroppable()) {
+                ConsoleLogger.print("WARN: Outbound queue full for " + getPeerInfo() + ", cannot drop " + message.getType() + ". Closing connection.");
+                close();
+                return;
+            }
+            long dropped = droppedMessages.incrementAndGet();
+            if (dropped == 1 || dropped % 1000 == 0) ConsoleLogger.print("WARN: Outbound queue full for " + getPeerInfo() + ", dropped " + dropped + " message(s) so far.");
+        }
+    }
+
+    // Для потоков синхронизации, которые нельзя терять: ждет места в очереди, пока соединение живо.
+    // Поток цикла ждать не может (очередь разбирает он же) - ему место не ограничивается.
+    @Override
+    public void sendMessageBlocking(Message message) {
+        if (loop.inEventLoop()) {
+            queued.incrementAndGet();
+            enqueue(message);
+            return;
+        }
+        while (!closed.get() && !offer(message)) {
+            LockSupport.parkNanos(BLOCKING_SEND_RETRY_NANOS);
+            if (Thread.currentThread().isInterrupted()) return;
+        }
+    }
+
+    private boolean offer(Message message) {
+        if (queued.incrementAndGet() > outboundCapacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        enqueue(message);
+        return true;
+    }
+
+    private void enqueue(Message message) {
+        outbound.add(message);
+        if (flushScheduled.compareAndSet(false, true)) loop.execute(flushTask);
+    }
+
+    private void writeHandshake(String value) {
+        if (writeBuffer == null) writeBuffer = bufferPool.acquire();
+        TextMessageCodec.writeUtf(value, writeBuffer);
+        flushOutbound();
+    }
+
+    // Кодирует накопленные сообщения в буфер пачками и пишет в канал, пока он принимает данные
+    private void flushOutbound() {
+        flushScheduled.set(false);
+        if (closed.get()) return;
+        try {
+            while (true) {
+                if (largeWrite != null) {
+                    countSent(channel.write(largeWrite));
+                    if (largeWrite.hasRemaining()) { setWriteInterest(true); return; }
+                    largeWrite = null;
+                }
+                if (writeBuffer == null) writeBuffer = bufferPool.acquire();
+                Message message;
+                while ((message = outbound.peek()) != null) {
+                    int mark = writeBuffer.position();
+                    try {
+                        codec.encode(message, writeBuffer);
+                        outbound.poll(); queued.decrementAndGet();
+                    } catch (BufferOverflowException e) {
+                        writeBuffer.position(mark);
+                        if (mark == 0) { outbound.poll(); queued.decrementAndGet(); largeWrite = encodeLarge(message); }
+                        break;
+                    } catch (IllegalArgumentException | UncheckedIOException e) {
+                        writeBuffer.position(mark);
+                        outbound.poll(); queued.decrementAndGet();
+                        ConsoleLogger.print("ERROR: Dropping unencodable " + message.getType() + " message to " + getPeerInfo() + ": " + e.getMessage());
+                    }
+                }
+                if (writeBuffer.position() > 0) {
+                    writeBuffer.flip();
+                    countSent(channel.write(writeBuffer));
+                    boolean drained = !writeBuffer.hasRemaining();
+                    writeBuffer.compact();
+                    if (!drained) { setWriteInterest(true); return; }
+                }
+                if (largeWrite == null && outbound.isEmpty()) break;
+            }
+            bufferPool.release(writeBuffer);
+            writeBuffer = null;
+            setWriteInterest(false);
+        } catch (IOException e) {
+            if (!closed.get()) ConsoleLogger.print("WARN: Failed to send message to " + getPeerInfo() + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    // Кадр больше буфера пула кодируется в отдельный буфер; null, если сообщение не удалось закодировать
+    private ByteBuffer encodeLarge(Message message) {
+        int capacity = bufferPool.getBufferSize() * 2;
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            try {
+                codec.encode(message, buffer);
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                if (capacity >= BinaryMessageCodec.MAX_FRAME_LENGTH) {
+                    ConsoleLogger.print("ERROR: Dropping oversized " + message.getType() + " message to " + getPeerInfo());
+                    return null;
+                }
+                capacity *= 2;
+            } catch (IllegalArgumentException | UncheckedIOException e) {
+                ConsoleLogger.print("ERROR: Dropping unencodable " + message.getType() + " message to " + getPeerInfo() + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private void setWriteInterest(boolean enabled) {
+        setInterest(SelectionKey.OP_WRITE, enabled);
+    }
+
+    private void setReadInterest(boolean enabled) {
+        setInterest(SelectionKey.OP_READ, enabled);
+    }
+
+    private void setInterest(int op, boolean enabled) {
+        if (key == null || !key.isValid()) return;
+        int ops = key.interestOps();
+        int updated = enabled ? ops | op : ops & ~op;
+        if (updated != ops) key.interestOps(updated);
+    }
+
+    // --- Закрытие ---
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        String info = getPeerInfo();
+        ConsoleLogger.print("Closing connection handler for " + info + "...");
+        parentPeer.removeConnection(this);
+        inbound.close();
+        try { channel.close(); } catch (IOException e) { /* ignore */ }
+        loop.execute(this::releaseResources);
+        ConsoleLogger.print("Connection handler closed for " + info);
+    }
+
+    private void releaseResources() {
+        loop.unregister(this);
+        bufferPool.release(readBuffer);
+        bufferPool.release(writeBuffer);
+        readBuffer = null; writeBuffer = null; largeWrite = null;
+        outbound.clear();
+        queued.set(0);
+    }
+}
@@ -0,0 +1,95 @@
+package dev.Block.network.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.Block.Peer;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Неблокирующий транспорт P2P соединений на ServerSocketChannel/Selector.
+ * Соединения распределяются по небольшому фиксированному набору NioEventLoop,
+ * буферы чтения/записи берутся из общего пула прямых буферов.
+ * Для Peer соединения выглядят так же, как при блокирующем транспорте (PeerConnection).
+ */
+public class NioTransport {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final Peer peer;
+    private final NioEventLoop[] eventLoops;
+    private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+
+    public NioTransport(Peer peer, int eventLoopCount) throws IOException {
+        this.peer = peer;
+        this.eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) eventLoops[i] = new NioEventLoop("NioLoop-" + peer.getNickname() + "-" + i);
+    }
+
+    /** Запускает циклы событий и начинает принимать соединения на указанном порту. */
+    public void start(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        for (NioEventLoop loop : eventLoops) loop.start();
+
+        NioEventLoop acceptLoop = eventLoops[0];
+        acceptLoop.execute(() -> {
+            try {
+                serverChannel.register(acceptLoop.selector(), SelectionKey.OP_ACCEPT, new NioEventLoop.KeyHandler() {
+                    @Override public void onReady(SelectionKey key) throws IOException { acceptPending(); }
+                    @Override public void onError(Exception e) { ConsoleLogger.print("Error accepting connection: " + e.getMessage()); }
+                });
+            } catch (IOException e) {
+                ConsoleLogger.print("FATAL: Could not register server channel: " + e.getMessage());
+            }
+        });
+        ConsoleLogger.print("Server listening on port " + port + " (NIO, " + eventLoops.length + " event loop(s))");
+    }
+
+    private void acceptPending() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            ConsoleLogger.print("Incoming connection from " + channel.getRemoteAddress());
+            channel.configureBlocking(false);
+            NioEventLoop loop = nextLoop();
+            NioPeerConnection connection = new NioPeerConnection(peer, channel, null, channel.getRemoteAddress(), loop, bufferPool);
+            loop.execute(connection::register);
+        }
+    }
+
+    /**
+     * Начинает неблокирующее подключение; результат сообщается в лог, соединение попадает в Peer после рукопожатия.
+     * dialAddress - ключ AddressBook (см. ConnectionManager).
+     */
+    public void connect(String host, int port, String dialAddress) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) throw new IOException("Unknown host " + host);
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        NioEventLoop loop = nextLoop();
+        NioPeerConnection connection = new NioPeerConnection(peer, channel, dialAddress, address, loop, bufferPool);
+        loop.execute(() -> connection.connect(address));
+    }
+
+    private NioEventLoop nextLoop() {
+        return eventLoops[Math.floorMod(nextLoop.getAndIncrement(), eventLoops.length)];
+    }
+
+    public void shutdown() {
+        if (serverChannel != null) { try { serverChannel.close(); } catch (IOException e) { /* ignore */ } }
+        for (NioEventLoop loop : eventLoops) loop.shutdown();
+        try {
+            for (NioEventLoop loop : eventLoops) loop.awaitTermination(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
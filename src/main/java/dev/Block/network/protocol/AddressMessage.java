@@ -0,0 +1,38 @@
+package dev.Block.network.protocol;
+
+import java.util.List;
+
+/**
+ * Адреса, на которых пиры принимают соединения (только бинарный протокол), см. AddressBook.
+ * Пустой host означает "адрес, с которого пришло это соединение": так отправитель сообщает свой порт.
+ */
+public final class AddressMessage extends Message {
+
+    /** Адрес пира: ник (может быть пустым, если неизвестен), хост и порт для подключения. */
+    public static final class Entry {
+        private final String nickname;
+        private final String host;
+        private final int port;
+
+        public Entry(String nickname, String host, int port) {
+            this.nickname = nickname;
+            this.host = host;
+            this.port = port;
+        }
+
+        public String getNickname() { return nickname; }
+
+        public String getHost() { return host; }
+
+        public int getPort() { return port; }
+    }
+
+    private final List<Entry> entries;
+
+    public AddressMessage(List<Entry> entries) {
+        super(MessageType.ADDR);
+        this.entries = entries;
+    }
+
+    public List<Entry> getEntries() { return entries; }
+}
@@ -0,0 +1,30 @@
+package dev.Block.network.protocol;
+
+/**
+ * Одна запись баланса в потоке синхронизации состояния.
+ * В бинарном протоколе вместе с балансом передается ключ счета (null - ключа нет).
+ */
+public final class BalanceEntryMessage extends Message {
+
+    private final String nickname;
+    private final long balance;
+    private final byte[] publicKey;
+
+    public BalanceEntryMessage(String nickname, long balance) {
+        this(nickname, balance, null);
+    }
+
+    public BalanceEntryMessage(String nickname, long balance, byte[] publicKey) {
+        super(MessageType.SYNC_BAL_ENTRY);
+        this.nickname = nickname;
+        this.balance = balance;
+        this.publicKey = publicKey;
+    }
+
+    public String getNickname() { return nickname; }
+
+    public long getBalance() { return balance; }
+
+    /** Открытый ключ счета или null. */
+    public byte[] getPublicKey() { return publicKey; }
+}
@@ -0,0 +1,447 @@
+package dev.Block.network.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.Block.chain.Block;
+import dev.Block.chain.Sha256;
+import dev.Block.chain.Signatures;
+
+/**
+ * Бинарный формат с длиной кадра.
+ * <pre>
+ * кадр:   [type:1][length:4][payload:length]
+ * строка: [len:2][UTF-8 bytes]
+ * int:    4 байта big-endian, long: 8 байт big-endian
+ * </pre>
+ * Поля каждого типа имеют фиксированный порядок, разделители и парсинг строк не нужны.
+ * Буферы кодирования/декодирования переиспользуются, поэтому экземпляр не потокобезопасен.
+ */
+public final class BinaryMessageCodec implements MessageCodec {
+
+    /** Версия бинарного протокола, согласуемая при рукопожатии. */
+    public static final int VERSION = 16;
+    /** Строка предложения/подтверждения бинарного протокола (отправляется через writeUTF). */
+    public static final String NEGOTIATION_TOKEN = "PROTO:BIN:" + VERSION;
+    /** Защита от мусорных/враждебных длин кадров. */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /** Размер заголовка кадра: тип (1) + длина (4). */
+    public static final int HEADER_LENGTH = 5;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private byte[] readBuffer = new byte[INITIAL_BUFFER_SIZE];
+
+    @Override
+    public Message read(DataInputStream in) throws IOException {
+        int code = in.readUnsignedByte();
+        int length = checkLength(in.readInt());
+        if (readBuffer.length < length) readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+        in.readFully(readBuffer, 0, length);
+
+        MessageType type = MessageType.fromCode(code);
+        if (type == null) return null; // Неизвестный тип (например, от более новой версии) - кадр уже пропущен
+        return decodePayload(type, ByteBuffer.wrap(readBuffer, 0, length));
+    }
+
+    @Override
+    public void write(Message message, DataOutputStream out) throws IOException {
+        while (true) {
+            writeBuffer.clear();
+            try {
+                encode(message, writeBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                if (writeBuffer.capacity() >= MAX_FRAME_LENGTH) throw new ProtocolException("Message too large: " + message.getType());
+                writeBuffer = ByteBuffer.allocate(Math.min(writeBuffer.capacity() * 2, MAX_FRAME_LENGTH));
+            }
+        }
+        out.write(writeBuffer.array(), 0, writeBuffer.position());
+    }
+
+    @Override
+    public int frameLength(ByteBuffer in) throws IOException {
+        if (in.remaining() < HEADER_LENGTH) return INCOMPLETE_HEADER;
+        return HEADER_LENGTH + checkLength(in.getInt(in.position() + 1));
+    }
+
+    @Override
+    public Message decodeFrame(ByteBuffer in) throws IOException {
+        int code = in.get() & 0xFF;
+        int length = checkLength(in.getInt());
+        int end = in.position() + length;
+        MessageType type = MessageType.fromCode(code);
+        if (type == null) { in.position(end); return null; }
+
+        ByteBuffer payload;
+        if (in.hasArray()) {
+            payload = ByteBuffer.wrap(in.array(), in.arrayOffset() + in.position(), length);
+        } else { // Прямой буфер (NIO): копируем данные кадра в переиспользуемый массив
+            if (readBuffer.length < length) readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+            in.get(readBuffer, 0, length);
+            payload = ByteBuffer.wrap(readBuffer, 0, length);
+        }
+        in.position(end);
+        return decodePayload(type, payload);
+    }
+
+    @Override
+    public void encode(Message message, ByteBuffer out) {
+        int start = out.position();
+        out.put(message.getType().getCode());
+        out.putInt(0); // Длина, заполняется ниже
+        encodePayload(message, out);
+        out.putInt(start + 1, out.position() - start - HEADER_LENGTH);
+    }
+
+    @Override
+    public String getName() { return "binary-v" + VERSION; }
+
+    private static int checkLength(int length) throws ProtocolException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) throw new ProtocolException("Invalid frame length: " + length);
+        return length;
+    }
+
+    // --- Payload layout ---
+
+    static void encodePayload(Message message, ByteBuffer buf) {
+        switch (message.getType()) {
+            case CHAT:
+                putString(buf, ((ChatMessage) message).getText());
+                break;
+            case TXN:
+                putTransaction(buf, (TransactionMessage) message);
+                break;
+            case REQ_SYNC: {
+                SyncRequestMessage request = (SyncRequestMessage) message;
+                putString(buf, request.getRequesterNickname());
+                buf.putInt(request.getLedgerHeight());
+                buf.put(request.getLedgerRoot());
+                buf.putInt(request.getResumeHeight());
+                buf.put(request.getResumeLedgerRoot());
+                buf.putInt(request.getResumeFrom());
+                break;
+            }
+            case SYNC_DELTA_START: {
+                DeltaStartMessage start = (DeltaStartMessage) message;
+                buf.putInt(start.getBaseHeight());
+                buf.putInt(start.getRecordCount());
+                break;
+            }
+            case PEER_JOINED: {
+                PeerJoinedMessage joined = (PeerJoinedMessage) message;
+                putString(buf, joined.getNickname());
+                buf.putInt(joined.getInitialBalance());
+                putKey(buf, joined.getPublicKey());
+                break;
+            }
+            case SYNC_BAL_ENTRY: {
+                BalanceEntryMessage entry = (BalanceEntryMessage) message;
+                putString(buf, entry.getNickname());
+                buf.putLong(entry.getBalance());
+                putKey(buf, entry.getPublicKey());
+                break;
+            }
+            case SYNC_LED_ENTRY:
+                putString(buf, ((LedgerEntryMessage) message).getEntry());
+                break;
+            case SYNC_LED_RECORD: {
+                LedgerRecordMessage record = (LedgerRecordMessage) message;
+                buf.putLong(record.getTxId());
+                buf.putLong(record.getEpochSecond());
+                putString(buf, record.getSender());
+                putString(buf, record.getRecipient());
+                buf.putLong(record.getAmount());
+                break;
+            }
+            case SYNC_SNAPSHOT_START: {
+                SnapshotStartMessage start = (SnapshotStartMessage) message;
+                buf.putInt(start.getHeight());
+                buf.put(start.getLedgerRoot());
+                buf.putInt(start.getResumeFrom());
+                break;
+            }
+            case SYNC_SNAPSHOT_CHUNK: {
+                SnapshotChunkMessage chunk = (SnapshotChunkMessage) message;
+                buf.put(chunk.getKind());
+                buf.putInt(chunk.getFirst());
+                buf.putInt(chunk.getCount());
+                buf.putInt(chunk.getRawLength());
+                buf.putInt(chunk.getCompressed().length);
+                buf.put(chunk.getCompressed());
+                break;
+            }
+            case STATE_ROOT: {
+                StateRootMessage root = (StateRootMessage) message;
+                buf.putInt(root.getRound());
+                buf.put(root.getAccountsRoot());
+                buf.put(root.getLedgerRoot());
+                buf.putInt(root.getAccountCount());
+                buf.putInt(root.getLedgerSize());
+                break;
+            }
+            case STATE_NODES_REQ:
+            case STATE_BUCKETS_REQ: {
+                StateQueryMessage query = (StateQueryMessage) message;
+                buf.put(query.getTree());
+                buf.putInt(query.getLevel());
+                putIndices(buf, query.getIndices());
+                break;
+            }
+            case STATE_NODES: {
+                StateNodesMessage nodes = (StateNodesMessage) message;
+                buf.put(nodes.getTree());
+                buf.putInt(nodes.getLevel());
+                putIndices(buf, nodes.getIndices());
+                for (byte[] hash : nodes.getHashes()) buf.put(hash);
+                break;
+            }
+            case STATE_BUCKETS: {
+                StateBucketsMessage buckets = (StateBucketsMessage) message;
+                buf.put(buckets.getTree());
+                buf.putInt(buckets.getAccounts().size());
+                buckets.getAccounts().forEach((name, balance) -> { putString(buf, name); buf.putLong(balance); });
+                buf.putInt(buckets.getRecords().size());
+                for (LedgerRecordMessage record : buckets.getRecords()) encodePayload(record, buf);
+                break;
+            }
+            case INV:
+            case GETDATA: {
+                long[] ids = ((InventoryMessage) message).getIds();
+                buf.putInt(ids.length);
+                for (long id : ids) buf.putLong(id);
+                break;
+            }
+            case ADDR: {
+                List<AddressMessage.Entry> entries = ((AddressMessage) message).getEntries();
+                buf.putInt(entries.size());
+                for (AddressMessage.Entry entry : entries) {
+                    putString(buf, entry.getNickname());
+                    putString(buf, entry.getHost());
+                    buf.putShort((short) entry.getPort());
+                }
+                break;
+            }
+            case BLOCK:
+                putBlock(buf, ((BlockMessage) message).getBlock());
+                break;
+            case BLOCK_ANNOUNCE: {
+                BlockAnnounceMessage announce = (BlockAnnounceMessage) message;
+                buf.put(announce.getHeader().headerBytes());
+                long[] ids = announce.getTxIds();
+                buf.putInt(ids.length);
+                for (long id : ids) buf.putLong(id);
+                break;
+            }
+            default:
+                break; // Маркеры без данных
+        }
+    }
+
+    static Message decodePayload(MessageType type, ByteBuffer buf) throws ProtocolException {
+        try {
+            switch (type) {
+                case CHAT: return new ChatMessage(getString(buf));
+                case TXN: return getTransaction(buf);
+                case REQ_SYNC: return new SyncRequestMessage(getString(buf), buf.getInt(), getHash(buf), buf.getInt(), getHash(buf), buf.getInt());
+                case SYNC_SNAPSHOT_START: return new SnapshotStartMessage(buf.getInt(), getHash(buf), buf.getInt());
+                case SYNC_SNAPSHOT_CHUNK: return getSnapshotChunk(buf);
+                case SYNC_DELTA_START: return new DeltaStartMessage(buf.getInt(), buf.getInt());
+                case PEER_JOINED: return new PeerJoinedMessage(getString(buf), buf.getInt(), getKey(buf));
+                case SYNC_BAL_ENTRY: return new BalanceEntryMessage(getString(buf), buf.getLong(), getKey(buf));
+                case SYNC_LED_ENTRY: return new LedgerEntryMessage(getString(buf));
+                case SYNC_LED_RECORD: return new LedgerRecordMessage(buf.getLong(), buf.getLong(), getString(buf), getString(buf), buf.getLong());
+                case STATE_ROOT: return new StateRootMessage(buf.getInt(), getHash(buf), getHash(buf), buf.getInt(), buf.getInt());
+                case STATE_NODES_REQ: return StateQueryMessage.nodes(buf.get(), buf.getInt(), getIndices(buf));
+                case STATE_BUCKETS_REQ: { byte tree = buf.get(); buf.getInt(); return StateQueryMessage.buckets(tree, getIndices(buf)); }
+                case STATE_NODES: return getStateNodes(buf);
+                case STATE_BUCKETS: return getStateBuckets(buf);
+                case INV:
+                case GETDATA: return getInventory(type, buf);
+                case ADDR: return getAddresses(buf);
+                case BLOCK: return new BlockMessage(getBlock(buf));
+                case BLOCK_ANNOUNCE: return getBlockAnnounce(buf);
+                default: return SyncMarkerMessage.of(type);
+            }
+        } catch (RuntimeException e) { // BufferUnderflowException и т.п. - обрезанный кадр
+            throw new ProtocolException("Malformed " + type + " frame: " + e);
+        }
+    }
+
+    static SnapshotChunkMessage getSnapshotChunk(ByteBuffer buf) {
+        byte kind = buf.get();
+        int first = buf.getInt();
+        int count = buf.getInt();
+        int rawLength = buf.getInt();
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) throw new BufferUnderflowException();
+        byte[] compressed = new byte[length]; // Копия: буфер чтения переиспользуется
+        buf.get(compressed);
+        return new SnapshotChunkMessage(kind, first, count, rawLength, compressed);
+    }
+
+    /** Список индексов: [count:4][index:4]... */
+    static void putIndices(ByteBuffer buf, int[] indices) {
+        buf.putInt(indices.length);
+        for (int index : indices) buf.putInt(index);
+    }
+
+    static int[] getIndices(ByteBuffer buf) {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / 4) throw new BufferUnderflowException();
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) indices[i] = buf.getInt();
+        return indices;
+    }
+
+    static byte[] getHash(ByteBuffer buf) {
+        byte[] hash = new byte[Sha256.LENGTH];
+        buf.get(hash);
+        return hash;
+    }
+
+    static StateNodesMessage getStateNodes(ByteBuffer buf) {
+        byte tree = buf.get();
+        int level = buf.getInt();
+        int[] indices = getIndices(buf);
+        if (indices.length > buf.remaining() / Sha256.LENGTH) throw new BufferUnderflowException();
+        byte[][] hashes = new byte[indices.length][];
+        for (int i = 0; i < indices.length; i++) hashes[i] = getHash(buf);
+        return new StateNodesMessage(tree, level, indices, hashes);
+    }
+
+    /** Содержимое корзин: [tree:1][accounts:4]{name, balance:8}...[records:4]{SYNC_LED_RECORD}... */
+    static StateBucketsMessage getStateBuckets(ByteBuffer buf) {
+        byte tree = buf.get();
+        int accountCount = buf.getInt();
+        if (accountCount < 0 || accountCount > buf.remaining() / 10) throw new BufferUnderflowException(); // Минимум: пустое имя и баланс
+        Map<String, Long> accounts = new LinkedHashMap<>(accountCount * 2);
+        for (int i = 0; i < accountCount; i++) accounts.put(getString(buf), buf.getLong());
+        int recordCount = buf.getInt();
+        if (recordCount < 0 || recordCount > buf.remaining() / 28) throw new BufferUnderflowException(); // Минимальный размер SYNC_LED_RECORD - 28 байт
+        List<LedgerRecordMessage> records = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++) records.add(new LedgerRecordMessage(buf.getLong(), buf.getLong(), getString(buf), getString(buf), buf.getLong()));
+        return new StateBucketsMessage(tree, accounts, records);
+    }
+
+    /** Список id транзакций: [count:4][txId:8]... */
+    static InventoryMessage getInventory(MessageType type, ByteBuffer buf) {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / 8) throw new BufferUnderflowException();
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) ids[i] = buf.getLong();
+        return type == MessageType.INV ? InventoryMessage.inv(ids) : InventoryMessage.getData(ids);
+    }
+
+    /** Адреса: [count:4]{nickname, host, port:2}... */
+    static AddressMessage getAddresses(ByteBuffer buf) {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / 6) throw new BufferUnderflowException(); // Минимум: две пустые строки и порт
+        List<AddressMessage.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) entries.add(new AddressMessage.Entry(getString(buf), getString(buf), buf.getShort() & 0xFFFF));
+        return new AddressMessage(entries);
+    }
+
+    /** Ключ счета: [present:1], затем при present = 1 [publicKey:32]. */
+    static void putKey(ByteBuffer buf, byte[] publicKey) {
+        buf.put((byte) (publicKey != null ? 1 : 0));
+        if (publicKey != null) buf.put(publicKey);
+    }
+
+    static byte[] getKey(ByteBuffer buf) {
+        if (buf.get() == 0) return null;
+        byte[] publicKey = new byte[Signatures.PUBLIC_KEY_LENGTH];
+        buf.get(publicKey);
+        return publicKey;
+    }
+
+    /** Транзакция: [txId:8][sender][recipient][amount:4][signed:1], затем при signed = 1 [publicKey:32][signature:64]. */
+    static void putTransaction(ByteBuffer buf, TransactionMessage txn) {
+        buf.putLong(txn.getTxId());
+        putString(buf, txn.getSender());
+        putString(buf, txn.getRecipient());
+        buf.putInt(txn.getAmount());
+        buf.put((byte) (txn.isSigned() ? 1 : 0));
+        if (txn.isSigned()) buf.put(txn.getPublicKey()).put(txn.getSignature());
+    }
+
+    static TransactionMessage getTransaction(ByteBuffer buf) {
+        long txId = buf.getLong();
+        String sender = getString(buf);
+        String recipient = getString(buf);
+        int amount = buf.getInt();
+        if (buf.get() == 0) return new TransactionMessage(txId, sender, recipient, amount);
+        byte[] publicKey = new byte[Signatures.PUBLIC_KEY_LENGTH];
+        buf.get(publicKey);
+        byte[] signature = new byte[Signatures.SIGNATURE_LENGTH];
+        buf.get(signature);
+        return new TransactionMessage(txId, sender, recipient, amount, publicKey, signature);
+    }
+
+    /** Блок: заголовок (см. Block), [count:4], затем транзакции в формате TXN. */
+    static void putBlock(ByteBuffer buf, Block block) {
+        buf.put(block.headerBytes());
+        List<TransactionMessage> transactions = block.getTransactions();
+        buf.putInt(transactions.size());
+        for (TransactionMessage txn : transactions) putTransaction(buf, txn);
+    }
+
+    static Block getBlock(ByteBuffer buf) {
+        Block header = getBlockHeader(buf);
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / 17) throw new BufferUnderflowException(); // Минимальный размер TXN - 17 байт
+        List<TransactionMessage> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) transactions.add(getTransaction(buf));
+        return new Block(header.getHeight(), header.getPrevHash(), header.getMerkleRoot(), header.getTimestamp(), header.getDifficultyBits(), header.getNonce(), transactions);
+    }
+
+    /** Объявление блока: заголовок (см. Block), [count:4][txId:8]... */
+    static BlockAnnounceMessage getBlockAnnounce(ByteBuffer buf) {
+        Block header = getBlockHeader(buf);
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / 8) throw new BufferUnderflowException();
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) ids[i] = buf.getLong();
+        return new BlockAnnounceMessage(header, ids);
+    }
+
+    /** Заголовок блока как блок без транзакций. */
+    static Block getBlockHeader(ByteBuffer buf) {
+        long height = buf.getLong();
+        byte[] prevHash = new byte[Sha256.LENGTH];
+        buf.get(prevHash);
+        byte[] merkleRoot = new byte[Sha256.LENGTH];
+        buf.get(merkleRoot);
+        long timestamp = buf.getLong();
+        int difficultyBits = buf.getInt();
+        long nonce = buf.getLong();
+        return new Block(height, prevHash, merkleRoot, timestamp, difficultyBits, nonce, List.of());
+    }
+
+    static void putString(ByteBuffer buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IllegalArgumentException("String field too long: " + bytes.length + " bytes");
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    static String getString(ByteBuffer buf) {
+        int length = buf.getShort() & 0xFFFF;
+        if (length > buf.remaining()) throw new BufferUnderflowException();
+        String value = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return value;
+    }
+}
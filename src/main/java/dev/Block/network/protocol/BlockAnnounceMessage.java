@@ -0,0 +1,37 @@
+package dev.Block.network.protocol;
+
+import java.util.List;
+
+import dev.Block.chain.Block;
+
+/**
+ * Объявление блока: заголовок и id транзакций по порядку, без тел (только бинарный протокол).
+ * Получатель берет тела из своего пула, недостающие запрашивает GETDATA (см. CompactBlocks).
+ */
+public final class BlockAnnounceMessage extends Message {
+
+    private final Block header; // Блок без транзакций: хеш зависит только от заголовка
+    private final long[] txIds;
+
+    public BlockAnnounceMessage(Block header, long[] txIds) {
+        super(MessageType.BLOCK_ANNOUNCE);
+        this.header = header;
+        this.txIds = txIds;
+    }
+
+    public static BlockAnnounceMessage of(Block block) {
+        List<TransactionMessage> transactions = block.getTransactions();
+        long[] ids = new long[transactions.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = transactions.get(i).getTxId();
+        return new BlockAnnounceMessage(new Block(block.getHeight(), block.getPrevHash(), block.getMerkleRoot(), block.getTimestamp(), block.getDifficultyBits(), block.getNonce(), List.of()), ids);
+    }
+
+    /** Полный блок с транзакциями в порядке txIds. */
+    public Block toBlock(List<TransactionMessage> transactions) {
+        return new Block(header.getHeight(), header.getPrevHash(), header.getMerkleRoot(), header.getTimestamp(), header.getDifficultyBits(), header.getNonce(), transactions);
+    }
+
+    public Block getHeader() { return header; }
+
+    public long[] getTxIds() { return txIds; }
+}
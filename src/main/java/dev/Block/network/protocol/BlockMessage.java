@@ -0,0 +1,18 @@
+package dev.Block.network.protocol;
+
+import dev.Block.chain.Block;
+
+/**
+ * Рассылка блока вместе со всеми его транзакциями.
+ */
+public final class BlockMessage extends Message {
+
+    private final Block block;
+
+    public BlockMessage(Block block) {
+        super(MessageType.BLOCK);
+        this.block = block;
+    }
+
+    public Block getBlock() { return block; }
+}
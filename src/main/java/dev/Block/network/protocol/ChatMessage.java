@@ -0,0 +1,13 @@
+package dev.Block.network.protocol;
+
+public final class ChatMessage extends Message {
+
+    private final String text;
+
+    public ChatMessage(String text) {
+        super(MessageType.CHAT);
+        this.text = text;
+    }
+
+    public String getText() { return text; }
+}
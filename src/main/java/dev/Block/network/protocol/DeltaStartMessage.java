@@ -0,0 +1,23 @@
+package dev.Block.network.protocol;
+
+/**
+ * Начало инкрементальной синхронизации (только бинарный протокол).
+ * Далее идут SYNC_BAL_ENTRY - балансы на момент, когда в реестре было baseHeight записей
+ * (по ним добавляются неизвестные получателю счета), затем recordCount записей SYNC_LED_RECORD
+ * начиная с позиции baseHeight и маркер SYNC_DELTA_END.
+ */
+public final class DeltaStartMessage extends Message {
+
+    private final int baseHeight;
+    private final int recordCount;
+
+    public DeltaStartMessage(int baseHeight, int recordCount) {
+        super(MessageType.SYNC_DELTA_START);
+        this.baseHeight = baseHeight;
+        this.recordCount = recordCount;
+    }
+
+    public int getBaseHeight() { return baseHeight; }
+
+    public int getRecordCount() { return recordCount; }
+}
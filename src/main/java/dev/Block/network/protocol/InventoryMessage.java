@@ -0,0 +1,26 @@
+package dev.Block.network.protocol;
+
+/**
+ * Идентификаторы транзакций без тел (только бинарный протокол):
+ * INV - объявление "у меня есть", GETDATA - запрос тел, которых у получателя запроса еще нет.
+ * Тела передаются обычными сообщениями TXN.
+ */
+public final class InventoryMessage extends Message {
+
+    private final long[] ids;
+
+    private InventoryMessage(MessageType type, long[] ids) {
+        super(type);
+        this.ids = ids;
+    }
+
+    public static InventoryMessage inv(long[] ids) {
+        return new InventoryMessage(MessageType.INV, ids);
+    }
+
+    public static InventoryMessage getData(long[] ids) {
+        return new InventoryMessage(MessageType.GETDATA, ids);
+    }
+
+    public long[] getIds() { return ids; }
+}
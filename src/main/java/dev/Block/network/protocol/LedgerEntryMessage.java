@@ -0,0 +1,16 @@
+package dev.Block.network.protocol;
+
+/**
+ * Одна запись реестра в потоке синхронизации состояния.
+ */
+public final class LedgerEntryMessage extends Message {
+
+    private final String entry;
+
+    public LedgerEntryMessage(String entry) {
+        super(MessageType.SYNC_LED_ENTRY);
+        this.entry = entry;
+    }
+
+    public String getEntry() { return entry; }
+}
@@ -0,0 +1,34 @@
+package dev.Block.network.protocol;
+
+/**
+ * Запись реестра в потоке синхронизации в бинарном виде (только бинарный протокол).
+ * В отличие от LedgerEntryMessage передает txId и время без форматирования, поэтому получатель
+ * сохраняет исходные идентификаторы транзакций и отбрасывает их повторы после синхронизации.
+ */
+public final class LedgerRecordMessage extends Message {
+
+    private final long txId;
+    private final long epochSecond;
+    private final String sender;
+    private final String recipient;
+    private final long amount;
+
+    public LedgerRecordMessage(long txId, long epochSecond, String sender, String recipient, long amount) {
+        super(MessageType.SYNC_LED_RECORD);
+        this.txId = txId;
+        this.epochSecond = epochSecond;
+        this.sender = sender;
+        this.recipient = recipient;
+        this.amount = amount;
+    }
+
+    public long getTxId() { return txId; }
+
+    public long getEpochSecond() { return epochSecond; }
+
+    public String getSender() { return sender; }
+
+    public String getRecipient() { return recipient; }
+
+    public long getAmount() { return amount; }
+}
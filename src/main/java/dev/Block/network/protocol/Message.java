@@ -0,0 +1,17 @@
+package dev.Block.network.protocol;
+
+/**
+ * Базовый класс типизированного сообщения протокола.
+ * Конкретные сообщения неизменяемы и могут безопасно разделяться между потоками
+ * (например, одно сообщение рассылается всем соседям).
+ */
+public abstract class Message {
+
+    private final MessageType type;
+
+    protected Message(MessageType type) {
+        this.type = type;
+    }
+
+    public MessageType getType() { return type; }
+}
@@ -0,0 +1,49 @@
+package dev.Block.network.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодек, переводящий типизированные сообщения в байты соединения и обратно.
+ * Экземпляр принадлежит одному соединению: чтение выполняется одним потоком,
+ * запись должна быть сериализована вызывающей стороной.
+ * <p>
+ * Потоковые методы используются блокирующим транспортом, методы над ByteBuffer - неблокирующим (NIO).
+ */
+public interface MessageCodec {
+
+    /** Результат frameLength(), если в буфере еще нет полного заголовка кадра. */
+    int INCOMPLETE_HEADER = -1;
+
+    /**
+     * Читает следующее сообщение из потока.
+     * @return сообщение или null, если кадр получен, но не распознан (кадр при этом пропускается).
+     */
+    Message read(DataInputStream in) throws IOException;
+
+    /** Записывает сообщение в поток. flush() остается за вызывающей стороной. */
+    void write(Message message, DataOutputStream out) throws IOException;
+
+    /**
+     * Возвращает полный размер следующего кадра (заголовок + данные), не сдвигая позицию буфера,
+     * или INCOMPLETE_HEADER, если заголовок еще не получен целиком.
+     */
+    int frameLength(ByteBuffer in) throws IOException;
+
+    /**
+     * Декодирует один кадр, полностью находящийся в буфере (см. frameLength), сдвигая позицию за него.
+     * @return сообщение или null, если тип кадра не распознан.
+     */
+    Message decodeFrame(ByteBuffer in) throws IOException;
+
+    /**
+     * Записывает кадр в буфер.
+     * @throws java.nio.BufferOverflowException если кадр не помещается; позиция буфера при этом не определена.
+     */
+    void encode(Message message, ByteBuffer out);
+
+    /** Короткое имя формата для логов. */
+    String getName();
+}
@@ -0,0 +1,77 @@
+package dev.Block.network.protocol;
+
+/**
+ * Типы сообщений P2P протокола.
+ * Каждый тип имеет однобайтовый код для бинарного формата
+ * и строковый префикс для устаревшего текстового формата.
+ */
+public enum MessageType {
+    CHAT((byte) 1, "CHAT:"),
+    TXN((byte) 2, "TXN:"),
+    REQ_SYNC((byte) 3, "REQ_SYNC:"),
+    SYNC_BAL_START((byte) 4, "SYNC_BAL_START:"),
+    SYNC_BAL_ENTRY((byte) 5, "SYNC_BAL:"),
+    SYNC_BAL_END((byte) 6, "SYNC_BAL_END:"),
+    SYNC_LED_START((byte) 7, "SYNC_LED_START:"),
+    SYNC_LED_ENTRY((byte) 8, "SYNC_LED:"),
+    SYNC_LED_END((byte) 9, "SYNC_LED_END:"),
+    PEER_JOINED((byte) 10, "PEER_JOINED:"),
+    /** Только бинарный протокол: у старых узлов нет блоков. */
+    BLOCK((byte) 11, "BLOCK:"),
+    /** Только бинарный протокол: запись реестра с txId (старым узлам отправляется SYNC_LED_ENTRY). */
+    SYNC_LED_RECORD((byte) 12, "SYNC_LED_RECORD:"),
+    /** Только бинарный протокол: начало и конец передачи недостающих записей реестра. */
+    SYNC_DELTA_START((byte) 13, "SYNC_DELTA_START:"),
+    SYNC_DELTA_END((byte) 14, "SYNC_DELTA_END:"),
+    /** Только бинарный протокол: снимок состояния сжатыми частями. */
+    SYNC_SNAPSHOT_START((byte) 15, "SYNC_SNAPSHOT_START:"),
+    SYNC_SNAPSHOT_CHUNK((byte) 16, "SYNC_SNAPSHOT_CHUNK:"),
+    SYNC_SNAPSHOT_END((byte) 17, "SYNC_SNAPSHOT_END:"),
+    /** Только бинарный протокол: сравнение состояний по деревьям Меркла (StateCommitment). */
+    STATE_ROOT((byte) 18, "STATE_ROOT:"),
+    STATE_NODES_REQ((byte) 19, "STATE_NODES_REQ:"),
+    STATE_NODES((byte) 20, "STATE_NODES:"),
+    STATE_BUCKETS_REQ((byte) 21, "STATE_BUCKETS_REQ:"),
+    STATE_BUCKETS((byte) 22, "STATE_BUCKETS:"),
+    /** Только бинарный протокол: объявление id транзакций и запрос их тел (см. Gossip). */
+    INV((byte) 23, "INV:"),
+    GETDATA((byte) 24, "GETDATA:"),
+    /** Только бинарный протокол: адреса для подключения (см. ConnectionManager). */
+    ADDR((byte) 25, "ADDR:"),
+    /** Только бинарный протокол: заголовок блока и id его транзакций (тела - по GETDATA, см. CompactBlocks). */
+    BLOCK_ANNOUNCE((byte) 26, "BLOCK_ANNOUNCE:");
+
+    private static final MessageType[] BY_CODE = new MessageType[256];
+    static {
+        for (MessageType type : values()) BY_CODE[type.code & 0xFF] = type;
+    }
+
+    private final byte code;
+    private final String textPrefix;
+
+    MessageType(byte code, String textPrefix) {
+        this.code = code;
+        this.textPrefix = textPrefix;
+    }
+
+    public byte getCode() { return code; }
+
+    public String getTextPrefix() { return textPrefix; }
+
+    /**
+     * Можно ли отбросить сообщение, если очередь отправки пира переполнена: потерянное восстановится само
+     * (транзакции - через INV/GETDATA и синхронизацию, адреса - следующим обменом). Остальные
+     * (PEER_JOINED, блоки, синхронизация) не отбрасываются - соединение с таким пиром закрывается.
+     */
+    public boolean isDroppable() {
+        switch (this) {
+            case TXN: case INV: case GETDATA: case ADDR: return true;
+            default: return false;
+        }
+    }
+
+    /** Возвращает тип по коду из бинарного кадра или null, если код неизвестен. */
+    public static MessageType fromCode(int code) {
+        return BY_CODE[code & 0xFF];
+    }
+}
@@ -0,0 +1,31 @@
+package dev.Block.network.protocol;
+
+/**
+ * Новый узел сети. Бинарный узел отправляет соседу такое сообщение о себе первым после рукопожатия:
+ * publicKey закрепляется за его счетом при создании (см. AccountKeys). Старым текстовым узлам
+ * ключ не передается (null).
+ */
+public final class PeerJoinedMessage extends Message {
+
+    private final String nickname;
+    private final int initialBalance;
+    private final byte[] publicKey;
+
+    public PeerJoinedMessage(String nickname, int initialBalance) {
+        this(nickname, initialBalance, null);
+    }
+
+    public PeerJoinedMessage(String nickname, int initialBalance, byte[] publicKey) {
+        super(MessageType.PEER_JOINED);
+        this.nickname = nickname;
+        this.initialBalance = initialBalance;
+        this.publicKey = publicKey;
+    }
+
+    public String getNickname() { return nickname; }
+
+    public int getInitialBalance() { return initialBalance; }
+
+    /** Открытый ключ счета или null. */
+    public byte[] getPublicKey() { return publicKey; }
+}
@@ -0,0 +1,37 @@
+package dev.Block.network.protocol;
+
+/**
+ * Часть снимка: count записей одного вида (балансы или реестр), начиная с позиции first,
+ * сжатые deflate независимо от других частей. rawLength - размер после распаковки.
+ * Формат несжатых записей см. в SnapshotTransfer.
+ */
+public final class SnapshotChunkMessage extends Message {
+
+    public static final byte KIND_BALANCES = 0;
+    public static final byte KIND_LEDGER = 1;
+
+    private final byte kind;
+    private final int first;
+    private final int count;
+    private final int rawLength;
+    private final byte[] compressed;
+
+    public SnapshotChunkMessage(byte kind, int first, int count, int rawLength, byte[] compressed) {
+        super(MessageType.SYNC_SNAPSHOT_CHUNK);
+        this.kind = kind;
+        this.first = first;
+        this.count = count;
+        this.rawLength = rawLength;
+        this.compressed = compressed;
+    }
+
+    public byte getKind() { return kind; }
+
+    public int getFirst() { return first; }
+
+    public int getCount() { return count; }
+
+    public int getRawLength() { return rawLength; }
+
+    public byte[] getCompressed() { return compressed; }
+}
@@ -0,0 +1,29 @@
+package dev.Block.network.protocol;
+
+/**
+ * Начало передачи снимка состояния по частям (только бинарный протокол).
+ * Снимок однозначно задан высотой реестра и корнем дерева его записей (StateCommitment.ledgerRoot):
+ * по ним отвечающий может проверить, что его реестр все еще начинается с того же снимка,
+ * и продолжить передачу с записи resumeFrom после обрыва.
+ */
+public final class SnapshotStartMessage extends Message {
+
+    private final int height;
+    private final byte[] ledgerRoot;
+    private final int resumeFrom;
+
+    public SnapshotStartMessage(int height, byte[] ledgerRoot, int resumeFrom) {
+        super(MessageType.SYNC_SNAPSHOT_START);
+        this.height = height;
+        this.ledgerRoot = ledgerRoot;
+        this.resumeFrom = resumeFrom;
+    }
+
+    /** Число записей реестра в снимке. */
+    public int getHeight() { return height; }
+
+    public byte[] getLedgerRoot() { return ledgerRoot; }
+
+    /** Позиция первой передаваемой записи реестра (0 - передача с начала). */
+    public int getResumeFrom() { return resumeFrom; }
+}
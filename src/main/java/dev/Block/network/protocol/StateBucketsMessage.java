@@ -0,0 +1,29 @@
+package dev.Block.network.protocol;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ответ на STATE_BUCKETS_REQ (только бинарный протокол): содержимое запрошенных корзин дерева tree.
+ * Для дерева счетов - имена и балансы, для реестра - записи в порядке реестра отправителя,
+ * чтобы получатель мог применить их с обычными проверками.
+ */
+public final class StateBucketsMessage extends Message {
+
+    private final byte tree;
+    private final Map<String, Long> accounts;
+    private final List<LedgerRecordMessage> records;
+
+    public StateBucketsMessage(byte tree, Map<String, Long> accounts, List<LedgerRecordMessage> records) {
+        super(MessageType.STATE_BUCKETS);
+        this.tree = tree;
+        this.accounts = accounts;
+        this.records = records;
+    }
+
+    public byte getTree() { return tree; }
+
+    public Map<String, Long> getAccounts() { return accounts; }
+
+    public List<LedgerRecordMessage> getRecords() { return records; }
+}
@@ -0,0 +1,28 @@
+package dev.Block.network.protocol;
+
+/**
+ * Ответ на STATE_NODES_REQ (только бинарный протокол): хеши hashes[i] узлов indices[i] уровня level дерева tree.
+ */
+public final class StateNodesMessage extends Message {
+
+    private final byte tree;
+    private final int level;
+    private final int[] indices;
+    private final byte[][] hashes;
+
+    public StateNodesMessage(byte tree, int level, int[] indices, byte[][] hashes) {
+        super(MessageType.STATE_NODES);
+        this.tree = tree;
+        this.level = level;
+        this.indices = indices;
+        this.hashes = hashes;
+    }
+
+    public byte getTree() { return tree; }
+
+    public int getLevel() { return level; }
+
+    public int[] getIndices() { return indices; }
+
+    public byte[][] getHashes() { return hashes; }
+}
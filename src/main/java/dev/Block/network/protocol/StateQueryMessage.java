@@ -0,0 +1,35 @@
+package dev.Block.network.protocol;
+
+/**
+ * Запрос части дерева обязательства состояния (только бинарный протокол):
+ * STATE_NODES_REQ - хеши узлов indices на уровне level, STATE_BUCKETS_REQ - содержимое листьев-корзин indices.
+ * tree - код StateCommitment.Tree.
+ */
+public final class StateQueryMessage extends Message {
+
+    private final byte tree;
+    private final int level;
+    private final int[] indices;
+
+    private StateQueryMessage(MessageType type, byte tree, int level, int[] indices) {
+        super(type);
+        this.tree = tree;
+        this.level = level;
+        this.indices = indices;
+    }
+
+    public static StateQueryMessage nodes(byte tree, int level, int[] indices) {
+        return new StateQueryMessage(MessageType.STATE_NODES_REQ, tree, level, indices);
+    }
+
+    public static StateQueryMessage buckets(byte tree, int[] indices) {
+        return new StateQueryMessage(MessageType.STATE_BUCKETS_REQ, tree, 0, indices);
+    }
+
+    public byte getTree() { return tree; }
+
+    /** Уровень узлов (для STATE_BUCKETS_REQ не используется). */
+    public int getLevel() { return level; }
+
+    public int[] getIndices() { return indices; }
+}
@@ -0,0 +1,37 @@
+package dev.Block.network.protocol;
+
+/**
+ * Корни деревьев обязательства состояния (StateCommitment) отправителя (только бинарный протокол).
+ * Получатель сравнивает их со своими и при расхождении спускается в различающиеся поддеревья.
+ * round - номер обмена в одной проверке: после исправления расхождений корни отправляются
+ * обратно с round + 1, чтобы другая сторона проверила себя; число раундов ограничено.
+ */
+public final class StateRootMessage extends Message {
+
+    private final int round;
+    private final byte[] accountsRoot;
+    private final byte[] ledgerRoot;
+    private final int accountCount;
+    private final int ledgerSize;
+
+    public StateRootMessage(int round, byte[] accountsRoot, byte[] ledgerRoot, int accountCount, int ledgerSize) {
+        super(MessageType.STATE_ROOT);
+        this.round = round;
+        this.accountsRoot = accountsRoot;
+        this.ledgerRoot = ledgerRoot;
+        this.accountCount = accountCount;
+        this.ledgerSize = ledgerSize;
+    }
+
+    public int getRound() { return round; }
+
+    public byte[] getAccountsRoot() { return accountsRoot; }
+
+    public byte[] getLedgerRoot() { return ledgerRoot; }
+
+    /** Число счетов отправителя (для журнала). */
+    public int getAccountCount() { return accountCount; }
+
+    /** Число записей реестра отправителя (для журнала). */
+    public int getLedgerSize() { return ledgerSize; }
+}
@@ -0,0 +1,31 @@
+package dev.Block.network.protocol;
+
+/**
+ * Маркеры начала/конца секций синхронизации. Не несут данных,
+ * поэтому используются общие экземпляры.
+ */
+public final class SyncMarkerMessage extends Message {
+
+    public static final SyncMarkerMessage BAL_START = new SyncMarkerMessage(MessageType.SYNC_BAL_START);
+    public static final SyncMarkerMessage BAL_END = new SyncMarkerMessage(MessageType.SYNC_BAL_END);
+    public static final SyncMarkerMessage LED_START = new SyncMarkerMessage(MessageType.SYNC_LED_START);
+    public static final SyncMarkerMessage LED_END = new SyncMarkerMessage(MessageType.SYNC_LED_END);
+    public static final SyncMarkerMessage DELTA_END = new SyncMarkerMessage(MessageType.SYNC_DELTA_END);
+    public static final SyncMarkerMessage SNAPSHOT_END = new SyncMarkerMessage(MessageType.SYNC_SNAPSHOT_END);
+
+    private SyncMarkerMessage(MessageType type) {
+        super(type);
+    }
+
+    public static SyncMarkerMessage of(MessageType type) {
+        switch (type) {
+            case SYNC_BAL_START: return BAL_START;
+            case SYNC_BAL_END: return BAL_END;
+            case SYNC_LED_START: return LED_START;
+            case SYNC_LED_END: return LED_END;
+            case SYNC_DELTA_END: return DELTA_END;
+            case SYNC_SNAPSHOT_END: return SNAPSHOT_END;
+            default: throw new IllegalArgumentException("Not a sync marker: " + type);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package dev.Block.network.protocol;
+
+/**
+ * Запрос синхронизации. Бинарный протокол передает еще и положение реестра запрашивающего:
+ * число записей и корень дерева реестра (StateCommitment, не зависит от порядка записей). По ним отвечающий
+ * решает, достаточно ли отправить недостающие записи (SYNC_DELTA_START) или нужно полное состояние.
+ * Если предыдущая передача снимка оборвалась, запрос содержит ее снимок (resumeHeight, resumeLedgerRoot)
+ * и число уже полученных записей реестра resumeFrom.
+ * Старые узлы присылают только ник - ledgerHeight равен UNKNOWN_HEIGHT.
+ */
+public final class SyncRequestMessage extends Message {
+
+    /** Положение реестра неизвестно - нужно полное состояние. */
+    public static final int UNKNOWN_HEIGHT = -1;
+    /** Корень при UNKNOWN_HEIGHT. */
+    public static final byte[] NO_ROOT = new byte[32];
+
+    private final String requesterNickname;
+    private final int ledgerHeight;
+    private final byte[] ledgerRoot;
+    private final int resumeHeight;
+    private final byte[] resumeLedgerRoot;
+    private final int resumeFrom;
+
+    public SyncRequestMessage(String requesterNickname) {
+        this(requesterNickname, UNKNOWN_HEIGHT, NO_ROOT, UNKNOWN_HEIGHT, NO_ROOT, 0);
+    }
+
+    public SyncRequestMessage(String requesterNickname, int ledgerHeight, byte[] ledgerRoot, int resumeHeight, byte[] resumeLedgerRoot, int resumeFrom) {
+        super(MessageType.REQ_SYNC);
+        this.requesterNickname = requesterNickname;
+        this.ledgerHeight = ledgerHeight;
+        this.ledgerRoot = ledgerRoot;
+        this.resumeHeight = resumeHeight;
+        this.resumeLedgerRoot = resumeLedgerRoot;
+        this.resumeFrom = resumeFrom;
+    }
+
+    public String getRequesterNickname() { return requesterNickname; }
+
+    public int getLedgerHeight() { return ledgerHeight; }
+
+    /** Корень дерева реестра из ledgerHeight записей (NO_ROOT, если высота неизвестна). */
+    public byte[] getLedgerRoot() { return ledgerRoot; }
+
+    /** Высота недополученного снимка или UNKNOWN_HEIGHT, если продолжать нечего. */
+    public int getResumeHeight() { return resumeHeight; }
+
+    public byte[] getResumeLedgerRoot() { return resumeLedgerRoot; }
+
+    public int getResumeFrom() { return resumeFrom; }
+}
@@ -0,0 +1,150 @@
+package dev.Block.network.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Устаревший текстовый формат: каждое сообщение - строка writeUTF с префиксом типа
+ * и полями через ':'. Используется для совместимости со старыми пирами.
+ */
+public final class TextMessageCodec implements MessageCodec {
+
+    @Override
+    public Message read(DataInputStream in) throws IOException {
+        return decode(in.readUTF());
+    }
+
+    @Override
+    public void write(Message message, DataOutputStream out) throws IOException {
+        out.writeUTF(encode(message));
+    }
+
+    @Override
+    public int frameLength(ByteBuffer in) {
+        return utfFrameLength(in);
+    }
+
+    @Override
+    public Message decodeFrame(ByteBuffer in) throws IOException {
+        return decode(readUtf(in));
+    }
+
+    @Override
+    public void encode(Message message, ByteBuffer out) {
+        writeUtf(encode(message), out);
+    }
+
+    @Override
+    public String getName() { return "text"; }
+
+    // --- Кадры writeUTF поверх ByteBuffer (также используются при рукопожатии NIO) ---
+
+    /** Размер кадра writeUTF ([len:2][modified UTF-8]) или INCOMPLETE_HEADER. */
+    public static int utfFrameLength(ByteBuffer in) {
+        if (in.remaining() < 2) return INCOMPLETE_HEADER;
+        return 2 + (in.getShort(in.position()) & 0xFFFF);
+    }
+
+    /** Читает строку в формате DataInputStream.readUTF из полностью полученного кадра. */
+    public static String readUtf(ByteBuffer in) throws IOException {
+        int frameLength = utfFrameLength(in);
+        byte[] frame = new byte[frameLength];
+        in.get(frame);
+        return new DataInputStream(new ByteArrayInputStream(frame)).readUTF();
+    }
+
+    /** Записывает строку в формате DataOutputStream.writeUTF. */
+    public static void writeUtf(String value, ByteBuffer out) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length() + 2);
+        try {
+            new DataOutputStream(bytes).writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Только UTFDataFormatException для строк длиннее 64 KB
+        }
+        out.put(bytes.toByteArray());
+    }
+
+    // --- Текстовое представление сообщений ---
+
+    public static String encode(Message message) {
+        MessageType type = message.getType();
+        switch (type) {
+            case CHAT:
+                return type.getTextPrefix() + ((ChatMessage) message).getText();
+            case TXN: {
+                TransactionMessage txn = (TransactionMessage) message; // Без txId: старые узлы ожидают ровно 4 поля
+                return type.getTextPrefix() + txn.getSender() + ":" + txn.getRecipient() + ":" + txn.getAmount();
+            }
+            case REQ_SYNC:
+                return type.getTextPrefix() + ((SyncRequestMessage) message).getRequesterNickname();
+            case PEER_JOINED: {
+                PeerJoinedMessage joined = (PeerJoinedMessage) message;
+                return type.getTextPrefix() + joined.getNickname() + ":" + joined.getInitialBalance();
+            }
+            case SYNC_BAL_ENTRY: {
+                BalanceEntryMessage entry = (BalanceEntryMessage) message;
+                return type.getTextPrefix() + entry.getNickname() + ":" + entry.getBalance();
+            }
+            case SYNC_LED_ENTRY:
+                // Защита от разделителя
+                return type.getTextPrefix() + ((LedgerEntryMessage) message).getEntry().replace(":", ";");
+            default:
+                return type.getTextPrefix();
+        }
+    }
+
+    /**
+     * Разбирает текстовое сообщение.
+     * @return сообщение или null, если формат не распознан или поля некорректны.
+     */
+    public static Message decode(String raw) {
+        if (raw.startsWith(MessageType.TXN.getTextPrefix())) {
+            String[] parts = raw.split(":");
+            if (parts.length != 4) return null;
+            Integer amount = parseInt(parts[3]);
+            if (amount == null) return null;
+            long txId = TransactionIds.fromContent(parts[1], parts[2], amount, System.currentTimeMillis() / 1000); // Старый формат без id
+            return new TransactionMessage(txId, parts[1], parts[2], amount);
+        } else if (raw.startsWith(MessageType.REQ_SYNC.getTextPrefix())) {
+            return new SyncRequestMessage(raw.substring(MessageType.REQ_SYNC.getTextPrefix().length()));
+        } else if (raw.startsWith(MessageType.PEER_JOINED.getTextPrefix())) {
+            String[] parts = raw.substring(MessageType.PEER_JOINED.getTextPrefix().length()).split(":", 2);
+            if (parts.length != 2) return null;
+            Integer balance = parseInt(parts[1]);
+            return balance == null ? null : new PeerJoinedMessage(parts[0], balance);
+        } else if (raw.startsWith(MessageType.SYNC_BAL_START.getTextPrefix())) {
+            return SyncMarkerMessage.BAL_START;
+        } else if (raw.startsWith(MessageType.SYNC_BAL_ENTRY.getTextPrefix())) {
+            String[] parts = raw.substring(MessageType.SYNC_BAL_ENTRY.getTextPrefix().length()).split(":", 2);
+            if (parts.length != 2) return null;
+            Long balance = parseLong(parts[1]);
+            return balance == null ? null : new BalanceEntryMessage(parts[0], balance);
+        } else if (raw.startsWith(MessageType.SYNC_BAL_END.getTextPrefix())) {
+            return SyncMarkerMessage.BAL_END;
+        } else if (raw.startsWith(MessageType.SYNC_LED_START.getTextPrefix())) {
+            return SyncMarkerMessage.LED_START;
+        } else if (raw.startsWith(MessageType.SYNC_LED_ENTRY.getTextPrefix())) {
+            return new LedgerEntryMessage(raw.substring(MessageType.SYNC_LED_ENTRY.getTextPrefix().length()).replace(";", ":"));
+        } else if (raw.startsWith(MessageType.SYNC_LED_END.getTextPrefix())) {
+            return SyncMarkerMessage.LED_END;
+        } else if (raw.startsWith(MessageType.CHAT.getTextPrefix())) {
+            return new ChatMessage(raw.substring(MessageType.CHAT.getTextPrefix().length()));
+        }
+        return null;
+    }
+
+    private static Integer parseInt(String value) {
+        try { return Integer.parseInt(value); }
+        catch (NumberFormatException e) { return null; }
+    }
+
+    private static Long parseLong(String value) {
+        try { return Long.parseLong(value); }
+        catch (NumberFormatException e) { return null; }
+    }
+}
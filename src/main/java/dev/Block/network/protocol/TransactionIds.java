@@ -0,0 +1,56 @@
+package dev.Block.network.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Уникальные идентификаторы транзакций: 64-битное смешивание хеша узла-отправителя (origin) и его счетчика (nonce).
+ * Счетчик начинается со случайного значения, поэтому перезапуск узла не повторяет прежние идентификаторы.
+ */
+public final class TransactionIds {
+
+    private final long originHash;
+    private final AtomicLong nonce = new AtomicLong(ThreadLocalRandom.current().nextLong());
+
+    public TransactionIds(String origin) {
+        this.originHash = hash64(origin);
+    }
+
+    /** Следующий идентификатор для транзакции этого узла. */
+    public long next() {
+        return of(originHash, nonce.incrementAndGet());
+    }
+
+    /**
+     * Идентификатор для TXN без id (текстовый протокол старых узлов): по содержимому и секунде получения.
+     * Повтор того же перевода в пределах секунды считается дубликатом - как и раньше при сравнении строк реестра.
+     */
+    public static long fromContent(String sender, String recipient, long amount, long epochSecond) {
+        long h = hash64(sender);
+        h = mix64(h ^ hash64(recipient));
+        h = mix64(h ^ amount);
+        return of(h, epochSecond);
+    }
+
+    private static long of(long originHash, long nonce) {
+        return mix64(originHash + mix64(nonce));
+    }
+
+    /** FNV-1a по UTF-8 байтам с финальным перемешиванием. */
+    static long hash64(String value) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        return mix64(h);
+    }
+
+    /** Финализатор SplitMix64. */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
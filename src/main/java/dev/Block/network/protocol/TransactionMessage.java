@@ -0,0 +1,52 @@
+package dev.Block.network.protocol;
+
+/**
+ * Перевод монет от одного участника другому.
+ * txId - уникальный идентификатор (см. TransactionIds), по нему отбрасываются повторы при рассылке.
+ * Бинарный протокол передает подпись отправителя (Ed25519, см. Signatures) и его открытый ключ;
+ * от старых текстовых узлов транзакции приходят неподписанными.
+ */
+public final class TransactionMessage extends Message {
+
+    private final long txId;
+    private final String sender;
+    private final String recipient;
+    private final int amount;
+    private final byte[] publicKey; // null - без подписи
+    private final byte[] signature;
+
+    public TransactionMessage(long txId, String sender, String recipient, int amount) {
+        this(txId, sender, recipient, amount, null, null);
+    }
+
+    public TransactionMessage(long txId, String sender, String recipient, int amount, byte[] publicKey, byte[] signature) {
+        super(MessageType.TXN);
+        this.txId = txId;
+        this.sender = sender;
+        this.recipient = recipient;
+        this.amount = amount;
+        this.publicKey = publicKey;
+        this.signature = signature;
+    }
+
+    public long getTxId() { return txId; }
+
+    public String getSender() { return sender; }
+
+    public String getRecipient() { return recipient; }
+
+    public int getAmount() { return amount; }
+
+    public boolean isSigned() { return publicKey != null && signature != null; }
+
+    /** Открытый ключ подписавшего (32 байта) или null. */
+    public byte[] getPublicKey() { return publicKey; }
+
+    /** Подпись (64 байта) или null. */
+    public byte[] getSignature() { return signature; }
+
+    @Override
+    public String toString() {
+        return sender + " -> " + amount + " -> " + recipient + " [" + Long.toHexString(txId) + "]";
+    }
+}
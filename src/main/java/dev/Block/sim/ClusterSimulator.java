@@ -0,0 +1,271 @@
+package dev.Block.sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.Block.Peer;
+import dev.Block.PeerConfig;
+import dev.Block.network.protocol.TransactionMessage;
+import dev.Block.state.StateCommitment;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Симулятор кластера: N узлов Peer в одном процессе на loopback, соединенных по заданной схеме (Topology),
+ * и генератор нагрузки с заданной частотой переводов.
+ * <ul>
+ *   <li>Счета "u0".."uA-1" создаются на всех узлах с одинаковым балансом до подключения; счет uJ тратит
+ *       только узел J mod N: на всех узлах счет создается с ключом этого узла (см. AccountKeys). Отправитель и получатель каждого перевода
+ *       выбираются по распределению Ципфа (ZipfianGenerator), поэтому "горячие" счета и узлы нагружены сильнее.</li>
+ *   <li>Нагрузка открытая: перевод i отправляется в момент start + i / rate независимо от того, успевает ли
+ *       кластер; при отставании генератор отправляет сразу.</li>
+ *   <li>Задержка распространения - от отправки на узле-источнике до применения на каждом узле
+ *       (Peer.addApplyListener) и до применения на последнем узле.</li>
+ *   <li>Время сходимости - от конца нагрузки до момента, когда все отправленные переводы применены всеми
+ *       узлами (любым путем, в том числе синхронизацией) и у всех узлов одинаковы размер реестра
+ *       и оба корня StateCommitment (счета и реестр).</li>
+ * </ul>
+ * Настройки узлов - как обычно, через -Dpeer.* (например, -Dpeer.transport=NIO). Узлы не ищут новых соседей
+ * (peer.connections.target=0): схема соединений остается заданной.
+ * <p>
+ * Запуск: java -cp build/classes/java/main dev.Block.sim.ClusterSimulator [nodes] [line|ring|star|mesh|random:K] [rate] [seconds] [zipfExponent] [accounts] [driverThreads]
+ */
+public class ClusterSimulator {
+
+    private static final int BASE_PORT = 9600;
+    private static final long ACCOUNT_BALANCE = 1_000_000_000L; // Хватает на любой прогон переводами по 1
+    private static final int MAX_SAMPLES = 4_000_000; // Задержек на узел-применение (32 МБ)
+    private static final long CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final long CONVERGENCE_TIMEOUT_MILLIS = 30_000;
+
+    /** Отправленная транзакция, еще не примененная всеми узлами. */
+    private static final class Pending {
+        final long submittedNanos;
+        final AtomicInteger arrivals = new AtomicInteger();
+
+        Pending(long submittedNanos) {
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    /** Задержки в наносекундах; после заполнения новые значения не сохраняются. */
+    private static final class Samples {
+        private final long[] values;
+        private final AtomicInteger size = new AtomicInteger();
+
+        Samples(int capacity) {
+            values = new long[capacity];
+        }
+
+        void add(long value) {
+            int index = size.getAndIncrement();
+            if (index < values.length) values[index] = value;
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(values, Math.min(size.get(), values.length));
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    private final int nodes;
+    private final Topology topology;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final Samples perNode;
+    private final Samples allNodes;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong completedDuringLoad = new AtomicLong();
+    private volatile long loadEndNanos = Long.MAX_VALUE;
+
+    ClusterSimulator(int nodes, Topology topology, int expectedTransactions) {
+        this.nodes = nodes;
+        this.topology = topology;
+        this.perNode = new Samples((int) Math.min(MAX_SAMPLES, (long) expectedTransactions * nodes));
+        this.allNodes = new Samples(Math.min(MAX_SAMPLES, expectedTransactions));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        Topology topology = Topology.parse(args.length > 1 ? args[1] : "ring", nodes);
+        int rate = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        double exponent = args.length > 4 ? Double.parseDouble(args[4]) : 0.99;
+        int accounts = args.length > 5 ? Integer.parseInt(args[5]) : 1000;
+        int driverThreads = args.length > 6 ? Integer.parseInt(args[6]) : 2;
+        if (System.getProperty("log.level") == null) ConsoleLogger.setLevel(ConsoleLogger.Level.WARN); // Лог узлов - только проблемы
+
+        ClusterSimulator simulator = new ClusterSimulator(nodes, topology, (int) Math.min(Integer.MAX_VALUE, (long) rate * seconds));
+        PeerConfig config = PeerConfig.fromSystemProperties();
+        config.setTargetOutbound(0).setMaxConnections(Math.max(config.getMaxConnections(), topology.getMaxDegree() + 1));
+        if (!simulator.start(config, accounts)) {
+            simulator.shutdown();
+            System.exit(1);
+        }
+        boolean connected = simulator.awaitConnections();
+
+        // --- Нагрузка ---
+        ZipfianGenerator zipf = new ZipfianGenerator(accounts, exponent);
+        long loadStart = System.nanoTime();
+        long loadEnd = loadStart + TimeUnit.SECONDS.toNanos(seconds);
+        simulator.loadEndNanos = loadEnd;
+        List<Thread> drivers = new ArrayList<>();
+        for (int t = 0; t < driverThreads; t++) {
+            int first = t;
+            Thread driver = new Thread(() -> simulator.drive(zipf, rate, first, driverThreads, loadStart, loadEnd), "LoadDriver-" + t);
+            driver.start();
+            drivers.add(driver);
+        }
+        for (Thread driver : drivers) driver.join();
+        long loadFinished = System.nanoTime();
+        long convergenceNanos = simulator.awaitConvergence() - loadFinished;
+
+        simulator.report(connected, convergenceNanos, rate, seconds, exponent, accounts, driverThreads, loadStart, loadFinished);
+        simulator.shutdown();
+        System.exit(0);
+    }
+
+    // --- Кластер ---
+
+    /** Запускает узлы и соединяет их по схеме. @return false, если какой-то узел не открыл свой порт. */
+    private boolean start(PeerConfig config, int accounts) {
+        for (int i = 0; i < nodes; i++) peers.add(new Peer("node" + i, BASE_PORT + i, config));
+        for (int i = 0; i < nodes; i++) {
+            Peer peer = peers.get(i);
+            for (int j = 0; j < accounts; j++) peer.getEngine().addAccount(account(j), ACCOUNT_BALANCE, peers.get(j % nodes).getPublicKey());
+            int node = i;
+            peer.addApplyListener(txId -> onApplied(node, txId));
+            try {
+                peer.startServer();
+            } catch (IOException e) {
+                ConsoleLogger.print("ERROR: node" + i + " could not listen on port " + (BASE_PORT + i) + ": " + e.getMessage() + ". Ports " + BASE_PORT + ".." + (BASE_PORT + nodes - 1) + " must be free.");
+                return false;
+            }
+        }
+        for (Topology.Edge edge : topology.getEdges()) {
+            peers.get(edge.getFrom()).connectToPeer("localhost", BASE_PORT + edge.getTo());
+        }
+        return true;
+    }
+
+    /** Ждет, пока у каждого узла будут все соединения схемы. */
+    private boolean awaitConnections() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            boolean all = true;
+            for (int i = 0; i < nodes && all; i++) all = peers.get(i).getConnectionCount() >= topology.getDegree(i);
+            if (all) return true;
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    private void shutdown() {
+        ConsoleLogger.setLevel(ConsoleLogger.Level.WARN);
+        peers.parallelStream().forEach(Peer::shutdown);
+        ConsoleLogger.flush();
+    }
+
+    private static String account(int index) {
+        return "u" + index;
+    }
+
+    // --- Нагрузка ---
+
+    /** Отправляет переводы first, first + step, ... в их плановые моменты до loadEnd. */
+    private void drive(ZipfianGenerator zipf, int rate, int first, int step, long loadStart, long loadEnd) {
+        double intervalNanos = 1e9 / rate;
+        for (long i = first; ; i += step) {
+            long due = loadStart + (long) (i * intervalNanos);
+            if (due >= loadEnd) return;
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            int sender = zipf.next();
+            int recipient = zipf.next();
+            while (recipient == sender && zipf.size() > 1) recipient = zipf.next();
+            Peer origin = peers.get(sender % nodes);
+            TransactionMessage txn = origin.newTransaction(account(sender), account(recipient), 1);
+            pending.put(txn.getTxId(), new Pending(System.nanoTime()));
+            submitted.incrementAndGet();
+            origin.processTransaction(txn, null);
+        }
+    }
+
+    /** Узел node применил транзакцию (поток применения узла). */
+    private void onApplied(int node, long txId) {
+        Pending entry = pending.get(txId);
+        if (entry == null) return;
+        long now = System.nanoTime();
+        perNode.add(now - entry.submittedNanos);
+        if (entry.arrivals.incrementAndGet() < nodes) return;
+        allNodes.add(now - entry.submittedNanos);
+        pending.remove(txId);
+        completed.incrementAndGet();
+        if (now - loadEndNanos <= 0) completedDuringLoad.incrementAndGet();
+    }
+
+    /**
+     * Ждет, пока все отправленные транзакции применят все узлы и состояние узлов совпадет.
+     * @return момент (System.nanoTime) сходимости или окончания ожидания.
+     */
+    private long awaitConvergence() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONVERGENCE_TIMEOUT_MILLIS;
+        while (!converged() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        return System.nanoTime();
+    }
+
+    private boolean converged() {
+        if (!pending.isEmpty()) return false;
+        Peer first = peers.get(0);
+        int size = first.getEngine().getLedgerSize();
+        byte[] accounts = first.getEngine().getCommitment().root(StateCommitment.Tree.ACCOUNTS);
+        byte[] ledger = first.getEngine().getCommitment().root(StateCommitment.Tree.LEDGER);
+        for (Peer peer : peers) {
+            if (peer.getEngine().getLedgerSize() != size) return false;
+            if (!Arrays.equals(peer.getEngine().getCommitment().root(StateCommitment.Tree.ACCOUNTS), accounts)) return false;
+            if (!Arrays.equals(peer.getEngine().getCommitment().root(StateCommitment.Tree.LEDGER), ledger)) return false;
+        }
+        return true;
+    }
+
+    // --- Отчет ---
+
+    private void report(boolean connected, long convergenceNanos, int rate, int seconds, double exponent, int accounts, int driverThreads, long loadStart, long loadFinished) {
+        ConsoleLogger.flush();
+        long sent = submitted.get();
+        long done = completed.get();
+        double loadSeconds = (loadFinished - loadStart) / 1e9;
+        System.out.println();
+        System.out.println("=== ClusterSimulator (" + nodes + " nodes, " + topology.getName() + ", " + topology.getEdges().size() + " connections, "
+                + peers.get(0).getConfig().getTransport() + " transport) ===");
+        if (!connected) System.out.println("WARN: not all connections were established within " + CONNECT_TIMEOUT_MILLIS / 1000 + " s");
+        System.out.printf("workload: %d tx/s target for %d s, zipf exponent %.2f over %d accounts, %d driver thread(s)%n", rate, seconds, exponent, accounts, driverThreads);
+        System.out.printf("submitted: %d (%.0f tx/s offered), applied on all nodes: %d%s%n", sent, sent / loadSeconds, done,
+                done == sent ? "" : " (" + (sent - done) + " still incomplete after " + CONVERGENCE_TIMEOUT_MILLIS / 1000 + " s)");
+        System.out.printf("throughput: %.0f tx/s applied on all nodes during the load%n", completedDuringLoad.get() / loadSeconds);
+        printLatencies("propagation to each node", perNode.sorted());
+        printLatencies("propagation to all nodes", allNodes.sorted());
+        System.out.printf("convergence after load: %s, ledger %d entries%n",
+                converged() ? String.format("%.1f ms", convergenceNanos / 1e6) : "NOT CONVERGED after " + CONVERGENCE_TIMEOUT_MILLIS / 1000 + " s", peers.get(0).getEngine().getLedgerSize());
+    }
+
+    private static void printLatencies(String title, long[] sorted) {
+        System.out.printf("%s: %d samples, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n", title, sorted.length,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 0.999), percentile(sorted, 1.0));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return Double.NaN;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
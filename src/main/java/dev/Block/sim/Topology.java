@@ -0,0 +1,112 @@
+package dev.Block.sim;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Схема соединений кластера: список ребер "узел from подключается к узлу to".
+ * <ul>
+ *   <li>line - цепочка 0-1-2-...;</li>
+ *   <li>ring - цепочка, замкнутая в кольцо;</li>
+ *   <li>star - все подключены к узлу 0;</li>
+ *   <li>mesh - каждый с каждым;</li>
+ *   <li>random:K - кольцо (граф связен) плюс случайные ребра до средней степени K; seed фиксирован,
+ *       поэтому запуски с одними параметрами строят один граф.</li>
+ * </ul>
+ */
+public final class Topology {
+
+    /** Ребро: from подключается к to. */
+    public static final class Edge {
+        private final int from;
+        private final int to;
+
+        Edge(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public int getFrom() { return from; }
+
+        public int getTo() { return to; }
+    }
+
+    private final String name;
+    private final List<Edge> edges;
+    private final int[] degrees;
+
+    private Topology(String name, int nodes, List<Edge> edges) {
+        this.name = name;
+        this.edges = List.copyOf(edges);
+        this.degrees = new int[nodes];
+        for (Edge edge : edges) {
+            degrees[edge.from]++;
+            degrees[edge.to]++;
+        }
+    }
+
+    /** Схема по имени (line, ring, star, mesh, random:K) для nodes узлов. */
+    public static Topology parse(String spec, int nodes) {
+        String kind = spec.trim().toLowerCase();
+        List<Edge> edges = new ArrayList<>();
+        switch (kind.contains(":") ? kind.substring(0, kind.indexOf(':')) : kind) {
+            case "line":
+                for (int i = 1; i < nodes; i++) edges.add(new Edge(i, i - 1));
+                break;
+            case "ring":
+                for (int i = 1; i < nodes; i++) edges.add(new Edge(i, i - 1));
+                if (nodes > 2) edges.add(new Edge(0, nodes - 1));
+                break;
+            case "star":
+                for (int i = 1; i < nodes; i++) edges.add(new Edge(i, 0));
+                break;
+            case "mesh":
+                for (int i = 1; i < nodes; i++) for (int j = 0; j < i; j++) edges.add(new Edge(i, j));
+                break;
+            case "random": {
+                int degree = kind.contains(":") ? Integer.parseInt(kind.substring(kind.indexOf(':') + 1)) : 3;
+                return random(nodes, degree, 42);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown topology '" + spec + "', expected line, ring, star, mesh or random:K");
+        }
+        return new Topology(kind, nodes, edges);
+    }
+
+    private static Topology random(int nodes, int degree, long seed) {
+        Random random = new Random(seed);
+        List<Edge> edges = new ArrayList<>();
+        Set<Long> present = new HashSet<>();
+        for (int i = 0; i < nodes && nodes > 1; i++) {
+            int next = (i + 1) % nodes;
+            if (present.add(pair(i, next))) edges.add(new Edge(next, i));
+        }
+        long target = Math.min((long) nodes * (nodes - 1) / 2, (long) nodes * degree / 2);
+        while (edges.size() < target) {
+            int a = random.nextInt(nodes), b = random.nextInt(nodes);
+            if (a != b && present.add(pair(a, b))) edges.add(new Edge(a, b));
+        }
+        return new Topology("random:" + degree, nodes, edges);
+    }
+
+    private static long pair(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    public String getName() { return name; }
+
+    public List<Edge> getEdges() { return edges; }
+
+    /** Число соединений узла после установки всех ребер. */
+    public int getDegree(int node) { return degrees[node]; }
+
+    /** Наибольшая степень узла (для peer.connections.max). */
+    public int getMaxDegree() {
+        int max = 0;
+        for (int degree : degrees) max = Math.max(max, degree);
+        return max;
+    }
+}
@@ -0,0 +1,37 @@
+package dev.Block.sim;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Случайные номера 0..n-1 с распределением Ципфа: P(k) пропорциональна 1 / (k + 1)^exponent.
+ * Номер 0 - самый частый. exponent 0 - равномерное распределение, около 1 - типичная "горячая" нагрузка.
+ * Накопленные вероятности считаются один раз (O(n) памяти), выборка - двоичный поиск, без блокировок.
+ */
+public final class ZipfianGenerator {
+
+    private final double[] cumulative;
+
+    public ZipfianGenerator(int n, double exponent) {
+        if (n <= 0) throw new IllegalArgumentException("n must be positive: " + n);
+        if (exponent < 0) throw new IllegalArgumentException("exponent must not be negative: " + exponent);
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) cumulative[k] /= sum;
+        cumulative[n - 1] = 1.0;
+    }
+
+    public int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int index = Arrays.binarySearch(cumulative, u);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+}
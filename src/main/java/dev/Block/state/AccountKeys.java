@@ -0,0 +1,73 @@
+package dev.Block.state;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Открытые ключи счетов. Ключ закрепляется при создании счета: узел объявляет свой ключ первым
+ * сообщением PEER_JOINED после рукопожатия, соседи создают счет сразу с ключом и передают его дальше,
+ * а при синхронизации ключи идут вместе с балансами. Первая подписанная трата ключ не закрепляет.
+ * <p>
+ * Ключи - часть состояния TransactionEngine: закрепление пишется в журнал, ключи входят в снимки
+ * и заменяются вместе с балансами. Счет с ключом принимает только транзакции, подписанные этим ключом;
+ * счет без ключа (старый текстовый узел) - любые, если подписи не обязательны (peer.tx.require.signatures).
+ */
+public final class AccountKeys {
+
+    /** Итог проверки владельца транзакции. */
+    public enum Check {
+        ACCEPTED,
+        /** Подпись обязательна: у счета есть ключ или неподписанные транзакции запрещены. */
+        UNSIGNED,
+        /** Подписано не ключом счета. */
+        KEY_MISMATCH,
+        /** Подписи обязательны, а ключ счета неизвестен. */
+        NO_KEY
+    }
+
+    private final Map<String, byte[]> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Проверяет, может ли транзакция с этим ключом (null - без подписи) тратить средства счета.
+     * Подпись уже должна быть проверена (Signatures.verify).
+     */
+    public Check check(String account, byte[] publicKey, boolean requireSignature) {
+        byte[] known = keys.get(account);
+        if (known == null) {
+            if (!requireSignature) return Check.ACCEPTED;
+            return publicKey == null ? Check.UNSIGNED : Check.NO_KEY;
+        }
+        if (publicKey == null) return Check.UNSIGNED;
+        return Arrays.equals(known, publicKey) ? Check.ACCEPTED : Check.KEY_MISMATCH;
+    }
+
+    /** Закреплен ли счет за этим ключом. Счет без ключа не считается своим. */
+    public boolean canSign(String account, byte[] publicKey) {
+        byte[] known = keys.get(account);
+        return known != null && Arrays.equals(known, publicKey);
+    }
+
+    /** Закрепляет ключ за счетом без ключа. @return true, если закреплен этим вызовом. */
+    boolean bind(String account, byte[] publicKey) {
+        return keys.putIfAbsent(account, publicKey.clone()) == null;
+    }
+
+    /** Ключ счета или null. */
+    public byte[] get(String account) {
+        byte[] known = keys.get(account);
+        return known != null ? known.clone() : null;
+    }
+
+    /** Копия всех ключей. */
+    public Map<String, byte[]> toMap() {
+        Map<String, byte[]> copy = new LinkedHashMap<>(Math.max(16, keys.size() * 2));
+        keys.forEach((account, key) -> copy.put(account, key.clone()));
+        return copy;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+}
@@ -0,0 +1,87 @@
+package dev.Block.state;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Хранилище счетов: никнейм интернируется в плотный int-идентификатор один раз
+ * (при подключении или узнавании о пире), балансы лежат в массивах long по идентификатору.
+ * Путь применения перевода работает только с идентификаторами и не создает объектов
+ * (нет упаковки Integer, как в Map&lt;String, Integer&gt;), а long исключает переполнение int.
+ * <p>
+ * Чтение баланса не блокирует; согласованность пар "списание/зачисление" обеспечивает
+ * вызывающая сторона (TransactionEngine) блокировками по счетам.
+ */
+public class AccountStore {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // Счетов в одном блоке
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Блоки не перемещаются при росте - копируется только массив ссылок на них
+    private volatile AtomicLongArray[] balanceChunks = new AtomicLongArray[0];
+    private volatile String[][] nameChunks = new String[0][];
+    private volatile int size;
+
+    /** Идентификатор счета или -1, если счет неизвестен. */
+    public int idOf(String nickname) {
+        Integer id = ids.get(nickname);
+        return id != null ? id : -1;
+    }
+
+    /** Добавляет счет, если его еще нет. @return true, если счет был добавлен. */
+    public boolean addIfAbsent(String nickname, long initialBalance) {
+        if (ids.containsKey(nickname)) return false;
+        synchronized (this) {
+            if (ids.containsKey(nickname)) return false;
+            int id = size;
+            ensureCapacity(id + 1);
+            balanceChunks[id >>> CHUNK_BITS].set(id & CHUNK_MASK, initialBalance);
+            nameChunks[id >>> CHUNK_BITS][id & CHUNK_MASK] = nickname;
+            size = id + 1;
+            ids.put(nickname, id); // Публикуем последним: по id уже можно читать баланс и имя
+            return true;
+        }
+    }
+
+    public long getBalance(int id) {
+        return balanceChunks[id >>> CHUNK_BITS].get(id & CHUNK_MASK);
+    }
+
+    public void setBalance(int id, long balance) {
+        balanceChunks[id >>> CHUNK_BITS].set(id & CHUNK_MASK, balance);
+    }
+
+    public String nameOf(int id) {
+        return nameChunks[id >>> CHUNK_BITS][id & CHUNK_MASK];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Копия балансов в порядке идентификаторов. */
+    public Map<String, Long> toMap() {
+        int count = size;
+        Map<String, Long> result = new LinkedHashMap<>(count * 2);
+        for (int id = 0; id < count; id++) result.put(nameOf(id), getBalance(id));
+        return result;
+    }
+
+    private void ensureCapacity(int required) {
+        int chunksNeeded = (required + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        if (chunksNeeded <= balanceChunks.length) return;
+        AtomicLongArray[] balances = Arrays.copyOf(balanceChunks, chunksNeeded);
+        String[][] names = Arrays.copyOf(nameChunks, chunksNeeded);
+        for (int i = balanceChunks.length; i < chunksNeeded; i++) {
+            balances[i] = new AtomicLongArray(CHUNK_SIZE);
+            names[i] = new String[CHUNK_SIZE];
+        }
+        nameChunks = names;
+        balanceChunks = balances;
+    }
+}
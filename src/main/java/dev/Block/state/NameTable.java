@@ -0,0 +1,101 @@
+package dev.Block.state;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Интернирование строк (никнеймов) в плотные int-идентификаторы для компактных записей реестра.
+ * Добавление синхронизировано, чтение по идентификатору и поиск - без блокировок.
+ * Для реестра на диске имена дописываются в файл ([len:2][UTF-8]) и загружаются при открытии:
+ * их число пропорционально числу счетов, а не длине истории.
+ */
+final class NameTable {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile int size;
+    private final FileChannel file; // null - только в памяти
+
+    NameTable() {
+        this.file = null;
+    }
+
+    private NameTable(FileChannel file) {
+        this.file = file;
+    }
+
+    /** Открывает (или создает) файл имен и загружает записанные имена. */
+    static NameTable open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        NameTable table = new NameTable(channel);
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        long valid = 0;
+        while (data.remaining() >= 2) {
+            int length = data.getShort() & 0xFFFF;
+            if (length > data.remaining()) break; // Оборванная запись после сбоя
+            table.add(new String(data.array(), data.position(), length, StandardCharsets.UTF_8));
+            data.position(data.position() + length);
+            valid = data.position();
+        }
+        channel.truncate(valid);
+        channel.position(valid);
+        return table;
+    }
+
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) return id;
+            if (file != null) append(name);
+            return add(name);
+        }
+    }
+
+    String nameOf(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Сбрасывает дописанные имена на диск. */
+    void force() throws IOException {
+        if (file != null) file.force(false);
+    }
+
+    void close() throws IOException {
+        if (file != null) file.close();
+    }
+
+    private int add(String name) {
+        int newId = size;
+        if (newId == names.length) names = Arrays.copyOf(names, newId * 2);
+        names[newId] = name;
+        size = newId + 1;
+        ids.put(name, newId);
+        return newId;
+    }
+
+    private void append(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 + bytes.length);
+        record.putShort((short) bytes.length).put(bytes).flip();
+        try {
+            while (record.hasRemaining()) file.write(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package dev.Block.state;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import dev.Block.chain.Sha256;
+
+/**
+ * Хеш-обязательства состояния: два дерева Меркла (счета и записи реестра) для быстрого сравнения
+ * состояний узлов. Совпадение корней - состояния совпадают; при расхождении узлы спускаются
+ * только в различающиеся поддеревья (см. StateVerifier), и объем обмена пропорционален различию.
+ * <pre>
+ * уровень 0        корень
+ * уровень 1..9     SHA-256(левый || правый)
+ * уровень 10       BUCKETS листьев: SHA-256 от 256-битного XOR-аккумулятора корзины
+ * </pre>
+ * Счет попадает в корзину по хешу имени, запись реестра - по txId (TransactionLedger.bucketOf),
+ * поэтому содержимое корзины реестра читается из индекса без полного просмотра.
+ * Вклад элемента (имя и баланс; txId, отправитель, получатель и сумма записи) - 256 бит из 64-битного
+ * смешивания. Время записи в вклад не входит: каждый узел ставит его сам при применении, и у честных
+ * узлов оно расходится на секунду-другую. XOR делает лист
+ * независимым от порядка и позволяет изменить его за O(1) без блокировок: старый вклад снимается, новый добавляется.
+ * Это обнаружение расхождений между честными узлами, а не криптографическая защита от подделки.
+ * <p>
+ * Изменение помечает лист "грязным"; внутренние узлы пересчитываются лениво при чтении (refresh):
+ * LEVELS хешей на каждый измененный лист, то есть O(log n) на перевод, но не на пути применения.
+ */
+public final class StateCommitment {
+
+    /** Дерево обязательства; код передается в сообщениях. */
+    public enum Tree {
+        ACCOUNTS((byte) 0),
+        LEDGER((byte) 1);
+
+        private final byte code;
+
+        Tree(byte code) { this.code = code; }
+
+        public byte getCode() { return code; }
+
+        /** Дерево по коду или null. */
+        public static Tree fromCode(int code) {
+            return code == 0 ? ACCOUNTS : code == 1 ? LEDGER : null;
+        }
+    }
+
+    public static final int BUCKET_BITS = 10;
+    public static final int BUCKETS = 1 << BUCKET_BITS;
+    /** Уровень листьев (корень - уровень 0). */
+    public static final int LEVELS = BUCKET_BITS;
+
+    private static final int LANES = 4; // 4 x 64 = 256 бит вклада
+    private static final long LANE_STEP = 0x9E3779B97F4A7C15L;
+
+    private final MerkleTree accounts = new MerkleTree();
+    private final MerkleTree ledger = new MerkleTree();
+
+    /** Обязательство по текущему содержимому хранилища счетов и первых ledgerSize записей реестра. O(n). */
+    static StateCommitment build(AccountStore store, TransactionLedger ledgerSource, int ledgerSize) {
+        StateCommitment commitment = new StateCommitment();
+        int count = store.size();
+        for (int id = 0; id < count; id++) commitment.accountAdded(store.nameOf(id), store.getBalance(id));
+        for (int i = 0; i < ledgerSize; i++) {
+            commitment.recordAdded(ledgerSource.getTxId(i), ledgerSource.getSender(i), ledgerSource.getRecipient(i), ledgerSource.getAmount(i));
+        }
+        return commitment;
+    }
+
+    /**
+     * Корень дерева реестра по первым size записям ledger - то же, что root(LEDGER) узла, у которого реестр
+     * состоит ровно из этих записей (в любом порядке). Позволяет сравнить префикс своего реестра с реестром соседа. O(size).
+     */
+    public static byte[] ledgerRoot(TransactionLedger ledger, int size) {
+        MerkleTree tree = new MerkleTree();
+        for (int i = 0; i < size; i++) {
+            long txId = ledger.getTxId(i);
+            tree.toggle(ledgerBucket(txId), recordSeed(txId, ledger.getSender(i), ledger.getRecipient(i), ledger.getAmount(i)));
+        }
+        return tree.node(1);
+    }
+
+    // --- Изменения (потокобезопасны, без блокировок) ---
+
+    void accountAdded(String nickname, long balance) {
+        accounts.toggle(accountBucket(nickname), accountSeed(nickname, balance));
+    }
+
+    void balanceChanged(String nickname, long oldBalance, long newBalance) {
+        if (oldBalance == newBalance) return;
+        int bucket = accountBucket(nickname);
+        accounts.toggle(bucket, accountSeed(nickname, oldBalance));
+        accounts.toggle(bucket, accountSeed(nickname, newBalance));
+    }
+
+    void recordAdded(long txId, String sender, String recipient, long amount) {
+        ledger.toggle(ledgerBucket(txId), recordSeed(txId, sender, recipient, amount));
+    }
+
+    // --- Чтение ---
+
+    public byte[] root(Tree tree) {
+        return node(tree, 0, 0);
+    }
+
+    /** Хеш узла index (0 .. 2^level - 1) на уровне level (0 .. LEVELS). */
+    public byte[] node(Tree tree, int level, int index) {
+        if (level < 0 || level > LEVELS || index < 0 || index >= 1 << level) throw new IllegalArgumentException("No node " + index + " at level " + level);
+        return treeOf(tree).node((1 << level) + index);
+    }
+
+    public static int accountBucket(String nickname) {
+        return (int) (mix(nameHash(nickname)) >>> (64 - BUCKET_BITS));
+    }
+
+    public static int ledgerBucket(long txId) {
+        return TransactionLedger.bucketOf(txId, BUCKET_BITS);
+    }
+
+    private MerkleTree treeOf(Tree tree) {
+        return tree == Tree.ACCOUNTS ? accounts : ledger;
+    }
+
+    // --- Вклад элемента ---
+
+    private static long accountSeed(String nickname, long balance) {
+        return mix(nameHash(nickname) ^ mix(balance));
+    }
+
+    private static long recordSeed(long txId, String sender, String recipient, long amount) {
+        return mix(txId ^ mix(amount ^ mix(nameHash(sender) ^ mix(nameHash(recipient) + LANE_STEP))));
+    }
+
+    /** FNV-1a по символам: не зависит от реализации String.hashCode и разрядности int. */
+    private static long nameHash(String value) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /** Финализатор MurmurHash3 (fmix64). */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Одно дерево: XOR-аккумуляторы листьев, биты "грязных" листьев и узлы в куче
+     * (узел n - потомки 2n и 2n + 1, корень - 1, лист b - BUCKETS + b).
+     */
+    private static final class MerkleTree {
+
+        private final AtomicLongArray leaves = new AtomicLongArray(BUCKETS * LANES);
+        private final AtomicLongArray dirty = new AtomicLongArray(BUCKETS / 64);
+        private final byte[][] nodes = new byte[2 * BUCKETS][];
+        private final boolean[] stale = new boolean[BUCKETS];
+
+        MerkleTree() {
+            for (int b = 0; b < BUCKETS; b++) markDirty(b);
+        }
+
+        void toggle(int bucket, long seed) {
+            for (int lane = 0; lane < LANES; lane++) {
+                long value = mix(seed + lane * LANE_STEP);
+                leaves.getAndAccumulate(bucket * LANES + lane, value, (a, b) -> a ^ b);
+            }
+            markDirty(bucket); // После изменения аккумулятора: refresh снимает бит до чтения листа
+        }
+
+        private void markDirty(int bucket) {
+            long bit = 1L << (bucket & 63);
+            if ((dirty.get(bucket >>> 6) & bit) == 0) dirty.getAndAccumulate(bucket >>> 6, bit, (a, b) -> a | b);
+        }
+
+        synchronized byte[] node(int heapIndex) {
+            refresh();
+            return nodes[heapIndex].clone();
+        }
+
+        /** Пересчитывает измененные листья и их предков. */
+        private void refresh() {
+            boolean changed = false;
+            ByteBuffer leaf = ByteBuffer.allocate(LANES * 8);
+            for (int word = 0; word < dirty.length(); word++) {
+                long bits = dirty.getAndSet(word, 0);
+                while (bits != 0) {
+                    int bucket = word * 64 + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    leaf.clear();
+                    for (int lane = 0; lane < LANES; lane++) leaf.putLong(leaves.get(bucket * LANES + lane));
+                    nodes[BUCKETS + bucket] = Sha256.hash(leaf.array());
+                    for (int parent = (BUCKETS + bucket) >>> 1; parent >= 1 && !stale[parent]; parent >>>= 1) stale[parent] = true;
+                    changed = true;
+                }
+            }
+            if (!changed) return;
+            for (int n = BUCKETS - 1; n >= 1; n--) {
+                if (!stale[n]) continue;
+                nodes[n] = Sha256.hash(nodes[2 * n], nodes[2 * n + 1]);
+                stale[n] = false;
+            }
+        }
+    }
+}
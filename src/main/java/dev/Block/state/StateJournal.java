@@ -0,0 +1,26 @@
+package dev.Block.state;
+
+/**
+ * Приемник изменений состояния для журнала (write-ahead log).
+ * Методы log* вызываются TransactionEngine под его блокировками сразу после изменения,
+ * поэтому должны только поставить запись в очередь, не дожидаясь записи на диск.
+ */
+public interface StateJournal {
+
+    /** Журнал отключен. */
+    StateJournal NONE = new StateJournal() {
+        @Override public void logTransfer(long txId, long epochSecond, String sender, String recipient, long amount) {}
+        @Override public void logAccount(String nickname, long balance) {}
+        @Override public void logAccountKey(String nickname, byte[] publicKey) {}
+        @Override public long lastLsn() { return 0; }
+    };
+
+    void logTransfer(long txId, long epochSecond, String sender, String recipient, long amount);
+
+    void logAccount(String nickname, long balance);
+
+    void logAccountKey(String nickname, byte[] publicKey);
+
+    /** Номер (LSN) последней поставленной в журнал записи. */
+    long lastLsn();
+}
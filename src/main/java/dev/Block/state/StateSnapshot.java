@@ -0,0 +1,36 @@
+package dev.Block.state;
+
+import java.util.Map;
+
+/**
+ * Согласованный срез состояния: балансы, ключи счетов и первые ledgerSize записей реестра
+ * ровно на момент записи журнала с номером lsn.
+ */
+public final class StateSnapshot {
+
+    private final long lsn;
+    private final Map<String, Long> balances;
+    private final Map<String, byte[]> keys;
+    private final TransactionLedger ledger;
+    private final int ledgerSize;
+
+    public StateSnapshot(long lsn, Map<String, Long> balances, Map<String, byte[]> keys, TransactionLedger ledger, int ledgerSize) {
+        this.lsn = lsn;
+        this.balances = balances;
+        this.keys = keys;
+        this.ledger = ledger;
+        this.ledgerSize = ledgerSize;
+    }
+
+    public long getLsn() { return lsn; }
+
+    public Map<String, Long> getBalances() { return balances; }
+
+    /** Открытые ключи счетов (см. AccountKeys). */
+    public Map<String, byte[]> getKeys() { return keys; }
+
+    /** Реестр; читать только записи с индексом меньше getLedgerSize(). */
+    public TransactionLedger getLedger() { return ledger; }
+
+    public int getLedgerSize() { return ledgerSize; }
+}
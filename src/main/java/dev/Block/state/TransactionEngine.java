@@ -0,0 +1,347 @@
+package dev.Block.state;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Состояние узла (балансы и реестр) и применение переводов к нему.
+ * <p>
+ * Вместо одного монитора на весь Peer используются полосы блокировок по идентификаторам счетов
+ * (AccountStore): перевод захватывает полосы отправителя и получателя в порядке возрастания номера
+ * (исключает взаимоблокировку), поэтому переводы между разными счетами идут параллельно.
+ * Полная замена состояния при синхронизации берет write-блокировку stateLock,
+ * переводы и добавление счетов - read-блокировку.
+ * Логирование и ретрансляция выполняются вызывающей стороной вне блокировок.
+ * <p>
+ * Открытые ключи счетов (AccountKeys) - тоже часть состояния: ключ закрепляется при создании счета
+ * или позже за счетом без ключа и больше не меняется.
+ * <p>
+ * Каждое изменение (перевод, новый счет, ключ счета) передается в StateJournal под теми же блокировками,
+ * поэтому под write-блокировкой captureSnapshot() получает срез, точно соответствующий
+ * номеру последней записи журнала.
+ * <p>
+ * Под теми же блокировками поддерживается StateCommitment: деревья Меркла по балансам и реестру,
+ * по корням которых узлы сравнивают состояния. При замене состояния оно строится заново.
+ * <p>
+ * Ожидание занятых блокировок (stateLock и полос) можно измерять (setLockWaitListeners): свободная
+ * блокировка берется tryLock без замера времени, поэтому без конкуренции замер ничего не стоит.
+ */
+public class TransactionEngine {
+
+    /** Итог попытки применить перевод. */
+    public enum Result {
+        APPLIED,
+        /** Транзакция с таким id уже есть в реестре. */
+        DUPLICATE,
+        INVALID_AMOUNT,
+        SELF_TRANSFER,
+        UNKNOWN_SENDER,
+        UNKNOWN_RECIPIENT,
+        INSUFFICIENT_FUNDS,
+        BALANCE_OVERFLOW
+    }
+
+    private static final int STRIPES = 256; // Степень двойки
+
+    private volatile AccountStore accounts = new AccountStore(); // Заменяется целиком при синхронизации
+    private volatile TransactionLedger ledger = new TransactionLedger(); // Заменяется вместе с балансами
+    private volatile StateCommitment commitment = new StateCommitment(); // Заменяется вместе с балансами и реестром
+    private volatile AccountKeys keys = new AccountKeys(); // Заменяется вместе с балансами
+    private volatile Supplier<TransactionLedger> ledgerFactory;
+    private volatile StateJournal journal = StateJournal.NONE;
+    private volatile LongConsumer stateLockWait = nanos -> {};
+    private volatile LongConsumer stripeLockWait = nanos -> {};
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public TransactionEngine() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Проверяет и применяет перевод. Потокобезопасен.
+     * Повтор txId проверяется по реестру под блокировкой полосы отправителя: у одной и той же
+     * транзакции один отправитель, поэтому проверка и добавление в реестр атомарны для нее.
+     */
+    public Result apply(long txId, String sender, String recipient, int amount) {
+        return apply(txId, System.currentTimeMillis() / 1000, sender, recipient, amount);
+    }
+
+    /**
+     * Проверяет и применяет перевод, полученный записью реестра другого узла (инкрементальная синхронизация):
+     * те же проверки, что и в apply, но время записи сохраняется.
+     */
+    public Result applyRecord(long txId, long epochSecond, String sender, String recipient, long amount) {
+        return apply(txId, epochSecond, sender, recipient, amount);
+    }
+
+    private Result apply(long txId, long epochSecond, String sender, String recipient, long amount) {
+        if (amount <= 0) return Result.INVALID_AMOUNT;
+        if (sender.equals(recipient)) return Result.SELF_TRANSFER;
+
+        lockStateForUpdate();
+        try {
+            AccountStore store = accounts;
+            StateCommitment currentCommitment = commitment;
+            int senderId = store.idOf(sender);
+            if (senderId < 0) return Result.UNKNOWN_SENDER;
+            int recipientId = store.idOf(recipient);
+
+            int first = senderId & (STRIPES - 1);
+            int second = recipientId < 0 ? first : recipientId & (STRIPES - 1);
+            if (first > second) { int tmp = first; first = second; second = tmp; }
+            lockStripe(first);
+            if (second != first) lockStripe(second);
+            try {
+                TransactionLedger currentLedger = ledger;
+                if (currentLedger.contains(txId)) return Result.DUPLICATE;
+                long senderBalance = store.getBalance(senderId);
+                if (senderBalance < amount) return Result.INSUFFICIENT_FUNDS;
+                if (recipientId < 0) return Result.UNKNOWN_RECIPIENT;
+                long recipientBalance = store.getBalance(recipientId);
+                if (recipientBalance > Long.MAX_VALUE - amount) return Result.BALANCE_OVERFLOW;
+
+                store.setBalance(senderId, senderBalance - amount);
+                store.setBalance(recipientId, recipientBalance + amount);
+                currentLedger.append(txId, epochSecond, sender, recipient, amount);
+                currentCommitment.balanceChanged(sender, senderBalance, senderBalance - amount);
+                currentCommitment.balanceChanged(recipient, recipientBalance, recipientBalance + amount);
+                currentCommitment.recordAdded(txId, sender, recipient, amount);
+                journal.logTransfer(txId, epochSecond, sender, recipient, amount);
+                return Result.APPLIED;
+            } finally {
+                if (second != first) stripes[second].unlock();
+                stripes[first].unlock();
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /** Добавляет счет без ключа, если его еще нет. @return true, если счет был добавлен. */
+    public boolean addAccount(String nickname, long initialBalance) {
+        return addAccount(nickname, initialBalance, null);
+    }
+
+    /**
+     * Добавляет счет, если его еще нет, и закрепляет за ним publicKey (null - без ключа).
+     * Ключ уже существующего счета не меняется. @return true, если счет был добавлен.
+     */
+    public boolean addAccount(String nickname, long initialBalance, byte[] publicKey) {
+        lockStateForUpdate();
+        try {
+            if (!accounts.addIfAbsent(nickname, initialBalance)) return false;
+            commitment.accountAdded(nickname, initialBalance);
+            journal.logAccount(nickname, initialBalance);
+            if (publicKey != null && keys.bind(nickname, publicKey)) journal.logAccountKey(nickname, publicKey);
+            return true;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Закрепляет ключ за известным счетом, у которого ключа еще нет.
+     * @return true, если ключ закреплен этим вызовом; false - счет неизвестен или ключ у него уже есть.
+     */
+    public boolean bindKey(String nickname, byte[] publicKey) {
+        lockStateForUpdate();
+        try {
+            if (accounts.idOf(nickname) < 0 || !keys.bind(nickname, publicKey)) return false;
+            journal.logAccountKey(nickname, publicKey);
+            return true;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Полностью заменяет балансы и реестр полученными при синхронизации.
+     * Свой счет сохраняется: берется из полученных данных или создается с ownDefaultBalance.
+     * Полученные ключи добавляются к своим; уже закрепленный ключ синхронизация не меняет.
+     * receivedLedger становится текущим реестром без копирования: его нужно собирать в реестре из createLedger().
+     */
+    public void replaceState(Map<String, Long> receivedBalances, Map<String, byte[]> receivedKeys, TransactionLedger receivedLedger, String ownNickname, long ownDefaultBalance) {
+        AccountStore replacement = new AccountStore();
+        replacement.addIfAbsent(ownNickname, receivedBalances.getOrDefault(ownNickname, ownDefaultBalance));
+        receivedBalances.forEach(replacement::addIfAbsent);
+        StateCommitment replacementCommitment = StateCommitment.build(replacement, receivedLedger, receivedLedger.size());
+
+        stateLock.writeLock().lock();
+        try {
+            AccountKeys replacementKeys = new AccountKeys();
+            keys.toMap().forEach(replacementKeys::bind); // Под блокировкой: закрепление не теряется
+            receivedKeys.forEach(replacementKeys::bind);
+            accounts = replacement;
+            ledger = receivedLedger;
+            commitment = replacementCommitment;
+            keys = replacementKeys;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // --- Журнал и восстановление ---
+
+    /**
+     * Новый пустой реестр для сборки состояния, получаемого при синхронизации:
+     * из фабрики (например, файлы на диске) или в куче, если фабрика не задана.
+     */
+    public TransactionLedger createLedger() {
+        Supplier<TransactionLedger> factory = ledgerFactory;
+        return factory != null ? factory.get() : new TransactionLedger();
+    }
+
+    /** Фабрика реестров для createLedger; null - реестр в куче. */
+    public void setLedgerFactory(Supplier<TransactionLedger> ledgerFactory) {
+        this.ledgerFactory = ledgerFactory;
+    }
+
+    /** Получатели времени ожидания (нс) занятой stateLock и занятой полосы счета. */
+    public void setLockWaitListeners(LongConsumer stateLockWait, LongConsumer stripeLockWait) {
+        this.stateLockWait = stateLockWait;
+        this.stripeLockWait = stripeLockWait;
+    }
+
+    // read-блокировка stateLock; tryLock не используется, если кто-то ждет (не обгоняем замену состояния)
+    private void lockStateForUpdate() {
+        if (!stateLock.hasQueuedThreads() && stateLock.readLock().tryLock()) return;
+        long start = System.nanoTime();
+        stateLock.readLock().lock();
+        stateLockWait.accept(System.nanoTime() - start);
+    }
+
+    private void lockStripe(int stripe) {
+        if (stripes[stripe].tryLock()) return;
+        long start = System.nanoTime();
+        stripes[stripe].lock();
+        stripeLockWait.accept(System.nanoTime() - start);
+    }
+
+    /** Подключает журнал; изменения до вызова (например, при восстановлении) в него не попадают. */
+    public void setJournal(StateJournal journal) {
+        this.journal = journal;
+    }
+
+    /** Согласованный срез состояния. Кратко останавливает переводы (write-блокировка) на время копирования балансов. */
+    public StateSnapshot captureSnapshot() {
+        stateLock.writeLock().lock();
+        try {
+            TransactionLedger currentLedger = ledger;
+            return new StateSnapshot(journal.lastLsn(), accounts.toMap(), keys.toMap(), currentLedger, currentLedger.size());
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /** Заменяет состояние загруженным снимком (восстановление при запуске). */
+    public void restore(Map<String, Long> balances, Map<String, byte[]> restoredKeys, TransactionLedger restoredLedger) {
+        AccountStore replacement = new AccountStore();
+        balances.forEach(replacement::addIfAbsent);
+        AccountKeys replacementKeys = new AccountKeys();
+        restoredKeys.forEach(replacementKeys::bind);
+        StateCommitment replacementCommitment = StateCommitment.build(replacement, restoredLedger, restoredLedger.size());
+        stateLock.writeLock().lock();
+        try {
+            accounts = replacement;
+            ledger = restoredLedger;
+            commitment = replacementCommitment;
+            keys = replacementKeys;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Повтор перевода из журнала без проверок: он уже был проверен до записи.
+     * Идемпотентен - перевод, уже присутствующий в реестре, пропускается.
+     */
+    public void replayTransfer(long txId, long epochSecond, String sender, String recipient, long amount) {
+        AccountStore store = accounts;
+        StateCommitment currentCommitment = commitment;
+        if (!ledger.append(txId, epochSecond, sender, recipient, amount)) return;
+        currentCommitment.recordAdded(txId, sender, recipient, amount);
+        if (store.addIfAbsent(sender, 0)) currentCommitment.accountAdded(sender, 0);
+        if (store.addIfAbsent(recipient, 0)) currentCommitment.accountAdded(recipient, 0);
+        int senderId = store.idOf(sender);
+        int recipientId = store.idOf(recipient);
+        long senderBalance = store.getBalance(senderId);
+        long recipientBalance = store.getBalance(recipientId);
+        store.setBalance(senderId, senderBalance - amount);
+        store.setBalance(recipientId, recipientBalance + amount);
+        currentCommitment.balanceChanged(sender, senderBalance, senderBalance - amount);
+        currentCommitment.balanceChanged(recipient, recipientBalance, recipientBalance + amount);
+    }
+
+    /** Повтор добавления счета из журнала. */
+    public void replayAccount(String nickname, long balance) {
+        if (accounts.addIfAbsent(nickname, balance)) commitment.accountAdded(nickname, balance);
+    }
+
+    /** Повтор закрепления ключа из журнала. */
+    public void replayAccountKey(String nickname, byte[] publicKey) {
+        keys.bind(nickname, publicKey);
+    }
+
+    /**
+     * Балансы на момент, когда в реестре среза было height записей: переводы после height откатываются.
+     * Счета, созданные позже, получают баланс до своих переводов, то есть начальный.
+     */
+    public static Map<String, Long> balancesAt(StateSnapshot snapshot, int height) {
+        Map<String, Long> balances = snapshot.getBalances();
+        TransactionLedger snapshotLedger = snapshot.getLedger();
+        for (int i = snapshot.getLedgerSize() - 1; i >= height; i--) {
+            long amount = snapshotLedger.getAmount(i);
+            balances.merge(snapshotLedger.getSender(i), amount, Long::sum);
+            balances.merge(snapshotLedger.getRecipient(i), -amount, Long::sum);
+        }
+        return balances;
+    }
+
+    // --- Чтение состояния (без блокировок, значения могут быть чуть устаревшими) ---
+
+    /** Баланс счета или null, если счет неизвестен. */
+    public Long getBalance(String nickname) {
+        AccountStore store = accounts;
+        int id = store.idOf(nickname);
+        return id >= 0 ? store.getBalance(id) : null;
+    }
+
+    public boolean hasAccount(String nickname) { return accounts.idOf(nickname) >= 0; }
+
+    public int getAccountCount() { return accounts.size(); }
+
+    /** Копия балансов. */
+    public Map<String, Long> getBalances() { return accounts.toMap(); }
+
+    /**
+     * Текущий реестр. Читать по индексам до зафиксированного size(): записи не изменяются,
+     * а при синхронизации реестр заменяется целиком, не затрагивая уже полученную ссылку.
+     */
+    public TransactionLedger getLedger() { return ledger; }
+
+    public int getLedgerSize() { return ledger.size(); }
+
+    /** Ключи счетов; закреплять ключи - через addAccount и bindKey (пишутся в журнал). */
+    public AccountKeys getKeys() { return keys; }
+
+    /** Обязательство текущего состояния (корни и узлы деревьев Меркла). */
+    public StateCommitment getCommitment() { return commitment; }
+
+    /** Счета, попадающие в отмеченные корзины StateCommitment.Tree.ACCOUNTS (один проход по счетам). */
+    public Map<String, Long> getAccountsInBuckets(BitSet buckets) {
+        AccountStore store = accounts;
+        Map<String, Long> result = new LinkedHashMap<>();
+        int count = store.size();
+        for (int id = 0; id < count; id++) {
+            String name = store.nameOf(id);
+            if (buckets.get(StateCommitment.accountBucket(name))) result.put(name, store.getBalance(id));
+        }
+        return result;
+    }
+}
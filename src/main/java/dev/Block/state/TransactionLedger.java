@@ -0,0 +1,361 @@
+package dev.Block.state;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Реестр транзакций: добавление за O(1), индекс по идентификатору транзакции для дедупликации.
+ * <p>
+ * Записи хранятся не строками, а записями фиксированной длины в сегментах:
+ * <pre>
+ * [txId:8][epochSecond:8][amount:8][senderId:4][recipientId:4] = 32 байта
+ * </pre>
+ * поэтому смещение записи вычисляется из позиции (индекс смещений не хранится). Имена интернируются в NameTable.
+ * Сегменты - либо буферы в куче (временные реестры, узел без каталога данных), либо отображенные в память
+ * файлы фиксированного размера (openMapped): тогда записи, индекс txId и размер реестра лежат в страницах файлов,
+ * и куча не растет вместе с историей. Чтение (/ledger, отправка состояния, дедупликация) идет прямо из страниц.
+ * <p>
+ * Добавление синхронизировано. Чтение по индексу меньше size() идет без блокировок:
+ * поля записи заполняются до публикации нового размера через volatile.
+ * Строка вида "yyyy-MM-dd HH:mm:ss | A sent N coins to B" формируется только при чтении (format).
+ */
+public final class TransactionLedger {
+
+    static final int RECORD_BYTES = 32;
+    private static final int TX_ID = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int AMOUNT = 16;
+    private static final int SENDER = 24;
+    private static final int RECIPIENT = 28;
+
+    private static final int HEAP_SEGMENT_SHIFT = 12; // 4096 записей, 128 КБ
+    private static final int MAPPED_SEGMENT_SHIFT = 16; // 65536 записей, файл 2 МБ
+    private static final int META_BYTES = 16; // [size:8][indexCapacity:8]
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path directory; // null - реестр в куче
+    private final int segmentShift;
+    private final int segmentMask;
+    private final NameTable names;
+    private final TxIndex index;
+    private final MappedByteBuffer meta; // null - реестр в куче
+    private volatile ByteBuffer[] segments = new ByteBuffer[4];
+    private volatile int size;
+
+    /** Реестр в куче. */
+    public TransactionLedger() {
+        this.directory = null;
+        this.segmentShift = HEAP_SEGMENT_SHIFT;
+        this.segmentMask = (1 << HEAP_SEGMENT_SHIFT) - 1;
+        this.names = new NameTable();
+        this.index = new TxIndex(1 << HEAP_SEGMENT_SHIFT, capacity -> ByteBuffer.allocate(TxIndex.HEADER_BYTES + capacity * TxIndex.SLOT_BYTES));
+        this.meta = null;
+    }
+
+    private TransactionLedger(Path directory, NameTable names, MappedByteBuffer meta) throws IOException {
+        this.directory = directory;
+        this.segmentShift = MAPPED_SEGMENT_SHIFT;
+        this.segmentMask = (1 << MAPPED_SEGMENT_SHIFT) - 1;
+        this.names = names;
+        this.meta = meta;
+        int storedSize = (int) meta.getLong(0);
+        for (int i = 0; i < storedSize; i += 1 << segmentShift) segmentForAppend(i);
+        this.size = storedSize;
+        this.index = openIndex((int) meta.getLong(8));
+    }
+
+    /**
+     * Открывает (или создает) реестр в каталоге на диске.
+     * <pre>
+     * segment-000000.dat ...  записи, по 65536 в файле
+     * names.dat               имена отправителей и получателей
+     * index-CAPACITY.dat      хеш-индекс txId -> позиция
+     * ledger.meta             [size:8][indexCapacity:8]
+     * </pre>
+     * Файлы не синхронизируются при каждом добавлении: сохранность обеспечивает журнал, а force()
+     * вызывается перед записью снимка, который ссылается на первые size() записей (см. truncate).
+     */
+    public static TransactionLedger openMapped(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        NameTable names = NameTable.open(directory.resolve("names.dat"));
+        return new TransactionLedger(directory, names, map(directory.resolve("ledger.meta"), META_BYTES));
+    }
+
+    /**
+     * Добавляет запись, если транзакции с таким идентификатором еще нет.
+     * @return true, если запись добавлена; false - дубликат.
+     */
+    public boolean append(long txId, long epochSecond, String sender, String recipient, long amount) {
+        int senderId = names.intern(sender);
+        int recipientId = names.intern(recipient);
+        synchronized (this) {
+            int position = size;
+            int indexCapacity = index.capacity();
+            if (!index.putIfAbsent(txId, position, position)) return false;
+            if (index.capacity() != indexCapacity) onIndexResized(indexCapacity);
+            ByteBuffer segment = segmentForAppend(position);
+            int offset = (position & segmentMask) * RECORD_BYTES;
+            segment.putLong(offset + TX_ID, txId);
+            segment.putLong(offset + TIMESTAMP, epochSecond);
+            segment.putLong(offset + AMOUNT, amount);
+            segment.putInt(offset + SENDER, senderId);
+            segment.putInt(offset + RECIPIENT, recipientId);
+            size = position + 1; // Публикация записи
+            if (meta != null) meta.putLong(0, size);
+            return true;
+        }
+    }
+
+    /**
+     * Разбирает строку реестра в формате старых узлов и добавляет ее.
+     * В строке нет идентификатора транзакции, он вычисляется из содержимого записи (contentId).
+     * @return true, если запись добавлена; false - дубликат или неверный формат.
+     */
+    public boolean appendFormatted(String entry) {
+        int timeEnd = entry.indexOf(" | ");
+        int sentAt = entry.indexOf(" sent ", timeEnd + 3);
+        int coinsAt = entry.indexOf(" coins to ", sentAt + 6);
+        if (timeEnd < 0 || sentAt < 0 || coinsAt < 0) return false;
+        try {
+            long epochSecond = LocalDateTime.parse(entry.substring(0, timeEnd), TIME_FORMAT).atZone(ZoneId.systemDefault()).toEpochSecond();
+            String sender = entry.substring(timeEnd + 3, sentAt);
+            long amount = Long.parseLong(entry.substring(sentAt + 6, coinsAt));
+            String recipient = entry.substring(coinsAt + 10);
+            return append(contentId(epochSecond, sender, recipient, amount), epochSecond, sender, recipient, amount);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Добавляет первые count записей другого реестра (дубликаты пропускаются).
+     * @return число добавленных записей.
+     */
+    public int appendAll(TransactionLedger source, int count) {
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (append(source.getTxId(i), source.getTimestamp(i), source.getSender(i), source.getRecipient(i), source.getAmount(i))) added++;
+        }
+        return added;
+    }
+
+    public synchronized boolean contains(long txId) {
+        return index.get(txId, size) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Номер корзины транзакции среди 2^bits (согласован с индексом, см. positionsInBuckets). */
+    public static int bucketOf(long txId, int bits) {
+        return TxIndex.bucketOf(txId, bits);
+    }
+
+    /**
+     * Позиции записей (по возрастанию), txId которых попадает в отмеченные корзины из 2^bits.
+     * Просматривает около size / 2^bits слотов индекса на корзину, а не весь реестр.
+     */
+    public synchronized int[] positionsInBuckets(BitSet buckets, int bits) {
+        int[][] positions = {new int[64]};
+        int[] count = {0};
+        for (int bucket = buckets.nextSetBit(0); bucket >= 0 && bucket < 1 << bits; bucket = buckets.nextSetBit(bucket + 1)) {
+            index.forEachInBucket(bucket, bits, size, position -> {
+                if (count[0] == positions[0].length) positions[0] = Arrays.copyOf(positions[0], count[0] * 2);
+                positions[0][count[0]++] = position;
+            });
+        }
+        int[] result = Arrays.copyOf(positions[0], count[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // --- Чтение записи по позиции (0 <= index < size()) ---
+
+    public long getTxId(int index) { return segment(index).getLong(offset(index) + TX_ID); }
+
+    public long getTimestamp(int index) { return segment(index).getLong(offset(index) + TIMESTAMP); }
+
+    public long getAmount(int index) { return segment(index).getLong(offset(index) + AMOUNT); }
+
+    public String getSender(int index) { return names.nameOf(segment(index).getInt(offset(index) + SENDER)); }
+
+    public String getRecipient(int index) { return names.nameOf(segment(index).getInt(offset(index) + RECIPIENT)); }
+
+    /** Запись в текстовом виде, совместимом со старыми узлами. */
+    public String format(int index) {
+        ByteBuffer segment = segment(index);
+        int offset = offset(index);
+        String time = LocalDateTime.ofInstant(Instant.ofEpochSecond(segment.getLong(offset + TIMESTAMP)), ZoneId.systemDefault()).format(TIME_FORMAT);
+        return time + " | " + names.nameOf(segment.getInt(offset + SENDER)) + " sent " + segment.getLong(offset + AMOUNT) + " coins to " + names.nameOf(segment.getInt(offset + RECIPIENT));
+    }
+
+    // --- Файлы реестра ---
+
+    /** Каталог реестра или null для реестра в куче. */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Отбрасывает записи с позиции newSize (восстановление: записи после снимка повторяются из журнала).
+     * Записи в файлах остаются, но перестают читаться; их слоты в индексе считаются устаревшими.
+     */
+    public synchronized void truncate(int newSize) throws IOException {
+        if (newSize > size) throw new IOException("Ledger " + directory + " has " + size + " entries, snapshot expects " + newSize);
+        size = newSize;
+        if (meta != null) meta.putLong(0, newSize);
+    }
+
+    /** Сбрасывает отображенные страницы и имена на диск. */
+    public void force() throws IOException {
+        if (directory == null) return;
+        names.force();
+        ByteBuffer[] current;
+        synchronized (this) {
+            current = segments;
+            ((MappedByteBuffer) index.buffer()).force();
+        }
+        for (ByteBuffer segment : current) {
+            if (segment != null) ((MappedByteBuffer) segment).force();
+        }
+        meta.force();
+    }
+
+    /** Закрывает файл имен. Отображения освобождаются сборщиком мусора после последнего чтения. */
+    public void close() throws IOException {
+        names.close();
+    }
+
+    /**
+     * Идентификатор записи по ее содержимому (для строк реестра, полученных без id).
+     * Совпадает для одинаковых переводов в пределах одной секунды - как и прежняя проверка по строке.
+     */
+    public static long contentId(long epochSecond, String sender, String recipient, long amount) {
+        long h = 0xCBF29CE484222325L;
+        h = mix(h, epochSecond);
+        h = mix(h, sender.hashCode());
+        h = mix(h, sender.length());
+        h = mix(h, recipient.hashCode());
+        h = mix(h, recipient.length());
+        h = mix(h, amount);
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        h ^= value;
+        h *= 0x100000001B3L;
+        return h ^ (h >>> 29);
+    }
+
+    private ByteBuffer segment(int index) {
+        return segments[index >>> segmentShift];
+    }
+
+    private int offset(int index) {
+        return (index & segmentMask) * RECORD_BYTES;
+    }
+
+    /** Вызывается под монитором (или из конструктора). */
+    private ByteBuffer segmentForAppend(int position) {
+        int segmentIndex = position >>> segmentShift;
+        ByteBuffer[] current = segments;
+        if (segmentIndex == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        ByteBuffer segment = current[segmentIndex];
+        if (segment == null) {
+            int bytes = (1 << segmentShift) * RECORD_BYTES;
+            segment = directory == null ? ByteBuffer.allocate(bytes) : mapOrFail(directory.resolve(String.format("segment-%06d.dat", segmentIndex)), bytes);
+            current[segmentIndex] = segment;
+        }
+        if (current != segments) segments = current;
+        return segment;
+    }
+
+    /**
+     * Открывает файл индекса, записанный в ledger.meta. Если его нет или после сбоя файлов несколько
+     * (прервано расширение), индекс перестраивается по записям.
+     */
+    private TxIndex openIndex(int storedCapacity) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "index-*.dat")) {
+            stream.forEach(files::add);
+        }
+        Path expected = indexFile(storedCapacity);
+        if (files.size() == 1 && files.get(0).equals(expected) && Files.size(expected) == indexBytes(storedCapacity)) {
+            MappedByteBuffer buffer = map(expected, indexBytes(storedCapacity));
+            if (buffer.getLong(8) == TxIndex.FORMAT) return new TxIndex(buffer, this::allocateIndex);
+        }
+        for (Path file : files) Files.delete(file);
+        TxIndex rebuilt = new TxIndex(size, this::allocateIndex);
+        for (int i = 0; i < size; i++) rebuilt.putIfAbsent(getTxId(i), i, i);
+        meta.putLong(8, rebuilt.capacity());
+        return rebuilt;
+    }
+
+    private ByteBuffer allocateIndex(int capacity) {
+        if (directory == null) return ByteBuffer.allocate(indexBytes(capacity));
+        Path file = indexFile(capacity);
+        try {
+            Files.deleteIfExists(file); // Новый индекс должен быть обнулен
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return mapOrFail(file, indexBytes(capacity));
+    }
+
+    /** Индекс перестроен в новый файл: фиксирует его в meta и удаляет старый. */
+    private void onIndexResized(int oldCapacity) {
+        if (directory == null) return;
+        meta.putLong(8, index.capacity());
+        try {
+            Files.deleteIfExists(indexFile(oldCapacity));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path indexFile(int capacity) {
+        return directory.resolve("index-" + capacity + ".dat");
+    }
+
+    private static int indexBytes(int capacity) {
+        return TxIndex.HEADER_BYTES + capacity * TxIndex.SLOT_BYTES;
+    }
+
+    private static MappedByteBuffer mapOrFail(Path file, int bytes) {
+        try {
+            return map(file, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Отображает файл размером bytes (создает и дополняет нулями при необходимости). */
+    private static MappedByteBuffer map(Path file, int bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes); // Отображение продолжает действовать после закрытия канала
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package dev.Block.state;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Хеш-индекс txId -> позиция с открытой адресацией (линейное пробирование) в ByteBuffer:
+ * в куче для временных реестров или в отображенном файле для реестра на диске.
+ * <pre>
+ * буфер: [occupied:8][format:8], затем слоты [key:8][position + 1:4][pad:4] (0 - пустой слот)
+ * </pre>
+ * Домашний слот - старшие биты хеша Фибоначчи от ключа, поэтому ключи одной корзины bucketOf
+ * лежат в непрерывном диапазоне слотов (плюс перенос линейного пробирования) - см. forEachInBucket.
+ * Позиции не меньше текущего размера реестра (limit) считаются устаревшими - так реестр
+ * отбрасывает записи после последнего снимка, не перестраивая индекс.
+ * Не потокобезопасен: синхронизацию обеспечивает владелец.
+ */
+final class TxIndex {
+
+    static final int HEADER_BYTES = 16;
+    static final int SLOT_BYTES = 16;
+    /** Версия раскладки; индекс другой версии перестраивается при открытии. */
+    static final long FORMAT = 2;
+    private static final int NOT_FOUND = -1;
+
+    private final IntFunction<ByteBuffer> allocator; // capacity (слотов) -> обнуленный буфер
+    private ByteBuffer slots;
+    private int capacity;
+    private int mask;
+    private int shift; // 64 - log2(capacity)
+
+    /** Новый пустой индекс. */
+    TxIndex(int expectedSize, IntFunction<ByteBuffer> allocator) {
+        this.allocator = allocator;
+        attach(allocator.apply(capacityFor(expectedSize)));
+        slots.putLong(8, FORMAT);
+    }
+
+    /** Индекс поверх уже заполненного буфера (открытие файла). */
+    TxIndex(ByteBuffer existing, IntFunction<ByteBuffer> allocator) {
+        this.allocator = allocator;
+        attach(existing);
+    }
+
+    static int capacityFor(int expectedSize) {
+        return Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+    }
+
+    static int capacityOf(ByteBuffer buffer) {
+        return (buffer.capacity() - HEADER_BYTES) / SLOT_BYTES;
+    }
+
+    /** Позиция по ключу (меньше limit) или -1. */
+    int get(long key, int limit) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            int value = slots.getInt(offset + 8);
+            if (value == 0) return NOT_FOUND;
+            if (slots.getLong(offset) == key) return value - 1 < limit ? value - 1 : NOT_FOUND;
+        }
+    }
+
+    /**
+     * Добавляет ключ, если его нет среди действительных (позиция меньше limit).
+     * @return true, если ключ добавлен.
+     */
+    boolean putIfAbsent(long key, int position, int limit) {
+        if ((occupied() + 1) * 2 > capacity) resize(limit);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            int value = slots.getInt(offset + 8);
+            if (value == 0) {
+                slots.putLong(offset, key);
+                slots.putInt(offset + 8, position + 1);
+                slots.putLong(0, occupied() + 1);
+                return true;
+            }
+            if (slots.getLong(offset) == key) {
+                if (value - 1 < limit) return false;
+                slots.putInt(offset + 8, position + 1); // Устаревшая запись с тем же ключом
+                return true;
+            }
+        }
+    }
+
+    /** Номер корзины ключа среди 2^bits корзин (bits <= 32). */
+    static int bucketOf(long key, int bits) {
+        return (int) (hash(key) >>> (64 - bits));
+    }
+
+    /**
+     * Передает позиции (меньше limit) всех ключей корзины bucket из 2^bits:
+     * просматривается только диапазон ее домашних слотов и перенос за ним до пустого слота.
+     */
+    void forEachInBucket(int bucket, int bits, int limit, IntConsumer action) {
+        int log2 = 64 - shift;
+        int start = (int) (((long) bucket << log2) >>> bits);
+        int end = Math.max(start + 1, (int) ((((long) bucket + 1) << log2) >>> bits));
+        for (int i = start; ; i++) {
+            int offset = HEADER_BYTES + (i & mask) * SLOT_BYTES;
+            int value = slots.getInt(offset + 8);
+            if (value == 0) {
+                if (i >= end) return;
+                continue;
+            }
+            if (i - start > capacity) return; // Таблица заполнена по кругу - недостижимо при коэффициенте 0.5
+            if (value - 1 < limit && bucketOf(slots.getLong(offset), bits) == bucket) action.accept(value - 1);
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    ByteBuffer buffer() {
+        return slots;
+    }
+
+    private long occupied() {
+        return slots.getLong(0);
+    }
+
+    /** Перестраивает индекс в буфер вдвое большего размера, отбрасывая устаревшие записи. */
+    private void resize(int limit) {
+        ByteBuffer old = slots;
+        int oldCapacity = capacity;
+        attach(allocator.apply(oldCapacity * 2));
+        slots.putLong(8, FORMAT);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            int value = old.getInt(offset + 8);
+            if (value != 0 && value - 1 < limit) insertFresh(old.getLong(offset), value - 1);
+        }
+    }
+
+    private void insertFresh(long key, int position) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            if (slots.getInt(offset + 8) == 0) {
+                slots.putLong(offset, key);
+                slots.putInt(offset + 8, position + 1);
+                slots.putLong(0, occupied() + 1);
+                return;
+            }
+        }
+    }
+
+    private void attach(ByteBuffer buffer) {
+        slots = buffer;
+        capacity = capacityOf(buffer);
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int slot(long key) {
+        return (int) (hash(key) >>> shift);
+    }
+
+    private static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L; // Хеширование Фибоначчи: значимы старшие биты
+    }
+}
@@ -0,0 +1,141 @@
+package dev.Block.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+import dev.Block.state.StateSnapshot;
+import dev.Block.state.TransactionLedger;
+
+/**
+ * Компактный снимок состояния в одном файле.
+ * <pre>
+ * [magic:8 "BLKSNAP3"][lsn:8][accounts:4]{nickname, balance:8}[keys:4]{nickname, keyLength:2, publicKey}
+ * [ledgerDirectory][ledgerSize:4][crc32c:4]
+ * </pre>
+ * Реестр в снимок не копируется: он уже лежит в отображенных файлах (TransactionLedger.openMapped),
+ * снимок ссылается на его каталог и число записей, сброшенных на диск перед записью снимка.
+ * Снимки прежних форматов читаются без ключей: "BLKSNAP2" - без раздела keys,
+ * "BLKSNAP1" - с записями реестра внутри (читаются в реестр в куче).
+ * Строки - writeUTF. Снимок пишется во временный файл, синхронизируется и атомарно переименовывается,
+ * поэтому на диске всегда есть либо старый, либо новый целый снимок.
+ */
+public final class SnapshotFile {
+
+    private static final long MAGIC = 0x424C4B534E415033L; // "BLKSNAP3"
+    private static final long MAGIC_V2 = 0x424C4B534E415032L; // "BLKSNAP2"
+    private static final long MAGIC_V1 = 0x424C4B534E415031L; // "BLKSNAP1"
+    private static final String FILE_NAME = "state.snapshot";
+
+    /** Загруженный снимок. */
+    public static final class Loaded {
+        public final long lsn;
+        public final Map<String, Long> balances;
+        /** Ключи счетов (пусто для снимков прежних форматов). */
+        public final Map<String, byte[]> keys;
+        /** Имя каталога реестра относительно каталога данных (null для снимка прежнего формата). */
+        public final String ledgerDirectory;
+        public final int ledgerSize;
+        /** Записи реестра из снимка прежнего формата, иначе null. */
+        public final TransactionLedger legacyLedger;
+
+        Loaded(long lsn, Map<String, Long> balances, Map<String, byte[]> keys, String ledgerDirectory, int ledgerSize, TransactionLedger legacyLedger) {
+            this.lsn = lsn;
+            this.balances = balances;
+            this.keys = keys;
+            this.ledgerDirectory = ledgerDirectory;
+            this.ledgerSize = ledgerSize;
+            this.legacyLedger = legacyLedger;
+        }
+    }
+
+    private SnapshotFile() {}
+
+    /** Реестр снимка должен быть в подкаталоге directory и сброшен на диск (force) до вызова. */
+    public static void write(Path directory, StateSnapshot snapshot) throws IOException {
+        Path ledgerDirectory = snapshot.getLedger().getDirectory();
+        if (ledgerDirectory == null) throw new IOException("Snapshot ledger is not stored on disk");
+        Path target = directory.resolve(FILE_NAME);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(raw, crc), 64 * 1024));
+            out.writeLong(MAGIC);
+            out.writeLong(snapshot.getLsn());
+            out.writeInt(snapshot.getBalances().size());
+            for (Map.Entry<String, Long> entry : snapshot.getBalances().entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeInt(snapshot.getKeys().size());
+            for (Map.Entry<String, byte[]> entry : snapshot.getKeys().entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeShort(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+            out.writeUTF(ledgerDirectory.getFileName().toString());
+            out.writeInt(snapshot.getLedgerSize());
+            out.flush();
+            new DataOutputStream(raw).writeInt((int) crc.getValue()); // Сама сумма не входит в CRC
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @return снимок или null, если его нет. IOException - если снимок поврежден. */
+    public static Loaded read(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) return null;
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < 12) throw new IOException("Truncated state snapshot: " + file);
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length - 4);
+        if (ByteBuffer.wrap(data, data.length - 4, 4).getInt() != (int) crc.getValue()) throw new IOException("Snapshot checksum mismatch: " + file);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4))) {
+            long magic = in.readLong();
+            if (magic != MAGIC && magic != MAGIC_V2 && magic != MAGIC_V1) throw new IOException("Not a state snapshot: " + file);
+            long lsn = in.readLong();
+            int accountCount = in.readInt();
+            Map<String, Long> balances = new LinkedHashMap<>(Math.max(16, accountCount * 2));
+            for (int i = 0; i < accountCount; i++) balances.put(in.readUTF(), in.readLong());
+            Map<String, byte[]> keys = new LinkedHashMap<>();
+            if (magic == MAGIC) {
+                int keyCount = in.readInt();
+                for (int i = 0; i < keyCount; i++) {
+                    String nickname = in.readUTF();
+                    byte[] publicKey = new byte[in.readUnsignedShort()];
+                    in.readFully(publicKey);
+                    keys.put(nickname, publicKey);
+                }
+            }
+            if (magic != MAGIC_V1) {
+                String ledgerDirectory = in.readUTF();
+                return new Loaded(lsn, balances, keys, ledgerDirectory, in.readInt(), null);
+            }
+            int ledgerSize = in.readInt();
+            TransactionLedger ledger = new TransactionLedger();
+            for (int i = 0; i < ledgerSize; i++) {
+                long txId = in.readLong();
+                long epochSecond = in.readLong();
+                long amount = in.readLong();
+                ledger.append(txId, epochSecond, in.readUTF(), in.readUTF(), amount);
+            }
+            return new Loaded(lsn, balances, keys, null, ledger.size(), ledger);
+        }
+    }
+}
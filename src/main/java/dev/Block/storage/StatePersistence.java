@@ -0,0 +1,255 @@
+package dev.Block.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import dev.Block.state.StateSnapshot;
+import dev.Block.state.TransactionEngine;
+import dev.Block.state.TransactionLedger;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Сохранение состояния узла на диск: восстановление при запуске, журнал и периодические снимки.
+ * <p>
+ * Восстановление: загрузить последний снимок и повторить записи журнала с LSN после него.
+ * Затем журнал подключается к TransactionEngine, и каждое изменение попадает в него из пути применения.
+ * Снимок делается раз в snapshotIntervalSeconds (если были изменения) или каждые snapshotRecords записей;
+ * после снимка покрытые им сегменты журнала удаляются.
+ * <p>
+ * Реестр хранится в отображенных файлах в подкаталоге ledger-NNNNNN ("поколение"). При синхронизации
+ * полученный реестр копируется в новое поколение; прежние удаляются, когда на них больше не ссылается снимок.
+ */
+public final class StatePersistence {
+
+    /** Когда считать перевод сохраненным. */
+    public enum SyncMode {
+        /** Обработка перевода (ретрансляция, подтверждение) ждет fsync его записи; fsync общий для пачки. */
+        GROUP,
+        /** Не ждать: fsync идет фоном, при сбое теряются последние миллисекунды. */
+        ASYNC
+    }
+
+    private final Path directory;
+    private final TransactionEngine engine;
+    private final SyncMode syncMode;
+    private final long snapshotRecords;
+    private final WriteAheadLog wal;
+    private final ScheduledExecutorService scheduler;
+    private volatile long lastSnapshotLsn;
+    private volatile long lastSnapshotNanos = System.nanoTime();
+    private final long recoveryMillis;
+    private final long replayedRecords;
+    private final AtomicInteger nextGeneration;
+    private TransactionLedger snapshotLedger; // Реестр последнего снимка, под монитором
+
+    private StatePersistence(Path directory, TransactionEngine engine, SyncMode syncMode, long snapshotRecords, WriteAheadLog wal,
+                             long snapshotLsn, long recoveryMillis, long replayedRecords, TransactionLedger ledger, int nextGeneration, String ownerNickname) {
+        this.directory = directory;
+        this.engine = engine;
+        this.syncMode = syncMode;
+        this.snapshotRecords = snapshotRecords;
+        this.wal = wal;
+        this.lastSnapshotLsn = snapshotLsn;
+        this.recoveryMillis = recoveryMillis;
+        this.replayedRecords = replayedRecords;
+        this.snapshotLedger = ledger;
+        this.nextGeneration = new AtomicInteger(nextGeneration);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Snapshot-" + ownerNickname);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Восстанавливает состояние engine из directory и подключает журнал.
+     * Должен вызываться до того, как узел начнет принимать переводы.
+     */
+    public static StatePersistence open(Path directory, TransactionEngine engine, SyncMode syncMode,
+                                        long snapshotIntervalSeconds, long snapshotRecords, String ownerNickname) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+
+        long snapshotLsn = 0;
+        SnapshotFile.Loaded loaded = null;
+        try {
+            loaded = SnapshotFile.read(directory);
+        } catch (IOException e) {
+            ConsoleLogger.print("ERROR: Cannot read state snapshot in " + directory + ": " + e.getMessage() + ". Replaying the log from the beginning.");
+        }
+        int nextGeneration = 0;
+        for (Path ledgerDirectory : ledgerDirectories(directory)) {
+            nextGeneration = Math.max(nextGeneration, generationOf(ledgerDirectory) + 1);
+        }
+        TransactionLedger ledger;
+        if (loaded != null && loaded.ledgerDirectory != null) {
+            ledger = TransactionLedger.openMapped(directory.resolve(loaded.ledgerDirectory));
+            ledger.truncate(loaded.ledgerSize); // Записи после снимка вернутся из журнала
+            snapshotLsn = loaded.lsn;
+        } else {
+            // Без снимка журнал повторяется с начала; снимок прежнего формата переносится в файлы
+            ledger = TransactionLedger.openMapped(directory.resolve(generationName(nextGeneration++)));
+            ledger.truncate(0);
+            if (loaded != null) {
+                ledger.appendAll(loaded.legacyLedger, loaded.legacyLedger.size());
+                snapshotLsn = loaded.lsn;
+            }
+        }
+        deleteLedgersExcept(directory, ledger.getDirectory(), null);
+        engine.restore(loaded != null ? loaded.balances : Map.of(), loaded != null ? loaded.keys : Map.of(), ledger);
+
+        long[] replayed = new long[1];
+        long lastLsn = WriteAheadLog.replay(directory, snapshotLsn, new WriteAheadLog.ReplayHandler() {
+            @Override
+            public void onTransfer(long txId, long epochSecond, String sender, String recipient, long amount) {
+                engine.replayTransfer(txId, epochSecond, sender, recipient, amount);
+                replayed[0]++;
+            }
+
+            @Override
+            public void onAccount(String nickname, long balance) {
+                engine.replayAccount(nickname, balance);
+                replayed[0]++;
+            }
+
+            @Override
+            public void onAccountKey(String nickname, byte[] publicKey) {
+                engine.replayAccountKey(nickname, publicKey);
+                replayed[0]++;
+            }
+        });
+
+        WriteAheadLog wal = WriteAheadLog.open(directory, lastLsn, ownerNickname);
+        engine.setJournal(wal);
+        long recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (loaded != null || replayed[0] > 0) {
+            ConsoleLogger.print("Recovered state from " + directory + " in " + recoveryMillis + " ms: snapshot at LSN " + snapshotLsn
+                    + " (" + engine.getAccountCount() + " accounts, " + engine.getLedgerSize() + " ledger entries after replay), "
+                    + replayed[0] + " log records replayed.");
+        }
+
+        StatePersistence persistence = new StatePersistence(directory, engine, syncMode, snapshotRecords, wal, snapshotLsn, recoveryMillis, replayed[0], ledger, nextGeneration, ownerNickname);
+        engine.setLedgerFactory(persistence::newLedgerGeneration);
+        if (loaded != null && loaded.legacyLedger != null) persistence.snapshotNow(); // Перевод снимка в новый формат
+        persistence.scheduler.scheduleWithFixedDelay(() -> persistence.snapshotIfDue(snapshotIntervalSeconds), 1, 1, TimeUnit.SECONDS);
+        return persistence;
+    }
+
+    /**
+     * В режиме GROUP ждет, пока все уже примененные изменения не будут на диске.
+     * Ошибку записи сообщает в лог: узел продолжает работу в памяти.
+     */
+    public void awaitDurable() {
+        if (syncMode != SyncMode.GROUP) return;
+        try {
+            wal.awaitDurable();
+        } catch (IOException e) {
+            ConsoleLogger.print("ERROR: Transaction may not be persisted: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Делает снимок текущего состояния и удаляет покрытые им сегменты журнала. */
+    public synchronized void snapshotNow() {
+        try {
+            long start = System.nanoTime();
+            StateSnapshot snapshot = engine.captureSnapshot();
+            snapshot.getLedger().force(); // Записи, на которые ссылается снимок, должны быть на диске раньше него
+            wal.rotate();
+            SnapshotFile.write(directory, snapshot);
+            lastSnapshotLsn = snapshot.getLsn();
+            lastSnapshotNanos = System.nanoTime();
+            wal.deleteSegmentsCoveredBy(snapshot.getLsn());
+            if (snapshot.getLedger() != snapshotLedger) {
+                snapshotLedger.close();
+                snapshotLedger = snapshot.getLedger();
+                deleteLedgersExcept(directory, snapshotLedger.getDirectory(), engine.getLedger().getDirectory());
+            }
+            ConsoleLogger.print("State snapshot written at LSN " + snapshot.getLsn() + " (" + snapshot.getBalances().size() + " accounts, "
+                    + snapshot.getLedgerSize() + " ledger entries) in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+        } catch (IOException e) {
+            ConsoleLogger.print("ERROR: Failed to write state snapshot: " + e.getMessage());
+        }
+    }
+
+    /** Финальный снимок (быстрый следующий запуск) и закрытие журнала. */
+    public void close() {
+        scheduler.shutdownNow();
+        if (wal.lastLsn() != lastSnapshotLsn || engine.getLedger() != snapshotLedger) snapshotNow();
+        wal.close();
+        try {
+            engine.getLedger().close();
+        } catch (IOException e) {
+            ConsoleLogger.print("WARN: Failed to close ledger files: " + e.getMessage());
+        }
+    }
+
+    public SyncMode getSyncMode() { return syncMode; }
+
+    public WriteAheadLog getWal() { return wal; }
+
+    public long getRecoveryMillis() { return recoveryMillis; }
+
+    public long getReplayedRecords() { return replayedRecords; }
+
+    /** Новый пустой реестр на диске для замены состояния при синхронизации. */
+    private TransactionLedger newLedgerGeneration() {
+        try {
+            return TransactionLedger.openMapped(directory.resolve(generationName(nextGeneration.getAndIncrement())));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create ledger files: " + e.getMessage(), e);
+        }
+    }
+
+    private static String generationName(int generation) {
+        return String.format("ledger-%06d", generation);
+    }
+
+    private static int generationOf(Path ledgerDirectory) {
+        try {
+            return Integer.parseInt(ledgerDirectory.getFileName().toString().substring("ledger-".length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static List<Path> ledgerDirectories(Path directory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "ledger-*")) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path)) result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /** Удаляет каталоги реестров, кроме keep и keepAlso (может быть null). */
+    private static void deleteLedgersExcept(Path directory, Path keep, Path keepAlso) throws IOException {
+        for (Path ledgerDirectory : ledgerDirectories(directory)) {
+            if (ledgerDirectory.equals(keep) || ledgerDirectory.equals(keepAlso)) continue;
+            try (Stream<Path> files = Files.walk(ledgerDirectory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+            }
+        }
+    }
+
+    private void snapshotIfDue(long intervalSeconds) {
+        long pendingRecords = wal.lastLsn() - lastSnapshotLsn;
+        if (pendingRecords <= 0) return;
+        boolean intervalPassed = System.nanoTime() - lastSnapshotNanos >= TimeUnit.SECONDS.toNanos(intervalSeconds);
+        if (pendingRecords >= snapshotRecords || intervalPassed) snapshotNow();
+    }
+}
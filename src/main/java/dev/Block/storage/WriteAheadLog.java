@@ -0,0 +1,357 @@
+package dev.Block.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import dev.Block.state.StateJournal;
+import dev.Block.util.ConsoleLogger;
+
+/**
+ * Журнал упреждающей записи (WAL) изменений состояния: только добавление, каждая запись с CRC32C.
+ * <pre>
+ * запись: [length:4][crc32c:4][type:1][lsn:8][данные]   (length и crc - по type..данные)
+ * TRANSFER: [txId:8][epochSecond:8][amount:8][sender][recipient]
+ * ACCOUNT:  [balance:8][nickname]                        (строки как [len:2][UTF-8])
+ * ACCOUNT_KEY: [keyLength:2][publicKey][nickname]        (ключ, закрепленный за счетом)
+ * </pre>
+ * Записи пишутся в сегменты wal-&lt;первый LSN&gt;.log. Запись в журнал (log*) только кодирует ее
+ * в буфер под монитором; отдельный поток забирает накопленный буфер целиком, пишет его и делает
+ * один FileChannel.force на всю пачку (group commit): пока идет fsync одной пачки, копится следующая.
+ * awaitDurable() ждет, пока на диске не окажется все, что записано до вызова.
+ */
+public final class WriteAheadLog implements StateJournal {
+
+    static final byte TYPE_TRANSFER = 1;
+    static final byte TYPE_ACCOUNT = 2;
+    static final byte TYPE_ACCOUNT_KEY = 3;
+    private static final int RECORD_HEADER = 8; // length + crc
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** Получатель записей при восстановлении. */
+    public interface ReplayHandler {
+        void onTransfer(long txId, long epochSecond, String sender, String recipient, long amount);
+
+        void onAccount(String nickname, long balance);
+
+        void onAccountKey(String nickname, byte[] publicKey);
+    }
+
+    private final Path directory;
+    private final CRC32C crc = new CRC32C(); // Только под монитором this
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long lastLsn;
+    private boolean rotateRequested;
+    private volatile boolean closed;
+
+    private final Object durableLock = new Object();
+    private volatile long durableLsn;
+    private IOException failure; // Под durableLock
+
+    private FileChannel channel; // Только поток записи
+    private final Thread flusher;
+
+    // Метрики
+    private volatile long flushCount;
+    private volatile long flushedRecords;
+    private volatile long flushedBytes;
+
+    private WriteAheadLog(Path directory, long lastLsn, String ownerNickname) throws IOException {
+        this.directory = directory;
+        this.lastLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.channel = openSegment(lastLsn + 1);
+        this.flusher = new Thread(this::runFlusher, "WAL-" + ownerNickname);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Открывает журнал на запись. Новые записи получают номера после lastLsn
+     * (последней записи, восстановленной из снимка и журнала) и идут в новый сегмент.
+     */
+    public static WriteAheadLog open(Path directory, long lastLsn, String ownerNickname) throws IOException {
+        Files.createDirectories(directory);
+        return new WriteAheadLog(directory, lastLsn, ownerNickname);
+    }
+
+    // --- StateJournal ---
+
+    @Override
+    public synchronized void logTransfer(long txId, long epochSecond, String sender, String recipient, long amount) {
+        byte[] senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+        byte[] recipientBytes = recipient.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = reserve(1 + 8 + 24 + 2 + senderBytes.length + 2 + recipientBytes.length);
+        int start = buf.position();
+        buf.position(start + RECORD_HEADER);
+        buf.put(TYPE_TRANSFER).putLong(++lastLsn);
+        buf.putLong(txId).putLong(epochSecond).putLong(amount);
+        buf.putShort((short) senderBytes.length).put(senderBytes);
+        buf.putShort((short) recipientBytes.length).put(recipientBytes);
+        finishRecord(buf, start);
+    }
+
+    @Override
+    public synchronized void logAccount(String nickname, long balance) {
+        byte[] nicknameBytes = nickname.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = reserve(1 + 8 + 8 + 2 + nicknameBytes.length);
+        int start = buf.position();
+        buf.position(start + RECORD_HEADER);
+        buf.put(TYPE_ACCOUNT).putLong(++lastLsn);
+        buf.putLong(balance);
+        buf.putShort((short) nicknameBytes.length).put(nicknameBytes);
+        finishRecord(buf, start);
+    }
+
+    @Override
+    public synchronized void logAccountKey(String nickname, byte[] publicKey) {
+        byte[] nicknameBytes = nickname.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = reserve(1 + 8 + 2 + publicKey.length + 2 + nicknameBytes.length);
+        int start = buf.position();
+        buf.position(start + RECORD_HEADER);
+        buf.put(TYPE_ACCOUNT_KEY).putLong(++lastLsn);
+        buf.putShort((short) publicKey.length).put(publicKey);
+        buf.putShort((short) nicknameBytes.length).put(nicknameBytes);
+        finishRecord(buf, start);
+    }
+
+    @Override
+    public synchronized long lastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Ждет, пока все записи, поставленные до вызова, не будут на диске (после fsync).
+     * Несколько ожидающих потоков обслуживаются одним fsync.
+     */
+    public void awaitDurable() throws IOException, InterruptedException {
+        long target;
+        synchronized (this) { target = lastLsn; }
+        synchronized (durableLock) {
+            while (durableLsn < target) {
+                if (failure != null) throw failure;
+                if (closed) throw new IOException("Write-ahead log is closed");
+                durableLock.wait();
+            }
+        }
+    }
+
+    /** Следующие записи начнут новый сегмент (вызывается после снимка, чтобы старые сегменты можно было удалить). */
+    public synchronized void rotate() {
+        rotateRequested = true;
+        notifyAll();
+    }
+
+    /** Удаляет сегменты, все записи которых не новее lsn (покрыты снимком). */
+    public void deleteSegmentsCoveredBy(long lsn) throws IOException {
+        List<Long> starts = listSegmentStarts(directory);
+        for (int i = 0; i + 1 < starts.size(); i++) {
+            if (starts.get(i + 1) - 1 <= lsn) Files.deleteIfExists(segmentPath(directory, starts.get(i)));
+        }
+    }
+
+    /** Дописывает накопленное, делает fsync и закрывает файл. */
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (durableLock) { durableLock.notifyAll(); }
+    }
+
+    public long getFlushCount() { return flushCount; }
+
+    public long getFlushedRecords() { return flushedRecords; }
+
+    public long getFlushedBytes() { return flushedBytes; }
+
+    // --- Восстановление ---
+
+    /**
+     * Читает все сегменты по порядку и передает записи с LSN больше afterLsn в handler.
+     * На первой поврежденной или оборванной записи (сбой посреди записи) чтение останавливается,
+     * а сегмент усекается до последней целой записи.
+     * @return LSN последней целой записи (не меньше afterLsn).
+     */
+    public static long replay(Path directory, long afterLsn, ReplayHandler handler) throws IOException {
+        if (!Files.isDirectory(directory)) return afterLsn;
+        long last = afterLsn;
+        List<Long> starts = listSegmentStarts(directory);
+        for (int i = 0; i < starts.size(); i++) {
+            Path segment = segmentPath(directory, starts.get(i));
+            if (i + 1 < starts.size() && starts.get(i + 1) - 1 <= afterLsn) continue; // Целиком покрыт снимком
+            SegmentReplay result = replaySegment(segment, afterLsn, handler);
+            last = Math.max(last, result.lastLsn);
+            if (result.corruptAt >= 0) {
+                ConsoleLogger.print("WARN: Write-ahead log " + segment.getFileName() + " is damaged at offset " + result.corruptAt + ". Truncating; later records are lost.");
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(result.corruptAt);
+                    channel.force(true);
+                }
+                for (int j = i + 1; j < starts.size(); j++) Files.deleteIfExists(segmentPath(directory, starts.get(j)));
+                break;
+            }
+        }
+        return last;
+    }
+
+    private static final class SegmentReplay {
+        long lastLsn;
+        long corruptAt = -1;
+    }
+
+    private static SegmentReplay replaySegment(Path segment, long afterLsn, ReplayHandler handler) throws IOException {
+        SegmentReplay result = new SegmentReplay();
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        CRC32C check = new CRC32C();
+        while (data.remaining() > 0) {
+            int recordStart = data.position();
+            if (data.remaining() < RECORD_HEADER) { result.corruptAt = recordStart; break; }
+            int length = data.getInt();
+            int expectedCrc = data.getInt();
+            if (length < 9 || length > data.remaining()) { result.corruptAt = recordStart; break; }
+            check.reset();
+            check.update(data.array(), data.position(), length);
+            if ((int) check.getValue() != expectedCrc) { result.corruptAt = recordStart; break; }
+
+            ByteBuffer record = data.slice(data.position(), length);
+            data.position(data.position() + length);
+            byte type = record.get();
+            long lsn = record.getLong();
+            result.lastLsn = lsn;
+            if (lsn <= afterLsn) continue;
+            if (type == TYPE_TRANSFER) {
+                long txId = record.getLong();
+                long epochSecond = record.getLong();
+                long amount = record.getLong();
+                handler.onTransfer(txId, epochSecond, getString(record), getString(record), amount);
+            } else if (type == TYPE_ACCOUNT) {
+                long balance = record.getLong();
+                handler.onAccount(getString(record), balance);
+            } else if (type == TYPE_ACCOUNT_KEY) {
+                byte[] publicKey = new byte[record.getShort() & 0xFFFF];
+                record.get(publicKey);
+                handler.onAccountKey(getString(record), publicKey);
+            }
+            // Неизвестный тип (запись более новой версии) пропускается
+        }
+        return result;
+    }
+
+    // --- Запись ---
+
+    /** Гарантирует место под запись из payloadLength байт после заголовка. Под монитором. */
+    private ByteBuffer reserve(int payloadLength) {
+        int required = RECORD_HEADER + payloadLength;
+        if (pending.remaining() < required) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + required));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        return pending;
+    }
+
+    private void finishRecord(ByteBuffer buf, int start) {
+        int length = buf.position() - start - RECORD_HEADER;
+        crc.reset();
+        crc.update(buf.array(), start + RECORD_HEADER, length);
+        buf.putInt(start, length);
+        buf.putInt(start + 4, (int) crc.getValue());
+        if (start == 0) notifyAll(); // Буфер был пуст - будим поток записи
+    }
+
+    private void runFlusher() {
+        long writtenLsn = durableLsn;
+        try {
+            while (true) {
+                long batchLastLsn;
+                boolean rotate;
+                synchronized (this) {
+                    while (pending.position() == 0 && !rotateRequested && !closed) wait();
+                    if (pending.position() == 0 && closed) break;
+                    ByteBuffer full = pending; // Меняем буферы: новые записи копятся, пока идет fsync
+                    pending = writing;
+                    writing = full;
+                    batchLastLsn = lastLsn;
+                    rotate = rotateRequested;
+                    rotateRequested = false;
+                }
+                writing.flip();
+                int bytes = writing.remaining();
+                while (writing.hasRemaining()) channel.write(writing);
+                writing.clear();
+                if (bytes > 0) {
+                    channel.force(false);
+                    flushCount++;
+                    flushedRecords += batchLastLsn - writtenLsn;
+                    flushedBytes += bytes;
+                }
+                if (rotate) {
+                    channel.close();
+                    channel = openSegment(batchLastLsn + 1);
+                }
+                writtenLsn = batchLastLsn;
+                synchronized (durableLock) {
+                    durableLsn = batchLastLsn;
+                    durableLock.notifyAll();
+                }
+            }
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            ConsoleLogger.print("ERROR: Write-ahead log failed: " + e.getMessage());
+            synchronized (durableLock) {
+                failure = e;
+                durableLock.notifyAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        return FileChannel.open(segmentPath(directory, firstLsn), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static Path segmentPath(Path directory, long firstLsn) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> listSegmentStarts(Path directory) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                 .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                 .forEach(name -> {
+                     try { starts.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))); }
+                     catch (NumberFormatException e) { /* Чужой файл */ }
+                 });
+        }
+        starts.sort(null);
+        return starts;
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getShort() & 0xFFFF;
+        String value = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return value;
+    }
+}
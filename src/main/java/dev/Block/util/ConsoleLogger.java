@@ -1,20 +1,232 @@
 package dev.Block.util;
 
+import java.io.PrintStream;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+/**
+ * Лог в консоль с уровнями и асинхронной записью.
+ * <p>
+ * Вызывающий поток только кладет сообщение, имя потока и время в кольцевой буфер без блокировок
+ * (слоты с номерами последовательности, CAS на хвосте) и сразу возвращается. Фоновый поток
+ * "ConsoleLogger" забирает сообщения пачками, форматирует время (строка "HH:mm:ss" кэшируется на
+ * секунду) и пишет пачку одним вызовом System.out - блокировка консоли берется раз на пачку, а не
+ * на каждое сообщение.
+ * <ul>
+ *   <li>Уровень print() определяется по префиксу сообщения: "WARN" - WARN, "ERROR"/"FATAL" - ERROR,
+ *       остальное - INFO. Сообщения ниже log.level (по умолчанию INFO) отбрасываются сразу.</li>
+ *   <li>debug()/info() с Supplier строят строку, только если уровень включен.</li>
+ *   <li>При заполненном буфере INFO и DEBUG отбрасываются (число отброшенных выводится следующей
+ *       строкой), а WARN и ERROR записываются вызывающим потоком - они не теряются.</li>
+ *   <li>flush() дописывает все поставленные сообщения: перед прямым выводом в System.out (команды
+ *       консоли), чтобы строки не перемешались. При завершении JVM буфер дописывается, и дальше
+ *       сообщения пишутся синхронно.</li>
+ * </ul>
+ * -Dlog.async=false - синхронная запись (как раньше), например для отладки.
+ */
 public class ConsoleLogger {
 
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int CAPACITY = 8192; // Степень двойки
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = 10_000_000;
+
+    // Кольцевой буфер: слот i свободен для записи с номером pos, если sequences[i] == pos,
+    // и содержит опубликованное сообщение pos, если sequences[i] == pos + 1
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final String[] messages = new String[CAPACITY];
+    private static final String[] threads = new String[CAPACITY];
+    private static final long[] times = new long[CAPACITY];
+    private static final AtomicLong tail = new AtomicLong(); // Следующий номер для записи
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong unreported = new AtomicLong(); // Отброшенные, о которых еще не написано
+    private static final Object writeLock = new Object(); // Читатель буфера - тот, кто держит блокировку
+    private static volatile long head; // Следующий номер для чтения (меняется под writeLock)
+    private static long cachedSecond = Long.MIN_VALUE; // (под writeLock)
+    private static String cachedTime;
+    private static StringBuilder batch = new StringBuilder(8192); // (под writeLock)
+
+    private static volatile Level level = parseLevel(System.getProperty("log.level", "INFO"));
+    private static volatile boolean async = Boolean.parseBoolean(System.getProperty("log.async", "true"));
+    private static volatile boolean writerIdle;
+    private static final Thread writer;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) sequences.set(i, i);
+        writer = new Thread(ConsoleLogger::writeLoop, "ConsoleLogger");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            async = false; // Дальше - синхронно: фоновый поток может не успеть
+            flush();
+        }, "ConsoleLogger-Shutdown"));
+    }
+
+    private ConsoleLogger() {}
 
     /**
      * Выводит сообщение в консоль с временной меткой и именем потока.
-     * @param entry Сообщение для вывода.
+     * @param entry Сообщение для вывода; уровень - по префиксу (WARN, ERROR, FATAL).
      */
     public static void print(String entry) {
-        LocalDateTime now = LocalDateTime.now();
-        String formattedNow = now.format(formatter);
-        // Использование System.out.printf для выравнивания и потокобезопасности вывода
-        System.out.printf("%s [%s] %s%n", formattedNow, Thread.currentThread().getName(), entry);
+        log(levelOf(entry), entry);
+    }
+
+    public static void log(Level messageLevel, String entry) {
+        if (messageLevel.compareTo(level) < 0) return;
+        if (!async || !offer(entry)) writeOrDrop(messageLevel, entry);
+    }
+
+    /** Строка строится, только если уровень включен. */
+    public static void log(Level messageLevel, Supplier<String> entry) {
+        if (messageLevel.compareTo(level) >= 0) log(messageLevel, entry.get());
+    }
+
+    public static void debug(Supplier<String> entry) {
+        log(Level.DEBUG, entry);
+    }
+
+    public static void info(Supplier<String> entry) {
+        log(Level.INFO, entry);
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /** Переключает асинхронную запись; при выключении дописывает накопленное. */
+    public static void setAsync(boolean enabled) {
+        async = enabled;
+        if (!enabled) flush();
+    }
+
+    /** Сообщения, отброшенные из-за заполненного буфера. */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    /** Дописывает в консоль все сообщения, поставленные до вызова. */
+    public static void flush() {
+        long target = tail.get();
+        synchronized (writeLock) {
+            while (head < target) {
+                if (!drain()) Thread.onSpinWait(); // Слот занят, но запись в него еще не опубликована
+            }
+            System.out.flush();
+        }
+    }
+
+    // --- Буфер ---
+
+    private static boolean offer(String entry) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & MASK;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false; // Полон
+            } else {
+                pos = tail.get();
+            }
+        }
+        int index = (int) pos & MASK;
+        messages[index] = entry;
+        threads[index] = Thread.currentThread().getName();
+        times[index] = System.currentTimeMillis();
+        sequences.set(index, pos + 1); // Публикация (volatile-запись после полей слота)
+        if (writerIdle) LockSupport.unpark(writer);
+        return true;
+    }
+
+    // Буфер полон или запись синхронная
+    private static void writeOrDrop(Level messageLevel, String entry) {
+        if (async && messageLevel.compareTo(Level.WARN) < 0) {
+            dropped.incrementAndGet();
+            unreported.incrementAndGet();
+            return;
+        }
+        synchronized (writeLock) {
+            drain(); // Сначала более ранние сообщения
+            append(Thread.currentThread().getName(), System.currentTimeMillis(), entry);
+            writeBatch();
+        }
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            boolean wrote;
+            synchronized (writeLock) { wrote = drain(); }
+            if (wrote) continue;
+            writerIdle = true;
+            long next = head;
+            if (sequences.get((int) next & MASK) != next + 1) LockSupport.parkNanos(IDLE_PARK_NANOS); // Повторная проверка после флага
+            writerIdle = false;
+        }
+    }
+
+    /** Пишет опубликованные сообщения одной пачкой. Под writeLock. @return true, если что-то записано. */
+    private static boolean drain() {
+        long reported = unreported.getAndSet(0);
+        if (reported > 0) append("ConsoleLogger", System.currentTimeMillis(), "WARN: " + reported + " log message(s) dropped (buffer full).");
+        int count = 0;
+        while (true) {
+            int index = (int) head & MASK;
+            if (sequences.get(index) != head + 1) break;
+            append(threads[index], times[index], messages[index]);
+            messages[index] = null;
+            threads[index] = null;
+            sequences.set(index, head + CAPACITY); // Слот свободен для записи через круг
+            head++;
+            if (++count == CAPACITY) break;
+        }
+        if (count == 0 && reported == 0) return false;
+        writeBatch();
+        return true;
+    }
+
+    private static void append(String thread, long millis, String entry) {
+        long second = Math.floorDiv(millis, 1000);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault()).format(formatter);
+        }
+        batch.append(cachedTime).append(" [").append(thread).append("] ").append(entry).append(System.lineSeparator());
+    }
+
+    private static void writeBatch() {
+        PrintStream out = System.out;
+        out.print(batch);
+        out.flush();
+        batch.setLength(0);
+        if (batch.capacity() > 1 << 20) batch = new StringBuilder(8192); // Не держать память после всплеска
+    }
+
+    private static Level levelOf(String entry) {
+        if (entry.startsWith("WARN")) return Level.WARN;
+        if (entry.startsWith("ERROR") || entry.startsWith("FATAL")) return Level.ERROR;
+        return Level.INFO;
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
     }
-}
\ No newline at end of file
+}
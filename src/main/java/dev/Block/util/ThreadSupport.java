@@ -0,0 +1,49 @@
+package dev.Block.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Создание исполнителей для потоков соединений.
+ * Виртуальные потоки появились в Java 21, а проект собирается под более ранние версии,
+ * поэтому фабрика виртуальных потоков ищется через reflection; на старой JVM
+ * используется обычный пул с предупреждением в лог.
+ */
+public final class ThreadSupport {
+
+    private ThreadSupport() {}
+
+    /** true, если текущая JVM поддерживает виртуальные потоки. */
+    public static boolean isVirtualThreadsSupported() {
+        return findVirtualExecutorFactory() != null;
+    }
+
+    /**
+     * Исполнитель "поток на задачу": виртуальные потоки, если они запрошены и доступны,
+     * иначе кэширующий пул платформенных потоков.
+     */
+    public static ExecutorService newPerTaskExecutor(boolean virtual) {
+        if (virtual) {
+            Method factory = findVirtualExecutorFactory();
+            if (factory != null) {
+                try {
+                    return (ExecutorService) factory.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    ConsoleLogger.print("WARN: Failed to create virtual thread executor: " + e.getMessage());
+                }
+            } else {
+                ConsoleLogger.print("WARN: Virtual threads require Java 21+ (running " + System.getProperty("java.version") + "). Falling back to platform threads.");
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -3,21 +3,113 @@ package dev.HttpServer;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
- 
+
 import java.io.OutputStream;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
- 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import dev.Block.util.ThreadSupport;
+
+/**
+ * Встроенный HTTP сервер (com.sun.net.httpserver) для служебных страниц и API узла (/metrics, /balance, ...).
+ * Запросы обслуживает ограниченный пул потоков-демонов (или виртуальные потоки): сервер не должен
+ * отнимать ресурсы у P2P, а медленные клиенты не должны создавать неограниченное число потоков.
+ */
 public class HttpServ {
- 
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /** Один поток обработки, только loopback. */
+    public HttpServ(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, 1, false);
+    }
+
+    /**
+     * @param address адрес для приема соединений (loopback, конкретный интерфейс или wildcard - все)
+     * @param threads размер пула платформенных потоков
+     * @param virtual поток на запрос - виртуальный (Java 21+; иначе - пул из threads потоков)
+     */
+    public HttpServ(InetAddress address, int port, int threads, boolean virtual) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        this.executor = virtual && ThreadSupport.isVirtualThreadsSupported() ? ThreadSupport.newPerTaskExecutor(true) : newPool(port, threads);
+        this.server.setExecutor(executor);
+    }
+
+    private static ExecutorService newPool(int port, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Http-" + port + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Обработчик для пути и всех вложенных путей. */
+    public void addHandler(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    /** GET path отдает текст, который body строит заново на каждый запрос. */
+    public void addText(String path, String contentType, Supplier<String> body) {
+        addHandler(path, exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                respond(exchange, 200, contentType, body.get().getBytes(StandardCharsets.UTF_8));
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /** Отправляет ответ целиком (для HEAD - только заголовки). Обмен закрывает вызывающий. */
+    public static void respond(HttpExchange exchange, int status, String contentType, byte[] response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public InetAddress getAddress() {
+        return server.getAddress().getAddress();
+    }
+
     public static void main(String[] args) throws Exception {
         HttpServer server = HttpServer.create(new InetSocketAddress(8000), 0);
         server.createContext("/", new MyHandler());
         server.setExecutor(null); // creates a default executor
         server.start();
     }
- 
-    
+
+
     static class MyHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange t) throws IOException {
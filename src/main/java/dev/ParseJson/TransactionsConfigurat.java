@@ -1,13 +1,26 @@
 package dev.ParseJson;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Перевод в JSON запросе (POST /transactions): ownerHash - счет отправителя, recipient - счет получателя.
+ */
 public class TransactionsConfigurat {
     private String ownerHash;
     private String recipient;
     private int amount;
 
-    public TransactionsConfigurat(String ownerHash, String recipient, int amount){
+    @JsonCreator
+    public TransactionsConfigurat(@JsonProperty("ownerHash") String ownerHash, @JsonProperty("recipient") String recipient, @JsonProperty("amount") int amount){
         this.amount = amount;
         this.ownerHash = ownerHash;
         this.recipient = recipient;
     }
-}
\ No newline at end of file
+
+    public String getOwnerHash() { return ownerHash; }
+
+    public String getRecipient() { return recipient; }
+
+    public int getAmount() { return amount; }
+}
@@ -0,0 +1,144 @@
+package dev.Block;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import dev.Block.chain.Block;
+import dev.Block.chain.Signatures;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.BlockMessage;
+import dev.Block.network.protocol.Message;
+import dev.Block.network.protocol.PeerJoinedMessage;
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Прием блока от соседа (Peer.processBlock): блок с поддельной подписью или тратой чужого счета
+ * отвергается целиком и в цепочку не попадает, а перевод без средств - лишь отклоненная транзакция
+ * принятого блока. Сосед - сокет, который объявляет счет alice со своим ключом и шлет блоки.
+ */
+class BlockAcceptanceTest {
+
+    private static final int TIMEOUT_MS = 10_000;
+    private static final int POW_BITS = 1;
+
+    private final KeyPair alice = Signatures.generateKeyPair();
+    private final BinaryMessageCodec codec = new BinaryMessageCodec();
+    private Peer peer;
+    private Socket socket;
+    private DataOutputStream out;
+
+    @BeforeEach
+    void startPeerAndJoin() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) { port = probe.getLocalPort(); }
+        peer = new Peer("server", port, new PeerConfig().setPowDifficultyBits(POW_BITS));
+        peer.startServer();
+        socket = connect(port);
+        out = new DataOutputStream(socket.getOutputStream());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        out.writeUTF("alice");
+        out.writeUTF(BinaryMessageCodec.NEGOTIATION_TOKEN);
+        out.flush();
+        assertEquals("server", in.readUTF());
+        assertEquals(BinaryMessageCodec.NEGOTIATION_TOKEN, in.readUTF());
+        send(new PeerJoinedMessage("alice", 100, Signatures.rawPublicKey(alice.getPublic())));
+        await(() -> peer.getEngine().getKeys().get("alice") != null, "Key of alice was not bound");
+    }
+
+    @AfterEach
+    void shutdown() throws IOException {
+        if (socket != null) socket.close();
+        if (peer != null) peer.shutdown();
+    }
+
+    @Test
+    void blockWithForgedTransactionIsRejected() throws Exception {
+        Block genesis = peer.getChain().getTip();
+        TransactionMessage forged = Signatures.sign(new TransactionMessage(1, "alice", "server", 10), Signatures.generateKeyPair()); // Не ключ alice
+        TransactionMessage valid = Signatures.sign(new TransactionMessage(2, "alice", "server", 5), alice);
+        Block rejected = mine(genesis, List.of(valid, forged), 1);
+        Block accepted = mine(genesis, List.of(valid), 2);
+        send(new BlockMessage(rejected));
+        send(new BlockMessage(accepted)); // Сообщения соединения обрабатываются по порядку
+
+        await(() -> peer.getChain().contains(accepted.getHashHex()), "Valid block was not accepted");
+        assertFalse(peer.getChain().contains(rejected.getHashHex()));
+        assertEquals(1, peer.getChain().getHeight());
+        assertEquals(95, peer.getEngine().getBalance("alice"));
+        assertEquals(105, peer.getEngine().getBalance("server"));
+    }
+
+    @Test
+    void unsignedTransactionOfKeyedAccountRejectsBlock() throws Exception {
+        Block genesis = peer.getChain().getTip();
+        Block rejected = mine(genesis, List.of(new TransactionMessage(1, "alice", "server", 10)), 1);
+        Block accepted = mine(genesis, List.of(Signatures.sign(new TransactionMessage(2, "alice", "server", 1), alice)), 2);
+        send(new BlockMessage(rejected));
+        send(new BlockMessage(accepted));
+
+        await(() -> peer.getChain().contains(accepted.getHashHex()), "Valid block was not accepted");
+        assertFalse(peer.getChain().contains(rejected.getHashHex()));
+        assertEquals(99, peer.getEngine().getBalance("alice"));
+    }
+
+    @Test
+    void insufficientFundsOnlyRejectsTheTransaction() throws Exception {
+        TransactionMessage overdraft = Signatures.sign(new TransactionMessage(1, "alice", "server", 1_000), alice);
+        TransactionMessage valid = Signatures.sign(new TransactionMessage(2, "alice", "server", 10), alice);
+        Block block = mine(peer.getChain().getTip(), List.of(overdraft, valid), 1);
+        send(new BlockMessage(block));
+
+        await(() -> peer.getChain().contains(block.getHashHex()), "Block was not accepted");
+        assertEquals(90, peer.getEngine().getBalance("alice"));
+        assertEquals(110, peer.getEngine().getBalance("server"));
+    }
+
+    // --- Вспомогательные ---
+
+    private static Block mine(Block parent, List<TransactionMessage> transactions, long timestampOffset) {
+        Block block = Block.create(parent, transactions, 1_700_000_000L + timestampOffset, POW_BITS);
+        for (long nonce = 0; !block.meetsDifficulty(); nonce++) block = block.withNonce(nonce);
+        return block;
+    }
+
+    private void send(Message message) throws IOException {
+        codec.write(message, out);
+        out.flush();
+    }
+
+    private static void await(BooleanSupplier condition, String failure) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, failure);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Socket connect(int port) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.setSoTimeout(TIMEOUT_MS);
+                return socket;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() >= deadline) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+}
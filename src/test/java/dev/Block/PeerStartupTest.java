@@ -0,0 +1,28 @@
+package dev.Block;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Занятый порт - ошибка startServer, а не завершение процесса: в одном процессе может работать
+ * несколько узлов (ClusterSimulator), и остальные должны остановиться штатно.
+ */
+class PeerStartupTest {
+
+    @ParameterizedTest
+    @EnumSource(PeerConfig.Transport.class)
+    void occupiedPortFailsStartWithoutExiting(PeerConfig.Transport transport) throws IOException {
+        try (ServerSocket occupied = new ServerSocket(0)) {
+            Peer peer = new Peer("server", occupied.getLocalPort(), new PeerConfig().setTransport(transport));
+            assertThrows(IOException.class, peer::startServer);
+            assertTimeoutPreemptively(Duration.ofSeconds(10), peer::shutdown);
+        }
+    }
+}
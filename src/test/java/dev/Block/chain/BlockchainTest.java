@@ -0,0 +1,84 @@
+package dev.Block.chain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import dev.Block.network.protocol.TransactionMessage;
+
+/**
+ * Правило ветвления Blockchain.append: блок продолжает вершину, конкурент той же высоты с тем же
+ * родителем заменяет вершину только с меньшим хешем, блоки ниже вершины устаревают, а блок
+ * с неизвестным родителем - сирота. Итог не зависит от порядка получения конкурентов.
+ */
+class BlockchainTest {
+
+    @Test
+    void childOfTipIsAppended() {
+        Blockchain chain = new Blockchain();
+        Block first = block(chain.getTip(), 1);
+        assertEquals(Blockchain.AppendResult.APPENDED, chain.append(first));
+        assertEquals(Blockchain.AppendResult.KNOWN, chain.append(first));
+        assertEquals(1, chain.getHeight());
+        assertSame(first, chain.getTip());
+    }
+
+    @Test
+    void competitorWithLowerHashReplacesTip() {
+        Block[] pair = competitors(Block.genesis());
+        Blockchain chain = new Blockchain();
+        assertEquals(Blockchain.AppendResult.APPENDED, chain.append(pair[1]));
+        assertEquals(Blockchain.AppendResult.REPLACED_TIP, chain.append(pair[0]));
+        assertSame(pair[0], chain.getTip());
+        assertEquals(1, chain.getHeight());
+        assertTrue(chain.contains(pair[1].getHashHex())); // Вытесненный блок остается известным
+        assertEquals(Blockchain.AppendResult.KNOWN, chain.append(pair[1]));
+    }
+
+    @Test
+    void competitorWithHigherHashIsStale() {
+        Block[] pair = competitors(Block.genesis());
+        Blockchain chain = new Blockchain();
+        assertEquals(Blockchain.AppendResult.APPENDED, chain.append(pair[0]));
+        assertEquals(Blockchain.AppendResult.STALE, chain.append(pair[1]));
+        assertSame(pair[0], chain.getTip()); // Та же вершина, что и при обратном порядке
+    }
+
+    @Test
+    void blockBelowTipIsStale() {
+        Blockchain chain = new Blockchain();
+        Block first = block(chain.getTip(), 1);
+        chain.append(first);
+        chain.append(block(first, 2));
+        assertEquals(Blockchain.AppendResult.STALE, chain.append(block(Block.genesis(), 3))); // Ветвление глубже вершины
+        assertEquals(2, chain.getHeight());
+    }
+
+    @Test
+    void blockWithUnknownParentIsOrphan() {
+        Blockchain chain = new Blockchain();
+        Block unknownParent = block(Block.genesis(), 1);
+        assertEquals(Blockchain.AppendResult.ORPHAN, chain.append(block(unknownParent, 2)));
+        assertEquals(0, chain.getHeight());
+        assertEquals(Blockchain.AppendResult.APPENDED, chain.append(unknownParent));
+    }
+
+    // --- Вспомогательные ---
+
+    private static Block block(Block parent, long txId) {
+        List<TransactionMessage> transactions = List.of(new TransactionMessage(txId, "alice", "bob", 1));
+        return Block.create(parent, transactions, 1_700_000_000L + txId, 0);
+    }
+
+    /** Два блока с общим родителем: [0] - с меньшим хешем. */
+    private static Block[] competitors(Block parent) {
+        Block a = block(parent, 10);
+        Block b = block(parent, 11);
+        return Arrays.compareUnsigned(a.getHash(), b.getHash()) < 0 ? new Block[] { a, b } : new Block[] { b, a };
+    }
+}
@@ -0,0 +1,154 @@
+package dev.Block.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import dev.Block.Peer;
+import dev.Block.PeerConfig;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.MessageType;
+import dev.Block.network.protocol.PeerJoinedMessage;
+
+/**
+ * Согласование формата с узлом на обоих транспортах: новый пир переходит на бинарный протокол,
+ * старый текстовый (без токена или с токеном другой версии) остается на тексте в обе стороны.
+ * Старый пир изображает сокет, который пишет и читает строки writeUTF/readUTF.
+ */
+class ProtocolFallbackTest {
+
+    private static final int READ_TIMEOUT_MS = 10_000; // Больше таймаута согласования (2 с)
+
+    private Peer peer;
+
+    @AfterEach
+    void shutdown() {
+        if (peer != null) peer.shutdown();
+    }
+
+    @ParameterizedTest
+    @EnumSource(PeerConfig.Transport.class)
+    void legacyIncomingPeerStaysOnText(PeerConfig.Transport transport) throws IOException {
+        int port = startPeer(transport);
+        try (Socket socket = connect(port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.writeUTF("legacy");
+            out.writeUTF("REQ_SYNC:legacy"); // Старый пир сразу просит состояние
+            out.flush();
+            assertEquals("server", in.readUTF());
+            assertTextState(readUntilLedgerEnd(in), "legacy");
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(PeerConfig.Transport.class)
+    void otherBinaryVersionFallsBackToText(PeerConfig.Transport transport) throws IOException {
+        int port = startPeer(transport);
+        try (Socket socket = connect(port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.writeUTF("older");
+            out.writeUTF("PROTO:BIN:" + (BinaryMessageCodec.VERSION - 1));
+            out.writeUTF("REQ_SYNC:older");
+            out.flush();
+            assertEquals("server", in.readUTF());
+            assertTextState(readUntilLedgerEnd(in), "older");
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(PeerConfig.Transport.class)
+    void currentTokenSwitchesToBinary(PeerConfig.Transport transport) throws IOException {
+        int port = startPeer(transport);
+        try (Socket socket = connect(port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.writeUTF("fresh");
+            out.writeUTF(BinaryMessageCodec.NEGOTIATION_TOKEN);
+            out.flush();
+            assertEquals("server", in.readUTF());
+            assertEquals(BinaryMessageCodec.NEGOTIATION_TOKEN, in.readUTF());
+            // Первое бинарное сообщение - объявление узла с его ключом
+            PeerJoinedMessage joined = assertInstanceOf(PeerJoinedMessage.class, new BinaryMessageCodec().read(in));
+            assertEquals("server", joined.getNickname());
+            assertArrayEquals(peer.getPublicKey(), joined.getPublicKey());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(PeerConfig.Transport.class)
+    void outgoingToLegacyPeerFallsBackToText(PeerConfig.Transport transport) throws IOException {
+        startPeer(transport);
+        try (ServerSocket legacy = new ServerSocket(0)) {
+            legacy.setSoTimeout(READ_TIMEOUT_MS);
+            peer.connectToPeer("127.0.0.1", legacy.getLocalPort());
+            try (Socket socket = legacy.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                assertEquals("server", in.readUTF());
+                assertEquals(BinaryMessageCodec.NEGOTIATION_TOKEN, in.readUTF()); // Старый пир такое сообщение пропускает
+                out.writeUTF("legacy");
+                out.flush();
+                // Подтверждения нет: после таймаута узел запрашивает состояние уже текстом
+                assertEquals(MessageType.REQ_SYNC.getTextPrefix() + "server", in.readUTF());
+            }
+        }
+    }
+
+    // --- Вспомогательные ---
+
+    private int startPeer(PeerConfig.Transport transport) throws IOException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) { port = probe.getLocalPort(); }
+        peer = new Peer("server", port, new PeerConfig().setTransport(transport));
+        peer.startServer();
+        return port;
+    }
+
+    private static Socket connect(int port) throws IOException {
+        long deadline = System.currentTimeMillis() + READ_TIMEOUT_MS;
+        while (true) { // NIO-транспорт начинает слушать в своем потоке
+            try {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                return socket;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() >= deadline) throw e;
+                try { Thread.sleep(20); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); throw e; }
+            }
+        }
+    }
+
+    private static List<String> readUntilLedgerEnd(DataInputStream in) throws IOException {
+        List<String> received = new ArrayList<>();
+        String line;
+        do {
+            line = in.readUTF();
+            received.add(line);
+        } while (!line.equals(MessageType.SYNC_LED_END.getTextPrefix()));
+        return received;
+    }
+
+    private static void assertTextState(List<String> received, String legacyNickname) {
+        assertTrue(received.contains(MessageType.SYNC_BAL_START.getTextPrefix()), received::toString);
+        assertTrue(received.contains(MessageType.SYNC_BAL_ENTRY.getTextPrefix() + "server:100"), received::toString);
+        assertTrue(received.contains(MessageType.SYNC_BAL_ENTRY.getTextPrefix() + legacyNickname + ":100"), received::toString);
+        assertFalse(received.contains(BinaryMessageCodec.NEGOTIATION_TOKEN), received::toString);
+    }
+}
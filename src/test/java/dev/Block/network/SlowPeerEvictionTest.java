@@ -0,0 +1,159 @@
+package dev.Block.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import dev.Block.Peer;
+import dev.Block.PeerConfig;
+import dev.Block.network.protocol.BinaryMessageCodec;
+import dev.Block.network.protocol.InventoryMessage;
+import dev.Block.network.protocol.PeerJoinedMessage;
+
+/**
+ * Пир, который перестал читать: писатель узла висит в записи, очередь исходящих переполнена.
+ * ConnectionManager должен отключить его, закрыв сокет, и не зависнуть сам; остановка узла после этого не ждет писателя.
+ * Сообщение, которое нельзя отбросить (PEER_JOINED), при полной очереди закрывает соединение сразу.
+ */
+class SlowPeerEvictionTest {
+
+    private static final long TIMEOUT_MS = 20_000;
+    private static final long CLOSE_TIMEOUT_MS = 5_000;
+
+    private Peer peer;
+
+    @AfterEach
+    void shutdown() {
+        if (peer != null) assertTimeoutPreemptively(Duration.ofSeconds(10), peer::shutdown);
+    }
+
+    @ParameterizedTest
+    @EnumSource(PeerConfig.Transport.class)
+    void peerThatNeverReadsIsEvicted(PeerConfig.Transport transport) throws Exception {
+        int port = startPeer(transport);
+        try (Socket socket = new Socket()) {
+            DataOutputStream out = joinAndStopReading(socket, port);
+            PeerConnection connection = awaitConnection();
+            InventoryMessage inv = InventoryMessage.inv(new long[1024]); // ~8 КБ на сообщение
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (connection.getDroppedMessages() == 0) { // Буферы сокета заполнены, писатель стоит
+                assertTrue(System.currentTimeMillis() < deadline, "Outbound queue never overflowed");
+                connection.sendMessage(inv);
+            }
+
+            while (peer.getConnectionManager().getEvictions() == 0 || peer.getConnectionCount() > 0) {
+                assertTrue(System.currentTimeMillis() < deadline, "Slow peer was not evicted");
+                for (int i = 0; i < 64; i++) connection.sendMessage(inv); // Буфер отправки ядра растет, пока есть что слать
+                Thread.sleep(10);
+            }
+            assertEquals(1, peer.getConnectionManager().getEvictions());
+            // Не читая: чтение разбудило бы писателя узла. Закрытый сокет обрывает его запись, и очередь очищается
+            awaitWriterReleased(connection);
+            assertSocketClosedByPeer(out);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(PeerConfig.Transport.class)
+    void undroppableMessageClosesFullConnection(PeerConfig.Transport transport) throws Exception {
+        int port = startPeer(transport);
+        try (Socket socket = new Socket()) {
+            joinAndStopReading(socket, port);
+            PeerConnection connection = awaitConnection();
+            InventoryMessage inv = InventoryMessage.inv(new long[1024]);
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (peer.getConnectionCount() > 0) {
+                assertTrue(System.currentTimeMillis() < deadline, "Connection with a full queue was not closed");
+                long dropped = connection.getDroppedMessages();
+                while (connection.getDroppedMessages() == dropped && peer.getConnectionCount() > 0) connection.sendMessage(inv); // INV отбрасывается
+                connection.sendMessage(new PeerJoinedMessage("carol", 100)); // Не отбрасывается: очередь полна - соединение закрывается
+            }
+            assertEquals(0, peer.getConnectionManager().getEvictions()); // Закрыто отправкой, а не ConnectionManager
+            awaitWriterReleased(connection);
+        }
+    }
+
+    private int startPeer(PeerConfig.Transport transport) throws IOException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) { port = probe.getLocalPort(); }
+        peer = new Peer("server", port, new PeerConfig().setTransport(transport).setOutboundQueueCapacity(64));
+        peer.startServer();
+        return port;
+    }
+
+    /** Рукопожатие бинарным протоколом; дальше клиент не читает. */
+    private static DataOutputStream joinAndStopReading(Socket socket, int port) throws IOException, InterruptedException {
+        socket.setReceiveBufferSize(4096); // До подключения: окно TCP остается маленьким
+        connect(socket, port);
+        socket.setSoTimeout((int) TIMEOUT_MS);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        out.writeUTF("sleeper");
+        out.writeUTF(BinaryMessageCodec.NEGOTIATION_TOKEN);
+        out.flush();
+        assertEquals("server", in.readUTF());
+        assertEquals(BinaryMessageCodec.NEGOTIATION_TOKEN, in.readUTF());
+        return out;
+    }
+
+    private PeerConnection awaitConnection() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (peer.getConnections().isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Peer did not register the connection");
+            Thread.sleep(10);
+        }
+        return peer.getConnections().get(0);
+    }
+
+    /** Писатель выходит из записи только при закрытом сокете (клиент не читает) и, выйдя, очищает очередь. */
+    private static void awaitWriterReleased(PeerConnection connection) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        while (connection.getOutboundQueueDepth() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Writer is still blocked on the evicted peer's socket");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void connect(Socket socket, int port) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (true) { // NIO-транспорт начинает слушать в своем потоке
+            try {
+                socket.connect(new InetSocketAddress("127.0.0.1", port));
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() >= deadline) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    /** Пишет узлу, пока запись не оборвется: на закрытый сокет ядро узла отвечает сбросом соединения. */
+    private static void assertSocketClosedByPeer(DataOutputStream out) throws IOException, InterruptedException {
+        BinaryMessageCodec codec = new BinaryMessageCodec();
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                codec.write(InventoryMessage.inv(new long[] { 1 }), out);
+                out.flush();
+                Thread.sleep(20);
+            }
+        } catch (SocketException e) {
+            return; // Connection reset / Broken pipe
+        }
+        fail("Evicted peer's socket is still open");
+    }
+}
@@ -0,0 +1,216 @@
+package dev.Block.network.protocol;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import dev.Block.chain.Block;
+import dev.Block.chain.Signatures;
+
+/**
+ * Бинарный кодек: каждое сообщение проходит туда и обратно и через потоки (блокирующий транспорт),
+ * и через ByteBuffer (NIO, в том числе прямой буфер); неизвестный тип пропускается, испорченный кадр - ошибка.
+ */
+class BinaryMessageCodecTest {
+
+    private static final KeyPair KEYS = Signatures.generateKeyPair();
+
+    @Test
+    void unsignedTransactionRoundTrip() throws IOException {
+        TransactionMessage txn = roundTrip(new TransactionMessage(0x1234_5678_9ABC_DEF0L, "alice", "bob", 42), TransactionMessage.class);
+        assertEquals(0x1234_5678_9ABC_DEF0L, txn.getTxId());
+        assertEquals("alice", txn.getSender());
+        assertEquals("bob", txn.getRecipient());
+        assertEquals(42, txn.getAmount());
+        assertTrue(!txn.isSigned());
+    }
+
+    @Test
+    void signedTransactionKeepsVerifiableSignature() throws IOException {
+        TransactionMessage signed = Signatures.sign(new TransactionMessage(7, "alice", "bob", 5), KEYS);
+        TransactionMessage txn = roundTrip(signed, TransactionMessage.class);
+        assertTrue(txn.isSigned());
+        assertArrayEquals(signed.getPublicKey(), txn.getPublicKey());
+        assertArrayEquals(signed.getSignature(), txn.getSignature());
+        assertTrue(Signatures.verify(txn));
+    }
+
+    @Test
+    void nonAsciiStringsRoundTrip() throws IOException {
+        assertEquals("привет, мир", roundTrip(new ChatMessage("привет, мир"), ChatMessage.class).getText());
+    }
+
+    @Test
+    void peerJoinedWithAndWithoutKey() throws IOException {
+        byte[] key = Signatures.rawPublicKey(KEYS.getPublic());
+        PeerJoinedMessage withKey = roundTrip(new PeerJoinedMessage("carol", 100, key), PeerJoinedMessage.class);
+        assertEquals("carol", withKey.getNickname());
+        assertEquals(100, withKey.getInitialBalance());
+        assertArrayEquals(key, withKey.getPublicKey());
+        assertNull(roundTrip(new PeerJoinedMessage("dave", 100), PeerJoinedMessage.class).getPublicKey());
+    }
+
+    @Test
+    void inventoryAndGetDataKeepTheirType() throws IOException {
+        long[] ids = { 1, -1, Long.MAX_VALUE, 0 };
+        InventoryMessage inv = roundTrip(InventoryMessage.inv(ids), InventoryMessage.class);
+        assertEquals(MessageType.INV, inv.getType());
+        assertArrayEquals(ids, inv.getIds());
+        InventoryMessage getData = roundTrip(InventoryMessage.getData(ids), InventoryMessage.class);
+        assertEquals(MessageType.GETDATA, getData.getType());
+        assertArrayEquals(ids, getData.getIds());
+    }
+
+    @Test
+    void syncRequestRoundTrip() throws IOException {
+        byte[] root = filled((byte) 3);
+        byte[] resumeRoot = filled((byte) 4);
+        SyncRequestMessage request = roundTrip(new SyncRequestMessage("bob", 10, root, 8, resumeRoot, 5), SyncRequestMessage.class);
+        assertEquals("bob", request.getRequesterNickname());
+        assertEquals(10, request.getLedgerHeight());
+        assertArrayEquals(root, request.getLedgerRoot());
+        assertEquals(8, request.getResumeHeight());
+        assertArrayEquals(resumeRoot, request.getResumeLedgerRoot());
+        assertEquals(5, request.getResumeFrom());
+    }
+
+    @Test
+    void blockAndAnnounceKeepHash() throws IOException {
+        Block block = sampleBlock();
+        Block decoded = roundTrip(new BlockMessage(block), BlockMessage.class).getBlock();
+        assertEquals(block.getHashHex(), decoded.getHashHex());
+        assertEquals(2, decoded.getTransactions().size());
+        assertTrue(decoded.hasValidMerkleRoot());
+        assertTrue(Signatures.verify(decoded.getTransactions().get(0)));
+
+        BlockAnnounceMessage announce = roundTrip(BlockAnnounceMessage.of(block), BlockAnnounceMessage.class);
+        assertEquals(block.getHashHex(), announce.getHeader().getHashHex());
+        assertArrayEquals(new long[] { 11, 12 }, announce.getTxIds());
+        Block rebuilt = announce.toBlock(block.getTransactions());
+        assertEquals(block.getHashHex(), rebuilt.getHashHex());
+        assertTrue(rebuilt.hasValidMerkleRoot());
+    }
+
+    @Test
+    void markersDecodeToSharedInstances() throws IOException {
+        assertSame(SyncMarkerMessage.LED_END, roundTrip(SyncMarkerMessage.LED_END, SyncMarkerMessage.class));
+    }
+
+    @Test
+    void unknownTypeIsSkipped() throws IOException {
+        BinaryMessageCodec codec = new BinaryMessageCodec();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(0xFE); // Тип более новой версии
+        out.writeInt(3);
+        out.write(new byte[] { 1, 2, 3 });
+        codec.write(new ChatMessage("after"), out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertNull(codec.read(in));
+        assertEquals("after", ((ChatMessage) codec.read(in)).getText());
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        assertNull(codec.decodeFrame(buf));
+        assertEquals("after", ((ChatMessage) codec.decodeFrame(buf)).getText());
+        assertEquals(0, buf.remaining());
+    }
+
+    @Test
+    void truncatedPayloadIsRejected() throws IOException {
+        ByteBuffer frame = encode(InventoryMessage.inv(new long[] { 1, 2, 3 }), ByteBuffer.allocate(256));
+        int length = frame.remaining();
+        ByteBuffer truncated = ByteBuffer.allocate(length - 8);
+        truncated.put(frame.array(), 0, length - 8).flip();
+        truncated.putInt(1, length - 8 - BinaryMessageCodec.HEADER_LENGTH); // Длина кадра верна, но id меньше, чем объявлено
+        assertThrows(ProtocolException.class, () -> new BinaryMessageCodec().decodeFrame(truncated));
+    }
+
+    @Test
+    void oversizedFrameLengthIsRejected() {
+        ByteBuffer header = ByteBuffer.allocate(BinaryMessageCodec.HEADER_LENGTH);
+        header.put(MessageType.CHAT.getCode()).putInt(BinaryMessageCodec.MAX_FRAME_LENGTH + 1).flip();
+        BinaryMessageCodec codec = new BinaryMessageCodec();
+        assertThrows(ProtocolException.class, () -> codec.frameLength(header));
+        assertThrows(ProtocolException.class, () -> codec.read(new DataInputStream(new ByteArrayInputStream(header.array()))));
+    }
+
+    @Test
+    void frameLengthWaitsForFullHeader() throws IOException {
+        ByteBuffer partial = ByteBuffer.allocate(BinaryMessageCodec.HEADER_LENGTH - 1);
+        assertEquals(MessageCodec.INCOMPLETE_HEADER, new BinaryMessageCodec().frameLength(partial));
+    }
+
+    @Test
+    void textCodecIgnoresNegotiationTokens() {
+        // Старый текстовый узел получает предложение бинарного протокола как строку и не должен ее разобрать
+        assertNull(TextMessageCodec.decode(BinaryMessageCodec.NEGOTIATION_TOKEN));
+        assertNull(TextMessageCodec.decode("PROTO:BIN:" + (BinaryMessageCodec.VERSION - 1)));
+        assertEquals("legacy", ((SyncRequestMessage) TextMessageCodec.decode("REQ_SYNC:legacy")).getRequesterNickname());
+    }
+
+    // --- Вспомогательные ---
+
+    /** Проводит сообщение через потоки и через кучу/прямой ByteBuffer; все три результата должны совпасть по кадру. */
+    private static <T extends Message> T roundTrip(Message message, Class<T> type) throws IOException {
+        BinaryMessageCodec codec = new BinaryMessageCodec();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(message, new DataOutputStream(bytes));
+        byte[] frame = bytes.toByteArray();
+        Message fromStream = codec.read(new DataInputStream(new ByteArrayInputStream(frame)));
+
+        ByteBuffer heap = encode(message, ByteBuffer.allocate(frame.length + 16));
+        assertArrayEquals(frame, Arrays.copyOfRange(heap.array(), 0, heap.remaining()));
+        assertEquals(frame.length, codec.frameLength(heap));
+        Message fromHeap = codec.decodeFrame(heap);
+        assertEquals(0, heap.remaining());
+
+        ByteBuffer direct = encode(message, ByteBuffer.allocateDirect(frame.length));
+        Message fromDirect = codec.decodeFrame(direct);
+        assertEquals(0, direct.remaining());
+
+        for (Message decoded : List.of(fromHeap, fromDirect)) assertArrayEquals(frame, reencode(decoded));
+        assertEquals(message.getType(), fromStream.getType());
+        return assertInstanceOf(type, fromStream);
+    }
+
+    private static ByteBuffer encode(Message message, ByteBuffer buf) {
+        new BinaryMessageCodec().encode(message, buf);
+        buf.flip();
+        return buf;
+    }
+
+    private static byte[] reencode(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BinaryMessageCodec().write(message, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static Block sampleBlock() {
+        List<TransactionMessage> transactions = List.of(Signatures.sign(new TransactionMessage(11, "alice", "bob", 1), KEYS), new TransactionMessage(12, "bob", "carol", 2));
+        return Block.create(Block.genesis(), transactions, 1_700_000_000L, 8).withNonce(99);
+    }
+
+    private static byte[] filled(byte value) {
+        byte[] hash = new byte[32];
+        Arrays.fill(hash, value);
+        return hash;
+    }
+}
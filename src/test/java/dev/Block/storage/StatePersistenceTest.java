@@ -0,0 +1,77 @@
+package dev.Block.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.Block.state.StateCommitment;
+import dev.Block.state.TransactionEngine;
+
+/**
+ * Снимок удаляет покрытые им сегменты журнала, а после сбоя (без финального снимка, с оборванной
+ * последней записью) состояние собирается из снимка и хвоста журнала.
+ */
+class StatePersistenceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoversFromSnapshotAndLogTailAfterCrash() throws Exception {
+        TransactionEngine engine = new TransactionEngine();
+        StatePersistence persistence = open(engine);
+        engine.addAccount("alice", 100, new byte[] { 9, 9 });
+        engine.addAccount("bob", 50);
+        for (int i = 1; i <= 3; i++) assertEquals(TransactionEngine.Result.APPLIED, engine.apply(i, "alice", "bob", i));
+        persistence.awaitDurable();
+        persistence.snapshotNow();
+        for (int i = 4; i <= 5; i++) engine.apply(i, "bob", "alice", 1);
+        persistence.awaitDurable();
+        persistence.snapshotNow();
+        assertFalse(segmentNames().contains(String.format("wal-%016d.log", 1)), segmentNames()::toString); // Покрыт снимком
+
+        engine.apply(6, "alice", "bob", 10); // После последнего снимка: есть только в журнале
+        persistence.awaitDurable();
+        persistence.getWal().close(); // Сбой: финального снимка нет
+        List<String> segments = segmentNames();
+        Files.write(dir.resolve(segments.get(segments.size() - 1)), new byte[] { 0, 0, 1, 0, 7 }, StandardOpenOption.APPEND); // Оборванная запись
+
+        TransactionEngine recovered = new TransactionEngine();
+        StatePersistence reopened = open(recovered);
+        try {
+            assertEquals(1, reopened.getReplayedRecords());
+            assertEquals(engine.getBalances(), recovered.getBalances());
+            assertEquals(6, recovered.getLedgerSize());
+            assertArrayEquals(new byte[] { 9, 9 }, recovered.getKeys().get("alice"));
+            for (StateCommitment.Tree tree : StateCommitment.Tree.values()) {
+                assertArrayEquals(engine.getCommitment().root(tree), recovered.getCommitment().root(tree));
+            }
+            // Журнал продолжается после восстановленных записей
+            assertEquals(TransactionEngine.Result.APPLIED, recovered.apply(7, "bob", "alice", 1));
+            assertEquals(TransactionEngine.Result.DUPLICATE, recovered.apply(6, "alice", "bob", 10));
+        } finally {
+            reopened.close();
+            engine.getLedger().close();
+        }
+    }
+
+    private StatePersistence open(TransactionEngine engine) throws Exception {
+        return StatePersistence.open(dir, engine, StatePersistence.SyncMode.GROUP, 3600, 1_000_000, "test");
+    }
+
+    private List<String> segmentNames() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).filter(name -> name.startsWith("wal-")).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package dev.Block.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Восстановление журнала: повтор записей после LSN, усечение оборванного или поврежденного хвоста
+ * (после которого журнал снова пишется с того же места) и удаление сегментов, покрытых снимком.
+ */
+class WriteAheadLogTest {
+
+    private static final int RECORD_HEADER = 8; // [length:4][crc32c:4]
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsAfterLsn() throws Exception {
+        byte[] key = { 1, 2, 3, 4 };
+        WriteAheadLog wal = WriteAheadLog.open(dir, 0, "test");
+        wal.logAccount("alice", 100);
+        wal.logAccountKey("alice", key);
+        wal.logTransfer(7, 1_700_000_000L, "alice", "bob", 5);
+        wal.awaitDurable();
+        wal.close();
+
+        Replayed all = replay(0);
+        assertEquals(3, all.lastLsn);
+        assertEquals(List.of("account alice 100", "key alice", "transfer 7 1700000000 alice bob 5"), all.records);
+        assertArrayEquals(key, all.lastKey);
+        assertEquals(List.of("transfer 7 1700000000 alice bob 5"), replay(2).records);
+    }
+
+    @Test
+    void tornTailIsTruncatedAndLogContinues() throws Exception {
+        writeTransfers(0, 3);
+        Path segment = segments().get(0);
+        long intact = Files.size(segment);
+        // Сбой посреди записи: заголовок обещает 100 байт, на диске - 10
+        appendBytes(segment, ByteBuffer.allocate(RECORD_HEADER + 10).putInt(100).putInt(0x1234).array());
+
+        Replayed replayed = replay(0);
+        assertEquals(3, replayed.lastLsn);
+        assertEquals(3, replayed.records.size());
+        assertEquals(intact, Files.size(segment));
+
+        writeTransfers(3, 1); // Следующий запуск продолжает с LSN 4
+        Replayed after = replay(0);
+        assertEquals(4, after.lastLsn);
+        assertEquals(4, after.records.size());
+    }
+
+    @Test
+    void partialHeaderIsTruncated() throws Exception {
+        writeTransfers(0, 2);
+        Path segment = segments().get(0);
+        long intact = Files.size(segment);
+        appendBytes(segment, new byte[] { 0, 0, 0 });
+
+        assertEquals(2, replay(0).records.size());
+        assertEquals(intact, Files.size(segment));
+    }
+
+    @Test
+    void crcDamageStopsReplayAndDropsLaterSegments() throws Exception {
+        WriteAheadLog wal = WriteAheadLog.open(dir, 0, "test");
+        for (int i = 1; i <= 3; i++) wal.logTransfer(i, 0, "alice", "bob", i);
+        wal.awaitDurable();
+        rotateAndWait(wal, 2);
+        for (int i = 4; i <= 5; i++) wal.logTransfer(i, 0, "alice", "bob", i);
+        wal.awaitDurable();
+        wal.close();
+
+        Path first = segments().get(0);
+        byte[] data = Files.readAllBytes(first);
+        int firstRecordEnd = RECORD_HEADER + ByteBuffer.wrap(data).getInt(0);
+        data[firstRecordEnd + RECORD_HEADER + 12] ^= 0x40; // Байт в данных второй записи: CRC не сойдется
+        Files.write(first, data);
+
+        Replayed replayed = replay(0);
+        assertEquals(1, replayed.lastLsn);
+        assertEquals(List.of("transfer 1 0 alice bob 1"), replayed.records);
+        assertEquals(firstRecordEnd, Files.size(first));
+        assertEquals(List.of(first), segments()); // Записи после повреждения потеряны вместе с сегментом
+    }
+
+    @Test
+    void segmentsCoveredBySnapshotAreDeleted() throws Exception {
+        WriteAheadLog wal = WriteAheadLog.open(dir, 0, "test");
+        for (int i = 1; i <= 3; i++) wal.logTransfer(i, 0, "alice", "bob", i);
+        wal.awaitDurable();
+        rotateAndWait(wal, 2);
+        for (int i = 4; i <= 5; i++) wal.logTransfer(i, 0, "alice", "bob", i);
+        wal.awaitDurable();
+
+        wal.deleteSegmentsCoveredBy(2); // Запись 3 снимком не покрыта
+        assertEquals(2, segments().size());
+        wal.deleteSegmentsCoveredBy(5); // Текущий сегмент не удаляется никогда
+        List<Path> remaining = segments();
+        assertEquals(1, remaining.size());
+        assertTrue(remaining.get(0).getFileName().toString().endsWith("0004.log"), remaining::toString);
+        wal.close();
+
+        Replayed replayed = replay(3);
+        assertEquals(5, replayed.lastLsn);
+        assertEquals(List.of("transfer 4 0 alice bob 4", "transfer 5 0 alice bob 5"), replayed.records);
+    }
+
+    @Test
+    void missingDirectoryReplaysNothing() throws Exception {
+        Replayed replayed = replay(dir.resolve("absent"), 7);
+        assertEquals(7, replayed.lastLsn);
+        assertTrue(replayed.records.isEmpty());
+        assertFalse(Files.exists(dir.resolve("absent")));
+    }
+
+    // --- Вспомогательные ---
+
+    /** Записанные при повторе записи в виде строк. */
+    private static final class Replayed implements WriteAheadLog.ReplayHandler {
+        final List<String> records = new ArrayList<>();
+        byte[] lastKey;
+        long lastLsn;
+
+        @Override
+        public void onTransfer(long txId, long epochSecond, String sender, String recipient, long amount) {
+            records.add("transfer " + txId + " " + epochSecond + " " + sender + " " + recipient + " " + amount);
+        }
+
+        @Override
+        public void onAccount(String nickname, long balance) {
+            records.add("account " + nickname + " " + balance);
+        }
+
+        @Override
+        public void onAccountKey(String nickname, byte[] publicKey) {
+            records.add("key " + nickname);
+            lastKey = publicKey;
+        }
+    }
+
+    private Replayed replay(long afterLsn) throws IOException {
+        return replay(dir, afterLsn);
+    }
+
+    private static Replayed replay(Path directory, long afterLsn) throws IOException {
+        Replayed replayed = new Replayed();
+        replayed.lastLsn = WriteAheadLog.replay(directory, afterLsn, replayed);
+        return replayed;
+    }
+
+    /** Открывает журнал после lastLsn, пишет count переводов и закрывает. */
+    private void writeTransfers(long lastLsn, int count) throws Exception {
+        WriteAheadLog wal = WriteAheadLog.open(dir, lastLsn, "test");
+        for (int i = 1; i <= count; i++) wal.logTransfer(lastLsn + i, 0, "alice", "bob", i);
+        wal.awaitDurable();
+        wal.close();
+    }
+
+    /** rotate() переключает сегмент в потоке записи: ждем, пока появится новый файл. */
+    private void rotateAndWait(WriteAheadLog wal, int expectedSegments) throws Exception {
+        wal.rotate();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (segments().size() < expectedSegments) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("Segment was not rotated: " + segments());
+            Thread.sleep(5);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("wal-")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void appendBytes(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+    }
+}